@@ -1,9 +1,14 @@
 package de.tu_darmstadt.adtn;
 
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import javax.crypto.SecretKey;
 
+import de.tu_darmstadt.adtn.ciphersuite.GroupCipherSuite;
+import de.tu_darmstadt.adtn.ciphersuite.IGroupCipher;
+import de.tu_darmstadt.adtn.ciphersuite.Utils.IGroupKeyContext;
 import de.tu_darmstadt.adtn.generickeystore.KeyStoreEntry;
 import de.tu_darmstadt.adtn.groupkeystore.IGroupKeyStore;
 import static de.tu_darmstadt.adtn.groupciphersuitetests.utils.CipherTestVectors.*;
@@ -12,6 +17,9 @@ import static de.tu_darmstadt.adtn.groupciphersuitetests.utils.CipherTestVectors
  * Mocks a GroupKeyStore object
  */
 public class GroupKeyStoreMock implements IGroupKeyStore{
+
+    private IGroupKeyContext[] keyContexts;
+
     /**
      * Persistently stores the entries currently in the store so they can be retrieved when the
      * store is loaded again.
@@ -29,6 +37,44 @@ public class GroupKeyStoreMock implements IGroupKeyStore{
         return groupKeyList;
     }
 
+    /**
+     * @return The key contexts of the keys returned by getKeys.
+     */
+    @Override
+    public IGroupKeyContext[] getKeyContexts() {
+        if (keyContexts == null) {
+            IGroupCipher cipher = new GroupCipherSuite(0);
+            keyContexts = new IGroupKeyContext[groupKeyList.size()];
+            int i = 0;
+            for (SecretKey key : groupKeyList) keyContexts[i++] = cipher.createKeyContext(key);
+        }
+        return keyContexts;
+    }
+
+    /**
+     * @return The keys returned by getKeys, mapped by their position starting at 1.
+     */
+    @Override
+    public Map<Long, SecretKey> getKeysById() {
+        Map<Long, SecretKey> keysById = new LinkedHashMap<>();
+        long id = 1;
+        for (SecretKey key : groupKeyList) keysById.put(id++, key);
+        return keysById;
+    }
+
+    /**
+     * @param keyContext A key context returned by getKeyContexts.
+     * @return The position of the key context starting at 1 or 0 if it is unknown.
+     */
+    @Override
+    public long getKeyId(IGroupKeyContext keyContext) {
+        IGroupKeyContext[] contexts = getKeyContexts();
+        for (int i = 0; i < contexts.length; ++i) {
+            if (contexts[i] == keyContext) return i + 1;
+        }
+        return 0;
+    }
+
     /**
      * Empties the store.
      */
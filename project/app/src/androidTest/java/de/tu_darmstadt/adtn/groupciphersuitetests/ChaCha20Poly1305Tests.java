@@ -0,0 +1,103 @@
+package de.tu_darmstadt.adtn.groupciphersuitetests;
+
+import android.test.AndroidTestCase;
+
+import org.spongycastle.util.encoders.Hex;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import javax.crypto.SecretKey;
+
+import de.tu_darmstadt.adtn.ciphersuite.GroupCipherFactory;
+import de.tu_darmstadt.adtn.ciphersuite.IGroupCipher;
+import de.tu_darmstadt.adtn.ciphersuite.Utils.IGroupKeyContext;
+import de.tu_darmstadt.adtn.ciphersuite.ciphers.ChaCha20;
+import de.tu_darmstadt.adtn.ciphersuite.ciphers.ChaCha20Poly1305;
+
+import static de.tu_darmstadt.adtn.groupciphersuitetests.utils.CipherSuiteTestsUtility.PLAINSIZE;
+import static de.tu_darmstadt.adtn.groupciphersuitetests.utils.CipherTestVectors.getByteInput;
+
+/**
+ * Tests the ChaCha20-Poly1305 AEAD and the group cipher based on it
+ */
+public class ChaCha20Poly1305Tests extends AndroidTestCase {
+
+    // Test vector from RFC 7539, section 2.8.2
+    private final static byte[] KEY = Hex.decode("808182838485868788898a8b8c8d8e8f909192939495969798999a9b9c9d9e9f");
+    private final static byte[] NONCE = Hex.decode("070000004041424344454647");
+    private final static byte[] AAD = Hex.decode("50515253c0c1c2c3c4c5c6c7");
+    private final static byte[] PLAINTEXT = ("Ladies and Gentlemen of the class of '99: If I could offer you " +
+            "only one tip for the future, sunscreen would be it.").getBytes();
+    private final static byte[] CIPHERTEXT = Hex.decode("d31a8d34648e60db7b86afbc53ef7ec2a4aded51296e08fea9e2b5a736ee62d6" +
+            "3dbea45e8ca9671282fafb69da92728b1a71de0a9e060b2905d6a5b67ecd3b3692ddbd7f2d778b8c9803aee328091b58" +
+            "fab324e4fad675945585808b4831d7bc3ff4def08e4b7a9de576d26586cec64b6116");
+    private final static byte[] TAG = Hex.decode("1ae10b594f09e26a7e902ecbd0600691");
+
+    private ChaCha20Poly1305 aead = new ChaCha20Poly1305();
+
+    public void testRfcVectorEncryption() {
+        byte[] ciphertext = new byte[PLAINTEXT.length];
+        byte[] tag = new byte[ChaCha20Poly1305.TAG_SIZE];
+        aead.encrypt(ChaCha20.expandKey(KEY, 0), NONCE, 0, AAD, 0, AAD.length,
+                PLAINTEXT, 0, PLAINTEXT.length, ciphertext, 0, tag, 0);
+        assertTrue(Arrays.equals(CIPHERTEXT, ciphertext));
+        assertTrue(Arrays.equals(TAG, tag));
+    }
+
+    public void testRfcVectorDecryption() {
+        byte[] plaintext = new byte[CIPHERTEXT.length];
+        assertTrue(aead.decrypt(ChaCha20.expandKey(KEY, 0), NONCE, 0, AAD, 0, AAD.length,
+                CIPHERTEXT, 0, CIPHERTEXT.length, TAG, 0, plaintext, 0));
+        assertTrue(Arrays.equals(PLAINTEXT, plaintext));
+
+        // Modified cipher text must be rejected
+        byte[] modified = Arrays.copyOf(CIPHERTEXT, CIPHERTEXT.length);
+        modified[0] ^= 1;
+        assertFalse(aead.decrypt(ChaCha20.expandKey(KEY, 0), NONCE, 0, AAD, 0, AAD.length,
+                modified, 0, modified.length, TAG, 0, plaintext, 0));
+    }
+
+    public void testGroupCipher() {
+        checkGroupCipher(GroupCipherFactory.createGroupCipher(GroupCipherFactory.CHACHA20_POLY1305, PLAINSIZE, false));
+    }
+
+    public void testGroupCipherWithKeyHints() {
+        checkGroupCipher(GroupCipherFactory.createGroupCipher(GroupCipherFactory.CHACHA20_POLY1305, PLAINSIZE, true));
+    }
+
+    private void checkGroupCipher(IGroupCipher cipher) {
+        assertEquals(32, cipher.getEncodedKeySize());
+        List<SecretKey> keys = new ArrayList<>();
+        IGroupKeyContext[] keyContexts = new IGroupKeyContext[5];
+        for (int i = 0; i < keyContexts.length; ++i) {
+            keys.add(cipher.generateKey());
+            keyContexts[i] = cipher.createKeyContext(keys.get(i));
+        }
+
+        byte[] plaintext = getByteInput();
+        byte[][] encrypted = cipher.encrypt(plaintext, keys);
+        byte[] buffer = new byte[PLAINSIZE];
+        for (int i = 0; i < encrypted.length; ++i) {
+            assertEquals(cipher.getCipherTextSize(), encrypted[i].length);
+            assertSame(keyContexts[i], cipher.tryDecryptInto(encrypted[i], keyContexts, buffer, 0));
+            assertTrue(Arrays.equals(plaintext, buffer));
+            assertTrue(Arrays.equals(plaintext, cipher.tryDecrypt(encrypted[i], keys)));
+
+            // Same from a direct buffer
+            ByteBuffer direct = ByteBuffer.allocateDirect(encrypted[i].length);
+            direct.put(encrypted[i]).flip();
+            Arrays.fill(buffer, (byte) 0);
+            assertSame(keyContexts[i], cipher.tryDecryptInto(direct, keyContexts, buffer, 0));
+            assertTrue(Arrays.equals(plaintext, buffer));
+        }
+
+        byte[] random = new byte[cipher.getCipherTextSize()];
+        new Random().nextBytes(random);
+        assertNull(cipher.tryDecryptInto(random, keyContexts, buffer, 0));
+        assertNull(cipher.tryDecrypt(random, keys));
+    }
+}
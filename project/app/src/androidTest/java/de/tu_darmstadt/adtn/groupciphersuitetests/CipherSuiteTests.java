@@ -3,14 +3,22 @@ package de.tu_darmstadt.adtn.groupciphersuitetests;
 import android.test.AndroidTestCase;
 import android.test.RenamingDelegatingContext;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.crypto.SecretKey;
 
 import de.tu_darmstadt.adtn.ciphersuite.GroupCipherSuite;
 import de.tu_darmstadt.adtn.ciphersuite.IGroupCipher;
+import de.tu_darmstadt.adtn.ciphersuite.KeyHints;
 import de.tu_darmstadt.adtn.ciphersuite.Utils.IGroupKey;
+import de.tu_darmstadt.adtn.ciphersuite.Utils.IGroupKeyContext;
 import de.tu_darmstadt.adtn.errorlogger.ErrorLoggingSingleton;
 
 import static de.tu_darmstadt.adtn.groupciphersuitetests.utils.CipherSuiteTestsUtility.PLAINSIZE;
@@ -43,6 +51,154 @@ public class CipherSuiteTests extends AndroidTestCase {
         assertEquals(testInput, result);
     }
 
+    public void testPlainsWithKeyContexts() throws Exception {
+        IGroupKeyContext[] keyContexts = new IGroupKeyContext[groupKeyList.size()];
+        for (int i = 0; i < keyContexts.length; ++i) {
+            keyContexts[i] = uut.createKeyContext(groupKeyList.get(i));
+        }
+        byte[][] encrypted = uut.encrypt(getByteInput(), groupKeyList);
+        for (byte[] ciphertext : encrypted) {
+            assertEquals(testInput, new String(uut.tryDecrypt(ciphertext, keyContexts)));
+        }
+        // Flipping a bit must make the MAC check fail for every key
+        encrypted[0][encrypted[0].length - 1] ^= 1;
+        assertNull(uut.tryDecrypt(encrypted[0], keyContexts));
+    }
+
+    public void testDecryptInto() throws Exception {
+        IGroupKeyContext[] keyContexts = new IGroupKeyContext[groupKeyList.size()];
+        for (int i = 0; i < keyContexts.length; ++i) {
+            keyContexts[i] = uut.createKeyContext(groupKeyList.get(i));
+        }
+        byte[][] encrypted = uut.encrypt(getByteInput(), groupKeyList);
+        byte[] buffer = new byte[PLAINSIZE + 3];
+        for (int i = 0; i < encrypted.length; ++i) {
+            assertSame(keyContexts[i], uut.tryDecryptInto(encrypted[i], keyContexts, buffer, 3));
+            assertEquals(testInput, new String(buffer, 3, PLAINSIZE));
+        }
+        encrypted[0][0] ^= 1;
+        assertNull(uut.tryDecryptInto(encrypted[0], keyContexts, buffer, 3));
+    }
+
+    public void testDecryptFromDirectBuffer() throws Exception {
+        IGroupKeyContext[] keyContexts = new IGroupKeyContext[groupKeyList.size()];
+        for (int i = 0; i < keyContexts.length; ++i) {
+            keyContexts[i] = uut.createKeyContext(groupKeyList.get(i));
+        }
+        byte[][] encrypted = uut.encrypt(getByteInput(), groupKeyList);
+        byte[] buffer = new byte[PLAINSIZE];
+        for (int i = 0; i < encrypted.length; ++i) {
+            // Cipher text does not start at the beginning of the buffer, like a received frame
+            ByteBuffer frame = ByteBuffer.allocateDirect(encrypted[i].length + 14);
+            frame.position(14);
+            frame.put(encrypted[i]);
+            frame.position(14);
+            ByteBuffer view = frame.asReadOnlyBuffer();
+            assertSame(keyContexts[i], uut.tryDecryptInto(view, keyContexts, buffer, 0));
+            assertEquals(testInput, new String(buffer));
+            assertEquals(14, view.position());
+        }
+
+        // Too short and modified cipher texts are rejected
+        ByteBuffer frame = ByteBuffer.allocateDirect(encrypted[0].length);
+        frame.put(encrypted[0]).flip();
+        frame.limit(frame.limit() - 1);
+        assertNull(uut.tryDecryptInto(frame, keyContexts, buffer, 0));
+        frame.limit(frame.capacity());
+        frame.put(frame.capacity() - 1, (byte) (frame.get(frame.capacity() - 1) ^ 1));
+        assertNull(uut.tryDecryptInto(frame, keyContexts, buffer, 0));
+    }
+
+    public void testParallelDecryption() throws Exception {
+        // Threshold of 1 searches every key set in parallel
+        IGroupCipher parallelCipher = new GroupCipherSuite(PLAINSIZE, false, 1);
+        IGroupKeyContext[] keyContexts = new IGroupKeyContext[groupKeyList.size()];
+        for (int i = 0; i < keyContexts.length; ++i) {
+            keyContexts[i] = parallelCipher.createKeyContext(groupKeyList.get(i));
+        }
+        byte[][] encrypted = parallelCipher.encrypt(getByteInput(), groupKeyList);
+        byte[] buffer = new byte[PLAINSIZE];
+        // Twice, so the worker threads also use their MAC contexts a second time
+        for (int round = 0; round < 2; ++round) {
+            for (int i = 0; i < encrypted.length; ++i) {
+                assertSame(keyContexts[i], parallelCipher.tryDecryptInto(encrypted[i], keyContexts, buffer, 0));
+                assertEquals(testInput, new String(buffer));
+            }
+        }
+        byte[] random = new byte[parallelCipher.getCipherTextSize()];
+        new Random().nextBytes(random);
+        assertNull(parallelCipher.tryDecryptInto(random, keyContexts, buffer, 0));
+    }
+
+    public void testConcurrentUse() throws Exception {
+        final IGroupKeyContext[] keyContexts = new IGroupKeyContext[groupKeyList.size()];
+        for (int i = 0; i < keyContexts.length; ++i) {
+            keyContexts[i] = uut.createKeyContext(groupKeyList.get(i));
+        }
+
+        // Several threads encrypt and decrypt with the same cipher and key contexts at once
+        final AtomicInteger failures = new AtomicInteger();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; ++t) {
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    byte[] buffer = new byte[PLAINSIZE];
+                    for (int round = 0; round < 20; ++round) {
+                        byte[][] encrypted = uut.encrypt(getByteInput(), groupKeyList);
+                        for (int i = 0; i < encrypted.length; ++i) {
+                            if (uut.tryDecryptInto(encrypted[i], keyContexts, buffer, 0) != keyContexts[i] ||
+                                    !testInput.equals(new String(buffer))) {
+                                failures.incrementAndGet();
+                            }
+                        }
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) thread.join();
+        assertEquals(0, failures.get());
+    }
+
+    public void testKeyHints() throws Exception {
+        IGroupCipher hintCipher = new GroupCipherSuite(PLAINSIZE, true);
+        assertEquals(uut.getCipherTextSize() + KeyHints.TAG_LENGTH, hintCipher.getCipherTextSize());
+        IGroupKeyContext[] keyContexts = new IGroupKeyContext[groupKeyList.size()];
+        for (int i = 0; i < keyContexts.length; ++i) {
+            keyContexts[i] = hintCipher.createKeyContext(groupKeyList.get(i));
+        }
+        byte[][] encrypted = hintCipher.encrypt(getByteInput(), groupKeyList);
+        byte[] buffer = new byte[PLAINSIZE];
+        for (int i = 0; i < encrypted.length; ++i) {
+            assertSame(keyContexts[i], hintCipher.tryDecryptInto(encrypted[i], keyContexts, buffer, 0));
+            assertEquals(testInput, new String(buffer));
+        }
+        // Random packets and packets with a wrong tag are rejected
+        byte[] random = new byte[hintCipher.getCipherTextSize()];
+        new Random().nextBytes(random);
+        assertNull(hintCipher.tryDecryptInto(random, keyContexts, buffer, 0));
+        encrypted[0][0] ^= 1;
+        assertNull(hintCipher.tryDecryptInto(encrypted[0], keyContexts, buffer, 0));
+
+        // The same contexts in a different order are looked up the same way, a context that is
+        // not passed in is not found
+        IGroupKeyContext[] reversed = new IGroupKeyContext[keyContexts.length - 1];
+        for (int i = 0; i < reversed.length; ++i) reversed[i] = keyContexts[keyContexts.length - 1 - i];
+        for (int i = 1; i < encrypted.length; ++i) {
+            assertSame(keyContexts[i], hintCipher.tryDecryptInto(encrypted[i], reversed, buffer, 0));
+        }
+        assertNull(hintCipher.tryDecryptInto(hintCipher.encrypt(getByteInput(), groupKeyList.subList(0, 1))[0],
+                reversed, buffer, 0));
+
+        // The tags of a group do not repeat within an epoch, so they do not link the packets of the group
+        Set<Integer> tags = new HashSet<>();
+        List<SecretKey> oneKey = Collections.singletonList(groupKeyList.get(0));
+        for (int i = 0; i < 1000; ++i) {
+            assertTrue(tags.add(KeyHints.readTag(hintCipher.encrypt(getByteInput(), oneKey)[0], 0)));
+        }
+    }
+
     public void testKeyGeneration() throws Exception {
         IGroupKey key = (IGroupKey) uut.generateKey();
         assertEquals(keyLength, key.getCipherKey().getEncoded().length);
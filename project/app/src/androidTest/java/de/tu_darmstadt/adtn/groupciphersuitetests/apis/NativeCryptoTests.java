@@ -0,0 +1,91 @@
+package de.tu_darmstadt.adtn.groupciphersuitetests.apis;
+
+import android.test.AndroidTestCase;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+
+import de.tu_darmstadt.adtn.TestUtility;
+import de.tu_darmstadt.adtn.ciphersuite.NativeCrypto;
+import de.tu_darmstadt.adtn.ciphersuite.ciphers.IPublicMessageCipher;
+import de.tu_darmstadt.adtn.ciphersuite.ciphers.NativeChaChaCipher;
+import de.tu_darmstadt.adtn.ciphersuite.hashes.NativePoly1305;
+import de.tu_darmstadt.adtn.ciphersuite.hashes.Poly1305;
+import de.tu_darmstadt.adtn.groupciphersuitetests.utils.CipherSuiteTestsUtility;
+import de.tu_darmstadt.adtn.groupciphersuitetests.utils.CipherTestVectors;
+
+import static de.tu_darmstadt.adtn.TestUtility.bytesEqual;
+
+/**
+ * Tests if the native ChaCha and Poly1305-AES implementations produce the same output as the
+ * Spongy Castle ones. Tests pass trivially if the native library is not available.
+ */
+public class NativeCryptoTests extends AndroidTestCase {
+
+    private final int amount = TestUtility.stressTestAmount;
+    private byte[] plain;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        plain = CipherTestVectors.getByteInput();
+    }
+
+    public void testChaCha() {
+        if (!NativeCrypto.isAvailable()) return;
+
+        IPublicMessageCipher expectedCipher = CipherSuiteTestsUtility.setUpPublicMessageCipher(Cipher.ENCRYPT_MODE);
+        IPublicMessageCipher uut = new NativeChaChaCipher();
+        List<SecretKey> keys = CipherSuiteTestsUtility.generateChaChaKeys(amount);
+        List<byte[]> nonces = CipherSuiteTestsUtility.generateNonceList(amount, uut.getNonceLength());
+        byte[] expected = new byte[plain.length];
+        byte[] result = new byte[plain.length];
+        for (int i = 0; i < amount; ++i) {
+            // Vary the text length to cover partial keystream blocks
+            int textOffset = i % plain.length;
+            expectedCipher.doFinalOptimized(nonces.get(i), keys.get(i), plain, textOffset, expected, 0);
+            uut.doFinalOptimized(nonces.get(i), keys.get(i), plain, textOffset, result, 0);
+            assertTrue(bytesEqual(expected, result, 0));
+        }
+    }
+
+    public void testPoly1305() throws Exception {
+        if (!NativeCrypto.isAvailable()) return;
+
+        Poly1305 expectedMAC = new Poly1305();
+        NativePoly1305 uut = new NativePoly1305();
+        List<SecretKey> keys = CipherSuiteTestsUtility.generatePolyKeys(amount);
+        List<byte[]> nonces = CipherSuiteTestsUtility.generateNonceList(amount, 16);
+        byte[] expected = new byte[uut.length()];
+        byte[] result = new byte[uut.length()];
+        for (int i = 0; i < amount; ++i) {
+            int textOffset = i % plain.length;
+            expectedMAC.computeMAC(nonces.get(i), keys.get(i), plain, textOffset, expected, 0);
+            uut.computeMAC(nonces.get(i), keys.get(i), plain, textOffset, result, 0);
+            assertTrue(bytesEqual(expected, result, 0));
+        }
+    }
+
+    public void testRejectsInvalidBuffers() {
+        if (!NativeCrypto.isAvailable()) return;
+
+        try {
+            NativeCrypto.chaCha20Xor(ByteBuffer.allocate(64), 0, 32, 40, 8, 40);
+            fail("Heap buffer accepted");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            NativeCrypto.poly1305Aes(ByteBuffer.allocateDirect(64), 0, 32, 48, 17, 48);
+            fail("Out of bounds range accepted");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        super.tearDown();
+    }
+}
@@ -0,0 +1,70 @@
+package de.tu_darmstadt.adtn.groupciphersuitetests.apis;
+
+import android.test.AndroidTestCase;
+
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import de.tu_darmstadt.adtn.ciphersuite.ciphers.ChaCha20;
+import de.tu_darmstadt.adtn.ciphersuite.ciphers.ChaChaNonceGenerator;
+
+import static de.tu_darmstadt.adtn.TestUtility.toHex;
+
+/**
+ * Tests the ChaCha20 based nonce generator
+ */
+public class NonceGeneratorTests extends AndroidTestCase {
+
+    private final static int NONCE_LENGTH = 16;
+
+    // Seed source that always returns the same seed
+    private static class FixedSeed extends SecureRandom {
+        @Override
+        public void nextBytes(byte[] bytes) {
+            for (int i = 0; i < bytes.length; ++i) bytes[i] = (byte) i;
+        }
+    }
+
+    /**
+     * Test if the first nonce is the keystream after the 32 bytes that become the next key
+     */
+    public void testFirstNonceIsKeystream() {
+        byte[] seed = new byte[ChaCha20.KEY_SIZE];
+        new FixedSeed().nextBytes(seed);
+        byte[] keystream = new byte[ChaCha20.BLOCK_SIZE];
+        ChaCha20 chaCha = new ChaCha20();
+        chaCha.init(ChaCha20.expandKey(seed, 0), new byte[ChaCha20.NONCE_SIZE], 0);
+        chaCha.keystreamBlock(0, keystream, 0);
+
+        byte[] nonce = new ChaChaNonceGenerator(NONCE_LENGTH, new FixedSeed()).generateNonce();
+        assertTrue(Arrays.equals(Arrays.copyOfRange(keystream, ChaCha20.KEY_SIZE, ChaCha20.KEY_SIZE + NONCE_LENGTH), nonce));
+    }
+
+    /**
+     * Test if nonces are written at the offset and do not repeat, also across buffer refills
+     */
+    public void testNoncesAreUnique() {
+        ChaChaNonceGenerator generator = new ChaChaNonceGenerator(NONCE_LENGTH);
+        byte[] buffer = new byte[NONCE_LENGTH + 2];
+        Set<String> nonces = new HashSet<>();
+        for (int i = 0; i < 2000; ++i) {
+            generator.generateNonce(buffer, 1);
+            assertEquals(0, buffer[0]);
+            assertEquals(0, buffer[buffer.length - 1]);
+            assertTrue(nonces.add(toHex(Arrays.copyOfRange(buffer, 1, 1 + NONCE_LENGTH))));
+        }
+    }
+
+    /**
+     * Test if generators with the same seed produce the same nonces and odd lengths work
+     */
+    public void testSameSeedSameNonces() {
+        ChaChaNonceGenerator first = new ChaChaNonceGenerator(7, new FixedSeed());
+        ChaChaNonceGenerator second = new ChaChaNonceGenerator(7, new FixedSeed());
+        for (int i = 0; i < 1000; ++i) {
+            assertTrue(Arrays.equals(first.generateNonce(), second.generateNonce()));
+        }
+    }
+}
@@ -7,6 +7,7 @@ import java.util.List;
 import javax.crypto.SecretKey;
 
 import de.tu_darmstadt.adtn.TestUtility;
+import de.tu_darmstadt.adtn.ciphersuite.hashes.IMACKeyContext;
 import de.tu_darmstadt.adtn.ciphersuite.hashes.Poly1305;
 import de.tu_darmstadt.adtn.groupciphersuitetests.utils.CipherSuiteTestsUtility;
 import de.tu_darmstadt.adtn.groupciphersuitetests.utils.CipherTestVectors;
@@ -39,6 +40,22 @@ public class PoyTests extends AndroidTestCase {
         assertFalse(bytesEqual(result, new byte[uut.length()], 0));
     }
 
+    /**
+     * Test if the precomputed key contexts compute the same MACs as Poly1305 itself
+     */
+    public void testKeyContext() {
+        byte[] expected = new byte[uut.length()];
+        byte[] result = new byte[uut.length()];
+        for (int i = 0; i < amount; ++i) {
+            IMACKeyContext context = uut.createKeyContext(keys.get(i));
+            // Vary the text length to cover a partial last block
+            int textOffset = i % plain.length;
+            uut.computeMAC(nonces.get(i), keys.get(i), plain, textOffset, expected, 0);
+            context.computeMAC(nonces.get(i), 0, plain, textOffset, plain.length - textOffset, result, 0);
+            assertTrue(bytesEqual(expected, result, 0));
+        }
+    }
+
     @Override
     protected void tearDown() throws Exception {
         super.tearDown();
@@ -29,6 +29,18 @@ public class NonceGenMock implements INonceGenerator {
         return nonceList[i];
     }
 
+    /**
+     * Copies the next nonce into the buffer.
+     *
+     * @param buffer Buffer that will hold the nonce.
+     * @param offset Start index of the nonce in the buffer.
+     */
+    @Override
+    public void generateNonce(byte[] buffer, int offset) {
+        byte[] nonce = generateNonce();
+        System.arraycopy(nonce, 0, buffer, offset, nonce.length);
+    }
+
     /**
      * Returns the length of this nonce
      *
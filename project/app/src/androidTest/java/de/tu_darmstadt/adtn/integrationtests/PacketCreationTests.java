@@ -10,7 +10,9 @@ import java.util.Random;
 import de.tu_darmstadt.adtn.ProtocolConstants;
 import de.tu_darmstadt.adtn.ciphersuite.GroupCipherSuite;
 import de.tu_darmstadt.adtn.ciphersuite.IGroupCipher;
+import de.tu_darmstadt.adtn.ciphersuite.Utils.IGroupKeyContext;
 import de.tu_darmstadt.adtn.groupciphersuitetests.utils.CipherTestVectors;
+import de.tu_darmstadt.adtn.packetbuilding.AdaptiveKeyOrder;
 import de.tu_darmstadt.adtn.packetbuilding.IPacketBuilder;
 import de.tu_darmstadt.adtn.packetbuilding.PacketBuilder;
 import static de.tu_darmstadt.adtn.groupciphersuitetests.utils.CipherTestVectors.*;
@@ -69,6 +71,55 @@ public class PacketCreationTests extends InstrumentationTestCase {
         }
     }
 
+    public void testUnpackIntoBuffer(){
+        loadSetup();
+        IGroupKeyContext[] keyContexts = new IGroupKeyContext[groupKeyList.size()];
+        for (int i = 0; i < keyContexts.length; i++) {
+            keyContexts[i] = groupCipher.createKeyContext(groupKeyList.get(i));
+        }
+        byte[] buffer = new byte[packetBuilder.getUnencryptedPacketSize()];
+        for (byte[] ciphertext : ciphertexts) {
+            assertEquals(plaintext.length, packetBuilder.tryUnpackPacketInto(ciphertext, keyContexts, buffer, 0));
+            assertTrue(bytesEqual(plaintext, buffer, 0));
+        }
+        assertEquals(-1, packetBuilder.tryUnpackPacketInto(new byte[1488], keyContexts, buffer, 0));
+    }
+
+    public void testAdaptiveKeyOrder() throws InterruptedException {
+        AdaptiveKeyOrder keyOrder = new AdaptiveKeyOrder();
+        IGroupKeyContext[] keyContexts = new IGroupKeyContext[groupKeyList.size()];
+        for (int i = 0; i < keyContexts.length; i++) {
+            keyContexts[i] = groupCipher.createKeyContext(groupKeyList.get(i));
+        }
+
+        // The keys are tried as passed in until the order of the new key set is published
+        assertSame(keyContexts, keyOrder.getOrder(keyContexts));
+        waitForOrder(keyOrder, keyContexts, keyContexts[0]);
+
+        // All traffic is for the last key, which should be moved to the front after the first match
+        IGroupKeyContext hot = keyContexts[keyContexts.length - 1];
+        keyOrder.recordMatch(hot);
+        waitForOrder(keyOrder, keyContexts, hot);
+        int packetCount = 100;
+        for (int i = 1; i < packetCount; i++) {
+            assertSame(hot, keyOrder.getOrder(keyContexts)[0]);
+            keyOrder.recordMatch(hot);
+        }
+        assertEquals((keyContexts.length + packetCount - 1) / (double) packetCount, keyOrder.getAverageKeysTried(), 1e-9);
+    }
+
+    // Waits until the background thread published an order of the key contexts that starts with
+    // the specified one
+    private static void waitForOrder(AdaptiveKeyOrder keyOrder, IGroupKeyContext[] keyContexts,
+                                     IGroupKeyContext first) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        IGroupKeyContext[] order;
+        while ((order = keyOrder.getOrder(keyContexts)) == keyContexts || order[0] != first) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
     public void testPacketToPlaintextIsCorrect(){
         loadSetup();
         for (byte[] ciphertext : ciphertexts)
@@ -1,10 +1,15 @@
 package de.tu_darmstadt.adtn.messagestoretests;
 
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
 import android.test.AndroidTestCase;
 import android.test.RenamingDelegatingContext;
 import android.test.suitebuilder.annotation.MediumTest;
 
+import java.security.MessageDigest;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import de.tu_darmstadt.adtn.errorlogger.ErrorLoggingSingleton;
 import de.tu_darmstadt.adtn.messagestore.IMessageStore;
@@ -13,6 +18,9 @@ import de.tu_darmstadt.adtn.messagestore.MessageStore;
 
 public class MessageStoreTests extends AndroidTestCase {
 
+    private final static String DATABASE_NAME = "network_message_store";
+    private final static long[] ALL_GROUPS = new long[]{1, 2, 3};
+
     private IMessageStore uut;
 
     @Override
@@ -43,10 +51,10 @@ public class MessageStoreTests extends AndroidTestCase {
         final byte[] testMessage = new byte[]{(byte) 't', (byte) 'e', (byte) 's', (byte) 't'};
 
         // Add test message to message store
-        uut.addMessage(testMessage);
+        uut.addMessage(testMessage, new long[0]);
 
         // Try to fetch two messages. Since only one message was added, only one message should be returned
-        Message[] fetched = uut.getNextMessagesToSend(2);
+        Message[] fetched = uut.getNextMessagesToSend(2, ALL_GROUPS);
 
         // Since only one message was added, it should be the only message returned although two were requested
         assertEquals(1, fetched.length);
@@ -64,10 +72,10 @@ public class MessageStoreTests extends AndroidTestCase {
         final byte[] testMessage2 = new byte[]{(byte) 'b', (byte) 'a', (byte) 'r'};
 
         // Add message. receivedMessage should return false to indicate it is new.
-        assertFalse(uut.receivedMessage(testMessage1));
+        assertFalse(uut.receivedMessage(testMessage1, 1));
 
         // Try to fetch two messages. Since only one message was added, only one message should be returned
-        Message[] fetched = uut.getNextMessagesToSend(2);
+        Message[] fetched = uut.getNextMessagesToSend(2, ALL_GROUPS);
 
         // Since only one message was added, it should be the only message returned although two were requested
         assertEquals(1, fetched.length);
@@ -76,13 +84,13 @@ public class MessageStoreTests extends AndroidTestCase {
         assertTrue(Arrays.equals(testMessage1, fetched[0].getContent()));
 
         // Try to add the same message again. receivedMessage should return true since it is already known
-        assertTrue(uut.receivedMessage(testMessage1));
+        assertTrue(uut.receivedMessage(testMessage1, 1));
 
         // Add another message that is different from the first
-        assertFalse(uut.receivedMessage(testMessage2));
+        assertFalse(uut.receivedMessage(testMessage2, 1));
 
         // getNextMessagesToSend should return the two messages now
-        fetched = uut.getNextMessagesToSend(3);
+        fetched = uut.getNextMessagesToSend(3, ALL_GROUPS);
         assertEquals(2, fetched.length);
 
         // Check if both messages were returned
@@ -96,8 +104,8 @@ public class MessageStoreTests extends AndroidTestCase {
         final byte[] testMessage2 = new byte[]{(byte) 'b', (byte) 'a', (byte) 'r'};
 
         // Add testMessage1 and fetch it to get its ID
-        uut.addMessage(testMessage1);
-        Message[] fetched = uut.getNextMessagesToSend(1);
+        uut.addMessage(testMessage1, new long[0]);
+        Message[] fetched = uut.getNextMessagesToSend(1, ALL_GROUPS);
         assertEquals(1, fetched.length);
         assertTrue(Arrays.equals(testMessage1, fetched[0].getContent()));
         byte[] testMessage1ID = fetched[0].getID();
@@ -106,10 +114,10 @@ public class MessageStoreTests extends AndroidTestCase {
         uut.sentMessage(testMessage1ID);
 
         // Now add testMessage2
-        uut.addMessage(testMessage2);
+        uut.addMessage(testMessage2, new long[0]);
 
         // Since testMessage2 was sent less often than testMessage1, getNextMessagesToSend(1) should return testMessage2
-        fetched = uut.getNextMessagesToSend(1);
+        fetched = uut.getNextMessagesToSend(1, ALL_GROUPS);
         assertEquals(1, fetched.length);
         assertTrue(Arrays.equals(testMessage2, fetched[0].getContent()));
         byte[] testMessage2ID = fetched[0].getID();
@@ -122,9 +130,125 @@ public class MessageStoreTests extends AndroidTestCase {
         uut.sentMessage(testMessage2ID);
 
         // getNextMessagesToSent(1) should return testMessage1, since it was sent less often than testMessage2
-        fetched = uut.getNextMessagesToSend(1);
+        fetched = uut.getNextMessagesToSend(1, ALL_GROUPS);
         assertEquals(1, fetched.length);
         assertTrue(Arrays.equals(testMessage1, fetched[0].getContent()));
         assertTrue(Arrays.equals(testMessage1ID, fetched[0].getID()));
     }
+
+    @MediumTest
+    public void testConcurrentReceivedMessage() throws InterruptedException {
+        final int numThreads = 4, numMessages = 50;
+        final AtomicInteger newMessages = new AtomicInteger();
+
+        // Every thread receives the same messages, like the receive threads of the service do
+        Thread[] threads = new Thread[numThreads];
+        for (int i = 0; i < numThreads; ++i) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < numMessages; ++j) {
+                        if (!uut.receivedMessage(new byte[]{(byte) 'm', (byte) j}, 1)) newMessages.incrementAndGet();
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) thread.join();
+
+        // Every message must be reported as new exactly once
+        assertEquals(numMessages, newMessages.get());
+        assertEquals(numMessages, uut.getNextMessagesToSend(numMessages + 1, ALL_GROUPS).length);
+    }
+
+    @MediumTest
+    public void testMessagesStayInTheirGroups() {
+        final byte[] testMessage1 = new byte[]{(byte) 'f', (byte) 'o', (byte) 'o'};
+        final byte[] testMessage2 = new byte[]{(byte) 'b', (byte) 'a', (byte) 'r'};
+        final byte[] testMessage3 = new byte[]{(byte) 'b', (byte) 'a', (byte) 'z'};
+
+        // testMessage1 arrives in group 1 and later in group 2, testMessage2 is created in group 3
+        // and testMessage3 is created without groups
+        assertFalse(uut.receivedMessage(testMessage1, 1));
+        assertTrue(uut.receivedMessage(testMessage1, 2));
+        uut.addMessage(testMessage2, new long[]{3});
+        uut.addMessage(testMessage3, new long[0]);
+
+        // Only messages of the available groups are fetched, the ones without groups always
+        Message[] fetched = uut.getNextMessagesToSend(3, new long[]{2});
+        assertEquals(2, fetched.length);
+        for (Message message : fetched) {
+            if (Arrays.equals(testMessage1, message.getContent())) {
+                long[] groups = message.getGroupKeyIDs();
+                Arrays.sort(groups);
+                assertTrue(Arrays.equals(new long[]{1, 2}, groups));
+            } else {
+                assertTrue(Arrays.equals(testMessage3, message.getContent()));
+                assertEquals(0, message.getGroupKeyIDs().length);
+            }
+        }
+
+        fetched = uut.getNextMessagesToSend(3, new long[]{3, 4});
+        assertEquals(2, fetched.length);
+        assertEquals(1, uut.getNextMessagesToSend(3, new long[0]).length);
+    }
+
+    @MediumTest
+    public void testSentMessagesAreWrittenBehind() {
+        final byte[] testMessage1 = new byte[]{(byte) 'f', (byte) 'o', (byte) 'o'};
+        final byte[] testMessage2 = new byte[]{(byte) 'b', (byte) 'a', (byte) 'r'};
+        uut.addMessage(testMessage1, new long[0]);
+        uut.addMessage(testMessage2, new long[0]);
+        Message[] fetched = uut.getNextMessagesToSend(2, ALL_GROUPS);
+        byte[] testMessage1ID = Arrays.equals(testMessage1, fetched[0].getContent()) ? fetched[0].getID() : fetched[1].getID();
+        byte[] testMessage2ID = Arrays.equals(testMessage2, fetched[0].getContent()) ? fetched[0].getID() : fetched[1].getID();
+
+        // Without write-behind window, a batch is written at once
+        uut.sentMessages(Arrays.asList(testMessage1ID, testMessage1ID));
+        assertTrue(Arrays.equals(testMessage2, uut.getNextMessagesToSend(1, ALL_GROUPS)[0].getContent()));
+
+        // Within the window, the sends are collected, but the selection still takes them into
+        // account, so testMessage1 was sent less often now
+        uut.setWriteBehindWindow(3600000);
+        uut.sentMessages(Collections.nCopies(3, testMessage2ID));
+        assertTrue(Arrays.equals(testMessage1, uut.getNextMessagesToSend(1, ALL_GROUPS)[0].getContent()));
+
+        // Sends collected after the last selection are written on close
+        uut.sentMessages(Collections.nCopies(2, testMessage1ID));
+        uut.close();
+        uut = new MessageStore(new RenamingDelegatingContext(getContext(), "test."));
+        assertTrue(Arrays.equals(testMessage2, uut.getNextMessagesToSend(1, ALL_GROUPS)[0].getContent()));
+    }
+
+    @MediumTest
+    public void testUpgradeFromVersion1KeepsMessages() throws Exception {
+        final byte[] testMessage = new byte[]{(byte) 'f', (byte) 'o', (byte) 'o'};
+
+        // Create a database of version 1, which has no groups, with a message that was sent once
+        resetAndCloseDb();
+        Context context = new RenamingDelegatingContext(getContext(), "test.");
+        context.deleteDatabase(DATABASE_NAME);
+        SQLiteDatabase db = context.openOrCreateDatabase(DATABASE_NAME, Context.MODE_PRIVATE, null);
+        db.execSQL("CREATE TABLE messages (fingerprint BLOB PRIMARY KEY NOT NULL, message BLOB NOT NULL, " +
+                "times_sent INTEGER NOT NULL DEFAULT 0, times_received INTEGER NOT NULL DEFAULT 0, " +
+                "first_time_sent INTEGER NOT NULL DEFAULT 0, last_time_sent INTEGER NOT NULL DEFAULT 0, " +
+                "first_time_received INTEGER NOT NULL DEFAULT 0, last_time_received INTEGER NOT NULL DEFAULT 0);");
+        db.execSQL("INSERT INTO messages (fingerprint, message, times_sent) VALUES (?, ?, 1);",
+                new Object[]{MessageDigest.getInstance("MD5").digest(testMessage), testMessage});
+        db.setVersion(1);
+        db.close();
+
+        // The message survives the upgrade and belongs to every group
+        uut = new MessageStore(context);
+        Message[] fetched = uut.getNextMessagesToSend(2, new long[]{5});
+        assertEquals(1, fetched.length);
+        assertTrue(Arrays.equals(testMessage, fetched[0].getContent()));
+        assertEquals(0, fetched[0].getGroupKeyIDs().length);
+        assertTrue(uut.receivedMessage(testMessage, 1));
+
+        // Receiving it puts it in a group, which works like for new messages
+        uut.addMessage(new byte[]{(byte) 'b', (byte) 'a', (byte) 'r'}, new long[]{3});
+        assertEquals(1, uut.getNextMessagesToSend(3, new long[]{3}).length);
+        assertEquals(2, uut.getNextMessagesToSend(3, new long[]{1, 3}).length);
+    }
 }
@@ -1,11 +1,13 @@
 package de.tu_darmstadt.adtn.mocks;
 
+import java.nio.ByteBuffer;
 import java.util.Collection;
 
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
 
 import de.tu_darmstadt.adtn.ciphersuite.IGroupCipher;
+import de.tu_darmstadt.adtn.ciphersuite.Utils.IGroupKeyContext;
 
 /**
  * Mocks the GroupCipher
@@ -57,6 +59,57 @@ public class GroupCipherMock implements IGroupCipher{
         return new byte[0];
     }
 
+    /**
+     * Precomputes the state needed for decrypting with the given key.
+     *
+     * @param key The key.
+     * @return The key context.
+     */
+    @Override
+    public IGroupKeyContext createKeyContext(SecretKey key) {
+        return null;
+    }
+
+    /**
+     * Tries to decrypt a given cipher text with precomputed key contexts.
+     *
+     * @param ciphertext  Cipher text that is decrypted.
+     * @param keyContexts Key contexts that are used to decrypt the cipher text.
+     * @return Returns the decrypted cipher text as byte array or null if no key matched.
+     */
+    @Override
+    public byte[] tryDecrypt(byte[] ciphertext, IGroupKeyContext[] keyContexts) {
+        return new byte[0];
+    }
+
+    /**
+     * Tries to decrypt a given cipher text with precomputed key contexts into a buffer.
+     *
+     * @param ciphertext  Cipher text that is decrypted.
+     * @param keyContexts Key contexts that are used to decrypt the cipher text.
+     * @param buffer      Buffer that will hold the plaintext.
+     * @param offset      Start index of the plaintext in the buffer.
+     * @return Returns the matching key context or null if no key matched.
+     */
+    @Override
+    public IGroupKeyContext tryDecryptInto(byte[] ciphertext, IGroupKeyContext[] keyContexts, byte[] buffer, int offset) {
+        return null;
+    }
+
+    /**
+     * Tries to decrypt a cipher text held by a buffer.
+     *
+     * @param ciphertext  Buffer holding the cipher text.
+     * @param keyContexts Key contexts.
+     * @param buffer      Buffer that will hold the plaintext.
+     * @param offset      Start index of the plaintext in the buffer.
+     * @return Returns the matching key context or null if no key matched.
+     */
+    @Override
+    public IGroupKeyContext tryDecryptInto(ByteBuffer ciphertext, IGroupKeyContext[] keyContexts, byte[] buffer, int offset) {
+        return null;
+    }
+
     /**
      * Transforms an encoded key to a SecretKey.
      *
@@ -10,6 +10,11 @@ public class PreferencesMock implements IPreferences {
     private int sendInterval = 1;
     private int refill = 10;
     private int batchSize = 10;
+    private String networkInterfaces = DEFAULT_NETWORK_INTERFACES;
+    private int socketReceiveBufferSize = DEFAULT_SOCKET_RECEIVE_BUFFER_SIZE;
+    private int socketSendBufferSize = DEFAULT_SOCKET_SEND_BUFFER_SIZE;
+    private String groupCipherSuite = DEFAULT_GROUP_CIPHER_SUITE;
+    private int parallelKeySearchThreshold = DEFAULT_PARALLEL_KEY_SEARCH_THRESHOLD;
 
     /**
      * Resets the settings to their default values.
@@ -111,4 +116,54 @@ public class PreferencesMock implements IPreferences {
     public int getSendingPoolSendInterval() {
         return sendInterval;
     }
+
+    @Override
+    public String getNetworkInterfaces() {
+        return networkInterfaces;
+    }
+
+    @Override
+    public void setNetworkInterfaces(String networkInterfaces) {
+        this.networkInterfaces = networkInterfaces;
+    }
+
+    @Override
+    public int getSocketReceiveBufferSize() {
+        return socketReceiveBufferSize;
+    }
+
+    @Override
+    public void setSocketReceiveBufferSize(int size) {
+        socketReceiveBufferSize = size;
+    }
+
+    @Override
+    public int getSocketSendBufferSize() {
+        return socketSendBufferSize;
+    }
+
+    @Override
+    public void setSocketSendBufferSize(int size) {
+        socketSendBufferSize = size;
+    }
+
+    @Override
+    public String getGroupCipherSuite() {
+        return groupCipherSuite;
+    }
+
+    @Override
+    public void setGroupCipherSuite(String groupCipherSuite) {
+        this.groupCipherSuite = groupCipherSuite;
+    }
+
+    @Override
+    public int getParallelKeySearchThreshold() {
+        return parallelKeySearchThreshold;
+    }
+
+    @Override
+    public void setParallelKeySearchThreshold(int threshold) {
+        parallelKeySearchThreshold = threshold;
+    }
 }
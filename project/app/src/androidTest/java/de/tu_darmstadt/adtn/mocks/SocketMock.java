@@ -1,9 +1,11 @@
 package de.tu_darmstadt.adtn.mocks;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
 import de.tu_darmstadt.adtn.ISocket;
+import de.tu_darmstadt.adtn.SocketStatistics;
 
 /**
  * A Socket mock
@@ -35,6 +37,64 @@ public class SocketMock implements ISocket{
         sendInvoked = true;
     }
 
+    /**
+     * Receives data from the socket without copying it.
+     *
+     * @return An empty buffer.
+     */
+    @Override
+    public ByteBuffer receive() {
+        receiveInvoked = true;
+        return ByteBuffer.allocate(0).asReadOnlyBuffer();
+    }
+
+    /**
+     * @param buffer The buffer containing the data to be sent.
+     */
+    @Override
+    public void send(ByteBuffer buffer) {
+        sendInvoked = true;
+        buffer.position(buffer.limit());
+    }
+
+    /**
+     * Receives several packets at once.
+     *
+     * @param buffers The buffers to put the received data in, one packet per buffer.
+     * @param offset  The offset in every buffer.
+     * @return The number of packets received, which were put in the first buffers.
+     */
+    @Override
+    public int receiveBatch(byte[][] buffers, int offset) {
+        receiveInvoked = true;
+        return 1;
+    }
+
+    /**
+     * @param timeout The timeout in milliseconds or -1 to wait forever.
+     */
+    @Override
+    public void setReceiveTimeout(int timeout) {
+    }
+
+    /**
+     * @param buffers The buffers containing the data to be sent, one packet per buffer.
+     * @param offset  The offset in every buffer.
+     * @param count   The number of packets to send from the first buffers.
+     */
+    @Override
+    public void sendBatch(byte[][] buffers, int offset, int count) {
+        sendInvoked = true;
+    }
+
+    /**
+     * @return Counters that are all 0.
+     */
+    @Override
+    public SocketStatistics getStatistics() {
+        return new SocketStatistics(0, 0, 0, 0);
+    }
+
     /**
      * Closes the socket.
      */
@@ -3,10 +3,13 @@ package de.tu_darmstadt.adtn.packetsockettests;
 import android.test.AndroidTestCase;
 import android.test.suitebuilder.annotation.LargeTest;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Random;
 
+import de.tu_darmstadt.adtn.AdtnSocketException;
+import de.tu_darmstadt.adtn.AdtnSocketTimeoutException;
 import de.tu_darmstadt.adtn.packetsocket.PacketSocket;
 
 public class PacketSocketTests extends AndroidTestCase {
@@ -25,23 +28,92 @@ public class PacketSocketTests extends AndroidTestCase {
     @LargeTest
     public void test() throws Exception {
         if (!ENABLE_TEST) return;
+        runEchoTest(false, false);
+    }
+
+    @LargeTest
+    public void testRxRing() throws Exception {
+        if (!ENABLE_TEST) return;
+        runEchoTest(true, false);
+    }
+
+    @LargeTest
+    public void testDirectBuffers() throws Exception {
+        if (!ENABLE_TEST) return;
+        runEchoTest(false, true);
+        allPacketsReceived = false;
+        runEchoTest(true, true);
+    }
 
+    @LargeTest
+    public void testTimeoutAndClose() throws Exception {
+        if (!ENABLE_TEST) return;
+
+        for (boolean useRxRing : new boolean[]{false, true}) {
+            final PacketSocket ps = new PacketSocket(getContext(), "wlan0", ETHER_TYPE, dstMac, srcMac, PACKET_SIZE, useRxRing);
+            assertEquals(PacketSocket.EVENT_SEND, ps.waitForEvents(PacketSocket.EVENT_SEND, 1000));
+
+            // Waiting for both only reports sending, nothing arrives in time to receive
+            assertEquals(PacketSocket.EVENT_SEND,
+                    ps.waitForEvents(PacketSocket.EVENT_RECEIVE | PacketSocket.EVENT_SEND, 1000));
+            assertEquals(0, ps.waitForEvents(PacketSocket.EVENT_RECEIVE, 50));
+
+            // Nothing is sent to the socket, so receiving times out
+            ps.setReceiveTimeout(100);
+            long start = System.currentTimeMillis();
+            try {
+                ps.receive();
+                fail();
+            } catch (AdtnSocketTimeoutException e) {
+                assertTrue(System.currentTimeMillis() - start >= 100);
+            }
+
+            // Closing wakes up a thread that waits forever
+            ps.setReceiveTimeout(-1);
+            final boolean[] closedWhileReceiving = new boolean[1];
+            Thread receiveThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        ps.receive();
+                    } catch (AdtnSocketTimeoutException e) {
+                        return;
+                    } catch (AdtnSocketException e) {
+                        closedWhileReceiving[0] = true;
+                    }
+                }
+            });
+            receiveThread.start();
+            Thread.sleep(100);
+            ps.close();
+            receiveThread.join(1000);
+            assertFalse(receiveThread.isAlive());
+            assertTrue(closedWhileReceiving[0]);
+        }
+    }
+
+    private void runEchoTest(boolean useRxRing, final boolean direct) throws Exception {
         // Create packets with random contents
         Random rnd = new Random();
         final byte[][] packets = new byte[100][];
+        ByteBuffer[] directPackets = new ByteBuffer[packets.length];
         for (int i = 0; i < packets.length; ++i) {
             packets[i] = new byte[PACKET_SIZE];
             rnd.nextBytes(packets[i]);
+            directPackets[i] = ByteBuffer.allocateDirect(PACKET_SIZE);
+            directPackets[i].put(packets[i]);
         }
 
         // Create packet socket
-        final PacketSocket ps = new PacketSocket(getContext(), "wlan0", ETHER_TYPE, dstMac, srcMac, PACKET_SIZE);
+        final PacketSocket ps = new PacketSocket(getContext(), "wlan0", ETHER_TYPE, dstMac, srcMac, PACKET_SIZE, useRxRing);
+        assertEquals(useRxRing, ps.isRxRingEnabled());
+        assertTrue(ps.isFilterAttached());
 
         // Run receive thread
         Thread receiveThread = new Thread(new Runnable() {
             @Override
             public void run() {
-                checkReceive(ps, packets);
+                checkReceive(ps, packets, direct);
             }
         });
         receiveThread.start();
@@ -49,22 +121,70 @@ public class PacketSocketTests extends AndroidTestCase {
         // Keep sending packets until responses for all packets arrived
         while (!allPacketsReceived) {
             Thread.sleep(20);
-            for (byte[] packet : packets) {
-                ps.send(packet, 0);
+            for (int i = 0; i < packets.length; ++i) {
+                if (direct) {
+                    directPackets[i].rewind();
+                    ps.send(directPackets[i]);
+                } else {
+                    ps.send(packets[i], 0);
+                }
+            }
+        }
+
+        receiveThread.join();
+
+        // The kernel filter keeps frames with the wrong size away from the socket
+        assertEquals(0, ps.getDiscardedFrameCount());
+        ps.close();
+    }
+
+    @LargeTest
+    public void testBatch() throws Exception {
+        if (!ENABLE_TEST) return;
+
+        // Create packets with random contents
+        Random rnd = new Random();
+        final byte[][] packets = new byte[100][];
+        for (int i = 0; i < packets.length; ++i) {
+            packets[i] = new byte[PACKET_SIZE];
+            rnd.nextBytes(packets[i]);
+        }
+
+        // Create packet socket
+        final PacketSocket ps = new PacketSocket(getContext(), "wlan0", ETHER_TYPE, dstMac, srcMac, PACKET_SIZE);
+
+        // Run receive thread
+        Thread receiveThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                checkReceiveBatch(ps, packets);
             }
+        });
+        receiveThread.start();
+
+        // Keep sending all packets at once until responses for all packets arrived
+        while (!allPacketsReceived) {
+            Thread.sleep(20);
+            ps.sendBatch(packets, 0, packets.length);
         }
 
         receiveThread.join();
         ps.close();
     }
 
-    private void checkReceive(PacketSocket ps, byte[][] packets) {
+    private void checkReceive(PacketSocket ps, byte[][] packets, boolean direct) {
         // Make copy so received packets can be replaced with null
         ArrayList<byte[]> remainingPackets = new ArrayList<>(Arrays.asList(packets));
 
         byte[] receiveBuffer = new byte[PACKET_SIZE];
         while (!allPacketsReceived) {
-            ps.receive(receiveBuffer, 0);
+            if (direct) {
+                ByteBuffer packet = ps.receive();
+                assertEquals(PACKET_SIZE, packet.remaining());
+                packet.get(receiveBuffer);
+            } else {
+                ps.receive(receiveBuffer, 0);
+            }
             byte[] foundPacket = null;
             for (byte[] remainingPacket : remainingPackets) {
                 foundPacket = remainingPacket;
@@ -85,4 +205,30 @@ public class PacketSocketTests extends AndroidTestCase {
             }
         }
     }
+
+    private void checkReceiveBatch(PacketSocket ps, byte[][] packets) {
+        ArrayList<byte[]> remainingPackets = new ArrayList<>(Arrays.asList(packets));
+
+        byte[][] receiveBuffers = new byte[16][PACKET_SIZE];
+        while (!allPacketsReceived) {
+            int count = ps.receiveBatch(receiveBuffers, 0);
+            for (int i = 0; i < count && !allPacketsReceived; ++i) {
+                // Responses have every byte increased by one
+                for (byte[] remainingPacket : remainingPackets) {
+                    boolean found = true;
+                    for (int j = 0; j < PACKET_SIZE; ++j) {
+                        if (receiveBuffers[i][j] != (byte) (remainingPacket[j] + 1)) {
+                            found = false;
+                            break;
+                        }
+                    }
+                    if (found) {
+                        remainingPackets.remove(remainingPacket);
+                        allPacketsReceived = remainingPackets.isEmpty();
+                        break;
+                    }
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,57 @@
+package de.tu_darmstadt.adtn.sendingpooltests;
+
+import android.test.AndroidTestCase;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import de.tu_darmstadt.adtn.sendingpool.CoverTrafficGenerator;
+
+import static de.tu_darmstadt.adtn.TestUtility.toHex;
+
+/**
+ * Tests the generator of dummy packets used by the sending pool
+ */
+public class CoverTrafficGeneratorTests extends AndroidTestCase {
+
+    // Not a multiple of the ChaCha20 block size
+    private final static int PACKET_SIZE = 1500;
+    private final static int BATCH_SIZE = 10;
+
+    private CoverTrafficGenerator uut = new CoverTrafficGenerator(PACKET_SIZE);
+
+    public void testPacketsAreNeverRepeated() {
+        Set<String> packets = new HashSet<>();
+        for (int round = 0; round < 5; ++round) {
+            uut.prepare(BATCH_SIZE);
+            // Take more packets than prepared, so some are created on demand
+            for (int i = 0; i < BATCH_SIZE + 2; ++i) {
+                byte[] packet = uut.next();
+                assertEquals(PACKET_SIZE, packet.length);
+                assertTrue(packets.add(toHex(packet)));
+            }
+        }
+    }
+
+    public void testPacketsAreKeptUntilPrepare() {
+        uut.prepare(BATCH_SIZE);
+        byte[] packet = uut.next();
+        byte[] copy = Arrays.copyOf(packet, packet.length);
+        for (int i = 0; i < BATCH_SIZE; ++i) uut.next();
+        assertTrue(Arrays.equals(copy, packet));
+
+        // The buffer is reused with new content
+        uut.prepare(BATCH_SIZE);
+        assertSame(packet, uut.next());
+        assertFalse(Arrays.equals(copy, packet));
+    }
+
+    public void testPacketsLookRandom() {
+        uut.prepare(1);
+        int ones = 0;
+        for (byte b : uut.next()) ones += Integer.bitCount(b & 0xff);
+        // 12000 bits, so the number of ones is far within 6000 +/- 600
+        assertEquals(PACKET_SIZE * 4, ones, PACKET_SIZE * 4 / 10);
+    }
+}
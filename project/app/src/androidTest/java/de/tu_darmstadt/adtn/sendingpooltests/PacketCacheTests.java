@@ -0,0 +1,145 @@
+package de.tu_darmstadt.adtn.sendingpooltests;
+
+import android.test.AndroidTestCase;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.crypto.SecretKey;
+
+import de.tu_darmstadt.adtn.ProtocolConstants;
+import de.tu_darmstadt.adtn.ciphersuite.GroupCipherSuite;
+import de.tu_darmstadt.adtn.packetbuilding.IPacketBuilder;
+import de.tu_darmstadt.adtn.packetbuilding.PacketBuilder;
+import de.tu_darmstadt.adtn.sendingpool.PacketCache;
+
+import static de.tu_darmstadt.adtn.groupciphersuitetests.utils.CipherTestVectors.groupKeyList;
+
+/**
+ * Tests the cache of encrypted packets the sending pool takes the packets of messages from
+ */
+public class PacketCacheTests extends AndroidTestCase {
+
+    private final static byte[] MESSAGE = new byte[]{(byte) 'f', (byte) 'o', (byte) 'o'};
+    private final static byte[] MESSAGE_ID = new byte[]{1};
+
+    private int encryptions;
+
+    // Counts the packets it encrypts
+    private IPacketBuilder packetBuilder = new PacketBuilder(ProtocolConstants.MAX_MESSAGE_SIZE) {
+        @Override
+        public byte[][] createPackets(byte[] message, Collection<SecretKey> keys) {
+            encryptions += keys.size();
+            return super.createPackets(message, keys);
+        }
+    };
+    private SecretKey key = groupKeyList.get(0);
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        packetBuilder.setCipher(new GroupCipherSuite(packetBuilder.getUnencryptedPacketSize()));
+    }
+
+    public void testVariantsAreNeverHandedOutTwice() {
+        PacketCache uut = new PacketCache(packetBuilder, 100, 3);
+        Set<ByteBuffer> packets = new HashSet<>();
+
+        // Without preparing, every call encrypts a fresh packet and the cache keeps the last ones
+        for (int i = 0; i < 10; ++i) {
+            byte[] packet = uut.get(MESSAGE_ID, 1, MESSAGE, key);
+            assertTrue(packets.add(ByteBuffer.wrap(packet)));
+            assertTrue(Arrays.equals(MESSAGE, packetBuilder.tryUnpackPacket(packet, Collections.singletonList(key))));
+        }
+        assertEquals(10, encryptions);
+        assertEquals(3, uut.size());
+
+        // Preparing renews the variants that were handed out, which are then handed out without
+        // encrypting
+        uut.prepare(10);
+        assertEquals(13, encryptions);
+        for (int i = 0; i < 3; ++i) {
+            byte[] packet = uut.get(MESSAGE_ID, 1, MESSAGE, key);
+            assertTrue(packets.add(ByteBuffer.wrap(packet)));
+            assertTrue(Arrays.equals(MESSAGE, packetBuilder.tryUnpackPacket(packet, Collections.singletonList(key))));
+        }
+        assertEquals(13, encryptions);
+
+        // Once they are used up, a fresh one is encrypted again
+        assertTrue(packets.add(ByteBuffer.wrap(uut.get(MESSAGE_ID, 1, MESSAGE, key))));
+        assertEquals(14, encryptions);
+    }
+
+    public void testPreparingAddsMissingVariants() {
+        PacketCache uut = new PacketCache(packetBuilder, 100, 3);
+        uut.get(MESSAGE_ID, 1, MESSAGE, key);
+        assertEquals(1, uut.size());
+
+        // The variant that was handed out is renewed and two are added
+        uut.prepare(10);
+        assertEquals(3, uut.size());
+        assertEquals(4, encryptions);
+
+        // Nothing is left to prepare
+        uut.prepare(10);
+        assertEquals(4, encryptions);
+    }
+
+    public void testExpiredVariantsAreEncryptedAgain() throws InterruptedException {
+        PacketCache uut = new PacketCache(packetBuilder, 100, 3, 50);
+        uut.get(MESSAGE_ID, 1, MESSAGE, key);
+        uut.prepare(10);
+        assertEquals(4, encryptions);
+
+        // A prepared variant is handed out while it is fresh, but not after it expired
+        uut.get(MESSAGE_ID, 1, MESSAGE, key);
+        assertEquals(4, encryptions);
+        Thread.sleep(100);
+        uut.get(MESSAGE_ID, 1, MESSAGE, key);
+        assertEquals(5, encryptions);
+        assertEquals(3, uut.size());
+    }
+
+    public void testKeysAreCachedSeparately() {
+        PacketCache uut = new PacketCache(packetBuilder, 100, 1);
+        byte[] packet1 = uut.get(MESSAGE_ID, 1, MESSAGE, key);
+        byte[] packet2 = uut.get(MESSAGE_ID, 2, MESSAGE, groupKeyList.get(1));
+        assertNotSame(packet1, packet2);
+        assertEquals(2, uut.size());
+        assertTrue(Arrays.equals(MESSAGE, packetBuilder.tryUnpackPacket(packet1, Collections.singletonList(key))));
+        assertNull(packetBuilder.tryUnpackPacket(packet2, Collections.singletonList(key)));
+
+        // The renewed variants keep their keys
+        uut.prepare(2);
+        packet1 = uut.get(MESSAGE_ID, 1, MESSAGE, key);
+        packet2 = uut.get(MESSAGE_ID, 2, MESSAGE, groupKeyList.get(1));
+        assertEquals(4, encryptions);
+        assertTrue(Arrays.equals(MESSAGE, packetBuilder.tryUnpackPacket(packet1, Collections.singletonList(key))));
+        assertNull(packetBuilder.tryUnpackPacket(packet2, Collections.singletonList(key)));
+    }
+
+    public void testLeastRecentlyUsedAreEvicted() {
+        PacketCache uut = new PacketCache(packetBuilder, 2, 1);
+        uut.get(new byte[]{1}, 1, MESSAGE, key);
+        uut.get(new byte[]{2}, 1, MESSAGE, key);
+        uut.get(new byte[]{1}, 1, MESSAGE, key);
+        assertEquals(3, encryptions);
+
+        // The third message exceeds the budget, so the second one is evicted and not renewed
+        uut.get(new byte[]{3}, 1, MESSAGE, key);
+        assertEquals(2, uut.size());
+        uut.prepare(10);
+        assertEquals(6, encryptions);
+
+        // Only the evicted message has to be encrypted again
+        uut.get(new byte[]{1}, 1, MESSAGE, key);
+        uut.get(new byte[]{3}, 1, MESSAGE, key);
+        assertEquals(6, encryptions);
+        uut.get(new byte[]{2}, 1, MESSAGE, key);
+        assertEquals(7, encryptions);
+    }
+}
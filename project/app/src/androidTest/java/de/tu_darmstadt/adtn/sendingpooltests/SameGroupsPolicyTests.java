@@ -0,0 +1,44 @@
+package de.tu_darmstadt.adtn.sendingpooltests;
+
+import android.test.AndroidTestCase;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import de.tu_darmstadt.adtn.messagestore.Message;
+import de.tu_darmstadt.adtn.sendingpool.SameGroupsPolicy;
+
+/**
+ * Tests that messages are only encrypted for the groups they belong to
+ */
+public class SameGroupsPolicyTests extends AndroidTestCase {
+
+    private SameGroupsPolicy uut = new SameGroupsPolicy();
+    private Map<Long, SecretKey> keys = new LinkedHashMap<>();
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        for (long id = 1; id <= 3; ++id) keys.put(id, new SecretKeySpec(new byte[]{(byte) id}, "test"));
+    }
+
+    public void testOnlyOwnGroupsAreSelected() {
+        Collection<SecretKey> selected = uut.selectKeys(new Message(new byte[1], new byte[1], new long[]{3, 1}), keys);
+        assertEquals(2, selected.size());
+        assertTrue(selected.contains(keys.get(1L)) && selected.contains(keys.get(3L)));
+    }
+
+    public void testUnavailableGroupsAreSkipped() {
+        assertTrue(uut.selectKeys(new Message(new byte[1], new byte[1], new long[]{4}), keys).isEmpty());
+    }
+
+    public void testMessagesWithoutGroupsGoToEveryGroup() {
+        Collection<SecretKey> selected = uut.selectKeys(new Message(new byte[1], new byte[1], new long[0]), keys);
+        assertEquals(new ArrayList<>(keys.values()), new ArrayList<>(selected));
+    }
+}
@@ -0,0 +1,66 @@
+package de.tu_darmstadt.adtn.sendingpooltests;
+
+import android.test.AndroidTestCase;
+
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import de.tu_darmstadt.adtn.sendingpool.SendingPoolEntry;
+import de.tu_darmstadt.adtn.sendingpool.ShufflePool;
+
+/**
+ * Tests the pool the sending pool takes its packets from in random order
+ */
+public class ShufflePoolTests extends AndroidTestCase {
+
+    private final static int POOL_SIZE = 1000;
+
+    private ShufflePool uut = new ShufflePool(10, new Random());
+
+    public void testEveryPacketIsTakenOnce() {
+        Map<byte[], byte[]> added = new IdentityHashMap<>();
+        for (int i = 0; i < POOL_SIZE; ++i) {
+            byte[] packet = new byte[1], messageID = i % 2 == 0 ? new byte[1] : null;
+            added.put(packet, messageID);
+            uut.add(packet, messageID);
+        }
+        assertEquals(POOL_SIZE, uut.size());
+
+        while (!uut.isEmpty()) {
+            SendingPoolEntry entry = uut.takeRandom();
+            assertTrue(added.containsKey(entry.getPacket()));
+            assertSame(added.remove(entry.getPacket()), entry.getMessageID());
+        }
+        assertTrue(added.isEmpty());
+
+        try {
+            uut.takeRandom();
+            fail();
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+    }
+
+    public void testEntriesAreReused() {
+        uut.ensureCapacity(POOL_SIZE);
+        Set<SendingPoolEntry> entries = new HashSet<>();
+        for (int round = 0; round < 3; ++round) {
+            for (int i = 0; i < POOL_SIZE; ++i) uut.add(new byte[1], null);
+            while (!uut.isEmpty()) entries.add(uut.takeRandom());
+        }
+        assertEquals(POOL_SIZE, entries.size());
+    }
+
+    public void testOrderIsRandom() {
+        // Packets added first are not taken first
+        int firstHalfTakenFirst = 0;
+        for (int i = 0; i < POOL_SIZE; ++i) uut.add(new byte[]{(byte) (i < POOL_SIZE / 2 ? 0 : 1)}, null);
+        for (int i = 0; i < POOL_SIZE / 2; ++i) {
+            if (uut.takeRandom().getPacket()[0] == 0) ++firstHalfTakenFirst;
+        }
+        assertEquals(POOL_SIZE / 4, firstHalfTakenFirst, POOL_SIZE / 10);
+    }
+}
@@ -0,0 +1,53 @@
+package de.tu_darmstadt.adtn.sendingpooltests;
+
+import android.test.AndroidTestCase;
+
+import de.tu_darmstadt.adtn.sendingpool.SpscQueue;
+
+/**
+ * Tests the queue the threads of the sending pool hand the batches over with
+ */
+public class SpscQueueTests extends AndroidTestCase {
+
+    public void testCapacityAndOrder() {
+        SpscQueue<Integer> uut = new SpscQueue<>(3);
+        assertEquals(4, uut.capacity());
+        assertNull(uut.poll());
+
+        // Wraps around several times
+        for (int round = 0; round < 3; ++round) {
+            for (int i = 0; i < 4; ++i) assertTrue(uut.offer(i));
+            assertFalse(uut.offer(4));
+            for (int i = 0; i < 4; ++i) assertEquals(Integer.valueOf(i), uut.poll());
+            assertNull(uut.poll());
+        }
+    }
+
+    public void testHandOverBetweenThreads() throws InterruptedException {
+        final int count = 100000;
+        final SpscQueue<Integer> uut = new SpscQueue<>(8);
+
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < count; ) {
+                    if (uut.offer(i)) ++i;
+                    else Thread.yield();
+                }
+            }
+        });
+        producer.start();
+
+        // Every element arrives exactly once and in order
+        for (int expected = 0; expected < count; ) {
+            Integer element = uut.poll();
+            if (element == null) {
+                Thread.yield();
+                continue;
+            }
+            assertEquals(expected++, element.intValue());
+        }
+        producer.join();
+        assertNull(uut.poll());
+    }
+}
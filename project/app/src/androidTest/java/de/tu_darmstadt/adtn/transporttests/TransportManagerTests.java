@@ -0,0 +1,147 @@
+package de.tu_darmstadt.adtn.transporttests;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import de.tu_darmstadt.adtn.AdtnSocketException;
+import de.tu_darmstadt.adtn.ISocket;
+import de.tu_darmstadt.adtn.SocketStatistics;
+import de.tu_darmstadt.adtn.mocks.SocketMock;
+import de.tu_darmstadt.adtn.transport.InterfaceStatistics;
+import de.tu_darmstadt.adtn.transport.TransportManager;
+
+/**
+ * Tests fanning out sent packets over several interfaces and the throughput counters
+ */
+public class TransportManagerTests extends AndroidTestCase {
+
+    private final static int PACKET_SIZE = 100;
+
+    private SocketMock wlan, usbSend, usbReceive;
+    private TransportManager uut;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        wlan = new SocketMock();
+        usbSend = new SocketMock();
+        usbReceive = new SocketMock();
+        uut = new TransportManager(new String[]{"wlan0", "usb0"},
+                new ISocket[][]{{wlan}, {usbSend, usbReceive}});
+    }
+
+    @SmallTest
+    public void testSendOnEveryInterface() {
+        uut.sendBatch(new byte[3][PACKET_SIZE], 0, 3);
+        uut.send(new byte[PACKET_SIZE], 0);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(PACKET_SIZE);
+        uut.send(buffer);
+        assertEquals(buffer.limit(), buffer.position());
+
+        // Only the first socket of an interface sends
+        assertTrue(wlan.isSendInvoked());
+        assertTrue(usbSend.isSendInvoked());
+        assertFalse(usbReceive.isSendInvoked());
+
+        InterfaceStatistics[] statistics = uut.getInterfaceStatistics();
+        assertEquals(2, statistics.length);
+        for (InterfaceStatistics interfaceStatistics : statistics) {
+            assertEquals(5, interfaceStatistics.getPacketsSent());
+            assertEquals(0, interfaceStatistics.getSendErrors());
+        }
+    }
+
+    @SmallTest
+    public void testSendErrors() {
+        ISocket failing = new SocketMock() {
+            @Override
+            public void sendBatch(byte[][] buffers, int offset, int count) {
+                throw new AdtnSocketException("Interface is down", null);
+            }
+        };
+
+        // Sending succeeds as long as one interface works
+        uut = new TransportManager(new String[]{"wlan0", "usb0"}, new ISocket[][]{{wlan}, {failing}});
+        uut.sendBatch(new byte[2][PACKET_SIZE], 0, 2);
+        InterfaceStatistics[] statistics = uut.getInterfaceStatistics();
+        assertEquals(2, statistics[0].getPacketsSent());
+        assertEquals(0, statistics[1].getPacketsSent());
+        assertEquals(1, statistics[1].getSendErrors());
+
+        // Fails if no interface works
+        uut = new TransportManager(new String[]{"usb0"}, new ISocket[][]{{failing}});
+        try {
+            uut.sendBatch(new byte[2][PACKET_SIZE], 0, 2);
+            fail();
+        } catch (AdtnSocketException e) {
+            assertEquals("Interface is down", e.getMessage());
+        }
+    }
+
+    @SmallTest
+    public void testReceiveSockets() {
+        // All sockets of all interfaces are received from
+        ISocket[] receiveSockets = uut.getReceiveSockets();
+        assertEquals(3, receiveSockets.length);
+        for (ISocket socket : receiveSockets) socket.receive();
+        assertTrue(wlan.isReceiveInvoked() && usbSend.isReceiveInvoked() && usbReceive.isReceiveInvoked());
+        receiveSockets[2].receiveBatch(new byte[1][PACKET_SIZE], 0);
+
+        InterfaceStatistics[] statistics = uut.getInterfaceStatistics();
+        assertEquals("wlan0", statistics[0].getInterfaceName());
+        assertEquals(1, statistics[0].getPacketsReceived());
+        assertEquals("usb0", statistics[1].getInterfaceName());
+        assertEquals(3, statistics[1].getPacketsReceived());
+
+        // Closing closes every socket
+        uut.close();
+        assertTrue(wlan.isCloseInvoked() && usbSend.isCloseInvoked() && usbReceive.isCloseInvoked());
+    }
+
+    @SmallTest
+    public void testSocketStatisticsAreAddedUp() {
+        ISocket dropping = new SocketMock() {
+            @Override
+            public SocketStatistics getStatistics() {
+                return new SocketStatistics(10, 4, 2, 1);
+            }
+        };
+        uut = new TransportManager(new String[]{"wlan0", "usb0"},
+                new ISocket[][]{{dropping, dropping}, {dropping, wlan}});
+
+        InterfaceStatistics[] statistics = uut.getInterfaceStatistics();
+        assertEquals(8, statistics[0].getPacketsDropped());
+        assertEquals(2, statistics[0].getPacketsNotSent());
+        assertEquals(4, statistics[1].getPacketsDropped());
+        assertEquals(1, statistics[1].getPacketsNotSent());
+
+        SocketStatistics total = uut.getStatistics();
+        assertEquals(30, total.getPacketsReceived());
+        assertEquals(12, total.getPacketsDropped());
+        assertEquals(6, total.getSendRetries());
+        assertEquals(3, total.getPacketsNotSent());
+    }
+
+    @SmallTest
+    public void testOnlySendsWhatWasPassed() {
+        final byte[][] sent = new byte[1][];
+        ISocket recording = new SocketMock() {
+            @Override
+            public void send(ByteBuffer buffer) {
+                sent[0] = new byte[buffer.remaining()];
+                buffer.get(sent[0]);
+            }
+        };
+        uut = new TransportManager(new String[]{"wlan0", "usb0"}, new ISocket[][]{{recording}, {wlan}});
+
+        // Every interface gets the whole remaining data
+        ByteBuffer buffer = ByteBuffer.wrap(new byte[]{1, 2, 3, 4});
+        buffer.position(1);
+        uut.send(buffer);
+        assertTrue(Arrays.equals(new byte[]{2, 3, 4}, sent[0]));
+        assertTrue(wlan.isSendInvoked());
+    }
+}
@@ -0,0 +1,92 @@
+package de.tu_darmstadt.adtn.udpsockettests;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.MediumTest;
+
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import de.tu_darmstadt.adtn.AdtnSocketTimeoutException;
+import de.tu_darmstadt.adtn.udpsocket.UdpSocket;
+
+/**
+ * Tests exchanging packets between two nodes on the loopback interface
+ */
+public class UdpSocketTests extends AndroidTestCase {
+
+    private final static String IFACE = "lo";
+    private final static int PORT = 41234, PACKET_SIZE = 1500;
+
+    private UdpSocket node1, node2;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        node1 = createNode();
+        node2 = createNode();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        node1.close();
+        node2.close();
+        super.tearDown();
+    }
+
+    private UdpSocket createNode() throws Exception {
+        UdpSocket node = new UdpSocket(IFACE, InetAddress.getByName(UdpSocket.DEFAULT_GROUP), PORT, PACKET_SIZE);
+        node.setReceiveTimeout(1000);
+        return node;
+    }
+
+    @MediumTest
+    public void testExchangePackets() {
+        byte[][] packets = new byte[3][PACKET_SIZE];
+        for (int i = 0; i < packets.length; ++i) Arrays.fill(packets[i], (byte) i);
+        node1.sendBatch(packets, 0, 2);
+        node1.send(ByteBuffer.wrap(packets[2]));
+
+        // The other node receives the packets in order
+        byte[] received = new byte[PACKET_SIZE];
+        node2.receive(received, 0);
+        assertTrue(Arrays.equals(packets[0], received));
+        node2.receive(received, 0);
+        assertTrue(Arrays.equals(packets[1], received));
+        ByteBuffer packet = node2.receive();
+        assertEquals(PACKET_SIZE, packet.remaining());
+        packet.get(received);
+        assertTrue(Arrays.equals(packets[2], received));
+
+        // The sending node does not receive its own packets
+        try {
+            node1.receive();
+            fail();
+        } catch (AdtnSocketTimeoutException e) {
+            // Expected
+        }
+    }
+
+    @MediumTest
+    public void testDatagramsWithWrongSizeAreSkipped() throws Exception {
+        MulticastSocket other = new MulticastSocket();
+        other.setNetworkInterface(NetworkInterface.getByName(IFACE));
+        other.send(new DatagramPacket(new byte[PACKET_SIZE + 1], PACKET_SIZE + 1, node1.getGroup(), PORT));
+        other.send(new DatagramPacket(new byte[100], 100, node1.getGroup(), PORT));
+        other.close();
+
+        byte[] packet = new byte[PACKET_SIZE];
+        Arrays.fill(packet, (byte) 7);
+        node2.send(packet, 0);
+        assertEquals(PACKET_SIZE, node1.receive().remaining());
+        try {
+            node1.receive();
+            fail();
+        } catch (AdtnSocketTimeoutException e) {
+            // Expected
+        }
+    }
+}
@@ -1,11 +1,13 @@
 package de.tu_darmstadt.adtn.ui.groupmanagertests;
 
+import java.nio.ByteBuffer;
 import java.util.Collection;
 
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
 
 import de.tu_darmstadt.adtn.ciphersuite.IGroupCipher;
+import de.tu_darmstadt.adtn.ciphersuite.Utils.IGroupKeyContext;
 
 public class GroupCipherMock implements IGroupCipher {
 
@@ -33,6 +35,26 @@ public class GroupCipherMock implements IGroupCipher {
         return new byte[0];
     }
 
+    @Override
+    public IGroupKeyContext createKeyContext(SecretKey key) {
+        return null;
+    }
+
+    @Override
+    public byte[] tryDecrypt(byte[] ciphertext, IGroupKeyContext[] keyContexts) {
+        return new byte[0];
+    }
+
+    @Override
+    public IGroupKeyContext tryDecryptInto(byte[] ciphertext, IGroupKeyContext[] keyContexts, byte[] buffer, int offset) {
+        return null;
+    }
+
+    @Override
+    public IGroupKeyContext tryDecryptInto(ByteBuffer ciphertext, IGroupKeyContext[] keyContexts, byte[] buffer, int offset) {
+        return null;
+    }
+
     @Override
     public SecretKey byteArrayToSecretKey(byte[] keybytes) {
         return new SecretKeySpec(keybytes, ALGORITHM);
@@ -0,0 +1,16 @@
+package de.tu_darmstadt.adtn;
+
+/**
+ * Exception class for receive calls of ISocket implementations that timed out.
+ */
+public class AdtnSocketTimeoutException extends AdtnSocketException {
+
+    /**
+     * Creates a new AdtnSocketTimeoutException object.
+     *
+     * @param detailMessage A description of the timeout.
+     */
+    public AdtnSocketTimeoutException(String detailMessage) {
+        super(detailMessage, null);
+    }
+}
@@ -0,0 +1,48 @@
+package de.tu_darmstadt.adtn;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A socket for sending data.
+ */
+public interface ISendSocket {
+
+    /**
+     * Sends data. The data is copied before the method returns, so the buffer can be reused.
+     *
+     * @param buffer The buffer containing the data to be sent.
+     * @param offset The offset in buffer.
+     */
+    void send(byte[] buffer, int offset);
+
+    /**
+     * Sends the remaining data of a buffer, which may be a direct buffer. The data is copied
+     * before the method returns and the position of the buffer is advanced to its limit.
+     *
+     * @param buffer The buffer containing the data to be sent between its position and limit.
+     */
+    void send(ByteBuffer buffer);
+
+    /**
+     * Sends several packets at once. The data is copied before the method returns, so the buffers
+     * can be reused.
+     *
+     * @param buffers The buffers containing the data to be sent, one packet per buffer.
+     * @param offset  The offset in every buffer.
+     * @param count   The number of packets to send from the first buffers.
+     */
+    void sendBatch(byte[][] buffers, int offset, int count);
+
+    /**
+     * Returns the counters of the socket since it was opened. Counters the socket cannot
+     * determine are 0.
+     *
+     * @return The current counters.
+     */
+    SocketStatistics getStatistics();
+
+    /**
+     * Closes the socket.
+     */
+    void close();
+}
@@ -4,6 +4,7 @@ import de.tu_darmstadt.adtn.ciphersuite.IGroupCipher;
 import de.tu_darmstadt.adtn.groupkeyshareexpirationmanager.IGroupKeyShareExpirationManager;
 import de.tu_darmstadt.adtn.groupkeystore.IGroupKeyStore;
 import de.tu_darmstadt.adtn.preferences.IPreferences;
+import de.tu_darmstadt.adtn.transport.InterfaceStatistics;
 
 /**
  * The aDTN service.
@@ -29,6 +30,12 @@ public interface IService {
      */
     NetworkingStatus getNetworkingStatus();
 
+    /**
+     * @return The throughput counters of the network interfaces in use. Empty if networking is
+     * not enabled.
+     */
+    InterfaceStatistics[] getInterfaceStatistics();
+
     /**
      * Puts a message in the sending pool so it will be sent when networking is available.
      *
@@ -74,6 +81,16 @@ public interface IService {
      */
     void createGroupKeyStore(String password);
 
+    /**
+     * Like {@link #createGroupKeyStore(String)}, but also selects the group cipher suite to use
+     * for the keys of the new key store and for all packets.
+     *
+     * @param password         The password for the new key store.
+     * @param groupCipherSuite The name of the group cipher suite as defined in
+     *                         {@link de.tu_darmstadt.adtn.ciphersuite.GroupCipherFactory}.
+     */
+    void createGroupKeyStore(String password, String groupCipherSuite);
+
     /**
      * @return true if the key store exists or false otherwise.
      */
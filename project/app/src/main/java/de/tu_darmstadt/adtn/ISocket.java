@@ -1,9 +1,11 @@
 package de.tu_darmstadt.adtn;
 
+import java.nio.ByteBuffer;
+
 /**
  * A socket for sending and receiving data.
  */
-public interface ISocket {
+public interface ISocket extends ISendSocket {
 
     /**
      * Receives data from the socket.
@@ -14,13 +16,29 @@ public interface ISocket {
     void receive(byte[] buffer, int offset);
 
     /**
-     * @param buffer The buffer containing the data to be sent.
-     * @param offset The offset in buffer.
+     * Receives data from the socket without copying it to the Java heap. Works with direct
+     * buffers, so the data can be decrypted straight from the memory the socket received it in.
+     *
+     * @return A read-only buffer whose position and limit enclose the received data. It is only
+     * valid until the next receive call on this socket.
+     */
+    ByteBuffer receive();
+
+    /**
+     * Receives several packets at once. Blocks until at least one packet arrived and then also
+     * returns the packets that are already waiting.
+     *
+     * @param buffers The buffers to put the received data in, one packet per buffer.
+     * @param offset  The offset in every buffer.
+     * @return The number of packets received, which were put in the first buffers.
      */
-    void send(byte[] buffer, int offset);
+    int receiveBatch(byte[][] buffers, int offset);
 
     /**
-     * Closes the socket.
+     * Sets the timeout of the receive methods. If no packet arrives in time, they throw an
+     * {@link AdtnSocketTimeoutException}.
+     *
+     * @param timeout The timeout in milliseconds or -1 to wait forever, which is the default.
      */
-    void close();
+    void setReceiveTimeout(int timeout);
 }
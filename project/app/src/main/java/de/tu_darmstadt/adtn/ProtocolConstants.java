@@ -8,4 +8,14 @@ public class ProtocolConstants {
     public final static int MESSAGE_HEADER_SIZE = 1;
     public final static int MAX_MESSAGE_CONTENT_SIZE = 1453;
     public final static int MAX_MESSAGE_SIZE = MESSAGE_HEADER_SIZE + MAX_MESSAGE_CONTENT_SIZE;
+
+    // EtherType of aDTN packets. The privileged helper only creates packet sockets for it.
+    public final static int ETHER_TYPE = 0xD948;
+
+    // Whether packets carry key hint tags. Changes the packet format, so all nodes must agree.
+    public final static boolean USE_KEY_HINTS = false;
+
+    // Whether ChaCha and Poly1305-AES use the native implementations if the library is available.
+    // Does not change the packet format.
+    public final static boolean USE_NATIVE_CRYPTO = true;
 }
@@ -5,11 +5,14 @@ import android.os.Binder;
 import android.os.IBinder;
 import android.support.v4.content.LocalBroadcastManager;
 
+import java.nio.ByteBuffer;
 import java.security.UnrecoverableKeyException;
 import java.util.Arrays;
+import java.util.Set;
 
-import de.tu_darmstadt.adtn.ciphersuite.GroupCipherSuite;
+import de.tu_darmstadt.adtn.ciphersuite.GroupCipherFactory;
 import de.tu_darmstadt.adtn.ciphersuite.IGroupCipher;
+import de.tu_darmstadt.adtn.ciphersuite.Utils.IGroupKeyContext;
 import de.tu_darmstadt.adtn.errorlogger.ErrorLoggingSingleton;
 import de.tu_darmstadt.adtn.groupkeyshareexpirationmanager.GroupKeyShareExpirationManager;
 import de.tu_darmstadt.adtn.groupkeyshareexpirationmanager.IGroupKeyShareExpirationManager;
@@ -19,11 +22,14 @@ import de.tu_darmstadt.adtn.messagestore.IMessageStore;
 import de.tu_darmstadt.adtn.messagestore.MessageStore;
 import de.tu_darmstadt.adtn.packetbuilding.IPacketBuilder;
 import de.tu_darmstadt.adtn.packetbuilding.PacketBuilder;
-import de.tu_darmstadt.adtn.packetsocket.PacketSocket;
+import de.tu_darmstadt.adtn.packetsocket.PrivilegedHelper;
 import de.tu_darmstadt.adtn.preferences.IPreferences;
 import de.tu_darmstadt.adtn.preferences.Preferences;
 import de.tu_darmstadt.adtn.sendingpool.ISendingPool;
 import de.tu_darmstadt.adtn.sendingpool.SendingPool;
+import de.tu_darmstadt.adtn.transport.ITransportManager;
+import de.tu_darmstadt.adtn.transport.InterfaceStatistics;
+import de.tu_darmstadt.adtn.transport.TransportManager;
 import de.tu_darmstadt.adtn.ui.NetworkingStatusNotification;
 import de.tu_darmstadt.adtn.wifi.IbssNetwork;
 import de.tu_darmstadt.adtn.wifi.MacSpoofing;
@@ -61,15 +67,18 @@ public class Service extends android.app.Service implements IService {
     private IPreferences preferences;
 
     // Sending and receiving
+    private final static long MESSAGE_STORE_WRITE_BEHIND_WINDOW = 30000; // 30 seconds
     private IMessageStore messageStore;
     private IPacketBuilder packetBuilder;
-    private ISocket socket;
+    private volatile ITransportManager transport;
     private ISendingPool sendingPool;
-    private Thread receiveThread;
     private volatile boolean stopReceiving;
 
+    // Receiving: one thread per receive socket of the transport manager
+    private Thread[] receiveThreads;
+
     // Encryption
-    private IGroupCipher groupCipher;
+    private volatile IGroupCipher groupCipher;
 
     // Key store
     private final static String GROUP_KEY_STORE_FILENAME = "network_group_keys";
@@ -106,14 +115,14 @@ public class Service extends android.app.Service implements IService {
 
         // Initialize group cipher, packet builder and broadcast manager
         packetBuilder = new PacketBuilder(ProtocolConstants.MAX_MESSAGE_SIZE);
-        groupCipher = new GroupCipherSuite(packetBuilder.getUnencryptedPacketSize());
-        packetBuilder.setCipher(groupCipher);
+        createGroupCipher();
         broadcastManager = LocalBroadcastManager.getInstance(this);
 
         /* Initialize message store even without networking enabled, so messages to send will be
          * collected and get sent as soon as networking is enabled.
          */
         messageStore = new MessageStore(this);
+        messageStore.setWriteBehindWindow(MESSAGE_STORE_WRITE_BEHIND_WINDOW);
 
         // Create group key share expiration manager
         expirationManager = new GroupKeyShareExpirationManager(this, GROUP_KEY_SHARE_EXPIRATION_INTERVAL);
@@ -147,7 +156,7 @@ public class Service extends android.app.Service implements IService {
             }
 
             // Try to spoof MAC address
-            MacSpoofing.trySetRandomMac();
+            MacSpoofing.trySetRandomMac(this);
 
             // Keep running in background
             startService(new Intent(this, Service.class));
@@ -166,12 +175,13 @@ public class Service extends android.app.Service implements IService {
                 }
             });
 
-            // Create socket, message store and sending pool
-            socket = new PacketSocket(this, "wlan0", 0xD948,
+            // Open the network interfaces and create the sending pool
+            transport = TransportManager.open(this, preferences.getNetworkInterfaces().trim().split("\\s*,\\s*"), ProtocolConstants.ETHER_TYPE,
                     new byte[]{(byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff},
                     new byte[]{(byte) 0x00, (byte) 0x41, (byte) 0xAC, (byte) 0xC2, (byte) 0x96, (byte) 0xC6},
-                    packetBuilder.getEncryptedPacketSize());
-            sendingPool = new SendingPool(preferences, socket, messageStore, packetBuilder,
+                    packetBuilder.getEncryptedPacketSize(), preferences.getSocketReceiveBufferSize(),
+                    preferences.getSocketSendBufferSize());
+            sendingPool = new SendingPool(preferences, transport, messageStore, packetBuilder,
                     groupKeyStore, new ISendingPool.OnSendingErrorListener() {
                 @Override
                 public void onSendingError(AdtnSocketException e) {
@@ -181,13 +191,18 @@ public class Service extends android.app.Service implements IService {
 
             // Start receiving
             stopReceiving = false;
-            receiveThread = new Thread(new Runnable() {
-                @Override
-                public void run() {
-                    receiveMessages();
-                }
-            });
-            receiveThread.start();
+            ISocket[] receiveSockets = transport.getReceiveSockets();
+            receiveThreads = new Thread[receiveSockets.length];
+            for (int i = 0; i < receiveSockets.length; ++i) {
+                final ISocket receiveSocket = receiveSockets[i];
+                receiveThreads[i] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        receiveMessages(receiveSocket);
+                    }
+                });
+                receiveThreads[i].start();
+            }
 
             setNetworkingStatus(true, null);
         }
@@ -245,8 +260,9 @@ public class Service extends android.app.Service implements IService {
                     // Stop sending and receiving
                     sendingPool.close();
                     stopReceiving = true;
-                    socket.close();
-                    joinReceiveThread();
+                    transport.close();
+                    joinReceiveThreads();
+                    transport = null;
 
                     // Stop ad-hoc auto-connect
                     ibssNetwork.stop();
@@ -255,7 +271,10 @@ public class Service extends android.app.Service implements IService {
                     stopSelf();
 
                     // Disable MAC spoofing
-                    MacSpoofing.tryDisable();
+                    MacSpoofing.tryDisable(Service.this);
+
+                    // Stop the root helper, the next privileged operation starts it again
+                    PrivilegedHelper.getInstance(Service.this).stop();
 
                     setNetworkingStatus(false, errorMessage);
                 }
@@ -270,6 +289,16 @@ public class Service extends android.app.Service implements IService {
         }
     }
 
+    /**
+     * @return The throughput counters of the network interfaces in use. Empty if networking is
+     * not enabled.
+     */
+    @Override
+    public InterfaceStatistics[] getInterfaceStatistics() {
+        ITransportManager currentTransport = transport;
+        return currentTransport == null ? new InterfaceStatistics[0] : currentTransport.getInterfaceStatistics();
+    }
+
     /**
      * Puts a message in the sending pool so it will be sent when networking is available.
      *
@@ -282,22 +311,36 @@ public class Service extends android.app.Service implements IService {
             throw new RuntimeException("Content size exceeds maximum allowed size");
         }
 
-        // Merge header and content and put them in the message store
+        // Merge header and content
         byte[] message = new byte[ProtocolConstants.MESSAGE_HEADER_SIZE + content.length];
         message[0] = header;
         System.arraycopy(content, 0, message, 1, content.length);
-        messageStore.addMessage(message);
+
+        // Put the message in the store under all groups we are currently member of
+        long[] groupKeyIds = new long[0];
+        IGroupKeyStore keyStore = getGroupKeyStore();
+        if (keyStore != null) {
+            Set<Long> ids = keyStore.getKeysById().keySet();
+            groupKeyIds = new long[ids.size()];
+            int i = 0;
+            for (long id : ids) groupKeyIds[i++] = id;
+        }
+        messageStore.addMessage(message, groupKeyIds);
     }
 
     /* Thread function to continuously receive messages, put them in the message store and send
      * a broadcast intent to inform about the message arrival */
-    private void receiveMessages() {
-        byte[] receiveBuffer = new byte[packetBuilder.getEncryptedPacketSize()];
+    private void receiveMessages(ISocket receiveSocket) {
+        // The message buffer is reused and packets are decrypted straight from the memory the
+        // socket received them in, so frames that cannot be decrypted do not allocate anything
+        byte[] messageBuffer = new byte[packetBuilder.getUnencryptedPacketSize()];
+        int[] length = new int[1];
 
         while (true) {
-            // Received encrypted packet
+            // Receive encrypted packet
+            ByteBuffer packet;
             try {
-                socket.receive(receiveBuffer, 0);
+                packet = receiveSocket.receive();
             } catch (AdtnSocketException e) {
                 // receive() fails if networking is stopping or if an actual error occurred
                 if (!stopReceiving) {
@@ -307,29 +350,36 @@ public class Service extends android.app.Service implements IService {
             }
 
             // Try to decrypt. Skip if not possible.
-            byte[] unpacked = packetBuilder.tryUnpackPacket(receiveBuffer, groupKeyStore.getKeys());
-            if (unpacked == null) continue;
+            IGroupKeyContext match = packetBuilder.tryUnpackPacketInto(packet,
+                    groupKeyStore.getKeyContexts(), messageBuffer, 0, length);
+            if (match == null) continue;
+
+            // Skip if the group of the key was just removed from the key store
+            long groupKeyId = groupKeyStore.getKeyId(match);
+            if (groupKeyId == 0) continue;
 
             // Ignore if already received
-            if (messageStore.receivedMessage(unpacked)) continue;
+            if (messageStore.receivedMessage(Arrays.copyOf(messageBuffer, length[0]), groupKeyId)) continue;
 
             // Notify of message arrival via broadcast intent
             Intent intent = new Intent(ACTION_HANDLE_RECEIVED_MESSAGE);
-            intent.putExtra(INTENT_ARG_HEADER, unpacked[0]);
-            intent.putExtra(INTENT_ARG_CONTENT, Arrays.copyOfRange(unpacked, 1, unpacked.length));
+            intent.putExtra(INTENT_ARG_HEADER, messageBuffer[0]);
+            intent.putExtra(INTENT_ARG_CONTENT, Arrays.copyOfRange(messageBuffer, 1, length[0]));
             broadcastManager.sendBroadcast(intent);
         }
     }
 
-    // Blocks until the receive thread stopped
-    private void joinReceiveThread() {
+    // Blocks until the receive threads stopped
+    private void joinReceiveThreads() {
         boolean currentThreadWasInterrupted = false;
-        while (true) {
-            try {
-                receiveThread.join();
-                break;
-            } catch (InterruptedException e) {
-                currentThreadWasInterrupted = true;
+        for (Thread receiveThread : receiveThreads) {
+            while (true) {
+                try {
+                    receiveThread.join();
+                    break;
+                } catch (InterruptedException e) {
+                    currentThreadWasInterrupted = true;
+                }
             }
         }
         if (currentThreadWasInterrupted) Thread.currentThread().interrupt();
@@ -399,11 +449,32 @@ public class Service extends android.app.Service implements IService {
      */
     @Override
     public void createGroupKeyStore(String password) {
+        createGroupKeyStore(password, preferences.getGroupCipherSuite());
+    }
+
+    /**
+     * Like {@link #createGroupKeyStore(String)}, but also selects the group cipher suite to use
+     * for the keys of the new key store and for all packets.
+     *
+     * @param password         The password for the new key store.
+     * @param groupCipherSuite The name of the group cipher suite as defined in
+     *                         {@link GroupCipherFactory}.
+     */
+    @Override
+    public void createGroupKeyStore(String password, String groupCipherSuite) {
         try {
             synchronized (groupKeyStoreLock) {
                 // Do nothing if already loaded
                 if (groupKeyStore != null) return;
 
+                // Keys of different suites are incompatible, so the suite is bound to the store
+                if (!groupCipherSuite.equals(preferences.getGroupCipherSuite())) {
+                    preferences.edit();
+                    preferences.setGroupCipherSuite(groupCipherSuite);
+                    preferences.commit();
+                    createGroupCipher();
+                }
+
                 groupKeyStore = new GroupKeyStore(this, groupCipher, GROUP_KEY_STORE_FILENAME, password, true);
             }
         } catch (UnrecoverableKeyException e) {
@@ -413,6 +484,14 @@ public class Service extends android.app.Service implements IService {
         }
     }
 
+    // Creates the group cipher selected in the preferences and sets it for the packet builder
+    private void createGroupCipher() {
+        groupCipher = GroupCipherFactory.createGroupCipher(preferences.getGroupCipherSuite(),
+                packetBuilder.getUnencryptedPacketSize(), ProtocolConstants.USE_KEY_HINTS,
+                preferences.getParallelKeySearchThreshold());
+        packetBuilder.setCipher(groupCipher);
+    }
+
     /**
      * @return true if the key store exists or false otherwise.
      */
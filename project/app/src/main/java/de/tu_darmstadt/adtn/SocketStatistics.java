@@ -0,0 +1,75 @@
+package de.tu_darmstadt.adtn;
+
+/**
+ * Counters of an ISocket, used to find out if packets are lost before the receiving thread sees
+ * them or because sending is too fast for the network interface.
+ */
+public class SocketStatistics {
+
+    private final long packetsReceived, packetsDropped, sendRetries, packetsNotSent;
+
+    /**
+     * Creates a new SocketStatistics object.
+     *
+     * @param packetsReceived The number of packets that arrived at the socket, including the
+     *                        dropped ones.
+     * @param packetsDropped  The number of packets dropped because the receive buffer was full.
+     * @param sendRetries     The number of times sending had to wait because the send queue of
+     *                        the socket or the network interface was full.
+     * @param packetsNotSent  The number of packets that were given up because the network
+     *                        interface did not accept them in time.
+     */
+    public SocketStatistics(long packetsReceived, long packetsDropped, long sendRetries, long packetsNotSent) {
+        this.packetsReceived = packetsReceived;
+        this.packetsDropped = packetsDropped;
+        this.sendRetries = sendRetries;
+        this.packetsNotSent = packetsNotSent;
+    }
+
+    /**
+     * @return The number of packets that arrived at the socket, including the dropped ones.
+     */
+    public long getPacketsReceived() {
+        return packetsReceived;
+    }
+
+    /**
+     * @return The number of packets dropped because the receive buffer was full.
+     */
+    public long getPacketsDropped() {
+        return packetsDropped;
+    }
+
+    /**
+     * @return The number of times sending had to wait because the send queue of the socket or the
+     * network interface was full.
+     */
+    public long getSendRetries() {
+        return sendRetries;
+    }
+
+    /**
+     * @return The number of packets that were given up because the network interface did not
+     * accept them in time.
+     */
+    public long getPacketsNotSent() {
+        return packetsNotSent;
+    }
+
+    /**
+     * Adds up the counters of several sockets.
+     *
+     * @param statistics The counters of every socket.
+     * @return The sum of the counters.
+     */
+    public static SocketStatistics sum(SocketStatistics... statistics) {
+        long received = 0, dropped = 0, retries = 0, notSent = 0;
+        for (SocketStatistics s : statistics) {
+            received += s.packetsReceived;
+            dropped += s.packetsDropped;
+            retries += s.sendRetries;
+            notSent += s.packetsNotSent;
+        }
+        return new SocketStatistics(received, dropped, retries, notSent);
+    }
+}
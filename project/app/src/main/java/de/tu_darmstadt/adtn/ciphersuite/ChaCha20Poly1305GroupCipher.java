@@ -0,0 +1,278 @@
+package de.tu_darmstadt.adtn.ciphersuite;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+
+import javax.crypto.SecretKey;
+
+import de.tu_darmstadt.adtn.ciphersuite.Utils.ChaCha20Poly1305KeyContext;
+import de.tu_darmstadt.adtn.ciphersuite.Utils.ISymmetricKeyGenerator;
+import de.tu_darmstadt.adtn.ciphersuite.Utils.IGroupKeyContext;
+import de.tu_darmstadt.adtn.ciphersuite.Utils.SymmetricKeyGenerator;
+import de.tu_darmstadt.adtn.ciphersuite.ciphers.ChaCha20;
+import de.tu_darmstadt.adtn.ciphersuite.ciphers.ChaCha20Poly1305;
+import de.tu_darmstadt.adtn.ciphersuite.ciphers.INonceGenerator;
+import de.tu_darmstadt.adtn.ciphersuite.ciphers.PublicMessageCipherFactory;
+
+/**
+ * Group cipher using the ChaCha20 and Poly1305 AEAD construction of RFC 7539. Unlike
+ * {@link GroupCipherSuite} a group key is a single 256 bit ChaCha20 key and the Poly1305 key is
+ * derived from the keystream, so there is only one key setup and no AES operation per packet.
+ * Packet format: [key hint tag] | tag | nonce (12 bytes) | payload. Thread-safe: every thread uses
+ * its own AEAD and key hint state.
+ */
+public class ChaCha20Poly1305GroupCipher implements IGroupCipher {
+
+    private final static String KEY_ALGORITHM = "ChaCha";
+    private final static int KEY_SIZE = ChaCha20Poly1305.KEY_SIZE * 8;
+
+    private final int plainSize, cipherSize;
+    private final int macOffset, nonceOffset, textOffset;
+    private final int tagOffset = 0;
+    private final ISymmetricKeyGenerator keyGenerator;
+    private final INonceGenerator nonceGenerator;
+
+    private final boolean useKeyHints;
+    private final KeyHintIndex hintIndex;
+
+    // Every thread gets its own engine, so encryption and decryption can run concurrently
+    private final ThreadLocal<Engine> engine = new ThreadLocal<Engine>() {
+        @Override
+        protected Engine initialValue() {
+            return new Engine(useKeyHints, textOffset);
+        }
+    };
+
+    /**
+     * Creates a ChaCha20-Poly1305 group cipher.
+     *
+     * @param sizeOfPlaintext The size of the plaintexts.
+     * @param useKeyHints     true to put a key hint tag in front of every cipher text (see
+     *                        {@link KeyHints}).
+     */
+    public ChaCha20Poly1305GroupCipher(int sizeOfPlaintext, boolean useKeyHints) {
+        int tagLength = useKeyHints ? KeyHints.TAG_LENGTH : 0;
+        plainSize = sizeOfPlaintext;
+        macOffset = tagLength;
+        nonceOffset = macOffset + ChaCha20Poly1305.TAG_SIZE;
+        textOffset = nonceOffset + ChaCha20Poly1305.NONCE_SIZE;
+        cipherSize = textOffset + sizeOfPlaintext;
+        keyGenerator = new SymmetricKeyGenerator(new org.spongycastle.jce.provider.BouncyCastleProvider(),
+                KEY_ALGORITHM, KEY_SIZE);
+        nonceGenerator = PublicMessageCipherFactory.getNonceGenerator(ChaCha20Poly1305.NONCE_SIZE);
+        this.useKeyHints = useKeyHints;
+        hintIndex = useKeyHints ? new KeyHintIndex() : null;
+    }
+
+    /**
+     * Computes the cipher text's size and returns it.
+     *
+     * @return Returns the size in bytes as an integer.
+     */
+    @Override
+    public int getCipherTextSize() {
+        return cipherSize;
+    }
+
+    /**
+     * Generates a key.
+     *
+     * @return returns the generated key as a SecretKey.
+     */
+    @Override
+    public SecretKey generateKey() {
+        return keyGenerator.generateKey();
+    }
+
+    /**
+     * Encrypts the given plaintext with every key of the given collection.
+     *
+     * @param plaintext Plaintext that is encrypted.
+     * @param keys      Collection of SecretKeys that are used to encrypt the plaintext
+     * @return Returns the cipher texts as array of array of byte.
+     */
+    @Override
+    public byte[][] encrypt(byte[] plaintext, Collection<SecretKey> keys) {
+        byte[][] result = new byte[keys.size()][];
+        Engine e = engine.get();
+        int i = 0;
+        for (SecretKey key : keys) {
+            byte[] ciphertext = new byte[cipherSize];
+            nonceGenerator.generateNonce(ciphertext, nonceOffset);
+            e.aead.encrypt(ChaCha20.expandKey(key.getEncoded(), 0), ciphertext, nonceOffset, null, 0, 0,
+                    plaintext, 0, plainSize, ciphertext, textOffset, ciphertext, macOffset);
+            if (e.hints != null) KeyHints.writeTag(e.hints.nextTag(key), ciphertext, tagOffset);
+            result[i++] = ciphertext;
+        }
+        return result;
+    }
+
+    /**
+     * Tries to decrypt a given cipher text and returns the plaintext on success.
+     * If a matching key cannot be found in the collection of keys null is returned.
+     *
+     * @param ciphertext Cipher text that is decrypted.
+     * @param keys       Collection of keys that are used to decrypt the cipher text.
+     * @return Returns the decrypted cipher text as byte array. If there was no matching
+     * key in the key collection, null is returned.
+     */
+    @Override
+    public byte[] tryDecrypt(byte[] ciphertext, Collection<SecretKey> keys) {
+        byte[] result = new byte[plainSize];
+        ChaCha20Poly1305 aead = engine.get().aead;
+        for (SecretKey key : keys) {
+            if (tryKey(aead, ChaCha20.expandKey(key.getEncoded(), 0), ciphertext, result, 0)) {
+                return result;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Expands the key and, in key hint mode, derives the hint key, so they do not have to be set
+     * up again for every cipher text.
+     *
+     * @param key The key to create the context for.
+     * @return A key context that can be passed to {@link #tryDecrypt(byte[], IGroupKeyContext[])}.
+     */
+    @Override
+    public IGroupKeyContext createKeyContext(SecretKey key) {
+        KeyHints hints = engine.get().hints;
+        return new ChaCha20Poly1305KeyContext(key, hints == null ? null : hints.deriveHintKey(key));
+    }
+
+    /**
+     * Tries to decrypt a given cipher text with prepared key contexts and returns the plaintext
+     * on success. If none of the contexts belongs to a matching key null is returned.
+     *
+     * @param ciphertext  Cipher text that is decrypted.
+     * @param keyContexts Key contexts created by {@link #createKeyContext(SecretKey)}.
+     * @return Returns the decrypted cipher text as byte array. If there was no matching
+     * key context, null is returned.
+     */
+    @Override
+    public byte[] tryDecrypt(byte[] ciphertext, IGroupKeyContext[] keyContexts) {
+        byte[] result = new byte[plainSize];
+        return tryDecryptInto(ciphertext, keyContexts, result, 0) == null ? null : result;
+    }
+
+    /**
+     * Tries to decrypt a given cipher text with prepared key contexts and writes the plaintext to
+     * a caller-supplied buffer. No memory is allocated if none of the keys matches.
+     *
+     * @param ciphertext  Cipher text that is decrypted.
+     * @param keyContexts Key contexts created by {@link #createKeyContext(SecretKey)}.
+     * @param buffer      Buffer that will hold the plaintext.
+     * @param offset      Start index of the plaintext in the buffer.
+     * @return Returns the key context of the matching key or null if no key matched.
+     */
+    @Override
+    public IGroupKeyContext tryDecryptInto(byte[] ciphertext, IGroupKeyContext[] keyContexts, byte[] buffer, int offset) {
+        return tryKeys(engine.get(), ciphertext, null, textOffset, keyContexts, buffer, offset);
+    }
+
+    /**
+     * Tries to decrypt a cipher text held by a buffer, which may be a direct buffer. Only tag and
+     * nonce are copied, the payload is authenticated and decrypted in place.
+     *
+     * @param ciphertext  Buffer holding the cipher text between its position and limit.
+     * @param keyContexts Key contexts created by {@link #createKeyContext(SecretKey)}.
+     * @param buffer      Buffer that will hold the plaintext.
+     * @param offset      Start index of the plaintext in the buffer.
+     * @return Returns the key context of the matching key or null if no key matched.
+     */
+    @Override
+    public IGroupKeyContext tryDecryptInto(ByteBuffer ciphertext, IGroupKeyContext[] keyContexts, byte[] buffer, int offset) {
+        if (ciphertext.remaining() != cipherSize) return null;
+        Engine e = engine.get();
+        int start = ciphertext.position();
+        for (int i = 0; i < textOffset; ++i) e.header[i] = ciphertext.get(start + i);
+        return tryKeys(e, e.header, ciphertext, start + textOffset, keyContexts, buffer, offset);
+    }
+
+    // Tries the key contexts on a cipher text whose payload is in text starting at the absolute
+    // index textStart or, if text is null, in the header array
+    private IGroupKeyContext tryKeys(Engine e, byte[] header, ByteBuffer text, int textStart,
+                                     IGroupKeyContext[] keyContexts, byte[] buffer, int offset) {
+        // Only try the keys the tag of the cipher text belongs to in key hint mode
+        if (hintIndex != null) {
+            int tag = KeyHints.readTag(header, tagOffset);
+            KeyHintIndex.Table table = hintIndex.getTable(keyContexts);
+            for (int i = table.find(tag); i != -1; i = table.findNext(tag, i)) {
+                IGroupKeyContext context = table.getContext(i);
+                if (tryKey(e.aead, ((ChaCha20Poly1305KeyContext) context).getKeyWords(), header, text, textStart, buffer, offset)) {
+                    return context;
+                }
+            }
+            return null;
+        }
+
+        for (IGroupKeyContext context : keyContexts) {
+            if (tryKey(e.aead, ((ChaCha20Poly1305KeyContext) context).getKeyWords(), header, text, textStart, buffer, offset)) {
+                return context;
+            }
+        }
+        return null;
+    }
+
+    // Checks the tag with the specified key and decrypts the payload if it is valid
+    private boolean tryKey(ChaCha20Poly1305 aead, int[] keyWords, byte[] ciphertext, byte[] buffer, int offset) {
+        return tryKey(aead, keyWords, ciphertext, null, textOffset, buffer, offset);
+    }
+
+    private boolean tryKey(ChaCha20Poly1305 aead, int[] keyWords, byte[] header, ByteBuffer text, int textStart,
+                           byte[] buffer, int offset) {
+        if (text == null) {
+            return aead.decrypt(keyWords, header, nonceOffset, null, 0, 0,
+                    header, textStart, plainSize, header, macOffset, buffer, offset);
+        }
+        return aead.decrypt(keyWords, header, nonceOffset, null, 0, 0,
+                text, textStart, plainSize, header, macOffset, buffer, offset);
+    }
+
+    /**
+     * Transforms an encoded key to a SecretKey.
+     *
+     * @param keybytes Byte array that represent a key
+     * @return Returns the key as SecretKey
+     */
+    @Override
+    public SecretKey byteArrayToSecretKey(byte[] keybytes) {
+        return keyGenerator.readKeyFromByteArray(keybytes);
+    }
+
+    /**
+     * Creates a byte array from a secret key that can be converted back using byteArrayToSecretKey.
+     *
+     * @param secretKey The secret key.
+     * @return A byte array representing the key.
+     */
+    @Override
+    public byte[] secretKeyToByteArray(SecretKey secretKey) {
+        return secretKey.getEncoded();
+    }
+
+    /**
+     * @return The size in bytes of a group key that was converted to a byte array.
+     */
+    @Override
+    public int getEncodedKeySize() {
+        return keyGenerator.getLength();
+    }
+
+    // State used by a single thread
+    private static class Engine {
+        final ChaCha20Poly1305 aead = new ChaCha20Poly1305();
+
+        // Copy of tag and nonce when decrypting from a ByteBuffer
+        final byte[] header;
+
+        // Only used in key hint mode
+        final KeyHints hints;
+
+        Engine(boolean useKeyHints, int headerSize) {
+            header = new byte[headerSize];
+            hints = useKeyHints ? new KeyHints() : null;
+        }
+    }
+}
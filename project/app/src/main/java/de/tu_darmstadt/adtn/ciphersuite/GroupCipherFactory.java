@@ -0,0 +1,52 @@
+package de.tu_darmstadt.adtn.ciphersuite;
+
+/**
+ * Factory to create the group cipher suites that can be chosen when a group key store is created.
+ */
+public class GroupCipherFactory {
+
+    /**
+     * ChaCha with 64 bit nonce and separately keyed Poly1305-AES ({@link GroupCipherSuite}).
+     */
+    public final static String CHACHA_POLY1305_AES = "ChaCha-Poly1305-AES";
+
+    /**
+     * ChaCha20-Poly1305 AEAD as specified in RFC 7539 ({@link ChaCha20Poly1305GroupCipher}).
+     */
+    public final static String CHACHA20_POLY1305 = "ChaCha20-Poly1305";
+
+    /**
+     * Instantiates and returns a group cipher.
+     *
+     * @param name            The name of the cipher suite.
+     * @param sizeOfPlaintext The size of the plaintexts.
+     * @param useKeyHints     true to use the key hint packet format.
+     * @return The group cipher.
+     */
+    public static IGroupCipher createGroupCipher(String name, int sizeOfPlaintext, boolean useKeyHints) {
+        return createGroupCipher(name, sizeOfPlaintext, useKeyHints, GroupCipherSuite.DEFAULT_PARALLEL_THRESHOLD);
+    }
+
+    /**
+     * Instantiates and returns a group cipher.
+     *
+     * @param name              The name of the cipher suite.
+     * @param sizeOfPlaintext   The size of the plaintexts.
+     * @param useKeyHints       true to use the key hint packet format.
+     * @param parallelThreshold The minimum number of keys that are tried on several threads or 0 to
+     *                          always try them on the calling thread only. Only used by
+     *                          {@link GroupCipherSuite}.
+     * @return The group cipher.
+     */
+    public static IGroupCipher createGroupCipher(String name, int sizeOfPlaintext, boolean useKeyHints,
+                                                 int parallelThreshold) {
+        switch (name) {
+            case CHACHA_POLY1305_AES:
+                return new GroupCipherSuite(sizeOfPlaintext, useKeyHints, parallelThreshold);
+            case CHACHA20_POLY1305:
+                return new ChaCha20Poly1305GroupCipher(sizeOfPlaintext, useKeyHints);
+            default:
+                throw new IllegalArgumentException("Unknown group cipher suite: " + name);
+        }
+    }
+}
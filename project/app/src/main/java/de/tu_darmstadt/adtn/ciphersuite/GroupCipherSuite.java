@@ -1,10 +1,14 @@
 package de.tu_darmstadt.adtn.ciphersuite;
 
+import java.nio.ByteBuffer;
 import java.util.Collection;
 
 import javax.crypto.SecretKey;
 
+import de.tu_darmstadt.adtn.ciphersuite.Utils.GroupKeyContext;
 import de.tu_darmstadt.adtn.ciphersuite.Utils.GroupKeyGenerator;
+import de.tu_darmstadt.adtn.ciphersuite.Utils.IGroupKey;
+import de.tu_darmstadt.adtn.ciphersuite.Utils.IGroupKeyContext;
 import de.tu_darmstadt.adtn.ciphersuite.ciphers.Ciphermode;
 import de.tu_darmstadt.adtn.ciphersuite.ciphers.INonceGenerator;
 import de.tu_darmstadt.adtn.ciphersuite.ciphers.PublicMessageCipherFactory;
@@ -14,7 +18,8 @@ import de.tu_darmstadt.adtn.errorlogger.ErrorLoggingSingleton;
 
 /**
  * Ciphersuite that offers functionality to encrypt and decrypt byte arrays in the timberdoodle packet
- * format and functionality to generate keys.
+ * format and functionality to generate keys. Thread-safe: every thread uses its own cipher and MAC
+ * instances.
  */
 public class GroupCipherSuite implements IGroupCipher {
 
@@ -25,39 +30,119 @@ public class GroupCipherSuite implements IGroupCipher {
     private final int nonceLengthMAC = 16;
     private final int cipherKeySize = 256, macKeySize = 256;
 
-    private PublicMessageDecryption decryptor = null;
-    private PublicMessageEncryption encryptor = null;
+    private final int plainSize, tagLength, parallelThreshold;
+    private final IComputeMAC mac;
+    private final KeyHints hints;
+    private final KeyHintIndex hintIndex;
+
+    // Every thread gets its own engines, so encryption and decryption can run concurrently
+    private final ThreadLocal<PublicMessageEncryption> encryptor = new ThreadLocal<PublicMessageEncryption>() {
+        @Override
+        protected PublicMessageEncryption initialValue() {
+            return createEncryptor();
+        }
+    };
+    private final ThreadLocal<PublicMessageDecryption> decryptor = new ThreadLocal<PublicMessageDecryption>() {
+        @Override
+        protected PublicMessageDecryption initialValue() {
+            return createDecryptor();
+        }
+    };
+
+    /**
+     * Minimum number of keys that are tried on several threads by default.
+     */
+    public final static int DEFAULT_PARALLEL_THRESHOLD = 64;
 
     public GroupCipherSuite(int sizeOfPlaintext) {
+        this(sizeOfPlaintext, false);
+    }
+
+    /**
+     * Creates a group cipher suite that optionally puts a key hint tag in front of every cipher
+     * text (see {@link KeyHints}). Receivers then look the tag up in a {@link KeyHintIndex} and
+     * only check the MACs of the keys it belongs to instead of every MAC. Both modes use different packet formats and cannot communicate with
+     * each other.
+     *
+     * @param sizeOfPlaintext The size of the plaintexts.
+     * @param useKeyHints     true to use the key hint packet format.
+     */
+    public GroupCipherSuite(int sizeOfPlaintext, boolean useKeyHints) {
+        this(sizeOfPlaintext, useKeyHints, DEFAULT_PARALLEL_THRESHOLD);
+    }
+
+    /**
+     * Creates a group cipher suite that tries large sets of key contexts on several threads.
+     *
+     * @param sizeOfPlaintext   The size of the plaintexts.
+     * @param useKeyHints       true to use the key hint packet format.
+     * @param parallelThreshold The minimum number of key contexts that are tried in parallel or 0
+     *                          to always try them on the calling thread only.
+     */
+    public GroupCipherSuite(int sizeOfPlaintext, boolean useKeyHints, int parallelThreshold) {
+        // Packet format: [key hint tag] | MAC | nonce | payload
+        tagLength = useKeyHints ? KeyHints.TAG_LENGTH : 0;
+        plainSize = sizeOfPlaintext;
+        this.parallelThreshold = parallelThreshold;
         try {
-            cipherSize = ComputeMacFactory.getInstance().length() + nonceLengthMAC + sizeOfPlaintext;
-            IComputeMAC mac = ComputeMacFactory.getInstance();
-            INonceGenerator nonce = PublicMessageCipherFactory.getNonceGenerator(nonceLengthMAC);
-            encryptor = new PublicMessageEncryption(
-                    mac,
+            // Only used for creating key contexts and the length, which does not change any state
+            mac = ComputeMacFactory.createInstance();
+        } catch (Exception e) {
+            throw logAndWrap(e);
+        }
+        cipherSize = tagLength + mac.length() + nonceLengthMAC + sizeOfPlaintext;
+        hints = useKeyHints ? new KeyHints() : null;
+        hintIndex = useKeyHints ? new KeyHintIndex() : null;
+
+        // Create the engines of this thread now, so errors show up early
+        encryptor.get();
+        decryptor.get();
+    }
+
+    private PublicMessageEncryption createEncryptor() {
+        try {
+            IComputeMAC threadMAC = ComputeMacFactory.createInstance();
+            return new PublicMessageEncryption(
+                    threadMAC,
                     PublicMessageCipherFactory.getPublicMessageCipherInstance(cipherAlgorithm, Ciphermode.ENCRYPT, nonceLengthCipher),
-                    nonce,
-                    0,
-                    mac.length(),
-                    mac.length() + nonceLengthMAC,
-                    cipherSize
+                    PublicMessageCipherFactory.getNonceGenerator(nonceLengthMAC),
+                    tagLength,
+                    tagLength + threadMAC.length(),
+                    tagLength + threadMAC.length() + nonceLengthMAC,
+                    cipherSize,
+                    hints != null ? 0 : -1
             );
-            decryptor = new PublicMessageDecryption(
-                    mac,
+        } catch (Exception e) {
+            throw logAndWrap(e);
+        }
+    }
+
+    private PublicMessageDecryption createDecryptor() {
+        try {
+            IComputeMAC threadMAC = ComputeMacFactory.createInstance();
+            PublicMessageDecryption result = new PublicMessageDecryption(
+                    threadMAC,
                     PublicMessageCipherFactory.getPublicMessageCipherInstance(cipherAlgorithm, Ciphermode.DECRYPT, nonceLengthCipher),
                     nonceLengthMAC,
-                    0,
-                    mac.length(),
-                    mac.length() + nonceLengthMAC,
-                    sizeOfPlaintext
+                    tagLength,
+                    tagLength + threadMAC.length(),
+                    tagLength + threadMAC.length() + nonceLengthMAC,
+                    plainSize,
+                    hints != null ? 0 : -1,
+                    hintIndex
             );
+            result.setParallelThreshold(parallelThreshold);
+            return result;
         } catch (Exception e) {
-            ErrorLoggingSingleton log = ErrorLoggingSingleton.getInstance();
-            log.storeError(ErrorLoggingSingleton.getExceptionStackTraceAsFormattedString(e));
-            throw new RuntimeException(e);
+            throw logAndWrap(e);
         }
     }
 
+    private static RuntimeException logAndWrap(Exception e) {
+        ErrorLoggingSingleton log = ErrorLoggingSingleton.getInstance();
+        log.storeError(ErrorLoggingSingleton.getExceptionStackTraceAsFormattedString(e));
+        return new RuntimeException(e);
+    }
 
     /**
      * Computes the cipher text's size and returns it.
@@ -90,7 +175,7 @@ public class GroupCipherSuite implements IGroupCipher {
      */
     @Override
     public byte[][] encrypt(byte[] plaintext, Collection<SecretKey> keys) {
-        return encryptor.encrypt(plaintext, keys);
+        return encryptor.get().encrypt(plaintext, keys);
     }
 
     /**
@@ -104,7 +189,70 @@ public class GroupCipherSuite implements IGroupCipher {
      */
     @Override
     public byte[] tryDecrypt(byte[] ciphertext, Collection<SecretKey> keys) {
-        return decryptor.decrypt(ciphertext, keys);
+        return decryptor.get().decrypt(ciphertext, keys);
+    }
+
+    /**
+     * Precomputes the MAC state and, in key hint mode, the hint key of a key, so they do not have
+     * to be set up again for every cipher text.
+     *
+     * @param key The key to create the context for.
+     * @return A key context that can be passed to {@link #tryDecrypt(byte[], IGroupKeyContext[])}.
+     */
+    @Override
+    public IGroupKeyContext createKeyContext(SecretKey key) {
+        byte[] hintKey = null;
+        if (hints != null) {
+            synchronized (hints) {
+                hintKey = hints.deriveHintKey(key);
+            }
+        }
+        return new GroupKeyContext(key, mac.createKeyContext(((IGroupKey) key).getMACKey()), hintKey);
+    }
+
+    /**
+     * Tries to decrypt a given cipher text with prepared key contexts and returns the plaintext
+     * on success. If none of the contexts belongs to a matching key null is returned.
+     *
+     * @param ciphertext  Cipher text that is decrypted.
+     * @param keyContexts Key contexts created by {@link #createKeyContext(SecretKey)}.
+     * @return Returns the decrypted cipher text as byte array. If there was no matching
+     * key context, null is returned.
+     */
+    @Override
+    public byte[] tryDecrypt(byte[] ciphertext, IGroupKeyContext[] keyContexts) {
+        return decryptor.get().decrypt(ciphertext, keyContexts);
+    }
+
+    /**
+     * Tries to decrypt a given cipher text with prepared key contexts and writes the plaintext to
+     * a caller-supplied buffer. No memory is allocated if none of the keys matches.
+     *
+     * @param ciphertext  Cipher text that is decrypted.
+     * @param keyContexts Key contexts created by {@link #createKeyContext(SecretKey)}.
+     * @param buffer      Buffer that will hold the plaintext.
+     * @param offset      Start index of the plaintext in the buffer.
+     * @return Returns the key context of the matching key or null if no key matched.
+     */
+    @Override
+    public IGroupKeyContext tryDecryptInto(byte[] ciphertext, IGroupKeyContext[] keyContexts, byte[] buffer, int offset) {
+        return decryptor.get().decryptInto(ciphertext, keyContexts, buffer, offset);
+    }
+
+    /**
+     * Tries to decrypt a cipher text held by a buffer, which may be a direct buffer. Only the
+     * header is copied, the MACs are computed over the payload in place.
+     *
+     * @param ciphertext  Buffer holding the cipher text between its position and limit.
+     * @param keyContexts Key contexts created by {@link #createKeyContext(SecretKey)}.
+     * @param buffer      Buffer that will hold the plaintext.
+     * @param offset      Start index of the plaintext in the buffer.
+     * @return Returns the key context of the matching key or null if no key matched.
+     */
+    @Override
+    public IGroupKeyContext tryDecryptInto(ByteBuffer ciphertext, IGroupKeyContext[] keyContexts, byte[] buffer, int offset) {
+        if (ciphertext.remaining() != cipherSize) return null;
+        return decryptor.get().decryptInto(ciphertext, keyContexts, buffer, offset);
     }
 
     /**
@@ -1,11 +1,15 @@
 package de.tu_darmstadt.adtn.ciphersuite;
 
+import java.nio.ByteBuffer;
 import java.util.Collection;
 
 import javax.crypto.SecretKey;
 
+import de.tu_darmstadt.adtn.ciphersuite.Utils.IGroupKeyContext;
+
 /**
- * Interface for a cipher suite.
+ * Interface for a cipher suite. Implementations must be thread-safe, so packets can be encrypted
+ * and decrypted on several threads at the same time without external locking.
  */
 public interface IGroupCipher {
 
@@ -43,6 +47,61 @@ public interface IGroupCipher {
      */
     byte[] tryDecrypt(byte[] ciphertext, Collection<SecretKey> keys);
 
+    /**
+     * Precomputes the key dependent state needed for decryption, so it does not have to be set up
+     * again for every cipher text.
+     *
+     * @param key The key to create the context for.
+     * @return A key context that can be passed to {@link #tryDecrypt(byte[], IGroupKeyContext[])}.
+     */
+    IGroupKeyContext createKeyContext(SecretKey key);
+
+    /**
+     * Tries to decrypt a given cipher text with prepared key contexts and returns the plaintext
+     * on success. If none of the contexts belongs to a matching key null is returned.
+     *
+     * @param ciphertext  Cipher text that is decrypted.
+     * @param keyContexts Key contexts created by {@link #createKeyContext(SecretKey)} that are used
+     *                    to decrypt the cipher text.
+     * @return Returns the decrypted cipher text as byte array. If there was no matching
+     * key context, null is returned.
+     */
+    byte[] tryDecrypt(byte[] ciphertext, IGroupKeyContext[] keyContexts);
+
+    /**
+     * Tries to decrypt a given cipher text with prepared key contexts and writes the plaintext to
+     * a caller-supplied buffer. Unlike {@link #tryDecrypt(byte[], IGroupKeyContext[])} no memory
+     * is allocated if none of the keys matches.
+     *
+     * @param ciphertext  Cipher text that is decrypted.
+     * @param keyContexts Key contexts created by {@link #createKeyContext(SecretKey)} that are used
+     *                    to decrypt the cipher text.
+     * @param buffer      Buffer that will hold the plaintext. Must have room for a whole plaintext
+     *                    starting at offset.
+     * @param offset      Start index of the plaintext in the buffer.
+     * @return Returns the key context of the matching key or null if no key matched. The content of
+     * the buffer is undefined in the latter case.
+     */
+    IGroupKeyContext tryDecryptInto(byte[] ciphertext, IGroupKeyContext[] keyContexts, byte[] buffer, int offset);
+
+    /**
+     * Same as {@link #tryDecryptInto(byte[], IGroupKeyContext[], byte[], int)}, but reads the
+     * cipher text from a buffer, e.g. a direct buffer filled by a socket, without copying it to
+     * the Java heap first. The position of the buffer is not changed.
+     *
+     * @param ciphertext  Buffer holding the cipher text between its position and limit. Cipher
+     *                    texts that do not have the size returned by {@link #getCipherTextSize()}
+     *                    are rejected.
+     * @param keyContexts Key contexts created by {@link #createKeyContext(SecretKey)} that are used
+     *                    to decrypt the cipher text.
+     * @param buffer      Buffer that will hold the plaintext. Must have room for a whole plaintext
+     *                    starting at offset.
+     * @param offset      Start index of the plaintext in the buffer.
+     * @return Returns the key context of the matching key or null if no key matched. The content of
+     * the buffer is undefined in the latter case.
+     */
+    IGroupKeyContext tryDecryptInto(ByteBuffer ciphertext, IGroupKeyContext[] keyContexts, byte[] buffer, int offset);
+
     /**
      * Transforms an encoded key to a SecretKey.
      *
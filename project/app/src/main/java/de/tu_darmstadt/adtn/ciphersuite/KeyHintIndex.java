@@ -0,0 +1,229 @@
+package de.tu_darmstadt.adtn.ciphersuite;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import de.tu_darmstadt.adtn.ciphersuite.Utils.IGroupKeyContext;
+
+/**
+ * Maps the key hint tags of the previous, the current and the next epoch to the key contexts they
+ * belong to, so a receiver finds the candidate keys of a packet with a single lookup and rejects
+ * packets of other groups without trying any key. The tags of a key and epoch are only computed
+ * once. When a new epoch starts, the tags of the following one are computed on a background
+ * thread, so receivers only wait for tags to be computed when the key contexts change.
+ * Thread-safe.
+ */
+public class KeyHintIndex {
+
+    private final static int KEEP_ALIVE_SECONDS = 60;
+
+    // Computes the tables of all instances one after another. The thread terminates after being
+    // idle for a while.
+    private final static ThreadPoolExecutor updater = new ThreadPoolExecutor(1, 1, KEEP_ALIVE_SECONDS,
+            TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "Key hint index");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    static {
+        updater.allowCoreThreadTimeOut(true);
+    }
+
+    // The published table. Replaced as a whole and never modified, so receivers can read it
+    // without locking.
+    private final AtomicReference<Table> table = new AtomicReference<>(
+            new Table(null, new IdentityHashMap<IGroupKeyContext, Boolean>(), 0, 0));
+
+    // Held while a table is computed. Also guards hints and computedTags.
+    private final Object buildLock = new Object();
+    private final KeyHints hints = new KeyHints();
+
+    // The tags computed for the key contexts of the published table, by epoch
+    private IdentityHashMap<IGroupKeyContext, Map<Long, int[]>> computedTags = new IdentityHashMap<>();
+
+    // The key contexts the queued computation is for and whether one is queued
+    private volatile IGroupKeyContext[] requestedSource;
+    private final AtomicBoolean updateQueued = new AtomicBoolean();
+
+    private final Runnable updateTask = new Runnable() {
+        @Override
+        public void run() {
+            // Cleared first, so requests made during the computation queue another one
+            updateQueued.set(false);
+            build(requestedSource, KeyHints.currentEpoch());
+        }
+    };
+
+    /**
+     * Returns the table for a set of key contexts. Only blocks if the key contexts changed or the
+     * table could not be updated in time when a new epoch started.
+     *
+     * @param keyContexts The key contexts, e.g. from the group key store. The same contexts in a
+     *                    different order use the same table.
+     * @return The table.
+     */
+    public Table getTable(IGroupKeyContext[] keyContexts) {
+        long epoch = KeyHints.currentEpoch();
+        Table current = table.get();
+        if (keyContexts != current.source) {
+            if (!current.hasContexts(keyContexts)) return build(keyContexts, epoch);
+
+            // Not published if another thread published a newer table in the meantime
+            Table reordered = new Table(current, keyContexts);
+            table.compareAndSet(current, reordered);
+            current = reordered;
+        }
+
+        if (epoch < current.centerEpoch - 1 || epoch > current.centerEpoch + 1) return build(keyContexts, epoch);
+        if (epoch != current.centerEpoch) requestUpdate(keyContexts);
+        return current;
+    }
+
+    // Queues a computation of the table for the current epoch unless one is queued
+    private void requestUpdate(IGroupKeyContext[] keyContexts) {
+        requestedSource = keyContexts;
+        if (updateQueued.compareAndSet(false, true)) updater.execute(updateTask);
+    }
+
+    // Computes and publishes the table for the specified key contexts and the epochs around the
+    // specified one unless another thread did it in the meantime
+    private Table build(IGroupKeyContext[] keyContexts, long epoch) {
+        synchronized (buildLock) {
+            Table current = table.get();
+            if (current.centerEpoch == epoch && current.hasContexts(keyContexts)) return current;
+
+            // Keep the tags of the contexts and epochs that are still needed
+            IdentityHashMap<IGroupKeyContext, Map<Long, int[]>> tags = new IdentityHashMap<>();
+            IdentityHashMap<IGroupKeyContext, Boolean> contexts = new IdentityHashMap<>();
+            int count = 0;
+            for (IGroupKeyContext context : keyContexts) {
+                contexts.put(context, Boolean.TRUE);
+                if (context.getHintKey() == null || tags.containsKey(context)) continue;
+                Map<Long, int[]> oldTags = computedTags.get(context);
+                Map<Long, int[]> contextTags = new HashMap<>();
+                for (long e = epoch - 1; e <= epoch + 1; ++e) {
+                    int[] epochTags = oldTags == null ? null : oldTags.get(e);
+                    contextTags.put(e, epochTags != null ? epochTags : hints.computeTags(context.getHintKey(), e));
+                    count += KeyHints.TAGS_PER_EPOCH;
+                }
+                tags.put(context, contextTags);
+            }
+            computedTags = tags;
+
+            Table result = new Table(keyContexts, contexts, epoch, count);
+            for (Map.Entry<IGroupKeyContext, Map<Long, int[]>> contextTags : tags.entrySet()) {
+                for (int[] epochTags : contextTags.getValue().values()) {
+                    for (int tag : epochTags) result.put(tag, contextTags.getKey());
+                }
+            }
+            table.set(result);
+            return result;
+        }
+    }
+
+    /**
+     * Hash table of tags and the key contexts they belong to. Never modified after it was
+     * published. A tag can belong to several contexts.
+     */
+    public static class Table {
+
+        private final IGroupKeyContext[] source;
+        private final IdentityHashMap<IGroupKeyContext, Boolean> contexts;
+        private final long centerEpoch;
+
+        // Open addressing with linear probing. Slots without context are free.
+        private final int[] tags;
+        private final IGroupKeyContext[] owners;
+        private final int mask;
+
+        private Table(IGroupKeyContext[] source, IdentityHashMap<IGroupKeyContext, Boolean> contexts,
+                      long centerEpoch, int count) {
+            this.source = source;
+            this.contexts = contexts;
+            this.centerEpoch = centerEpoch;
+
+            // At most half of the slots are used, so there is always a free one ending a search
+            int capacity = Integer.highestOneBit(Math.max(count, 1)) * 2;
+            if (capacity < count * 2) capacity *= 2;
+            tags = new int[capacity];
+            owners = new IGroupKeyContext[capacity];
+            mask = capacity - 1;
+        }
+
+        // Same table for the same contexts in a different order
+        private Table(Table table, IGroupKeyContext[] source) {
+            this.source = source;
+            contexts = table.contexts;
+            centerEpoch = table.centerEpoch;
+            tags = table.tags;
+            owners = table.owners;
+            mask = table.mask;
+        }
+
+        // Checks if the table was built for the same contexts
+        private boolean hasContexts(IGroupKeyContext[] keyContexts) {
+            if (keyContexts == source) return true;
+            if (source == null || keyContexts.length != source.length) return false;
+            for (IGroupKeyContext context : keyContexts) {
+                if (!contexts.containsKey(context)) return false;
+            }
+            return true;
+        }
+
+        // Only called before the table is published. Tags are HMAC outputs, so their lower bits
+        // are used as hash directly.
+        private void put(int tag, IGroupKeyContext context) {
+            int i = tag & mask;
+            while (owners[i] != null) i = (i + 1) & mask;
+            tags[i] = tag;
+            owners[i] = context;
+        }
+
+        /**
+         * Searches the first entry of a tag.
+         *
+         * @param tag The tag.
+         * @return The position of the entry or -1 if there is none.
+         */
+        public int find(int tag) {
+            return scan(tag, tag & mask);
+        }
+
+        /**
+         * Searches the next entry of a tag.
+         *
+         * @param tag      The tag.
+         * @param position The position of the previous entry.
+         * @return The position of the entry or -1 if there is none.
+         */
+        public int findNext(int tag, int position) {
+            return scan(tag, (position + 1) & mask);
+        }
+
+        /**
+         * @param position The position of an entry.
+         * @return The key context of the entry.
+         */
+        public IGroupKeyContext getContext(int position) {
+            return owners[position];
+        }
+
+        private int scan(int tag, int i) {
+            for (; owners[i] != null; i = (i + 1) & mask) {
+                if (tags[i] == tag) return i;
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package de.tu_darmstadt.adtn.ciphersuite;
+
+import org.spongycastle.crypto.digests.SHA256Digest;
+import org.spongycastle.crypto.macs.HMac;
+import org.spongycastle.crypto.params.KeyParameter;
+
+import java.nio.charset.Charset;
+import java.security.SecureRandom;
+import java.util.WeakHashMap;
+
+import javax.crypto.SecretKey;
+
+/**
+ * Computes the key hint tags that are put in front of packets if the group cipher suite runs in
+ * key hint mode. Time is divided into epochs of {@link #EPOCH_MILLIS} and every group has
+ * {@link #TAGS_PER_EPOCH} tags per epoch. A tag is the truncated HMAC-SHA256 of epoch and slot
+ * number, keyed with a hint key that is derived from the group key. A sender uses the slots of a
+ * key one after another, starting at a random slot in every epoch, so its tags do not repeat
+ * within an epoch and cannot be told apart from random bytes or linked to each other without the
+ * group key. Receivers can compute all tags of an epoch in advance and look the tag of a packet
+ * up in a {@link KeyHintIndex}, so rejecting a packet does not depend on the number of keys.
+ * Instances are not thread-safe.
+ */
+public class KeyHints {
+
+    /**
+     * Length of a tag in bytes.
+     */
+    public final static int TAG_LENGTH = 4;
+
+    /**
+     * Length of an epoch in milliseconds. Receivers accept the tags of the previous, the current
+     * and the next epoch, so packets must be sent within one epoch after their tag was computed.
+     */
+    public final static long EPOCH_MILLIS = 10 * 60 * 1000;
+
+    /**
+     * Number of tags of a key per epoch. A sender only repeats a tag if it sends more packets per
+     * epoch with the same key.
+     */
+    public final static int TAGS_PER_EPOCH = 1024;
+
+    private final static byte[] HINT_KEY_LABEL = "Timberdoodle key hint".getBytes(Charset.forName("US-ASCII"));
+
+    private final HMac hmac = new HMac(new SHA256Digest());
+    private final byte[] input = new byte[12];
+    private final byte[] digest = new byte[hmac.getMacSize()];
+    private final SecureRandom random = new SecureRandom();
+
+    // The send state of every key, so the hint key is only derived once per key. The entries go
+    // away with the keys.
+    private final WeakHashMap<SecretKey, SendState> sendStates = new WeakHashMap<>();
+
+    /**
+     * @return The number of the current epoch.
+     */
+    public static long currentEpoch() {
+        return System.currentTimeMillis() / EPOCH_MILLIS;
+    }
+
+    /**
+     * Derives the hint key from a group key, so the tags do not use the encryption or MAC key
+     * directly.
+     *
+     * @param key The group key.
+     * @return The hint key.
+     */
+    public byte[] deriveHintKey(SecretKey key) {
+        hmac.init(new KeyParameter(key.getEncoded()));
+        hmac.update(HINT_KEY_LABEL, 0, HINT_KEY_LABEL.length);
+        byte[] hintKey = new byte[hmac.getMacSize()];
+        hmac.doFinal(hintKey, 0);
+        return hintKey;
+    }
+
+    /**
+     * Returns the tag for the next packet sent with a key in the current epoch.
+     *
+     * @param key The group key.
+     * @return The tag.
+     */
+    public int nextTag(SecretKey key) {
+        SendState state = sendStates.get(key);
+        if (state == null) {
+            state = new SendState();
+            state.mac = new HMac(new SHA256Digest());
+            state.mac.init(new KeyParameter(deriveHintKey(key)));
+            state.epoch = -1;
+            sendStates.put(key, state);
+        }
+
+        // Start at a random slot in every epoch, so senders of the same group rarely use the same tags
+        long epoch = currentEpoch();
+        if (epoch != state.epoch) {
+            state.epoch = epoch;
+            state.slot = random.nextInt(TAGS_PER_EPOCH);
+        }
+        int tag = computeTag(state.mac, epoch, state.slot);
+        state.slot = (state.slot + 1) % TAGS_PER_EPOCH;
+        return tag;
+    }
+
+    /**
+     * Computes all tags of a key in an epoch.
+     *
+     * @param hintKey The hint key as returned by {@link #deriveHintKey(SecretKey)}.
+     * @param epoch   The number of the epoch.
+     * @return The tags of all slots.
+     */
+    public int[] computeTags(byte[] hintKey, long epoch) {
+        hmac.init(new KeyParameter(hintKey));
+        int[] tags = new int[TAGS_PER_EPOCH];
+        for (int slot = 0; slot < TAGS_PER_EPOCH; ++slot) tags[slot] = computeTag(hmac, epoch, slot);
+        return tags;
+    }
+
+    // Computes the tag of a slot with an HMAC that is initialized with a hint key
+    private int computeTag(HMac keyedMAC, long epoch, int slot) {
+        for (int i = 0; i < 8; ++i) input[i] = (byte) (epoch >>> (56 - 8 * i));
+        input[8] = (byte) (slot >>> 24);
+        input[9] = (byte) (slot >>> 16);
+        input[10] = (byte) (slot >>> 8);
+        input[11] = (byte) slot;
+        keyedMAC.update(input, 0, input.length);
+        keyedMAC.doFinal(digest, 0); // Also resets the HMAC to the keyed initial state
+        return readTag(digest, 0);
+    }
+
+    /**
+     * Reads a tag from a packet.
+     *
+     * @param buffer Array containing the tag.
+     * @param offset Start index of the tag.
+     * @return The tag.
+     */
+    public static int readTag(byte[] buffer, int offset) {
+        return (buffer[offset] & 0xff) << 24 | (buffer[offset + 1] & 0xff) << 16 |
+                (buffer[offset + 2] & 0xff) << 8 | buffer[offset + 3] & 0xff;
+    }
+
+    /**
+     * Writes a tag to a packet.
+     *
+     * @param tag    The tag.
+     * @param buffer Array that will hold the tag.
+     * @param offset Start index of the tag.
+     */
+    public static void writeTag(int tag, byte[] buffer, int offset) {
+        buffer[offset] = (byte) (tag >>> 24);
+        buffer[offset + 1] = (byte) (tag >>> 16);
+        buffer[offset + 2] = (byte) (tag >>> 8);
+        buffer[offset + 3] = (byte) tag;
+    }
+
+    // HMAC keyed with the hint key of a key and the next slot to use in the epoch
+    private static class SendState {
+        HMac mac;
+        long epoch;
+        int slot;
+    }
+}
@@ -0,0 +1,80 @@
+package de.tu_darmstadt.adtn.ciphersuite;
+
+import java.nio.ByteBuffer;
+
+import de.tu_darmstadt.adtn.ProtocolConstants;
+
+/**
+ * Binding to the native ChaCha20 and Poly1305-AES implementations in the packet socket library
+ * (see jni/adtncrypto.c). All data is passed in a single direct ByteBuffer, so calls neither copy
+ * nor pin Java arrays. Use {@link #isAvailable()} to check if the library could be loaded;
+ * otherwise the Java implementations must be used.
+ */
+public class NativeCrypto {
+
+    public final static int CHACHA_KEY_SIZE = 32;
+    public final static int CHACHA_NONCE_SIZE = 8;
+    public final static int POLY1305_KEY_SIZE = 32;
+    public final static int POLY1305_NONCE_SIZE = 16;
+    public final static int POLY1305_MAC_SIZE = 16;
+
+    private final static boolean available;
+
+    // Load packet socket library or, on plain Linux, the stand-alone crypto library
+    static {
+        boolean loaded = false;
+        if (ProtocolConstants.USE_NATIVE_CRYPTO) {
+            try {
+                System.loadLibrary("packetsocket");
+                loaded = true;
+            } catch (UnsatisfiedLinkError e) {
+                try {
+                    System.loadLibrary("adtncrypto");
+                    loaded = true;
+                } catch (UnsatisfiedLinkError ignored) {
+                }
+            }
+        }
+        available = loaded;
+    }
+
+    private NativeCrypto() {
+    }
+
+    /**
+     * @return true if the native library is loaded and its functions may be called.
+     */
+    public static boolean isAvailable() {
+        return available;
+    }
+
+    /**
+     * XORs data with the ChaCha20 keystream (64 bit nonce, block counter starting at 0), which
+     * encrypts or decrypts it. Input and output may overlap if they start at the same index.
+     *
+     * @param buffer      Direct buffer containing key, nonce and data. Position and limit are ignored.
+     * @param keyOffset   Start index of the 32 byte key.
+     * @param nonceOffset Start index of the 8 byte nonce.
+     * @param textOffset  Start index of the input data.
+     * @param length      Length of the input data in bytes.
+     * @param outOffset   Start index of the output data.
+     * @throws IllegalArgumentException if the buffer is not direct or a range is out of bounds.
+     */
+    public static native void chaCha20Xor(ByteBuffer buffer, int keyOffset, int nonceOffset,
+                                          int textOffset, int length, int outOffset);
+
+    /**
+     * Computes a Poly1305-AES MAC.
+     *
+     * @param buffer      Direct buffer containing key, nonce and message and receiving the MAC.
+     *                    Position and limit are ignored.
+     * @param keyOffset   Start index of the 32 byte key (16 bytes AES key followed by 16 bytes r).
+     * @param nonceOffset Start index of the 16 byte nonce.
+     * @param textOffset  Start index of the message.
+     * @param length      Length of the message in bytes.
+     * @param macOffset   Start index of the 16 byte MAC.
+     * @throws IllegalArgumentException if the buffer is not direct or a range is out of bounds.
+     */
+    public static native void poly1305Aes(ByteBuffer buffer, int keyOffset, int nonceOffset,
+                                          int textOffset, int length, int macOffset);
+}
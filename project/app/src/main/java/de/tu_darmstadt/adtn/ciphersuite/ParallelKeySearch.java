@@ -0,0 +1,182 @@
+package de.tu_darmstadt.adtn.ciphersuite;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.tu_darmstadt.adtn.ciphersuite.Utils.GroupKeyContext;
+import de.tu_darmstadt.adtn.ciphersuite.Utils.IGroupKeyContext;
+import de.tu_darmstadt.adtn.ciphersuite.hashes.IComputeMAC;
+import de.tu_darmstadt.adtn.ciphersuite.hashes.IMACKeyContext;
+
+/**
+ * Searches the key context whose MAC matches the one of a cipher text on several threads. The key
+ * contexts are split into one slice per thread and all threads stop as soon as one of them found
+ * the matching key. The calling thread searches the first slice itself. MAC contexts are
+ * thread-safe, so all threads use the same ones. The other slices are searched by a pool of worker
+ * threads that all instances share, so several receiving threads with their own instances do not
+ * start more workers than there are additional cores. Worker threads terminate after being idle for
+ * a while. An instance must not be used by several threads at once.
+ */
+class ParallelKeySearch {
+
+    private final static int KEEP_ALIVE_SECONDS = 60;
+    private final static int NOT_FOUND = -1;
+
+    // Searches the slices of all instances that are not searched by the calling threads
+    private final static ThreadPoolExecutor executor;
+
+    static {
+        int workerCount = Math.max(Runtime.getRuntime().availableProcessors() - 1, 1);
+        executor = new ThreadPoolExecutor(workerCount, workerCount, KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Key search");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    private final IComputeMAC mac;
+    private final int macOffset, nonceOffset, textOffset;
+
+    private final Slice[] slices;
+
+    // Released by every worker thread when it finished its slice
+    private final Semaphore finished = new Semaphore(0);
+
+    // Index of the matching key context or NOT_FOUND
+    private final AtomicInteger match = new AtomicInteger(NOT_FOUND);
+
+    // Arguments of the running search, published to the worker threads by the executor
+    private byte[] header;
+    private ByteBuffer text;
+    private int textStart, textLength;
+    private IGroupKeyContext[] keyContexts;
+
+    /**
+     * Creates a new ParallelKeySearch object.
+     *
+     * @param mac         The MAC algorithm of the key contexts.
+     * @param threadCount Number of threads searching, including the calling thread. Must be 2 or more.
+     * @param macOffset   Start index of the MAC in the cipher text.
+     * @param nonceOffset Start index of the nonce in the cipher text.
+     * @param textOffset  Start index of the payload in the cipher text.
+     */
+    ParallelKeySearch(IComputeMAC mac, int threadCount, int macOffset, int nonceOffset, int textOffset) {
+        if (threadCount < 2) throw new IllegalArgumentException("threadCount must be at least 2");
+
+        this.mac = mac;
+        this.macOffset = macOffset;
+        this.nonceOffset = nonceOffset;
+        this.textOffset = textOffset;
+
+        slices = new Slice[threadCount];
+        for (int i = 0; i < threadCount; ++i) slices[i] = new Slice(i);
+    }
+
+    /**
+     * @return The number of threads searching, including the calling thread.
+     */
+    int getThreadCount() {
+        return slices.length;
+    }
+
+    /**
+     * Searches the key context whose MAC matches the one of the cipher text.
+     *
+     * @param ciphertext  The cipher text.
+     * @param keyContexts Key contexts created by a {@link GroupCipherSuite}.
+     * @return The matching key context or null if there is none.
+     */
+    GroupKeyContext find(byte[] ciphertext, IGroupKeyContext[] keyContexts) {
+        return find(ciphertext, null, textOffset, ciphertext.length - textOffset, keyContexts);
+    }
+
+    /**
+     * Searches the key context whose MAC matches the one in the header of a cipher text whose
+     * payload is kept in a separate buffer. The buffer is only read with absolute indices, so
+     * the worker threads can share it.
+     *
+     * @param header      The cipher text up to the payload. Holds the whole cipher text if text is null.
+     * @param text        Buffer containing the payload or null if it is in the header array.
+     * @param textStart   Absolute index of the payload.
+     * @param textLength  Length of the payload in bytes.
+     * @param keyContexts Key contexts created by a {@link GroupCipherSuite}.
+     * @return The matching key context or null if there is none.
+     */
+    GroupKeyContext find(byte[] header, ByteBuffer text, int textStart, int textLength, IGroupKeyContext[] keyContexts) {
+        this.header = header;
+        this.text = text;
+        this.textStart = textStart;
+        this.textLength = textLength;
+        this.keyContexts = keyContexts;
+        match.set(NOT_FOUND);
+
+        // Let the workers search the other slices while searching the first one
+        for (int i = 1; i < slices.length; ++i) executor.execute(slices[i]);
+        slices[0].run();
+        finished.acquireUninterruptibly(slices.length - 1);
+
+        int index = match.get();
+        this.header = null;
+        this.text = null;
+        this.keyContexts = null;
+        return index == NOT_FOUND ? null : (GroupKeyContext) keyContexts[index];
+    }
+
+    private static boolean macsEqual(byte[] mac, byte[] ciphertext, int offset) {
+        for (int i = 0; i < mac.length; ++i) {
+            if (mac[i] != ciphertext[i + offset]) return false;
+        }
+        return true;
+    }
+
+    // Part of the key contexts searched by a single thread
+    private class Slice implements Runnable {
+
+        private final int index;
+        private final byte[] macBuffer = new byte[mac.length()];
+
+        Slice(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public void run() {
+            try {
+                search();
+            } finally {
+                if (index != 0) finished.release();
+            }
+        }
+
+        private void search() {
+            int count = keyContexts.length;
+            int start = (int) ((long) count * index / slices.length);
+            int end = (int) ((long) count * (index + 1) / slices.length);
+            for (int i = start; i < end; ++i) {
+                // Stop if another thread found the key
+                if (match.get() != NOT_FOUND) return;
+
+                IMACKeyContext context = ((GroupKeyContext) keyContexts[i]).getMACContext();
+                if (text == null) {
+                    context.computeMAC(header, nonceOffset, header, textStart, textLength, macBuffer, 0);
+                } else {
+                    context.computeMAC(header, nonceOffset, text, textStart, textLength, macBuffer, 0);
+                }
+                if (macsEqual(macBuffer, header, macOffset)) {
+                    match.compareAndSet(NOT_FOUND, i);
+                    return;
+                }
+            }
+        }
+    }
+}
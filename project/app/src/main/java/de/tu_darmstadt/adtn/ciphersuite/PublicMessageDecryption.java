@@ -1,15 +1,20 @@
 package de.tu_darmstadt.adtn.ciphersuite;
 
+import java.nio.ByteBuffer;
 import java.util.Collection;
 
 import javax.crypto.SecretKey;
 
 import de.tu_darmstadt.adtn.ciphersuite.Utils.GroupKey;
+import de.tu_darmstadt.adtn.ciphersuite.Utils.GroupKeyContext;
+import de.tu_darmstadt.adtn.ciphersuite.Utils.IGroupKeyContext;
 import de.tu_darmstadt.adtn.ciphersuite.ciphers.IPublicMessageCipher;
 import de.tu_darmstadt.adtn.ciphersuite.hashes.IComputeMAC;
+import de.tu_darmstadt.adtn.ciphersuite.hashes.IMACKeyContext;
 
 /**
- * Tries to decrypt a byte array with a given list of keys.
+ * Tries to decrypt a byte array with a given list of keys. Reuses internal buffers, so an instance
+ * must not be used by several threads at once.
  */
 public class PublicMessageDecryption {
 
@@ -21,6 +26,21 @@ public class PublicMessageDecryption {
     private IComputeMAC calcMAC;
     private IPublicMessageCipher cipher;
 
+    // Reused for every decryption with key contexts
+    private final byte[] macBuffer;
+    private final byte[] cipherIV;
+
+    // Copy of everything in front of the payload when decrypting from a ByteBuffer
+    private final byte[] header;
+
+    // Only used in key hint mode
+    private final int tagOffset;
+    private final KeyHintIndex hintIndex;
+
+    // Only used if parallel search is enabled
+    private ParallelKeySearch parallelSearch;
+    private int parallelThreshold;
+
     /**
      * @param cmac        An instance of IComputeMAC that can calculate message authentication codes
      * @param cipher      An IPublicMessageCipher instance that is set to decrypt something
@@ -31,6 +51,22 @@ public class PublicMessageDecryption {
      * @param plainSize   size of the payload
      */
     public PublicMessageDecryption(IComputeMAC cmac, IPublicMessageCipher cipher, int nonceLength, int macOff, int nonceOff, int textOff, int plainSize) {
+        this(cmac, cipher, nonceLength, macOff, nonceOff, textOff, plainSize, -1, null);
+    }
+
+    /**
+     * @param cmac        An instance of IComputeMAC that can calculate message authentication codes
+     * @param cipher      An IPublicMessageCipher instance that is set to decrypt something
+     * @param nonceLength The current length of the nonce
+     * @param macOff      the current starting index of the cipher text's MAC
+     * @param nonceOff    the current starting index of the cipher text's nonce
+     * @param textOff     the current starting index of the cipher text's payload
+     * @param plainSize   size of the payload
+     * @param tagOff      the starting index of the cipher text's key hint tag or -1 if there is none
+     * @param hintIndex   the index to look the key hint tags up in, only used if there are tags
+     */
+    public PublicMessageDecryption(IComputeMAC cmac, IPublicMessageCipher cipher, int nonceLength, int macOff, int nonceOff, int textOff, int plainSize,
+                                   int tagOff, KeyHintIndex hintIndex) {
         this.calcMAC = cmac;
         this.cipher = cipher;
         this.nonceLength = nonceLength;
@@ -38,6 +74,31 @@ public class PublicMessageDecryption {
         this.nonceOffset = nonceOff;
         this.textOffset = textOff;
         this.plainSize = plainSize;
+        macBuffer = new byte[cmac.length()];
+        cipherIV = new byte[cipher.getNonceLength()];
+        header = new byte[textOff];
+        tagOffset = tagOff;
+        this.hintIndex = tagOff == -1 ? null : hintIndex;
+    }
+
+    /**
+     * Lets key contexts be tried on several threads if there are at least the specified number of
+     * them. Smaller key sets are still searched on the calling thread only, so they do not pay the
+     * cost of coordinating the threads. Has no effect in key hint mode or on single core devices.
+     *
+     * @param threshold The minimum number of key contexts to search in parallel or 0 to disable
+     *                  parallel search.
+     */
+    public void setParallelThreshold(int threshold) {
+        int threadCount = Runtime.getRuntime().availableProcessors();
+        if (threshold > 0 && threadCount > 1 && hintIndex == null) {
+            if (parallelSearch == null) {
+                parallelSearch = new ParallelKeySearch(calcMAC, threadCount, macOffset, nonceOffset, textOffset);
+            }
+            parallelThreshold = threshold;
+        } else {
+            parallelSearch = null;
+        }
     }
 
     /**
@@ -101,4 +162,139 @@ public class PublicMessageDecryption {
         }
         return result;
     }
+
+    /**
+     * Tries to decrypt the passed in ciphertext with prepared key contexts. Unlike
+     * {@link #decrypt(byte[], Collection)} this does not set up the MAC key for every tried key.
+     * If the ciphertext cannot be decrypted with one of the contexts, null is returned.
+     *
+     * @param ciphertext  cipher text that gets decrypted
+     * @param keyContexts key contexts that will be tried for decryption
+     * @return returns the decrypted byte array that is also cut down to
+     * the actual payload
+     */
+    public byte[] decrypt(byte[] ciphertext, IGroupKeyContext[] keyContexts) {
+        GroupKeyContext context = findKeyContext(ciphertext, keyContexts);
+        if (context == null) return null;
+
+        byte[] result = new byte[plainSize];
+        decipher(ciphertext, context, result, 0);
+        return result;
+    }
+
+    /**
+     * Tries to decrypt the passed in ciphertext with prepared key contexts and writes the payload
+     * into the passed in buffer. Nothing is allocated if no context matches.
+     *
+     * @param ciphertext  cipher text that gets decrypted
+     * @param keyContexts key contexts that will be tried for decryption
+     * @param buffer      buffer that receives the payload
+     * @param offset      start index of the payload in the buffer
+     * @return returns the matching key context or null if the ciphertext could not be decrypted
+     */
+    public IGroupKeyContext decryptInto(byte[] ciphertext, IGroupKeyContext[] keyContexts, byte[] buffer, int offset) {
+        GroupKeyContext context = findKeyContext(ciphertext, keyContexts);
+        if (context != null) decipher(ciphertext, context, buffer, offset);
+        return context;
+    }
+
+    /**
+     * Same as {@link #decryptInto(byte[], IGroupKeyContext[], byte[], int)}, but reads the
+     * ciphertext from the remaining bytes of a buffer, which may be a direct buffer. Only the part
+     * in front of the payload is copied, the payload itself is read in place. The position of the
+     * buffer is not changed.
+     *
+     * @param ciphertext  buffer containing the cipher text between position and limit
+     * @param keyContexts key contexts that will be tried for decryption
+     * @param buffer      buffer that receives the payload
+     * @param offset      start index of the payload in the buffer
+     * @return returns the matching key context or null if the ciphertext could not be decrypted
+     */
+    public IGroupKeyContext decryptInto(ByteBuffer ciphertext, IGroupKeyContext[] keyContexts, byte[] buffer, int offset) {
+        int start = ciphertext.position();
+        int textLength = ciphertext.remaining() - textOffset;
+        if (textLength < 0) return null;
+        for (int i = 0; i < textOffset; ++i) header[i] = ciphertext.get(start + i);
+
+        GroupKeyContext context = findKeyContext(header, ciphertext, start + textOffset, textLength, keyContexts);
+        if (context != null) {
+            System.arraycopy(header, nonceOffset, cipherIV, 0, cipherIV.length);
+            cipher.doFinalOptimized(cipherIV, context.getCipherKey(), ciphertext, start + textOffset, textLength,
+                    buffer, offset);
+        }
+        return context;
+    }
+
+    /**
+     * Searches the key context whose MAC matches the one of the ciphertext.
+     *
+     * @return the matching key context or null if there is none
+     */
+    private GroupKeyContext findKeyContext(byte[] ciphertext, IGroupKeyContext[] keyContexts) {
+        return findKeyContext(ciphertext, null, textOffset, ciphertext.length - textOffset, keyContexts);
+    }
+
+    /**
+     * Searches the key context whose MAC matches the one in the header. The payload is read from
+     * text starting at the absolute index textStart or, if text is null, from the header array.
+     *
+     * @return the matching key context or null if there is none
+     */
+    private GroupKeyContext findKeyContext(byte[] header, ByteBuffer text, int textStart, int textLength,
+                                           IGroupKeyContext[] keyContexts) {
+        if (hintIndex != null) return findKeyContextByTag(header, text, textStart, textLength, keyContexts);
+        if (parallelSearch != null && keyContexts.length >= parallelThreshold) {
+            return parallelSearch.find(header, text, textStart, textLength, keyContexts);
+        }
+
+        //for every key context
+        for (IGroupKeyContext keyContext : keyContexts) {
+            GroupKeyContext context = (GroupKeyContext) keyContext;
+            //calculate the mac of the cipher text using the nonce from the input
+            computeMAC(context.getMACContext(), header, text, textStart, textLength);
+            //if macs equal, the right key was found
+            if (macsEqual(macBuffer, header, macOffset)) return context;
+        }
+        return null;
+    }
+
+    /**
+     * Checks only the MACs of the key contexts the tag of the ciphertext belongs to.
+     *
+     * @return the matching key context or null if there is none
+     */
+    private GroupKeyContext findKeyContextByTag(byte[] header, ByteBuffer text, int textStart, int textLength,
+                                                IGroupKeyContext[] keyContexts) {
+        int tag = KeyHints.readTag(header, tagOffset);
+        KeyHintIndex.Table table = hintIndex.getTable(keyContexts);
+        //for every key context with this tag (usually at most one)
+        for (int i = table.find(tag); i != -1; i = table.findNext(tag, i)) {
+            GroupKeyContext context = (GroupKeyContext) table.getContext(i);
+            computeMAC(context.getMACContext(), header, text, textStart, textLength);
+            if (macsEqual(macBuffer, header, macOffset)) return context;
+        }
+        return null;
+    }
+
+    /**
+     * Computes the MAC of the payload into macBuffer. The payload is in the header array if text
+     * is null.
+     */
+    private void computeMAC(IMACKeyContext context, byte[] header, ByteBuffer text, int textStart, int textLength) {
+        if (text == null) {
+            context.computeMAC(header, nonceOffset, header, textStart, textLength, macBuffer, 0);
+        } else {
+            context.computeMAC(header, nonceOffset, text, textStart, textLength, macBuffer, 0);
+        }
+    }
+
+    /**
+     * Decrypts the payload of the ciphertext with the cipher key of the context.
+     */
+    private void decipher(byte[] ciphertext, GroupKeyContext context, byte[] buffer, int offset) {
+        //get the cipher nonce directly from the input
+        System.arraycopy(ciphertext, nonceOffset, cipherIV, 0, cipherIV.length);
+        //decrypt the packet
+        cipher.doFinalOptimized(cipherIV, context.getCipherKey(), ciphertext, textOffset, buffer, offset);
+    }
 }
@@ -10,7 +10,8 @@ import de.tu_darmstadt.adtn.ciphersuite.ciphers.IPublicMessageCipher;
 import de.tu_darmstadt.adtn.ciphersuite.hashes.IComputeMAC;
 
 /**
- * Tries to encrypt a byte array with every passed in key.
+ * Tries to encrypt a byte array with every passed in key. Reuses internal buffers, so an instance
+ * must not be used by several threads at once.
  */
 public class PublicMessageEncryption {
 
@@ -21,6 +22,12 @@ public class PublicMessageEncryption {
     private IComputeMAC calcMAC;
     private IPublicMessageCipher cipher;
     private INonceGenerator nonceGenerator;
+    private final int tagOffset;
+    private final KeyHints hints;
+
+    // Reused for every encryption
+    private final byte[] iv;
+    private final byte[] cipherIV;
 
     /**
      * @param cmac       An instance of IComputeMAC that can calculate message authentication codes
@@ -32,6 +39,20 @@ public class PublicMessageEncryption {
      * @param cipherSize the current cipher text size
      */
     public PublicMessageEncryption(IComputeMAC cmac, IPublicMessageCipher cipher, INonceGenerator nG, int macOff, int nonceOff, int textOff, int cipherSize) {
+        this(cmac, cipher, nG, macOff, nonceOff, textOff, cipherSize, -1);
+    }
+
+    /**
+     * @param cmac       An instance of IComputeMAC that can calculate message authentication codes
+     * @param cipher     An IPublicMessageCipher instance that is set to decrypt something
+     * @param nG         An INonceGenerator instance to generate a nonce
+     * @param macOff     the current starting index of the cipher text's MAC
+     * @param nonceOff   the current starting index of the cipher text's nonce
+     * @param textOff    the current starting index of the cipher text's payload
+     * @param cipherSize the current cipher text size
+     * @param tagOff     the starting index of the cipher text's key hint tag or -1 to not add tags
+     */
+    public PublicMessageEncryption(IComputeMAC cmac, IPublicMessageCipher cipher, INonceGenerator nG, int macOff, int nonceOff, int textOff, int cipherSize, int tagOff) {
         this.calcMAC = cmac;
         this.cipher = cipher;
         this.nonceGenerator = nG;
@@ -39,17 +60,10 @@ public class PublicMessageEncryption {
         this.nonceOffset = nonceOff;
         this.textOffset = textOff;
         this.cipherSize = cipherSize;
-    }
-
-    /**
-     * Reads the cipher iv from the whole iv.
-     *
-     * @return
-     */
-    private byte[] getCipherIV(byte[] ivbytes) {
-        byte[] result = new byte[cipher.getNonceLength()];
-        System.arraycopy(ivbytes, 0, result, 0, result.length);
-        return result;
+        this.tagOffset = tagOff;
+        hints = tagOff == -1 ? null : new KeyHints();
+        iv = new byte[textOff - nonceOff];
+        cipherIV = new byte[cipher.getNonceLength()];
     }
 
     /**
@@ -68,15 +82,19 @@ public class PublicMessageEncryption {
             //construct a new array with the correct size
             byte[] resultbuffer = new byte[cipherSize];
             //generate a nonce
-            byte[] iv = nonceGenerator.generateNonce();
+            nonceGenerator.generateNonce(iv, 0);
             //get the nonce for the cipher
-            byte[] cipherIV = getCipherIV(iv);
+            System.arraycopy(iv, 0, cipherIV, 0, cipherIV.length);
             //encrypt the array
             cipher.doFinalOptimized(cipherIV, ((IGroupKey) key).getCipherKey(), plaintext, 0, resultbuffer, textOffset);
             //compute mac and write it into the array
             calcMAC.computeMAC(iv, ((IGroupKey) key).getMACKey(), resultbuffer, textOffset, resultbuffer, macOffset);
             //write iv into the array
             System.arraycopy(iv, 0, resultbuffer, nonceOffset, iv.length);
+            //write key hint tag into the array
+            if (hints != null) {
+                KeyHints.writeTag(hints.nextTag(key), resultbuffer, tagOffset);
+            }
             //append encrypted array to the result
             result[i] = resultbuffer;
             ++i;
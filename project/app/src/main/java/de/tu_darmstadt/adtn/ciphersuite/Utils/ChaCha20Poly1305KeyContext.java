@@ -0,0 +1,51 @@
+package de.tu_darmstadt.adtn.ciphersuite.Utils;
+
+import javax.crypto.SecretKey;
+
+import de.tu_darmstadt.adtn.ciphersuite.ciphers.ChaCha20;
+
+/**
+ * Key context for a key of the ChaCha20-Poly1305 group cipher. Holds the expanded ChaCha20 key and
+ * the key hint key if the cipher uses key hints. Immutable.
+ */
+public class ChaCha20Poly1305KeyContext implements IGroupKeyContext {
+
+    private final SecretKey key;
+    private final int[] keyWords;
+    private final byte[] hintKey;
+
+    public ChaCha20Poly1305KeyContext(SecretKey key, byte[] hintKey) {
+        this.key = key;
+        this.keyWords = ChaCha20.expandKey(key.getEncoded(), 0);
+        this.hintKey = hintKey;
+    }
+
+    /**
+     * Returns the key this context was created for
+     *
+     * @return
+     */
+    @Override
+    public SecretKey getKey() {
+        return key;
+    }
+
+    /**
+     * Getter for the expanded key
+     *
+     * @return
+     */
+    public int[] getKeyWords() {
+        return keyWords;
+    }
+
+    /**
+     * Getter for the key hint key
+     *
+     * @return The hint key or null if the context was not created in key hint mode.
+     */
+    @Override
+    public byte[] getHintKey() {
+        return hintKey;
+    }
+}
@@ -0,0 +1,64 @@
+package de.tu_darmstadt.adtn.ciphersuite.Utils;
+
+import javax.crypto.SecretKey;
+
+import de.tu_darmstadt.adtn.ciphersuite.hashes.IMACKeyContext;
+
+/**
+ * Key context for a group key as used by the group cipher suite. Holds the MAC state precomputed
+ * for the MAC part of the key and the key hint key if the suite uses key hints.
+ */
+public class GroupKeyContext implements IGroupKeyContext {
+
+    private final SecretKey key;
+    private final IMACKeyContext macContext;
+    private final byte[] hintKey;
+
+    public GroupKeyContext(SecretKey key, IMACKeyContext macContext) {
+        this(key, macContext, null);
+    }
+
+    public GroupKeyContext(SecretKey key, IMACKeyContext macContext, byte[] hintKey) {
+        this.key = key;
+        this.macContext = macContext;
+        this.hintKey = hintKey;
+    }
+
+    /**
+     * Returns the key this context was created for
+     *
+     * @return
+     */
+    @Override
+    public SecretKey getKey() {
+        return key;
+    }
+
+    /**
+     * Getter for the cipher key
+     *
+     * @return
+     */
+    public SecretKey getCipherKey() {
+        return ((IGroupKey) key).getCipherKey();
+    }
+
+    /**
+     * Getter for the precomputed MAC state
+     *
+     * @return
+     */
+    public IMACKeyContext getMACContext() {
+        return macContext;
+    }
+
+    /**
+     * Getter for the key hint key
+     *
+     * @return The hint key or null if the context was not created in key hint mode.
+     */
+    @Override
+    public byte[] getHintKey() {
+        return hintKey;
+    }
+}
@@ -0,0 +1,25 @@
+package de.tu_darmstadt.adtn.ciphersuite.Utils;
+
+import javax.crypto.SecretKey;
+
+/**
+ * A group key together with the state a group cipher precomputed for it. Key contexts are created
+ * by {@link de.tu_darmstadt.adtn.ciphersuite.IGroupCipher#createKeyContext(SecretKey)} and can
+ * only be used with the cipher that created them.
+ */
+public interface IGroupKeyContext {
+
+    /**
+     * Returns the key this context was created for
+     *
+     * @return
+     */
+    SecretKey getKey();
+
+    /**
+     * Getter for the key hint key
+     *
+     * @return The hint key or null if the context was not created in key hint mode.
+     */
+    byte[] getHintKey();
+}
@@ -0,0 +1,193 @@
+package de.tu_darmstadt.adtn.ciphersuite.ciphers;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The ChaCha20 stream cipher with 96 bit nonce and 32 bit block counter as specified in RFC 7539.
+ * Spongy Castle only offers the original variant with 64 bit nonce. Keys are expanded once with
+ * {@link #expandKey(byte[], int)}, so switching between keys does not cost anything. Does not
+ * allocate memory after construction. Instances are not thread-safe.
+ */
+public class ChaCha20 {
+
+    public final static int KEY_SIZE = 32;
+    public final static int NONCE_SIZE = 12;
+    public final static int BLOCK_SIZE = 64;
+
+    // "expand 32-byte k"
+    private final static int SIGMA0 = 0x61707865, SIGMA1 = 0x3320646e, SIGMA2 = 0x79622d32, SIGMA3 = 0x6b206574;
+
+    private final int[] state = new int[16];
+    private final byte[] keystream = new byte[BLOCK_SIZE];
+
+    /**
+     * Converts a key to the words used by the cipher state.
+     *
+     * @param key    Array containing the key.
+     * @param offset Start index of the 32 byte key.
+     * @return The expanded key.
+     */
+    public static int[] expandKey(byte[] key, int offset) {
+        int[] words = new int[KEY_SIZE / 4];
+        expandKey(key, offset, words);
+        return words;
+    }
+
+    /**
+     * Converts a key to the words used by the cipher state without allocating memory.
+     *
+     * @param key    Array containing the key.
+     * @param offset Start index of the 32 byte key.
+     * @param words  Array of 8 ints that will hold the expanded key.
+     */
+    public static void expandKey(byte[] key, int offset, int[] words) {
+        for (int i = 0; i < KEY_SIZE / 4; ++i) words[i] = littleEndianToInt(key, offset + 4 * i);
+    }
+
+    /**
+     * Sets key and nonce.
+     *
+     * @param keyWords    The key as returned by {@link #expandKey(byte[], int)}.
+     * @param nonce       Array containing the nonce.
+     * @param nonceOffset Start index of the 12 byte nonce.
+     */
+    public void init(int[] keyWords, byte[] nonce, int nonceOffset) {
+        state[0] = SIGMA0;
+        state[1] = SIGMA1;
+        state[2] = SIGMA2;
+        state[3] = SIGMA3;
+        System.arraycopy(keyWords, 0, state, 4, 8);
+        state[13] = littleEndianToInt(nonce, nonceOffset);
+        state[14] = littleEndianToInt(nonce, nonceOffset + 4);
+        state[15] = littleEndianToInt(nonce, nonceOffset + 8);
+    }
+
+    /**
+     * Writes a single keystream block.
+     *
+     * @param counter The block counter.
+     * @param buffer  Buffer that will hold the keystream.
+     * @param offset  Start index of the 64 byte block in the buffer.
+     */
+    public void keystreamBlock(int counter, byte[] buffer, int offset) {
+        state[12] = counter;
+        computeBlock(buffer, offset);
+    }
+
+    /**
+     * Encrypts or decrypts data by XORing it with the keystream.
+     *
+     * @param counter      The block counter of the first block.
+     * @param input        Array containing the input.
+     * @param inputOffset  Start index of the input.
+     * @param length       Length of the input in bytes.
+     * @param output       Buffer that will hold the output. May be the input array.
+     * @param outputOffset Start index of the output.
+     */
+    public void process(int counter, byte[] input, int inputOffset, int length, byte[] output, int outputOffset) {
+        for (int done = 0; done < length; done += BLOCK_SIZE) {
+            keystreamBlock(counter++, keystream, 0);
+            int blockLength = Math.min(BLOCK_SIZE, length - done);
+            for (int i = 0; i < blockLength; ++i) {
+                output[outputOffset + done + i] = (byte) (input[inputOffset + done + i] ^ keystream[i]);
+            }
+        }
+    }
+
+    /**
+     * Same as {@link #process(int, byte[], int, int, byte[], int)}, but reads the input from a
+     * buffer, which may be a direct buffer. Position and limit of the buffer are not used or
+     * changed.
+     *
+     * @param counter      The block counter of the first block.
+     * @param input        Buffer containing the input.
+     * @param inputOffset  Absolute index of the input in the buffer.
+     * @param length       Length of the input in bytes.
+     * @param output       Buffer that will hold the output.
+     * @param outputOffset Start index of the output.
+     */
+    public void process(int counter, ByteBuffer input, int inputOffset, int length, byte[] output, int outputOffset) {
+        for (int done = 0; done < length; done += BLOCK_SIZE) {
+            keystreamBlock(counter++, keystream, 0);
+            int blockLength = Math.min(BLOCK_SIZE, length - done);
+            for (int i = 0; i < blockLength; ++i) {
+                output[outputOffset + done + i] = (byte) (input.get(inputOffset + done + i) ^ keystream[i]);
+            }
+        }
+    }
+
+    // Runs the 20 rounds on a copy of the state and writes the sum of state and result
+    private void computeBlock(byte[] buffer, int offset) {
+        int x0 = state[0], x1 = state[1], x2 = state[2], x3 = state[3];
+        int x4 = state[4], x5 = state[5], x6 = state[6], x7 = state[7];
+        int x8 = state[8], x9 = state[9], x10 = state[10], x11 = state[11];
+        int x12 = state[12], x13 = state[13], x14 = state[14], x15 = state[15];
+
+        for (int i = 0; i < 10; ++i) {
+            // Column round
+            x0 += x4; x12 = Integer.rotateLeft(x12 ^ x0, 16);
+            x8 += x12; x4 = Integer.rotateLeft(x4 ^ x8, 12);
+            x0 += x4; x12 = Integer.rotateLeft(x12 ^ x0, 8);
+            x8 += x12; x4 = Integer.rotateLeft(x4 ^ x8, 7);
+            x1 += x5; x13 = Integer.rotateLeft(x13 ^ x1, 16);
+            x9 += x13; x5 = Integer.rotateLeft(x5 ^ x9, 12);
+            x1 += x5; x13 = Integer.rotateLeft(x13 ^ x1, 8);
+            x9 += x13; x5 = Integer.rotateLeft(x5 ^ x9, 7);
+            x2 += x6; x14 = Integer.rotateLeft(x14 ^ x2, 16);
+            x10 += x14; x6 = Integer.rotateLeft(x6 ^ x10, 12);
+            x2 += x6; x14 = Integer.rotateLeft(x14 ^ x2, 8);
+            x10 += x14; x6 = Integer.rotateLeft(x6 ^ x10, 7);
+            x3 += x7; x15 = Integer.rotateLeft(x15 ^ x3, 16);
+            x11 += x15; x7 = Integer.rotateLeft(x7 ^ x11, 12);
+            x3 += x7; x15 = Integer.rotateLeft(x15 ^ x3, 8);
+            x11 += x15; x7 = Integer.rotateLeft(x7 ^ x11, 7);
+
+            // Diagonal round
+            x0 += x5; x15 = Integer.rotateLeft(x15 ^ x0, 16);
+            x10 += x15; x5 = Integer.rotateLeft(x5 ^ x10, 12);
+            x0 += x5; x15 = Integer.rotateLeft(x15 ^ x0, 8);
+            x10 += x15; x5 = Integer.rotateLeft(x5 ^ x10, 7);
+            x1 += x6; x12 = Integer.rotateLeft(x12 ^ x1, 16);
+            x11 += x12; x6 = Integer.rotateLeft(x6 ^ x11, 12);
+            x1 += x6; x12 = Integer.rotateLeft(x12 ^ x1, 8);
+            x11 += x12; x6 = Integer.rotateLeft(x6 ^ x11, 7);
+            x2 += x7; x13 = Integer.rotateLeft(x13 ^ x2, 16);
+            x8 += x13; x7 = Integer.rotateLeft(x7 ^ x8, 12);
+            x2 += x7; x13 = Integer.rotateLeft(x13 ^ x2, 8);
+            x8 += x13; x7 = Integer.rotateLeft(x7 ^ x8, 7);
+            x3 += x4; x14 = Integer.rotateLeft(x14 ^ x3, 16);
+            x9 += x14; x4 = Integer.rotateLeft(x4 ^ x9, 12);
+            x3 += x4; x14 = Integer.rotateLeft(x14 ^ x3, 8);
+            x9 += x14; x4 = Integer.rotateLeft(x4 ^ x9, 7);
+        }
+
+        intToLittleEndian(x0 + state[0], buffer, offset);
+        intToLittleEndian(x1 + state[1], buffer, offset + 4);
+        intToLittleEndian(x2 + state[2], buffer, offset + 8);
+        intToLittleEndian(x3 + state[3], buffer, offset + 12);
+        intToLittleEndian(x4 + state[4], buffer, offset + 16);
+        intToLittleEndian(x5 + state[5], buffer, offset + 20);
+        intToLittleEndian(x6 + state[6], buffer, offset + 24);
+        intToLittleEndian(x7 + state[7], buffer, offset + 28);
+        intToLittleEndian(x8 + state[8], buffer, offset + 32);
+        intToLittleEndian(x9 + state[9], buffer, offset + 36);
+        intToLittleEndian(x10 + state[10], buffer, offset + 40);
+        intToLittleEndian(x11 + state[11], buffer, offset + 44);
+        intToLittleEndian(x12 + state[12], buffer, offset + 48);
+        intToLittleEndian(x13 + state[13], buffer, offset + 52);
+        intToLittleEndian(x14 + state[14], buffer, offset + 56);
+        intToLittleEndian(x15 + state[15], buffer, offset + 60);
+    }
+
+    private static int littleEndianToInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff) | (bytes[offset + 1] & 0xff) << 8 |
+                (bytes[offset + 2] & 0xff) << 16 | bytes[offset + 3] << 24;
+    }
+
+    private static void intToLittleEndian(int value, byte[] bytes, int offset) {
+        bytes[offset] = (byte) value;
+        bytes[offset + 1] = (byte) (value >>> 8);
+        bytes[offset + 2] = (byte) (value >>> 16);
+        bytes[offset + 3] = (byte) (value >>> 24);
+    }
+}
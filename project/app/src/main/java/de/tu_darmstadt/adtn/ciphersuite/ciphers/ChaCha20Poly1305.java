@@ -0,0 +1,148 @@
+package de.tu_darmstadt.adtn.ciphersuite.ciphers;
+
+import java.nio.ByteBuffer;
+
+import de.tu_darmstadt.adtn.ciphersuite.hashes.Poly1305State;
+
+/**
+ * The ChaCha20 and Poly1305 AEAD construction of RFC 7539. The one-time Poly1305 key is taken from
+ * the first keystream block, so encryption and authentication use a single key and a single pass
+ * of ChaCha20. Does not allocate memory after construction. Instances are not thread-safe.
+ */
+public class ChaCha20Poly1305 {
+
+    public final static int KEY_SIZE = ChaCha20.KEY_SIZE;
+    public final static int NONCE_SIZE = ChaCha20.NONCE_SIZE;
+    public final static int TAG_SIZE = Poly1305State.BLOCK_SIZE;
+
+    private final ChaCha20 chaCha = new ChaCha20();
+    private final Poly1305State poly = new Poly1305State();
+
+    // First keystream block holding the one-time Poly1305 key (r followed by s)
+    private final byte[] polyKeyBlock = new byte[ChaCha20.BLOCK_SIZE];
+
+    private final byte[] lengthBlock = new byte[Poly1305State.BLOCK_SIZE];
+    private final byte[] computedTag = new byte[TAG_SIZE];
+
+    /**
+     * Encrypts a plaintext and computes its authentication tag.
+     *
+     * @param keyWords    The key as returned by {@link ChaCha20#expandKey(byte[], int)}.
+     * @param nonce       Array containing the nonce.
+     * @param nonceOffset Start index of the 12 byte nonce.
+     * @param aad         Array containing additional authenticated data. May be null if aadLength is 0.
+     * @param aadOffset   Start index of the additional authenticated data.
+     * @param aadLength   Length of the additional authenticated data in bytes.
+     * @param text        Array containing the plaintext.
+     * @param textOffset  Start index of the plaintext.
+     * @param textLength  Length of the plaintext in bytes.
+     * @param out         Buffer that will hold the ciphertext.
+     * @param outOffset   Start index of the ciphertext.
+     * @param tag         Buffer that will hold the tag.
+     * @param tagOffset   Start index of the tag.
+     */
+    public void encrypt(int[] keyWords, byte[] nonce, int nonceOffset, byte[] aad, int aadOffset, int aadLength,
+                        byte[] text, int textOffset, int textLength, byte[] out, int outOffset,
+                        byte[] tag, int tagOffset) {
+        init(keyWords, nonce, nonceOffset);
+        chaCha.process(1, text, textOffset, textLength, out, outOffset);
+        computeTag(aad, aadOffset, aadLength, out, outOffset, textLength, tag, tagOffset);
+    }
+
+    /**
+     * Checks the authentication tag of a ciphertext. The ciphertext is only decrypted if the tag
+     * is valid.
+     *
+     * @param keyWords    The key as returned by {@link ChaCha20#expandKey(byte[], int)}.
+     * @param nonce       Array containing the nonce.
+     * @param nonceOffset Start index of the 12 byte nonce.
+     * @param aad         Array containing additional authenticated data. May be null if aadLength is 0.
+     * @param aadOffset   Start index of the additional authenticated data.
+     * @param aadLength   Length of the additional authenticated data in bytes.
+     * @param text        Array containing the ciphertext.
+     * @param textOffset  Start index of the ciphertext.
+     * @param textLength  Length of the ciphertext in bytes.
+     * @param tag         Array containing the tag.
+     * @param tagOffset   Start index of the tag.
+     * @param out         Buffer that will hold the plaintext.
+     * @param outOffset   Start index of the plaintext.
+     * @return true if the tag was valid and the ciphertext got decrypted or false otherwise.
+     */
+    public boolean decrypt(int[] keyWords, byte[] nonce, int nonceOffset, byte[] aad, int aadOffset, int aadLength,
+                           byte[] text, int textOffset, int textLength, byte[] tag, int tagOffset,
+                           byte[] out, int outOffset) {
+        init(keyWords, nonce, nonceOffset);
+        computeTag(aad, aadOffset, aadLength, text, textOffset, textLength, computedTag, 0);
+        if (!tagsEqual(tag, tagOffset)) return false;
+
+        chaCha.process(1, text, textOffset, textLength, out, outOffset);
+        return true;
+    }
+
+    /**
+     * Same as {@link #decrypt(int[], byte[], int, byte[], int, int, byte[], int, int, byte[], int, byte[], int)},
+     * but reads the ciphertext from a buffer, which may be a direct buffer. Position and limit of
+     * the buffer are not used or changed.
+     *
+     * @param keyWords    The key as returned by {@link ChaCha20#expandKey(byte[], int)}.
+     * @param nonce       Array containing the nonce.
+     * @param nonceOffset Start index of the 12 byte nonce.
+     * @param aad         Array containing additional authenticated data. May be null if aadLength is 0.
+     * @param aadOffset   Start index of the additional authenticated data.
+     * @param aadLength   Length of the additional authenticated data in bytes.
+     * @param text        Buffer containing the ciphertext.
+     * @param textOffset  Absolute index of the ciphertext in the buffer.
+     * @param textLength  Length of the ciphertext in bytes.
+     * @param tag         Array containing the tag.
+     * @param tagOffset   Start index of the tag.
+     * @param out         Buffer that will hold the plaintext.
+     * @param outOffset   Start index of the plaintext.
+     * @return true if the tag was valid and the ciphertext got decrypted or false otherwise.
+     */
+    public boolean decrypt(int[] keyWords, byte[] nonce, int nonceOffset, byte[] aad, int aadOffset, int aadLength,
+                           ByteBuffer text, int textOffset, int textLength, byte[] tag, int tagOffset,
+                           byte[] out, int outOffset) {
+        init(keyWords, nonce, nonceOffset);
+        if (aadLength > 0) poly.processPadded(aad, aadOffset, aadLength);
+        poly.processPadded(text, textOffset, textLength);
+        finishTag(aadLength, textLength, computedTag, 0);
+        if (!tagsEqual(tag, tagOffset)) return false;
+
+        chaCha.process(1, text, textOffset, textLength, out, outOffset);
+        return true;
+    }
+
+    // Sets key and nonce and derives the one-time Poly1305 key from the first keystream block
+    private void init(int[] keyWords, byte[] nonce, int nonceOffset) {
+        chaCha.init(keyWords, nonce, nonceOffset);
+        chaCha.keystreamBlock(0, polyKeyBlock, 0);
+        poly.init(polyKeyBlock, 0);
+    }
+
+    // MAC over aad | pad | ciphertext | pad | aad length | ciphertext length
+    private void computeTag(byte[] aad, int aadOffset, int aadLength, byte[] text, int textOffset,
+                            int textLength, byte[] tag, int tagOffset) {
+        if (aadLength > 0) poly.processPadded(aad, aadOffset, aadLength);
+        poly.processPadded(text, textOffset, textLength);
+        finishTag(aadLength, textLength, tag, tagOffset);
+    }
+
+    // Processes the length block and writes the tag
+    private void finishTag(int aadLength, int textLength, byte[] tag, int tagOffset) {
+        longToLittleEndian(aadLength, lengthBlock, 0);
+        longToLittleEndian(textLength, lengthBlock, 8);
+        poly.processPadded(lengthBlock, 0, lengthBlock.length);
+        poly.finish(polyKeyBlock, Poly1305State.BLOCK_SIZE, tag, tagOffset);
+    }
+
+    // Compares the computed tag with the expected one in constant time
+    private boolean tagsEqual(byte[] tag, int tagOffset) {
+        int difference = 0;
+        for (int i = 0; i < TAG_SIZE; ++i) difference |= computedTag[i] ^ tag[tagOffset + i];
+        return difference == 0;
+    }
+
+    private static void longToLittleEndian(long value, byte[] bytes, int offset) {
+        for (int i = 0; i < 8; ++i) bytes[offset + i] = (byte) (value >>> 8 * i);
+    }
+}
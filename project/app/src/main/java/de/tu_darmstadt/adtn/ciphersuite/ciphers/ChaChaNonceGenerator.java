@@ -0,0 +1,98 @@
+package de.tu_darmstadt.adtn.ciphersuite.ciphers;
+
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+/**
+ * Nonce generator backed by a deterministic random bit generator built from ChaCha20. The
+ * generator is seeded once from SecureRandom and then produces keystream blocks into a large
+ * internal buffer, from which nonces are copied into caller-supplied arrays. After every refill the
+ * first 32 bytes of the new keystream become the next key and handed out bytes are erased, so
+ * earlier nonces cannot be recovered from the state ("fast key erasure"). Thread-safe.
+ */
+public class ChaChaNonceGenerator implements INonceGenerator {
+
+    private final static int BLOCK_COUNT = 64;
+    private final static byte[] ZERO_NONCE = new byte[ChaCha20.NONCE_SIZE];
+
+    private final int length;
+    private final ChaCha20 chaCha = new ChaCha20();
+    private final int[] keyWords = new int[ChaCha20.KEY_SIZE / 4];
+    private final byte[] buffer = new byte[BLOCK_COUNT * ChaCha20.BLOCK_SIZE];
+
+    // Index of the next unused byte in the buffer
+    private int position;
+
+    /**
+     * Creates a new ChaChaNonceGenerator object.
+     *
+     * @param length The length of the generated nonces in bytes.
+     */
+    public ChaChaNonceGenerator(int length) {
+        this(length, new SecureRandom());
+    }
+
+    /**
+     * Creates a new ChaChaNonceGenerator object.
+     *
+     * @param length The length of the generated nonces in bytes.
+     * @param seedSource Source of the 32 byte seed.
+     */
+    public ChaChaNonceGenerator(int length, SecureRandom seedSource) {
+        if (length < 1) throw new IllegalArgumentException("length must be positive");
+        this.length = length;
+
+        byte[] seed = new byte[ChaCha20.KEY_SIZE];
+        seedSource.nextBytes(seed);
+        ChaCha20.expandKey(seed, 0, keyWords);
+        Arrays.fill(seed, (byte) 0);
+        position = buffer.length;
+    }
+
+    /**
+     * Returns the length of this nonce
+     *
+     * @return int
+     */
+    @Override
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte[] generateNonce() {
+        byte[] nonce = new byte[length];
+        generateNonce(nonce, 0);
+        return nonce;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void generateNonce(byte[] buffer, int offset) {
+        int done = 0;
+        while (done < length) {
+            if (position == this.buffer.length) refill();
+            int count = Math.min(length - done, this.buffer.length - position);
+            System.arraycopy(this.buffer, position, buffer, offset + done, count);
+            Arrays.fill(this.buffer, position, position + count, (byte) 0);
+            position += count;
+            done += count;
+        }
+    }
+
+    // Fills the buffer with keystream and replaces the key with its first 32 bytes
+    private void refill() {
+        chaCha.init(keyWords, ZERO_NONCE, 0);
+        for (int i = 0; i < BLOCK_COUNT; ++i) {
+            chaCha.keystreamBlock(i, buffer, i * ChaCha20.BLOCK_SIZE);
+        }
+        ChaCha20.expandKey(buffer, 0, keyWords);
+        Arrays.fill(buffer, 0, ChaCha20.KEY_SIZE, (byte) 0);
+        position = ChaCha20.KEY_SIZE;
+    }
+}
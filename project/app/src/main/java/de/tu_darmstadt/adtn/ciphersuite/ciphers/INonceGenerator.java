@@ -13,6 +13,14 @@ public interface INonceGenerator {
      */
     byte[] generateNonce();
 
+    /**
+     * Generates a nonce into a caller-supplied array without allocating memory.
+     *
+     * @param buffer Buffer that will hold the nonce.
+     * @param offset Start index of the {@link #getLength()} bytes of the nonce in the buffer.
+     */
+    void generateNonce(byte[] buffer, int offset);
+
     /**
      * Returns the length of this nonce
      *
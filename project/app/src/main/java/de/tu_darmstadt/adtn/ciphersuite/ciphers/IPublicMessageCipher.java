@@ -1,5 +1,7 @@
 package de.tu_darmstadt.adtn.ciphersuite.ciphers;
 
+import java.nio.ByteBuffer;
+
 import javax.crypto.SecretKey;
 
 /**
@@ -25,6 +27,22 @@ public interface IPublicMessageCipher {
      */
     void doFinalOptimized(byte[] ivBytes, SecretKey key, byte[] text, int textOffset, byte[] outBuffer, int outOffset);
 
+    /**
+     * Same as {@link #doFinalOptimized(byte[], SecretKey, byte[], int, byte[], int)}, but reads
+     * the text from a buffer, which may be a direct buffer. Position and limit of the buffer are
+     * not used or changed.
+     *
+     * @param ivBytes    Initialisation vector / nonce.
+     * @param key        Key.
+     * @param text       Buffer containing the plain text/cipher text.
+     * @param textOffset Absolute index of the text in the buffer.
+     * @param textLength Length of the text in bytes.
+     * @param outBuffer  Buffer into which the result is written.
+     * @param outOffset  Start index of the result.
+     */
+    void doFinalOptimized(byte[] ivBytes, SecretKey key, ByteBuffer text, int textOffset, int textLength,
+                          byte[] outBuffer, int outOffset);
+
     /**
      * Returns the nonce length for this specific cipher.
      *
@@ -0,0 +1,80 @@
+package de.tu_darmstadt.adtn.ciphersuite.ciphers;
+
+import java.nio.ByteBuffer;
+
+import javax.crypto.SecretKey;
+
+import de.tu_darmstadt.adtn.ciphersuite.NativeCrypto;
+
+/**
+ * Implements IPublicMessageCipher for ChaCha20 with 64 bit nonces using the native implementation
+ * in {@link NativeCrypto}. Produces the same output as the Spongy Castle "ChaCha" cipher, but
+ * needs no cipher initialisation per call. Encryption and decryption are the same operation.
+ * Instances are not thread-safe.
+ */
+public class NativeChaChaCipher implements IPublicMessageCipher {
+
+    private final static int KEY_OFFSET = 0;
+    private final static int NONCE_OFFSET = KEY_OFFSET + NativeCrypto.CHACHA_KEY_SIZE;
+    private final static int TEXT_OFFSET = NONCE_OFFSET + NativeCrypto.CHACHA_NONCE_SIZE;
+
+    // Direct buffer holding key, nonce and text, which is decrypted in place
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(TEXT_OFFSET + 1536);
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void doFinalOptimized(byte[] ivBytes, SecretKey key, byte[] text, int textOffset, byte[] outBuffer, int outOffset) {
+        int length = text.length - textOffset;
+        prepare(ivBytes, key, length);
+        buffer.put(text, textOffset, length);
+        process(length, outBuffer, outOffset);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void doFinalOptimized(byte[] ivBytes, SecretKey key, ByteBuffer text, int textOffset, int textLength,
+                                 byte[] outBuffer, int outOffset) {
+        prepare(ivBytes, key, textLength);
+        ByteBuffer input = text.duplicate();
+        input.limit(textOffset + textLength);
+        input.position(textOffset);
+        buffer.put(input); // No heap copy if the text is in a direct buffer
+        process(textLength, outBuffer, outOffset);
+    }
+
+    // Writes key and nonce to the buffer, which is grown if the text does not fit
+    private void prepare(byte[] ivBytes, SecretKey key, int length) {
+        byte[] keyBytes = key.getEncoded();
+        if (keyBytes.length != NativeCrypto.CHACHA_KEY_SIZE || ivBytes.length != NativeCrypto.CHACHA_NONCE_SIZE) {
+            throw new IllegalArgumentException("ChaCha needs a 32 byte key and an 8 byte nonce");
+        }
+
+        if (buffer.capacity() < TEXT_OFFSET + length) {
+            buffer = ByteBuffer.allocateDirect(TEXT_OFFSET + length);
+        }
+
+        buffer.clear();
+        buffer.put(keyBytes).put(ivBytes);
+    }
+
+    // Decrypts the text in place and copies the result
+    private void process(int length, byte[] outBuffer, int outOffset) {
+        NativeCrypto.chaCha20Xor(buffer, KEY_OFFSET, NONCE_OFFSET, TEXT_OFFSET, length, TEXT_OFFSET);
+        buffer.position(TEXT_OFFSET);
+        buffer.get(outBuffer, outOffset, length);
+    }
+
+    /**
+     * Returns the nonce length for this specific cipher.
+     *
+     * @return returns the length in bytes.
+     */
+    @Override
+    public int getNonceLength() {
+        return NativeCrypto.CHACHA_NONCE_SIZE;
+    }
+}
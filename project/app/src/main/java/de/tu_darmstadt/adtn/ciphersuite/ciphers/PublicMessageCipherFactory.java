@@ -5,8 +5,11 @@ import java.security.Provider;
 
 import javax.crypto.Cipher;
 
+import de.tu_darmstadt.adtn.ciphersuite.NativeCrypto;
+
 /**
- * Factory to create an IPublicMessageCipher instance. This factory uses Spongy Castle as service provider
+ * Factory to create an IPublicMessageCipher instance. This factory uses Spongy Castle as service provider,
+ * except for ChaCha with 64 bit nonces, which uses the native implementation if it is available.
  */
 public class PublicMessageCipherFactory {
 
@@ -19,6 +22,10 @@ public class PublicMessageCipherFactory {
      * @throws Exception
      */
     public static IPublicMessageCipher getPublicMessageCipherInstance(String algorithm, Ciphermode mode, int nonceLength) throws GeneralSecurityException {
+        if ("ChaCha".equals(algorithm) && nonceLength == NativeCrypto.CHACHA_NONCE_SIZE && NativeCrypto.isAvailable()) {
+            return new NativeChaChaCipher();
+        }
+
         Provider provider = new org.spongycastle.jce.provider.BouncyCastleProvider();
         if (mode == Ciphermode.ENCRYPT)
             return new PublicMessageCipherImpl(Cipher.getInstance(algorithm, provider), Cipher.ENCRYPT_MODE, nonceLength);
@@ -27,12 +34,12 @@ public class PublicMessageCipherFactory {
     }
 
     /**
-     * Instantiates and returns an INonceGenerator instance
+     * Instantiates and returns an INonceGenerator instance seeded from SecureRandom
      *
      * @param nonceLength Length of the nonce.
      * @return INonceGenerator.
      */
     public static INonceGenerator getNonceGenerator(int nonceLength) {
-        return new SimpleNonceGenerator(nonceLength);
+        return new ChaChaNonceGenerator(nonceLength);
     }
 }
@@ -1,5 +1,6 @@
 package de.tu_darmstadt.adtn.ciphersuite.ciphers;
 
+import java.nio.ByteBuffer;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.spec.AlgorithmParameterSpec;
@@ -57,6 +58,24 @@ public class PublicMessageCipherImpl implements IPublicMessageCipher {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void doFinalOptimized(byte[] ivBytes, SecretKey key, ByteBuffer text, int textOffset, int textLength,
+                                 byte[] outBuffer, int outOffset) {
+        // Work on a view, so the position and limit of the caller's buffer stay untouched
+        ByteBuffer input = text.duplicate();
+        input.limit(textOffset + textLength);
+        input.position(textOffset);
+        try {
+            cipher.init(mode, key, new IvParameterSpec(ivBytes));
+            cipher.doFinal(input, ByteBuffer.wrap(outBuffer, outOffset, textLength));
+        } catch (BadPaddingException | IllegalBlockSizeException | InvalidAlgorithmParameterException | InvalidKeyException | ShortBufferException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     /**
      * Returns the nonce length for this specific cipher.
      *
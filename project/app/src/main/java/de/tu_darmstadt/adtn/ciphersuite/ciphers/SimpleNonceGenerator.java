@@ -5,7 +5,8 @@ import java.util.Random;
 /**
  * A simple nonce generator that uses a pseudo random number generator to generate a nonce.
  * The length of the nonce has to be defined as a parameter in the constructor and cannot be changed
- * afterwards. Take into account that the length is defined in bytes not in bits.
+ * afterwards. Take into account that the length is defined in bytes not in bits. The generator is
+ * not cryptographically secure; {@link ChaChaNonceGenerator} is used for packets.
  */
 public class SimpleNonceGenerator implements INonceGenerator {
 
@@ -36,4 +37,12 @@ public class SimpleNonceGenerator implements INonceGenerator {
         rand.nextBytes(nonce);
         return nonce;
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void generateNonce(byte[] buffer, int offset) {
+        System.arraycopy(generateNonce(), 0, buffer, offset, length);
+    }
 }
@@ -0,0 +1,128 @@
+package de.tu_darmstadt.adtn.ciphersuite.hashes;
+
+/**
+ * AES-128 block encryption with a key schedule that is computed once and never changes afterwards.
+ * Unlike the engines of the crypto provider, encrypting a block only uses local variables, so any
+ * number of threads can use the same instance at the same time. Uses the same table based
+ * implementation as the provider's AES engine.
+ */
+class AES128 {
+
+    private final static int ROUNDS = 10;
+
+    private final static int[] SBOX = new int[256];
+    private final static int[] T0 = new int[256], T1 = new int[256], T2 = new int[256], T3 = new int[256];
+    private final static int[] RCON = {0x01, 0x02, 0x04, 0x08, 0x10, 0x20, 0x40, 0x80, 0x1b, 0x36};
+
+    static {
+        for (int x = 0; x < 256; ++x) {
+            // Multiplicative inverse in GF(2^8) followed by the affine transformation
+            int inverse = 0;
+            for (int y = 1; y < 256 && x != 0; ++y) {
+                if (multiply(x, y) == 1) {
+                    inverse = y;
+                    break;
+                }
+            }
+            SBOX[x] = (inverse ^ rotateByte(inverse, 1) ^ rotateByte(inverse, 2) ^ rotateByte(inverse, 3) ^
+                    rotateByte(inverse, 4) ^ 0x63) & 0xff;
+        }
+
+        // SubBytes and MixColumns for each row of a column, rows in big endian order
+        for (int x = 0; x < 256; ++x) {
+            int s = SBOX[x];
+            int t = multiply(s, 2) << 24 | s << 16 | s << 8 | multiply(s, 3);
+            T0[x] = t;
+            T1[x] = Integer.rotateRight(t, 8);
+            T2[x] = Integer.rotateRight(t, 16);
+            T3[x] = Integer.rotateRight(t, 24);
+        }
+    }
+
+    // The round keys as big endian words
+    private final int[] roundKeys = new int[4 * (ROUNDS + 1)];
+
+    /**
+     * Computes the key schedule.
+     *
+     * @param key    Array containing the key.
+     * @param offset Start index of the 16 bytes of the key.
+     */
+    AES128(byte[] key, int offset) {
+        for (int i = 0; i < 4; ++i) roundKeys[i] = bigEndianToInt(key, offset + 4 * i);
+        for (int i = 4; i < roundKeys.length; ++i) {
+            int t = roundKeys[i - 1];
+            if (i % 4 == 0) t = subWord(Integer.rotateLeft(t, 8)) ^ RCON[i / 4 - 1] << 24;
+            roundKeys[i] = roundKeys[i - 4] ^ t;
+        }
+    }
+
+    /**
+     * Encrypts a single block.
+     *
+     * @param in        Array containing the plaintext block.
+     * @param inOffset  Start index of the plaintext block.
+     * @param out       Array that will hold the ciphertext block. May be the same as in.
+     * @param outOffset Start index of the ciphertext block.
+     */
+    void encryptBlock(byte[] in, int inOffset, byte[] out, int outOffset) {
+        int[] k = roundKeys;
+        int s0 = bigEndianToInt(in, inOffset) ^ k[0];
+        int s1 = bigEndianToInt(in, inOffset + 4) ^ k[1];
+        int s2 = bigEndianToInt(in, inOffset + 8) ^ k[2];
+        int s3 = bigEndianToInt(in, inOffset + 12) ^ k[3];
+
+        int i = 4;
+        for (int round = 1; round < ROUNDS; ++round, i += 4) {
+            int t0 = T0[s0 >>> 24] ^ T1[s1 >>> 16 & 0xff] ^ T2[s2 >>> 8 & 0xff] ^ T3[s3 & 0xff] ^ k[i];
+            int t1 = T0[s1 >>> 24] ^ T1[s2 >>> 16 & 0xff] ^ T2[s3 >>> 8 & 0xff] ^ T3[s0 & 0xff] ^ k[i + 1];
+            int t2 = T0[s2 >>> 24] ^ T1[s3 >>> 16 & 0xff] ^ T2[s0 >>> 8 & 0xff] ^ T3[s1 & 0xff] ^ k[i + 2];
+            s3 = T0[s3 >>> 24] ^ T1[s0 >>> 16 & 0xff] ^ T2[s1 >>> 8 & 0xff] ^ T3[s2 & 0xff] ^ k[i + 3];
+            s0 = t0;
+            s1 = t1;
+            s2 = t2;
+        }
+
+        // The last round has no MixColumns
+        intToBigEndian(lastRound(s0, s1, s2, s3) ^ k[i], out, outOffset);
+        intToBigEndian(lastRound(s1, s2, s3, s0) ^ k[i + 1], out, outOffset + 4);
+        intToBigEndian(lastRound(s2, s3, s0, s1) ^ k[i + 2], out, outOffset + 8);
+        intToBigEndian(lastRound(s3, s0, s1, s2) ^ k[i + 3], out, outOffset + 12);
+    }
+
+    // SubBytes and ShiftRows of a column of the last round
+    private static int lastRound(int a, int b, int c, int d) {
+        return SBOX[a >>> 24] << 24 | SBOX[b >>> 16 & 0xff] << 16 | SBOX[c >>> 8 & 0xff] << 8 | SBOX[d & 0xff];
+    }
+
+    private static int subWord(int w) {
+        return SBOX[w >>> 24] << 24 | SBOX[w >>> 16 & 0xff] << 16 | SBOX[w >>> 8 & 0xff] << 8 | SBOX[w & 0xff];
+    }
+
+    // Multiplication in GF(2^8) modulo x^8 + x^4 + x^3 + x + 1
+    private static int multiply(int a, int b) {
+        int product = 0;
+        for (; b != 0; b >>>= 1) {
+            if ((b & 1) != 0) product ^= a;
+            a <<= 1;
+            if ((a & 0x100) != 0) a ^= 0x11b;
+        }
+        return product;
+    }
+
+    private static int rotateByte(int b, int distance) {
+        return (b << distance | b >>> (8 - distance)) & 0xff;
+    }
+
+    private static int bigEndianToInt(byte[] bytes, int offset) {
+        return bytes[offset] << 24 | (bytes[offset + 1] & 0xff) << 16 |
+                (bytes[offset + 2] & 0xff) << 8 | bytes[offset + 3] & 0xff;
+    }
+
+    private static void intToBigEndian(int value, byte[] bytes, int offset) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+}
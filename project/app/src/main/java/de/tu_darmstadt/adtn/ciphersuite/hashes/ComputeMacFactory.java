@@ -1,34 +1,45 @@
 package de.tu_darmstadt.adtn.ciphersuite.hashes;
 
+import de.tu_darmstadt.adtn.ciphersuite.NativeCrypto;
 
 /**
- * Factory to instantiate an IComputeMAC instance
+ * Factory to instantiate an IComputeMAC instance. Uses the native Poly1305-AES implementation if it
+ * is available. IComputeMAC instances are not thread-safe, so they must not be shared between
+ * threads.
  */
 public class ComputeMacFactory {
 
-    private static IComputeMAC mac;
+    private final static ThreadLocal<IComputeMAC> instances = new ThreadLocal<>();
 
     /**
-     * Instantiates and returns an IComputeMAC instance
+     * Returns an IComputeMAC instance shared by all callers on the current thread.
      *
      * @return IComputeMAC
      */
     public static IComputeMAC getInstance() throws Exception {
-        if(mac == null){
-            mac = new Poly1305();
+        IComputeMAC mac = instances.get();
+        if (mac == null) {
+            mac = createInstance();
+            instances.set(mac);
         }
         return mac;
     }
 
+    /**
+     * Instantiates and returns a new IComputeMAC instance
+     *
+     * @return IComputeMAC
+     */
+    public static IComputeMAC createInstance() throws Exception {
+        return NativeCrypto.isAvailable() ? new NativePoly1305() : new Poly1305();
+    }
+
     /**
      * Returns the length of the underlying message authentication code
      * @return returns the length in bytes
      * @throws Exception
      */
     public static int getLength() throws Exception{
-        if(mac == null){
-            mac = new Poly1305();
-        }
-        return mac.length();
+        return getInstance().length();
     }
 }
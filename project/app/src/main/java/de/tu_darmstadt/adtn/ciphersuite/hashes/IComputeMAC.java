@@ -17,6 +17,14 @@ public interface IComputeMAC {
      */
     void computeMAC(byte[] iv, SecretKey key, byte[] text, int textOffset, byte[] buffer, int offset);
 
+    /**
+     * Precomputes the key dependent state of the MAC algorithm for the given key.
+     *
+     * @param key Key that is used to create MACs.
+     * @return A key context that computes MACs with this key.
+     */
+    IMACKeyContext createKeyContext(SecretKey key);
+
     /**
      * Returns the length of the MAC.
      *
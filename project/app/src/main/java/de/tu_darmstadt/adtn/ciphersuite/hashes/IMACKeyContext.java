@@ -0,0 +1,48 @@
+package de.tu_darmstadt.adtn.ciphersuite.hashes;
+
+import java.nio.ByteBuffer;
+
+/**
+ * MAC state that was precomputed for a single key. Computing a MAC with a key context skips the
+ * key setup that {@link IComputeMAC#computeMAC} has to redo on every call. Implementations must be
+ * thread-safe without locking, because the key contexts of a group cipher are shared by all
+ * threads using it and every receiving thread tries them in the same order.
+ */
+public interface IMACKeyContext {
+
+    /**
+     * Computes the message authentication code of a part of a byte array.
+     *
+     * @param nonce       Array containing the nonce.
+     * @param nonceOffset Start index of the nonce.
+     * @param text        Array containing the text that is authenticated.
+     * @param textOffset  Start index of the text.
+     * @param textLength  Length of the text in bytes.
+     * @param buffer      Buffer that will hold the calculated MAC.
+     * @param offset      Start index of the MAC in the buffer.
+     */
+    void computeMAC(byte[] nonce, int nonceOffset, byte[] text, int textOffset, int textLength,
+                    byte[] buffer, int offset);
+
+    /**
+     * Computes the message authentication code of a part of a buffer, which may be a direct
+     * buffer. The text is read in place, position and limit of the buffer are not used or changed.
+     *
+     * @param nonce       Array containing the nonce.
+     * @param nonceOffset Start index of the nonce.
+     * @param text        Buffer containing the text that is authenticated.
+     * @param textOffset  Absolute start index of the text.
+     * @param textLength  Length of the text in bytes.
+     * @param buffer      Buffer that will hold the calculated MAC.
+     * @param offset      Start index of the MAC in the buffer.
+     */
+    void computeMAC(byte[] nonce, int nonceOffset, ByteBuffer text, int textOffset, int textLength,
+                    byte[] buffer, int offset);
+
+    /**
+     * Returns the length of the MAC.
+     *
+     * @return Length is measured in bytes. Therefore the returned int is the byte count.
+     */
+    int length();
+}
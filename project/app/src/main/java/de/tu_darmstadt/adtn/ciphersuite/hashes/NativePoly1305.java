@@ -0,0 +1,79 @@
+package de.tu_darmstadt.adtn.ciphersuite.hashes;
+
+import java.nio.ByteBuffer;
+
+import javax.crypto.SecretKey;
+
+import de.tu_darmstadt.adtn.ciphersuite.NativeCrypto;
+
+/**
+ * Computes Poly1305-AES MACs using the native implementation in {@link NativeCrypto}. Keys have
+ * the same format as the keys used by {@link Poly1305}: 16 bytes AES key followed by 16 bytes r.
+ * Instances are not thread-safe.
+ */
+public class NativePoly1305 implements IComputeMAC {
+
+    private final static int KEY_OFFSET = 0;
+    private final static int NONCE_OFFSET = KEY_OFFSET + NativeCrypto.POLY1305_KEY_SIZE;
+    private final static int MAC_OFFSET = NONCE_OFFSET + NativeCrypto.POLY1305_NONCE_SIZE;
+    private final static int TEXT_OFFSET = MAC_OFFSET + NativeCrypto.POLY1305_MAC_SIZE;
+
+    // Direct buffer holding key, nonce, MAC and text
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(TEXT_OFFSET + 1536);
+
+    /**
+     * Computes a message authentication code of a given text (as byte array) with a given
+     * key and a nonce (iv).
+     *
+     * @param iv         Nonce that is used to create MAC.
+     * @param key        Key that is used to create MAC.
+     * @param text       Text that is used to create MAC.
+     * @param textOffset starting index of the text
+     * @param buffer     result buffer that will hold the calculated MAC.
+     * @param offset     Start index of the MAC in the result buffer.
+     */
+    @Override
+    public void computeMAC(byte[] iv, SecretKey key, byte[] text, int textOffset, byte[] buffer, int offset) {
+        byte[] keyBytes = key.getEncoded();
+        if (keyBytes.length != NativeCrypto.POLY1305_KEY_SIZE || iv.length != NativeCrypto.POLY1305_NONCE_SIZE) {
+            throw new IllegalArgumentException("Poly1305-AES needs a 32 byte key and a 16 byte nonce");
+        }
+
+        // Grow buffer if the text does not fit
+        int length = text.length - textOffset;
+        if (this.buffer.capacity() < TEXT_OFFSET + length) {
+            this.buffer = ByteBuffer.allocateDirect(TEXT_OFFSET + length);
+        }
+
+        this.buffer.clear();
+        this.buffer.put(keyBytes).put(iv);
+        this.buffer.position(TEXT_OFFSET);
+        this.buffer.put(text, textOffset, length);
+        NativeCrypto.poly1305Aes(this.buffer, KEY_OFFSET, NONCE_OFFSET, TEXT_OFFSET, length, MAC_OFFSET);
+        this.buffer.position(MAC_OFFSET);
+        this.buffer.get(buffer, offset, NativeCrypto.POLY1305_MAC_SIZE);
+    }
+
+    /**
+     * Precomputes the key dependent state of the MAC algorithm for the given key. The returned
+     * context is implemented in Java: it keeps the AES key schedule and r set up, so it does not
+     * have the per call initialisation overhead this class avoids by going native.
+     *
+     * @param key Key that is used to create MACs.
+     * @return A key context that computes MACs with this key.
+     */
+    @Override
+    public IMACKeyContext createKeyContext(SecretKey key) {
+        return new Poly1305KeyContext(key.getEncoded());
+    }
+
+    /**
+     * Returns the length of the MAC.
+     *
+     * @return Length is measured in bytes. Therefore the returned int is the byte count.
+     */
+    @Override
+    public int length() {
+        return NativeCrypto.POLY1305_MAC_SIZE;
+    }
+}
@@ -46,6 +46,17 @@ public class Poly1305 implements IComputeMAC {
         }
     }
 
+    /**
+     * Precomputes the key dependent state of the MAC algorithm for the given key.
+     *
+     * @param key Key that is used to create MACs.
+     * @return A key context that computes MACs with this key.
+     */
+    @Override
+    public IMACKeyContext createKeyContext(SecretKey key) {
+        return new Poly1305KeyContext(key.getEncoded());
+    }
+
     /**
      * Returns the length of the MAC.
      *
@@ -0,0 +1,96 @@
+package de.tu_darmstadt.adtn.ciphersuite.hashes;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Poly1305-AES key precomputed for a single key. The AES key schedule and the clamped r part of the
+ * key are set up once and never change, so a MAC computation only costs one AES block operation
+ * for the nonce plus the polynomial evaluation. The state of a computation is kept per thread, so
+ * threads using the same instance at the same time do not wait for each other. The key has the
+ * same format as the keys used by {@link Poly1305}: 16 bytes AES key followed by 16 bytes r.
+ * Instances are thread-safe.
+ */
+public class Poly1305KeyContext implements IMACKeyContext {
+
+    private final static int BLOCK_SIZE = Poly1305State.BLOCK_SIZE;
+
+    // State of the computation running on the current thread, shared by all key contexts
+    private final static ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
+    private final AES128 aes;
+    private final int[] r;
+
+    /**
+     * Creates a new Poly1305KeyContext object.
+     *
+     * @param key The encoded Poly1305-AES key.
+     */
+    public Poly1305KeyContext(byte[] key) {
+        if (key.length != 2 * BLOCK_SIZE) {
+            throw new IllegalArgumentException("Poly1305-AES key must be 32 bytes long");
+        }
+
+        // Set up AES key schedule for encrypting the nonces and r
+        aes = new AES128(key, 0);
+        r = Poly1305State.expandR(key, BLOCK_SIZE);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void computeMAC(byte[] nonce, int nonceOffset, byte[] text, int textOffset, int textLength,
+                           byte[] buffer, int offset) {
+        Scratch s = scratch.get();
+
+        // Encrypt nonce with the prepared AES key schedule
+        aes.encryptBlock(nonce, nonceOffset, s.encryptedNonce, 0);
+
+        s.state.init(r);
+        s.state.processMessage(text, textOffset, textLength);
+        s.state.finish(s.encryptedNonce, 0, buffer, offset);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void computeMAC(byte[] nonce, int nonceOffset, ByteBuffer text, int textOffset, int textLength,
+                           byte[] buffer, int offset) {
+        // Heap buffers are processed through their array, which is faster
+        if (text.hasArray()) {
+            computeMAC(nonce, nonceOffset, text.array(), text.arrayOffset() + textOffset, textLength, buffer, offset);
+            return;
+        }
+
+        Scratch s = scratch.get();
+        aes.encryptBlock(nonce, nonceOffset, s.encryptedNonce, 0);
+
+        s.state.init(r);
+        s.state.processMessage(text, textOffset, textLength);
+        s.state.finish(s.encryptedNonce, 0, buffer, offset);
+    }
+
+    /**
+     * Returns the length of the MAC.
+     *
+     * @return Length is measured in bytes. Therefore the returned int is the byte count.
+     */
+    @Override
+    public int length() {
+        return BLOCK_SIZE;
+    }
+
+    // Per thread state of a MAC computation
+    private static class Scratch {
+        final Poly1305State state = new Poly1305State();
+
+        // Buffer for the encrypted nonce
+        final byte[] encryptedNonce = new byte[BLOCK_SIZE];
+    }
+}
@@ -0,0 +1,294 @@
+package de.tu_darmstadt.adtn.ciphersuite.hashes;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The polynomial evaluation of Poly1305 without the computation of the final s value, which is
+ * AES_k(nonce) for Poly1305-AES and part of a one-time key for ChaCha20-Poly1305. Works in radix
+ * 2^26 and does not allocate memory. Instances are not thread-safe.
+ */
+public class Poly1305State {
+
+    /**
+     * Size of a Poly1305 block and of the resulting MAC in bytes.
+     */
+    public final static int BLOCK_SIZE = 16;
+
+    private final static int MASK_26 = 0x3ffffff;
+    private final static int HIGH_BIT = 1 << 24;
+
+    // r in radix 2^26 and the multiples 5 * r needed for the reduction modulo 2^130 - 5
+    private int r0, r1, r2, r3, r4;
+    private int s1, s2, s3, s4;
+
+    // Accumulator in radix 2^26
+    private int h0, h1, h2, h3, h4;
+
+    // Scratch buffer for a padded last block
+    private final byte[] lastBlock = new byte[BLOCK_SIZE];
+
+    /**
+     * Sets r and resets the accumulator.
+     *
+     * @param key    Array containing r.
+     * @param offset Start index of the 16 bytes of r. r gets clamped.
+     */
+    public void init(byte[] key, int offset) {
+        // Split r into 26 bit limbs (masks also clamp r)
+        r0 = littleEndianToInt(key, offset) & 0x3ffffff;
+        r1 = (littleEndianToInt(key, offset + 3) >>> 2) & 0x3ffff03;
+        r2 = (littleEndianToInt(key, offset + 6) >>> 4) & 0x3ffc0ff;
+        r3 = (littleEndianToInt(key, offset + 9) >>> 6) & 0x3f03fff;
+        r4 = (littleEndianToInt(key, offset + 12) >>> 8) & 0x00fffff;
+        s1 = r1 * 5;
+        s2 = r2 * 5;
+        s3 = r3 * 5;
+        s4 = r4 * 5;
+        reset();
+    }
+
+    /**
+     * Computes the limbs of r and their multiples once, so several states can be initialized with
+     * them by {@link #init(int[])} without decoding r again.
+     *
+     * @param key    Array containing r.
+     * @param offset Start index of the 16 bytes of r. r gets clamped.
+     * @return The limbs. Must not be modified.
+     */
+    public static int[] expandR(byte[] key, int offset) {
+        Poly1305State state = new Poly1305State();
+        state.init(key, offset);
+        return new int[]{state.r0, state.r1, state.r2, state.r3, state.r4, state.s1, state.s2, state.s3, state.s4};
+    }
+
+    /**
+     * Sets r and resets the accumulator.
+     *
+     * @param limbs The limbs of r as returned by {@link #expandR(byte[], int)}.
+     */
+    public void init(int[] limbs) {
+        r0 = limbs[0];
+        r1 = limbs[1];
+        r2 = limbs[2];
+        r3 = limbs[3];
+        r4 = limbs[4];
+        s1 = limbs[5];
+        s2 = limbs[6];
+        s3 = limbs[7];
+        s4 = limbs[8];
+        reset();
+    }
+
+    /**
+     * Resets the accumulator, so a new MAC can be computed with the same r.
+     */
+    public void reset() {
+        h0 = h1 = h2 = h3 = h4 = 0;
+    }
+
+    /**
+     * Processes a whole message the way Poly1305 does: a partial last block is padded with a single
+     * one byte. No further data may be processed before {@link #finish(byte[], int, byte[], int)}.
+     *
+     * @param text   Array containing the message.
+     * @param offset Start index of the message.
+     * @param length Length of the message in bytes.
+     */
+    public void processMessage(byte[] text, int offset, int length) {
+        int end = offset + length;
+        int position = processFullBlocks(text, offset, end);
+
+        // Pad last block with a single one byte followed by zeros
+        int remaining = end - position;
+        if (remaining > 0) {
+            System.arraycopy(text, position, lastBlock, 0, remaining);
+            lastBlock[remaining] = 1;
+            for (int i = remaining + 1; i < BLOCK_SIZE; ++i) lastBlock[i] = 0;
+            processBlock(lastBlock, 0, 0);
+        }
+    }
+
+    /**
+     * Processes data and pads a partial last block with zeros to a full block, as the ChaCha20 and
+     * Poly1305 AEAD construction of RFC 7539 does.
+     *
+     * @param text   Array containing the data.
+     * @param offset Start index of the data.
+     * @param length Length of the data in bytes.
+     */
+    public void processPadded(byte[] text, int offset, int length) {
+        int end = offset + length;
+        int position = processFullBlocks(text, offset, end);
+
+        int remaining = end - position;
+        if (remaining > 0) {
+            System.arraycopy(text, position, lastBlock, 0, remaining);
+            for (int i = remaining; i < BLOCK_SIZE; ++i) lastBlock[i] = 0;
+            processBlock(lastBlock, 0, HIGH_BIT);
+        }
+    }
+
+    /**
+     * Same as {@link #processMessage(byte[], int, int)}, but reads the message from a buffer, which
+     * may be a direct buffer. Position and limit of the buffer are not used or changed.
+     *
+     * @param text   Buffer containing the message.
+     * @param offset Absolute start index of the message.
+     * @param length Length of the message in bytes.
+     */
+    public void processMessage(ByteBuffer text, int offset, int length) {
+        int end = offset + length;
+        int position = processFullBlocks(text, offset, end);
+
+        int remaining = end - position;
+        if (remaining > 0) {
+            for (int i = 0; i < remaining; ++i) lastBlock[i] = text.get(position + i);
+            lastBlock[remaining] = 1;
+            for (int i = remaining + 1; i < BLOCK_SIZE; ++i) lastBlock[i] = 0;
+            processBlock(lastBlock, 0, 0);
+        }
+    }
+
+    /**
+     * Same as {@link #processPadded(byte[], int, int)}, but reads the data from a buffer, which
+     * may be a direct buffer. Position and limit of the buffer are not used or changed.
+     *
+     * @param text   Buffer containing the data.
+     * @param offset Absolute start index of the data.
+     * @param length Length of the data in bytes.
+     */
+    public void processPadded(ByteBuffer text, int offset, int length) {
+        int end = offset + length;
+        int position = processFullBlocks(text, offset, end);
+
+        int remaining = end - position;
+        if (remaining > 0) {
+            for (int i = 0; i < remaining; ++i) lastBlock[i] = text.get(position + i);
+            for (int i = remaining; i < BLOCK_SIZE; ++i) lastBlock[i] = 0;
+            processBlock(lastBlock, 0, HIGH_BIT);
+        }
+    }
+
+    /**
+     * Fully reduces the accumulator, adds s and writes the MAC.
+     *
+     * @param s       Array containing s.
+     * @param sOffset Start index of the 16 bytes of s.
+     * @param buffer  Buffer that will hold the MAC.
+     * @param offset  Start index of the MAC in the buffer.
+     */
+    public void finish(byte[] s, int sOffset, byte[] buffer, int offset) {
+        int c = h1 >>> 26;
+        h1 &= MASK_26;
+        h2 += c;
+        c = h2 >>> 26;
+        h2 &= MASK_26;
+        h3 += c;
+        c = h3 >>> 26;
+        h3 &= MASK_26;
+        h4 += c;
+        c = h4 >>> 26;
+        h4 &= MASK_26;
+        h0 += c * 5;
+        c = h0 >>> 26;
+        h0 &= MASK_26;
+        h1 += c;
+
+        // Compute h - p and select it if it is not negative
+        int g0 = h0 + 5;
+        c = g0 >>> 26;
+        g0 &= MASK_26;
+        int g1 = h1 + c;
+        c = g1 >>> 26;
+        g1 &= MASK_26;
+        int g2 = h2 + c;
+        c = g2 >>> 26;
+        g2 &= MASK_26;
+        int g3 = h3 + c;
+        c = g3 >>> 26;
+        g3 &= MASK_26;
+        int g4 = h4 + c - (1 << 26);
+
+        int mask = (g4 >>> 31) - 1;
+        h0 = (h0 & ~mask) | (g0 & mask);
+        h1 = (h1 & ~mask) | (g1 & mask);
+        h2 = (h2 & ~mask) | (g2 & mask);
+        h3 = (h3 & ~mask) | (g3 & mask);
+        h4 = (h4 & ~mask) | (g4 & mask);
+
+        // MAC = (h + s) mod 2^128
+        long f = ((h0 | (h1 << 26)) & 0xffffffffL) + (littleEndianToInt(s, sOffset) & 0xffffffffL);
+        intToLittleEndian((int) f, buffer, offset);
+        f = (((h1 >>> 6) | (h2 << 20)) & 0xffffffffL) + (littleEndianToInt(s, sOffset + 4) & 0xffffffffL) + (f >>> 32);
+        intToLittleEndian((int) f, buffer, offset + 4);
+        f = (((h2 >>> 12) | (h3 << 14)) & 0xffffffffL) + (littleEndianToInt(s, sOffset + 8) & 0xffffffffL) + (f >>> 32);
+        intToLittleEndian((int) f, buffer, offset + 8);
+        f = (((h3 >>> 18) | (h4 << 8)) & 0xffffffffL) + (littleEndianToInt(s, sOffset + 12) & 0xffffffffL) + (f >>> 32);
+        intToLittleEndian((int) f, buffer, offset + 12);
+    }
+
+    // Processes all full blocks directly from the input and returns the index after the last one
+    private int processFullBlocks(byte[] text, int position, int end) {
+        for (; end - position >= BLOCK_SIZE; position += BLOCK_SIZE) {
+            processBlock(text, position, HIGH_BIT);
+        }
+        return position;
+    }
+
+    private int processFullBlocks(ByteBuffer text, int position, int end) {
+        for (; end - position >= BLOCK_SIZE; position += BLOCK_SIZE) {
+            processBlock(littleEndianToInt(text, position), littleEndianToInt(text, position + 4),
+                    littleEndianToInt(text, position + 8), littleEndianToInt(text, position + 12), HIGH_BIT);
+        }
+        return position;
+    }
+
+    private void processBlock(byte[] block, int offset, int highBit) {
+        processBlock(littleEndianToInt(block, offset), littleEndianToInt(block, offset + 4),
+                littleEndianToInt(block, offset + 8), littleEndianToInt(block, offset + 12), highBit);
+    }
+
+    // Adds a 16 byte block given as four little endian words to the accumulator and multiplies it by r
+    private void processBlock(int t0, int t1, int t2, int t3, int highBit) {
+        h0 += t0 & MASK_26;
+        h1 += ((t0 >>> 26) | (t1 << 6)) & MASK_26;
+        h2 += ((t1 >>> 20) | (t2 << 12)) & MASK_26;
+        h3 += ((t2 >>> 14) | (t3 << 18)) & MASK_26;
+        h4 += (t3 >>> 8) | highBit;
+
+        long d0 = (long) h0 * r0 + (long) h1 * s4 + (long) h2 * s3 + (long) h3 * s2 + (long) h4 * s1;
+        long d1 = (long) h0 * r1 + (long) h1 * r0 + (long) h2 * s4 + (long) h3 * s3 + (long) h4 * s2;
+        long d2 = (long) h0 * r2 + (long) h1 * r1 + (long) h2 * r0 + (long) h3 * s4 + (long) h4 * s3;
+        long d3 = (long) h0 * r3 + (long) h1 * r2 + (long) h2 * r1 + (long) h3 * r0 + (long) h4 * s4;
+        long d4 = (long) h0 * r4 + (long) h1 * r3 + (long) h2 * r2 + (long) h3 * r1 + (long) h4 * r0;
+
+        // Partial reduction modulo 2^130 - 5
+        d1 += d0 >>> 26;
+        d2 += d1 >>> 26;
+        d3 += d2 >>> 26;
+        d4 += d3 >>> 26;
+        long t = (d0 & MASK_26) + (d4 >>> 26) * 5;
+        h0 = (int) t & MASK_26;
+        h1 = ((int) d1 & MASK_26) + (int) (t >>> 26);
+        h2 = (int) d2 & MASK_26;
+        h3 = (int) d3 & MASK_26;
+        h4 = (int) d4 & MASK_26;
+    }
+
+    private static int littleEndianToInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff) | (bytes[offset + 1] & 0xff) << 8 |
+                (bytes[offset + 2] & 0xff) << 16 | bytes[offset + 3] << 24;
+    }
+
+    private static int littleEndianToInt(ByteBuffer bytes, int offset) {
+        return (bytes.get(offset) & 0xff) | (bytes.get(offset + 1) & 0xff) << 8 |
+                (bytes.get(offset + 2) & 0xff) << 16 | bytes.get(offset + 3) << 24;
+    }
+
+    private static void intToLittleEndian(int value, byte[] bytes, int offset) {
+        bytes[offset] = (byte) value;
+        bytes[offset + 1] = (byte) (value >>> 8);
+        bytes[offset + 2] = (byte) (value >>> 16);
+        bytes[offset + 3] = (byte) (value >>> 24);
+    }
+}
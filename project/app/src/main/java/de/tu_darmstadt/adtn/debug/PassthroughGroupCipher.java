@@ -1,5 +1,6 @@
 package de.tu_darmstadt.adtn.debug;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Collection;
 
@@ -7,6 +8,7 @@ import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
 
 import de.tu_darmstadt.adtn.ciphersuite.IGroupCipher;
+import de.tu_darmstadt.adtn.ciphersuite.Utils.IGroupKeyContext;
 
 /**
  * Debug group cipher that does not encrypt.
@@ -67,6 +69,64 @@ public class PassthroughGroupCipher implements IGroupCipher {
         return Arrays.copyOfRange(ciphertext, MAGIC_BYTES.length, ciphertext.length);
     }
 
+    @Override
+    public IGroupKeyContext createKeyContext(final SecretKey key) {
+        // Nothing to precompute
+        return new IGroupKeyContext() {
+            @Override
+            public SecretKey getKey() {
+                return key;
+            }
+
+            @Override
+            public byte[] getHintKey() {
+                return null;
+            }
+        };
+    }
+
+    @Override
+    public byte[] tryDecrypt(byte[] ciphertext, IGroupKeyContext[] keyContexts) {
+        return tryDecrypt(ciphertext, (Collection<SecretKey>) null);
+    }
+
+    @Override
+    public IGroupKeyContext tryDecryptInto(byte[] ciphertext, IGroupKeyContext[] keyContexts, byte[] buffer, int offset) {
+        if (ciphertext.length != ciphertextSize) {
+            throw new RuntimeException("Size of ciphertext is not as expected");
+        }
+
+        // Check if ciphertext starts with MAGIC_BYTES and if there is a context to report as match
+        if (keyContexts.length == 0) return null;
+        for (int i = 0; i < MAGIC_BYTES.length; ++i) {
+            if (ciphertext[i] != MAGIC_BYTES[i]) return null;
+        }
+
+        // Payload is ciphertext without MAGIC_BYTES
+        System.arraycopy(ciphertext, MAGIC_BYTES.length, buffer, offset, plaintextSize);
+        return keyContexts[0];
+    }
+
+    @Override
+    public IGroupKeyContext tryDecryptInto(ByteBuffer ciphertext, IGroupKeyContext[] keyContexts, byte[] buffer, int offset) {
+        if (ciphertext.remaining() != ciphertextSize) {
+            throw new RuntimeException("Size of ciphertext is not as expected");
+        }
+
+        // Check if ciphertext starts with MAGIC_BYTES and if there is a context to report as match
+        if (keyContexts.length == 0) return null;
+        int start = ciphertext.position();
+        for (int i = 0; i < MAGIC_BYTES.length; ++i) {
+            if (ciphertext.get(start + i) != MAGIC_BYTES[i]) return null;
+        }
+
+        // Payload is ciphertext without MAGIC_BYTES
+        ByteBuffer payload = ciphertext.duplicate();
+        payload.position(start + MAGIC_BYTES.length);
+        payload.get(buffer, offset, plaintextSize);
+        return keyContexts[0];
+    }
+
     @Override
     public SecretKey byteArrayToSecretKey(byte[] key) {
         return new SecretKeySpec(key, ALGORITHM_NAME);
@@ -19,11 +19,15 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
 
 import de.tu_darmstadt.adtn.ciphersuite.IGroupCipher;
+import de.tu_darmstadt.adtn.ciphersuite.Utils.IGroupKeyContext;
 import de.tu_darmstadt.adtn.errorlogger.ErrorLoggingSingleton;
 import de.tu_darmstadt.adtn.generickeystore.KeyStoreEntry;
 
@@ -48,6 +52,13 @@ public class GroupKeyStore extends de.tu_darmstadt.adtn.generickeystore.KeyStore
     // A collection that contains only the keys.
     private volatile Collection<SecretKey> keys;
 
+    // The precomputed contexts of the keys, in the same order as keys
+    private volatile IGroupKeyContext[] keyContexts;
+
+    // The keys by the IDs of their entries and the entry IDs by key context
+    private volatile Map<Long, SecretKey> keysById;
+    private volatile Map<IGroupKeyContext, Long> keyIds;
+
     private long nextGroupKeyId = 1;
     private final IGroupCipher cipher;
 
@@ -211,12 +222,23 @@ public class GroupKeyStore extends de.tu_darmstadt.adtn.generickeystore.KeyStore
         // Iterate through all entries and copy only the keys
         Collection<KeyStoreEntry<SecretKey>> entries = getEntries();
         SecretKey[] keys = new SecretKey[entries.size()];
+        IGroupKeyContext[] keyContexts = new IGroupKeyContext[keys.length];
+        Map<Long, SecretKey> keysById = new LinkedHashMap<>();
+        Map<IGroupKeyContext, Long> keyIds = new IdentityHashMap<>();
         int i = 0;
         for (KeyStoreEntry<SecretKey> entry : entries) {
-            keys[i++] = cipher.byteArrayToSecretKey(entry.getKey().getEncoded());
+            keys[i] = cipher.byteArrayToSecretKey(entry.getKey().getEncoded());
+            // Precompute key state once instead of for every received packet
+            keyContexts[i] = cipher.createKeyContext(keys[i]);
+            keysById.put(entry.getId(), keys[i]);
+            keyIds.put(keyContexts[i], entry.getId());
+            ++i;
         }
 
         this.keys = Collections.unmodifiableList(Arrays.asList(keys));
+        this.keysById = Collections.unmodifiableMap(keysById);
+        this.keyIds = keyIds;
+        this.keyContexts = keyContexts;
 
         // Key store won't change often, so just save on every change
         save();
@@ -229,4 +251,35 @@ public class GroupKeyStore extends de.tu_darmstadt.adtn.generickeystore.KeyStore
     public Collection<SecretKey> getKeys() {
         return keys;
     }
+
+    /**
+     * @return A snapshot of the key contexts of the keys currently in the store. The contexts are
+     * precomputed whenever the store changes. The returned array must not be modified.
+     */
+    @Override
+    public IGroupKeyContext[] getKeyContexts() {
+        return keyContexts;
+    }
+
+    /**
+     * @return An unmodifiable snapshot of the keys currently in the store, mapped by the IDs of
+     * their entries. The IDs identify the groups messages were received or created under.
+     */
+    @Override
+    public Map<Long, SecretKey> getKeysById() {
+        return keysById;
+    }
+
+    /**
+     * Looks up the entry ID of a key context returned by {@link #getKeyContexts()}.
+     *
+     * @param keyContext The key context.
+     * @return The ID of the entry the context was created for or 0 if the context is not part of
+     * the current snapshot, e.g. because the store changed in the meantime.
+     */
+    @Override
+    public long getKeyId(IGroupKeyContext keyContext) {
+        Long id = keyIds.get(keyContext);
+        return id == null ? 0 : id;
+    }
 }
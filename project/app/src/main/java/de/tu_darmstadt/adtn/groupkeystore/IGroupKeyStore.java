@@ -1,9 +1,11 @@
 package de.tu_darmstadt.adtn.groupkeystore;
 
 import java.util.Collection;
+import java.util.Map;
 
 import javax.crypto.SecretKey;
 
+import de.tu_darmstadt.adtn.ciphersuite.Utils.IGroupKeyContext;
 import de.tu_darmstadt.adtn.generickeystore.IKeyStore;
 
 /**
@@ -23,4 +25,25 @@ public interface IGroupKeyStore extends IKeyStore<SecretKey> {
      * @return An unmodifiable snapshot of the keys currently in the store.
      */
     Collection<SecretKey> getKeys();
+
+    /**
+     * @return A snapshot of the key contexts of the keys currently in the store. The contexts are
+     * precomputed whenever the store changes. The returned array must not be modified.
+     */
+    IGroupKeyContext[] getKeyContexts();
+
+    /**
+     * @return An unmodifiable snapshot of the keys currently in the store, mapped by the IDs of
+     * their entries. The IDs identify the groups messages were received or created under.
+     */
+    Map<Long, SecretKey> getKeysById();
+
+    /**
+     * Looks up the entry ID of a key context returned by {@link #getKeyContexts()}.
+     *
+     * @param keyContext The key context.
+     * @return The ID of the entry the context was created for or 0 if the context is not part of
+     * the current snapshot, e.g. because the store changed in the meantime.
+     */
+    long getKeyId(IGroupKeyContext keyContext);
 }
@@ -1,5 +1,7 @@
 package de.tu_darmstadt.adtn.messagestore;
 
+import java.util.Collection;
+
 /**
  * Stores unencrypted incoming and outgoing messages. All methods are thread-safe.
  */
@@ -11,24 +13,37 @@ public interface IMessageStore {
     void reset();
 
     /**
-     * Close any open database object.
+     * Close any open database object. Statistics that are not written yet are written first.
      */
     void close();
 
+    /**
+     * Sets how long updates of the send statistics may be collected before they are written to
+     * the database. Repeated sends of the same message within that time result in a single update.
+     * Statistics that are not written yet are lost if the process is killed.
+     *
+     * @param millis The time in milliseconds or 0 to write the updates of every call immediately.
+     */
+    void setWriteBehindWindow(long millis);
+
     /**
      * Puts an outgoing message in the store.
      *
-     * @param message The message to add.
+     * @param message     The message to add.
+     * @param groupKeyIds The IDs of the group keys the message is created under. If empty, the
+     *                    message belongs to every group.
      */
-    void addMessage(byte[] message);
+    void addMessage(byte[] message, long[] groupKeyIds);
 
     /**
      * Puts a received message in the store or updates its statistics if it is already contained.
+     * In both cases the group key is recorded for the message.
      *
-     * @param message The received message to add or update the statistics for.
+     * @param message    The received message to add or update the statistics for.
+     * @param groupKeyId The ID of the group key the message was received under.
      * @return true if the message was already in the store or false if it is new.
      */
-    boolean receivedMessage(byte[] message);
+    boolean receivedMessage(byte[] message, long groupKeyId);
 
     /**
      * Informs the store that a message was just sent and updates the statistics accordingly.
@@ -37,12 +52,23 @@ public interface IMessageStore {
      */
     void sentMessage(byte[] messageID);
 
+    /**
+     * Informs the store that messages were just sent and updates the statistics accordingly. All
+     * updates are written in a single transaction.
+     *
+     * @param messageIDs The IDs of the messages whose statistics should be updated. An ID may
+     *                   occur several times if the message was sent several times.
+     */
+    void sentMessages(Collection<byte[]> messageIDs);
+
     /**
      * Copies the messages from the store that should be sent next. Note this will *not* alter
-     * the statistics. Call {@link #receivedMessage(byte[])} if a message actually gets sent.
+     * the statistics. Call {@link #sentMessage(byte[])} if a message actually gets sent.
      *
-     * @param count Maximum number of messages to obtain.
+     * @param count       Maximum number of messages to obtain.
+     * @param groupKeyIds The IDs of the group keys that are available for sending. Only messages
+     *                    that belong to at least one of these groups are fetched.
      * @return The fetched messages.
      */
-    Message[] getNextMessagesToSend(int count);
+    Message[] getNextMessagesToSend(int count, long[] groupKeyIds);
 }
@@ -7,16 +7,19 @@ public class Message {
 
     private byte[] id;
     private byte[] content;
+    private long[] groupKeyIds;
 
     /**
      * Creates a new Message object.
      *
-     * @param id      The ID of the message.
-     * @param content The content of the message.
+     * @param id          The ID of the message.
+     * @param content     The content of the message.
+     * @param groupKeyIds The IDs of the group keys the message was received or created under.
      */
-    public Message(byte[] id, byte[] content) {
+    public Message(byte[] id, byte[] content, long[] groupKeyIds) {
         this.id = id;
         this.content = content;
+        this.groupKeyIds = groupKeyIds;
     }
 
     /**
@@ -32,4 +35,12 @@ public class Message {
     public byte[] getContent() {
         return content;
     }
+
+    /**
+     * @return The IDs of the group keys the message was received or created under. Empty if the
+     * message was created while no group keys were known, in which case it belongs to every group.
+     */
+    public long[] getGroupKeyIDs() {
+        return groupKeyIds;
+    }
 }
@@ -6,8 +6,13 @@ import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.database.sqlite.SQLiteStatement;
 
+import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Stores unencrypted incoming and outgoing messages. All methods are thread-safe.
@@ -24,21 +29,35 @@ public class MessageStore extends SQLiteOpenHelper implements IMessageStore {
     private static final String COLUMN_LAST_TIME_RECEIVED = "last_time_received";
     private static final String COLUMN_LAST_TIME_SENT = "last_time_sent";
 
+    // Every message belongs to the groups it was received or created under
+    private final static String GROUPS_TABLE_NAME = "message_groups";
+    private final static String COLUMN_GROUP_KEY_ID = "group_key_id";
+
     private SQLiteStatement sqlInsertMessage; // [1] fingerprint; [2] message
     private SQLiteStatement sqlInsertReceivedMessage; // [1] fingerprint; [2] message; [3] time
     private SQLiteStatement sqlUpdateReceiveStats; // [1] fingerprint; [2] time
-    private SQLiteStatement sqlUpdateSendStats; // [1] fingerprint; [2] time
+    private SQLiteStatement sqlUpdateSendStats; // [1] fingerprint; [2] first time; [3] last time; [4] count
+    private SQLiteStatement sqlInsertGroup; // [1] fingerprint; [2] group key ID
 
     private final Object md5Lock = new Object();
+
+    // Serializes adding messages, since the receive threads and the sending of own messages
+    // share the statements for inserting messages and their groups
+    private final Object receiveLock = new Object();
     private MessageDigest md5;
 
+    // Send statistics that are not written yet: fingerprint -> {count, first time, last time}
+    private final Object sendLock = new Object();
+    private final Map<ByteBuffer, long[]> pendingSends = new HashMap<>();
+    private long writeBehindWindow, lastSendFlush;
+
     /**
      * Creates the message store.
      *
      * @param context Context to use to open or create the database.
      */
     public MessageStore(Context context) {
-        super(context, "network_message_store", null, 1);
+        super(context, "network_message_store", null, 2);
 
         // Initialize MD5
         try {
@@ -65,10 +84,13 @@ public class MessageStore extends SQLiteOpenHelper implements IMessageStore {
                 "WHERE " + COLUMN_FINGERPRINT + " = ?1;");
 
         sqlUpdateSendStats = db.compileStatement("UPDATE " + TABLE_NAME + " SET " +
-                COLUMN_FIRST_TIME_SENT + " = CASE WHEN " + COLUMN_TIMES_SENT + " = 0 THEN ?2 ELSE " + COLUMN_TIMES_SENT + " END, " +
-                COLUMN_LAST_TIME_SENT + " = ?2, " +
-                COLUMN_TIMES_SENT + " = " + COLUMN_TIMES_SENT + " + 1 " +
+                COLUMN_FIRST_TIME_SENT + " = CASE WHEN " + COLUMN_TIMES_SENT + " = 0 THEN ?2 ELSE " + COLUMN_FIRST_TIME_SENT + " END, " +
+                COLUMN_LAST_TIME_SENT + " = ?3, " +
+                COLUMN_TIMES_SENT + " = " + COLUMN_TIMES_SENT + " + ?4 " +
                 "WHERE " + COLUMN_FINGERPRINT + " = ?1;");
+
+        sqlInsertGroup = db.compileStatement("INSERT OR IGNORE INTO " + GROUPS_TABLE_NAME + " " +
+                "(" + COLUMN_FINGERPRINT + ", " + COLUMN_GROUP_KEY_ID + ") VALUES (?1, ?2);");
     }
 
     @Override
@@ -82,11 +104,20 @@ public class MessageStore extends SQLiteOpenHelper implements IMessageStore {
                 COLUMN_LAST_TIME_SENT + " INTEGER NOT NULL DEFAULT 0, " +
                 COLUMN_FIRST_TIME_RECEIVED + " INTEGER NOT NULL DEFAULT 0, " +
                 COLUMN_LAST_TIME_RECEIVED + " INTEGER NOT NULL DEFAULT 0);");
+        createGroupsTable(db);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        reset(db);
+        // Version 1 had no groups. Its messages keep having none, so they belong to every group.
+        if (oldVersion < 2) createGroupsTable(db);
+    }
+
+    private void createGroupsTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + GROUPS_TABLE_NAME + " (" +
+                COLUMN_FINGERPRINT + " BLOB NOT NULL, " +
+                COLUMN_GROUP_KEY_ID + " INTEGER NOT NULL, " +
+                "PRIMARY KEY (" + COLUMN_FINGERPRINT + ", " + COLUMN_GROUP_KEY_ID + "));");
     }
 
     /**
@@ -94,61 +125,110 @@ public class MessageStore extends SQLiteOpenHelper implements IMessageStore {
      */
     @Override
     public void reset() {
+        synchronized (sendLock) {
+            pendingSends.clear();
+        }
         reset(getWritableDatabase());
     }
 
+    /**
+     * Close any open database object. Statistics that are not written yet are written first.
+     */
+    @Override
+    public void close() {
+        synchronized (sendLock) {
+            flushSends(System.currentTimeMillis());
+        }
+        super.close();
+    }
+
+    /**
+     * Sets how long updates of the send statistics may be collected before they are written to
+     * the database. Repeated sends of the same message within that time result in a single update.
+     * The updates are always written before the next messages to send are selected, so the
+     * selection never sees outdated statistics. Statistics that are not written yet are lost if
+     * the process is killed.
+     *
+     * @param millis The time in milliseconds or 0 to write the updates of every call immediately.
+     */
+    @Override
+    public void setWriteBehindWindow(long millis) {
+        synchronized (sendLock) {
+            writeBehindWindow = millis;
+        }
+    }
+
     // Recreates the database and clears existing entries.
     private void reset(SQLiteDatabase db) {
         db.execSQL("DROP TABLE IF EXISTS " + TABLE_NAME + ";");
+        db.execSQL("DROP TABLE IF EXISTS " + GROUPS_TABLE_NAME + ";");
         onCreate(db);
     }
 
     /**
      * Puts an outgoing message in the store.
      *
-     * @param message The message to add.
+     * @param message     The message to add.
+     * @param groupKeyIds The IDs of the group keys the message is created under. If empty, the
+     *                    message belongs to every group.
      */
     @Override
-    public void addMessage(byte[] message) {
-        sqlInsertMessage.bindBlob(1, calculateFingerprint(message));
-        sqlInsertMessage.bindBlob(2, message);
-        sqlInsertMessage.executeInsert();
-        sqlInsertMessage.clearBindings();
+    public void addMessage(byte[] message, long[] groupKeyIds) {
+        byte[] fingerprint = calculateFingerprint(message);
+
+        synchronized (receiveLock) {
+            SQLiteDatabase db = getWritableDatabase();
+            db.beginTransaction();
+            sqlInsertMessage.bindBlob(1, fingerprint);
+            sqlInsertMessage.bindBlob(2, message);
+            sqlInsertMessage.executeInsert();
+            for (long groupKeyId : groupKeyIds) insertGroup(fingerprint, groupKeyId);
+            db.setTransactionSuccessful();
+            db.endTransaction();
+            sqlInsertMessage.clearBindings();
+        }
     }
 
     /**
      * Puts a received message in the store or updates its statistics if it is already contained.
+     * In both cases the group key is recorded for the message.
      *
-     * @param message The received message to add or update the statistics for.
+     * @param message    The received message to add or update the statistics for.
+     * @param groupKeyId The ID of the group key the message was received under.
      * @return true if the message was already in the store or false if it is new.
      */
     @Override
-    public boolean receivedMessage(byte[] message) {
+    public boolean receivedMessage(byte[] message, long groupKeyId) {
         byte[] fingerprint = calculateFingerprint(message);
         long time = System.currentTimeMillis();
 
-        // Try to update stats of existing message
-        sqlUpdateReceiveStats.bindBlob(1, fingerprint);
-        sqlUpdateReceiveStats.bindLong(2, time);
-        SQLiteDatabase db = getWritableDatabase();
-        db.beginTransaction();
-        boolean isNew = sqlUpdateReceiveStats.executeUpdateDelete() == 0;
-
-        // Insert message if it does not exist yet
-        if (isNew) {
-            sqlInsertReceivedMessage.bindBlob(1, fingerprint);
-            sqlInsertReceivedMessage.bindBlob(2, message);
-            sqlInsertReceivedMessage.bindLong(3, time);
-            sqlInsertReceivedMessage.executeInsert();
-        }
+        synchronized (receiveLock) {
+            // Try to update stats of existing message
+            sqlUpdateReceiveStats.bindBlob(1, fingerprint);
+            sqlUpdateReceiveStats.bindLong(2, time);
+            SQLiteDatabase db = getWritableDatabase();
+            db.beginTransaction();
+            boolean isNew = sqlUpdateReceiveStats.executeUpdateDelete() == 0;
 
-        // End transaction and clean up
-        db.setTransactionSuccessful();
-        db.endTransaction();
-        sqlUpdateReceiveStats.clearBindings();
-        if (isNew) sqlInsertReceivedMessage.clearBindings();
+            // Insert message if it does not exist yet
+            if (isNew) {
+                sqlInsertReceivedMessage.bindBlob(1, fingerprint);
+                sqlInsertReceivedMessage.bindBlob(2, message);
+                sqlInsertReceivedMessage.bindLong(3, time);
+                sqlInsertReceivedMessage.executeInsert();
+            }
+
+            // A known message may arrive under another group, which it then belongs to as well
+            insertGroup(fingerprint, groupKeyId);
 
-        return !isNew;
+            // End transaction and clean up
+            db.setTransactionSuccessful();
+            db.endTransaction();
+            sqlUpdateReceiveStats.clearBindings();
+            if (isNew) sqlInsertReceivedMessage.clearBindings();
+
+            return !isNew;
+        }
     }
 
     /**
@@ -158,36 +238,119 @@ public class MessageStore extends SQLiteOpenHelper implements IMessageStore {
      */
     @Override
     public void sentMessage(byte[] messageID) {
-        sqlUpdateSendStats.bindBlob(1, messageID);
-        sqlUpdateSendStats.bindLong(2, System.currentTimeMillis());
-        sqlUpdateSendStats.executeUpdateDelete();
+        sentMessages(Collections.singletonList(messageID));
+    }
+
+    /**
+     * Informs the store that messages were just sent and updates the statistics accordingly. All
+     * updates are written in a single transaction.
+     *
+     * @param messageIDs The IDs of the messages whose statistics should be updated. An ID may
+     *                   occur several times if the message was sent several times.
+     */
+    @Override
+    public void sentMessages(Collection<byte[]> messageIDs) {
+        long time = System.currentTimeMillis();
+
+        synchronized (sendLock) {
+            // Add up the sends of every message
+            for (byte[] messageID : messageIDs) {
+                long[] pending = pendingSends.get(ByteBuffer.wrap(messageID));
+                if (pending == null) {
+                    pendingSends.put(ByteBuffer.wrap(messageID), new long[]{1, time, time});
+                } else {
+                    ++pending[0];
+                    pending[2] = time;
+                }
+            }
+
+            // Write them once the window is over
+            if (time - lastSendFlush >= writeBehindWindow) flushSends(time);
+        }
+    }
+
+    // Writes the pending send statistics in one transaction. Must be called with sendLock held.
+    private void flushSends(long time) {
+        lastSendFlush = time;
+        if (pendingSends.isEmpty()) return;
+
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        for (Map.Entry<ByteBuffer, long[]> pending : pendingSends.entrySet()) {
+            sqlUpdateSendStats.bindBlob(1, pending.getKey().array());
+            sqlUpdateSendStats.bindLong(2, pending.getValue()[1]);
+            sqlUpdateSendStats.bindLong(3, pending.getValue()[2]);
+            sqlUpdateSendStats.bindLong(4, pending.getValue()[0]);
+            sqlUpdateSendStats.executeUpdateDelete();
+        }
+        db.setTransactionSuccessful();
+        db.endTransaction();
         sqlUpdateSendStats.clearBindings();
+        pendingSends.clear();
+    }
+
+    // Records that a message belongs to a group. Must be called with receiveLock held.
+    private void insertGroup(byte[] fingerprint, long groupKeyId) {
+        sqlInsertGroup.bindBlob(1, fingerprint);
+        sqlInsertGroup.bindLong(2, groupKeyId);
+        sqlInsertGroup.executeInsert();
+        sqlInsertGroup.clearBindings();
     }
 
     /**
      * Copies the messages from the store that should be sent next. Note this will *not* alter
-     * the statistics. Call {@link #receivedMessage(byte[])} if a message actually gets sent.
+     * the statistics. Call {@link #sentMessage(byte[])} if a message actually gets sent.
      *
-     * @param count Maximum number of messages to obtain.
+     * @param count       Maximum number of messages to obtain.
+     * @param groupKeyIds The IDs of the group keys that are available for sending. Only messages
+     *                    that belong to at least one of these groups are fetched.
      * @return The fetched messages.
      */
     @Override
-    public Message[] getNextMessagesToSend(int count) {
-        // Request fingerprint + messages from database
+    public Message[] getNextMessagesToSend(int count, long[] groupKeyIds) {
+        // The selection is based on the send statistics, so the collected updates are written first
+        synchronized (sendLock) {
+            flushSends(System.currentTimeMillis());
+        }
+
+        // The IDs are numbers, so they can be put in the query directly
+        StringBuilder availableGroups = new StringBuilder();
+        for (long groupKeyId : groupKeyIds) {
+            if (availableGroups.length() != 0) availableGroups.append(", ");
+            availableGroups.append(groupKeyId);
+        }
+
+        // Request fingerprint + messages + groups of the messages that belong to no specific
+        // group or to an available one
         Cursor cursor = getReadableDatabase().rawQuery("SELECT " +
-                        COLUMN_FINGERPRINT + ", " + COLUMN_MESSAGE +
-                        " FROM " + TABLE_NAME + " ORDER BY " + COLUMN_TIMES_SENT + " LIMIT ?;",
+                        "m." + COLUMN_FINGERPRINT + ", m." + COLUMN_MESSAGE + ", group_concat(g." + COLUMN_GROUP_KEY_ID + ")" +
+                        " FROM " + TABLE_NAME + " m LEFT JOIN " + GROUPS_TABLE_NAME + " g" +
+                        " ON g." + COLUMN_FINGERPRINT + " = m." + COLUMN_FINGERPRINT +
+                        " GROUP BY m." + COLUMN_FINGERPRINT +
+                        " HAVING count(g." + COLUMN_GROUP_KEY_ID + ") = 0" +
+                        " OR max(g." + COLUMN_GROUP_KEY_ID + " IN (" + availableGroups + ")) = 1" +
+                        " ORDER BY m." + COLUMN_TIMES_SENT + " LIMIT ?;",
                 new String[]{Integer.toString(count)});
 
         // Copy result to array and return it
         Message[] messages = new Message[cursor.getCount()];
         for (int i = 0; cursor.moveToNext(); ++i) {
-            messages[i] = new Message(cursor.getBlob(0), cursor.getBlob(1));
+            messages[i] = new Message(cursor.getBlob(0), cursor.getBlob(1), parseGroupKeyIds(cursor.getString(2)));
         }
         cursor.close();
         return messages;
     }
 
+    // Parses the comma-separated group key IDs returned by group_concat, which is null if there are none
+    private static long[] parseGroupKeyIds(String concatenated) {
+        if (concatenated == null) return new long[0];
+
+        String[] parts = concatenated.split(",");
+        long[] groupKeyIds = new long[parts.length];
+        for (int i = 0; i < parts.length; ++i) groupKeyIds[i] = Long.parseLong(parts[i]);
+        return groupKeyIds;
+    }
+
 
     // Uses the md5 object in a thread-safe way to calculate a fingerprint.
     private byte[] calculateFingerprint(byte[] input) {
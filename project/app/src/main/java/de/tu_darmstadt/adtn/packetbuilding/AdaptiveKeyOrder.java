@@ -0,0 +1,190 @@
+package de.tu_darmstadt.adtn.packetbuilding;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.tu_darmstadt.adtn.ciphersuite.Utils.IGroupKeyContext;
+
+/**
+ * Orders key contexts for trial decryption so the keys that matched most often and most recently
+ * are tried first. Receivers read the published order without locking and matches only update
+ * counters. The order is recomputed on a background thread after a number of matches, which
+ * starts at one for a new key set and doubles up to {@link #RESORT_INTERVAL}. Each new order is a
+ * new array, so arrays returned earlier never change. Until the order of a new key set is
+ * published, its key contexts are tried in the order they were passed in. Thread-safe.
+ */
+public class AdaptiveKeyOrder {
+
+    /**
+     * Maximum number of matches between two computations of the order.
+     */
+    public final static int RESORT_INTERVAL = 64;
+
+    // Weight of a match in the score. The score halves every time the order is computed, so
+    // recent matches count more than old ones.
+    private final static int HIT_WEIGHT = 1024;
+
+    private final static int KEEP_ALIVE_SECONDS = 60;
+
+    // Computes the orders of all instances one after another. The thread terminates after being
+    // idle for a while.
+    private final static ThreadPoolExecutor sorter = new ThreadPoolExecutor(1, 1, KEEP_ALIVE_SECONDS,
+            TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "Key order");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    static {
+        sorter.allowCoreThreadTimeOut(true);
+    }
+
+    // The published order. Replaced as a whole and never modified, so receivers can read it
+    // without locking.
+    private volatile Order order = new Order(null, new IGroupKeyContext[0],
+            new IdentityHashMap<IGroupKeyContext, Stats>());
+
+    // The key contexts the next computation of the order is for
+    private volatile IGroupKeyContext[] requestedSource;
+
+    // Set while a computation of the order is queued
+    private final AtomicBoolean sortQueued = new AtomicBoolean();
+
+    private final AtomicInteger matchesSinceSort = new AtomicInteger();
+    private volatile int nextSort = 1; // Only written by the sorter thread
+    private final AtomicLong clock = new AtomicLong();
+
+    // For computing the average number of keys tried per match
+    private final AtomicLong matchCount = new AtomicLong(), triedCount = new AtomicLong();
+
+    private final Runnable sortTask = new Runnable() {
+        @Override
+        public void run() {
+            // Cleared first, so requests made during the computation queue another one
+            sortQueued.set(false);
+            sort(requestedSource);
+        }
+    };
+
+    /**
+     * Returns the key contexts in the order they should be tried. Statistics of key contexts that
+     * were also passed in before are kept when the key contexts change. Does not block.
+     *
+     * @param keyContexts The key contexts, e.g. from the group key store.
+     * @return The same key contexts, hottest first.
+     */
+    public IGroupKeyContext[] getOrder(IGroupKeyContext[] keyContexts) {
+        Order current = order;
+        if (keyContexts != current.source) {
+            requestSort(keyContexts);
+            return keyContexts;
+        }
+
+        if (matchesSinceSort.get() >= nextSort) requestSort(keyContexts);
+        return current.ordered;
+    }
+
+    /**
+     * Records that a packet was decrypted with a key context. Does not block.
+     *
+     * @param context A key context from the array last returned by {@link #getOrder(IGroupKeyContext[])}.
+     */
+    public void recordMatch(IGroupKeyContext context) {
+        Stats s = order.stats.get(context);
+        if (s == null) return;
+
+        s.hits.incrementAndGet();
+        s.lastMatch = clock.incrementAndGet();
+        matchesSinceSort.incrementAndGet();
+        matchCount.incrementAndGet();
+        triedCount.addAndGet(s.position + 1);
+    }
+
+    /**
+     * @return The average number of keys that were tried before the matching one was found,
+     * including the matching one, or 0 if there was no match yet.
+     */
+    public double getAverageKeysTried() {
+        long matches = matchCount.get();
+        return matches == 0 ? 0 : (double) triedCount.get() / matches;
+    }
+
+    // Queues a computation of the order for the specified key contexts unless one is queued
+    private void requestSort(IGroupKeyContext[] keyContexts) {
+        requestedSource = keyContexts;
+        if (sortQueued.compareAndSet(false, true)) sorter.execute(sortTask);
+    }
+
+    // Ages the scores, sorts by score and publishes a new array if the order changed. Only called
+    // by the sorter thread.
+    private void sort(IGroupKeyContext[] source) {
+        Order current = order;
+        final IdentityHashMap<IGroupKeyContext, Stats> stats;
+        if (source != current.source) {
+            // Keep the statistics of keys that are still there
+            stats = new IdentityHashMap<>();
+            for (IGroupKeyContext context : source) {
+                Stats s = current.stats.get(context);
+                stats.put(context, s == null ? new Stats() : s);
+            }
+            nextSort = 1;
+        } else {
+            stats = current.stats;
+            nextSort = Math.min(nextSort * 2, RESORT_INTERVAL);
+        }
+        matchesSinceSort.set(0);
+
+        // Receivers keep updating the counters, so the values compared are copied first
+        for (Stats s : stats.values()) {
+            s.score = s.score / 2 + (long) s.hits.getAndSet(0) * HIT_WEIGHT;
+            s.sortedLastMatch = s.lastMatch;
+        }
+
+        IGroupKeyContext[] sorted = Arrays.copyOf(source, source.length);
+        Arrays.sort(sorted, new Comparator<IGroupKeyContext>() {
+            @Override
+            public int compare(IGroupKeyContext lhs, IGroupKeyContext rhs) {
+                Stats l = stats.get(lhs), r = stats.get(rhs);
+                if (l.score != r.score) return l.score > r.score ? -1 : 1;
+                return l.sortedLastMatch == r.sortedLastMatch ? 0 : (l.sortedLastMatch > r.sortedLastMatch ? -1 : 1);
+            }
+        });
+        if (source == current.source && Arrays.equals(sorted, current.ordered)) return;
+        for (int i = 0; i < sorted.length; ++i) stats.get(sorted[i]).position = i;
+        order = new Order(source, sorted, stats);
+    }
+
+    // The key contexts passed in, the same contexts in the order they should be tried and the
+    // statistics of the contexts
+    private static class Order {
+        final IGroupKeyContext[] source, ordered;
+        final IdentityHashMap<IGroupKeyContext, Stats> stats;
+
+        Order(IGroupKeyContext[] source, IGroupKeyContext[] ordered, IdentityHashMap<IGroupKeyContext, Stats> stats) {
+            this.source = source;
+            this.ordered = ordered;
+            this.stats = stats;
+        }
+    }
+
+    // Statistics of a single key context
+    private static class Stats {
+        final AtomicInteger hits = new AtomicInteger();
+        volatile int position;
+        volatile long lastMatch;
+
+        // Only used by the sorter thread
+        long score, sortedLastMatch;
+    }
+}
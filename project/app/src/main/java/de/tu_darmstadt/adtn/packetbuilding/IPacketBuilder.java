@@ -1,10 +1,12 @@
 package de.tu_darmstadt.adtn.packetbuilding;
 
+import java.nio.ByteBuffer;
 import java.util.Collection;
 
 import javax.crypto.SecretKey;
 
 import de.tu_darmstadt.adtn.ciphersuite.IGroupCipher;
+import de.tu_darmstadt.adtn.ciphersuite.Utils.IGroupKeyContext;
 
 /**
  * Converts messages to encrypted packets and vice versa.
@@ -52,4 +54,58 @@ public interface IPacketBuilder {
      * @return The decrypted message on success or null otherwise.
      */
     byte[] tryUnpackPacket(byte[] packet, Collection<SecretKey> keys);
+
+    /**
+     * Tries to decrypt and unpack a packet using precomputed key contexts.
+     *
+     * @param packet      The encrypted packet.
+     * @param keyContexts Key contexts to use for trying to decrypt the packet.
+     * @return The decrypted message on success or null otherwise.
+     */
+    byte[] tryUnpackPacket(byte[] packet, IGroupKeyContext[] keyContexts);
+
+    /**
+     * Tries to decrypt and unpack a packet into a caller-supplied buffer. Nothing is allocated
+     * if the packet cannot be decrypted.
+     *
+     * @param packet      The encrypted packet.
+     * @param keyContexts Key contexts to use for trying to decrypt the packet.
+     * @param buffer      Buffer that will hold the message. Must have room for
+     *                    {@link #getUnencryptedPacketSize()} bytes starting at offset, which are
+     *                    used as scratch space.
+     * @param offset      Start index of the message in the buffer.
+     * @return The length of the message on success or -1 otherwise.
+     */
+    int tryUnpackPacketInto(byte[] packet, IGroupKeyContext[] keyContexts, byte[] buffer, int offset);
+
+    /**
+     * Same as {@link #tryUnpackPacketInto(byte[], IGroupKeyContext[], byte[], int)}, but reads the
+     * packet from a buffer, e.g. the one returned by
+     * {@link de.tu_darmstadt.adtn.ISocket#receive()}, without copying it to the Java heap first.
+     * The position of the buffer is not changed.
+     *
+     * @param packet      Buffer holding the encrypted packet between its position and limit.
+     * @param keyContexts Key contexts to use for trying to decrypt the packet.
+     * @param buffer      Buffer that will hold the message. Must have room for
+     *                    {@link #getUnencryptedPacketSize()} bytes starting at offset, which are
+     *                    used as scratch space.
+     * @param offset      Start index of the message in the buffer.
+     * @return The length of the message on success or -1 otherwise.
+     */
+    int tryUnpackPacketInto(ByteBuffer packet, IGroupKeyContext[] keyContexts, byte[] buffer, int offset);
+
+    /**
+     * Same as {@link #tryUnpackPacketInto(ByteBuffer, IGroupKeyContext[], byte[], int)}, but also
+     * reports which key decrypted the packet.
+     *
+     * @param packet      Buffer holding the encrypted packet between its position and limit.
+     * @param keyContexts Key contexts to use for trying to decrypt the packet.
+     * @param buffer      Buffer that will hold the message. Must have room for
+     *                    {@link #getUnencryptedPacketSize()} bytes starting at offset, which are
+     *                    used as scratch space.
+     * @param offset      Start index of the message in the buffer.
+     * @param length      Array whose first element is set to the length of the message on success.
+     * @return The key context that decrypted the packet on success or null otherwise.
+     */
+    IGroupKeyContext tryUnpackPacketInto(ByteBuffer packet, IGroupKeyContext[] keyContexts, byte[] buffer, int offset, int[] length);
 }
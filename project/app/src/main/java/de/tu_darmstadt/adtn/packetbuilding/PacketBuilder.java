@@ -1,5 +1,6 @@
 package de.tu_darmstadt.adtn.packetbuilding;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Random;
@@ -7,6 +8,7 @@ import java.util.Random;
 import javax.crypto.SecretKey;
 
 import de.tu_darmstadt.adtn.ciphersuite.IGroupCipher;
+import de.tu_darmstadt.adtn.ciphersuite.Utils.IGroupKeyContext;
 
 /**
  * Converts messages to encrypted packets and vice versa.
@@ -22,6 +24,9 @@ public class PacketBuilder implements IPacketBuilder {
     private IGroupCipher cipher;
     private int encryptedPacketSize;
 
+    // Tries the keys that matched most often first
+    private final AdaptiveKeyOrder keyOrder = new AdaptiveKeyOrder();
+
     /**
      * Creates a PacketBuilder object.
      *
@@ -108,8 +113,117 @@ public class PacketBuilder implements IPacketBuilder {
     @Override
     public byte[] tryUnpackPacket(byte[] packet, Collection<SecretKey> keys) {
         // Try to decrypt packet
-        byte[] packedMessage = cipher.tryDecrypt(packet, keys);
+        return unpack(cipher.tryDecrypt(packet, keys));
+    }
+
+    /**
+     * Tries to decrypt and unpack a packet using precomputed key contexts. The key contexts are
+     * tried in the order of an {@link AdaptiveKeyOrder}.
+     *
+     * @param packet      The encrypted packet.
+     * @param keyContexts Key contexts to use for trying to decrypt the packet.
+     * @return The decrypted message on success or null otherwise.
+     */
+    @Override
+    public byte[] tryUnpackPacket(byte[] packet, IGroupKeyContext[] keyContexts) {
+        // Try to decrypt packet
+        byte[] packedMessage = new byte[unencryptedPacketSize];
+        IGroupKeyContext match = cipher.tryDecryptInto(packet, getKeyOrder(keyContexts), packedMessage, 0);
+        if (match == null) return null;
+        recordMatch(match);
+        return unpack(packedMessage);
+    }
+
+    /**
+     * Tries to decrypt and unpack a packet into a caller-supplied buffer. Nothing is allocated
+     * if the packet cannot be decrypted. The key contexts are tried in the order of an
+     * {@link AdaptiveKeyOrder}.
+     *
+     * @param packet      The encrypted packet.
+     * @param keyContexts Key contexts to use for trying to decrypt the packet.
+     * @param buffer      Buffer that will hold the message. Must have room for
+     *                    {@link #getUnencryptedPacketSize()} bytes starting at offset, which are
+     *                    used as scratch space.
+     * @param offset      Start index of the message in the buffer.
+     * @return The length of the message on success or -1 otherwise.
+     */
+    @Override
+    public int tryUnpackPacketInto(byte[] packet, IGroupKeyContext[] keyContexts, byte[] buffer, int offset) {
+        // Decrypt packet in place and fail if no key matched
+        IGroupKeyContext match = cipher.tryDecryptInto(packet, getKeyOrder(keyContexts), buffer, offset);
+        if (match == null) return -1;
+        recordMatch(match);
+        return unpackInPlace(buffer, offset);
+    }
+
+    /**
+     * Tries to decrypt and unpack a packet held by a buffer, which may be a direct buffer, into a
+     * caller-supplied buffer. The encrypted packet is never copied to the Java heap.
+     *
+     * @param packet      Buffer holding the encrypted packet between its position and limit.
+     * @param keyContexts Key contexts to use for trying to decrypt the packet.
+     * @param buffer      Buffer that will hold the message. Must have room for
+     *                    {@link #getUnencryptedPacketSize()} bytes starting at offset, which are
+     *                    used as scratch space.
+     * @param offset      Start index of the message in the buffer.
+     * @return The length of the message on success or -1 otherwise.
+     */
+    @Override
+    public int tryUnpackPacketInto(ByteBuffer packet, IGroupKeyContext[] keyContexts, byte[] buffer, int offset) {
+        IGroupKeyContext match = cipher.tryDecryptInto(packet, getKeyOrder(keyContexts), buffer, offset);
+        if (match == null) return -1;
+        recordMatch(match);
+        return unpackInPlace(buffer, offset);
+    }
+
+    /**
+     * Same as {@link #tryUnpackPacketInto(ByteBuffer, IGroupKeyContext[], byte[], int)}, but also
+     * reports which key decrypted the packet.
+     *
+     * @param packet      Buffer holding the encrypted packet between its position and limit.
+     * @param keyContexts Key contexts to use for trying to decrypt the packet.
+     * @param buffer      Buffer that will hold the message. Must have room for
+     *                    {@link #getUnencryptedPacketSize()} bytes starting at offset, which are
+     *                    used as scratch space.
+     * @param offset      Start index of the message in the buffer.
+     * @param length      Array whose first element is set to the length of the message on success.
+     * @return The key context that decrypted the packet on success or null otherwise.
+     */
+    @Override
+    public IGroupKeyContext tryUnpackPacketInto(ByteBuffer packet, IGroupKeyContext[] keyContexts, byte[] buffer, int offset, int[] length) {
+        IGroupKeyContext match = cipher.tryDecryptInto(packet, getKeyOrder(keyContexts), buffer, offset);
+        if (match == null) return null;
+        recordMatch(match);
+        length[0] = unpackInPlace(buffer, offset);
+        return length[0] == -1 ? null : match;
+    }
+
+    /**
+     * @return The average number of keys tried per successfully decrypted packet.
+     */
+    public double getAverageKeysTried() {
+        return keyOrder.getAverageKeysTried();
+    }
+
+    private IGroupKeyContext[] getKeyOrder(IGroupKeyContext[] keyContexts) {
+        return keyOrder.getOrder(keyContexts);
+    }
+
+    private void recordMatch(IGroupKeyContext context) {
+        keyOrder.recordMatch(context);
+    }
+
+    // Removes the header by moving the message to the start and returns its length or -1 if the
+    // packet is malformed
+    private int unpackInPlace(byte[] buffer, int offset) {
+        int length = buffer[offset] & 0xff | buffer[offset + 1] << 8 & 0xff00;
+        if (length < 1 || length > maxMessageSize) return -1; // Ignore malformed packets
+        System.arraycopy(buffer, offset + HEADER_SIZE, buffer, offset, length);
+        return length;
+    }
 
+    // Returns the message contained in a decrypted packet or null if it is malformed
+    private byte[] unpack(byte[] packedMessage) {
         // Decryption failed with every key?
         if (packedMessage == null) return null;
 
@@ -5,14 +5,20 @@ import android.net.wifi.WifiManager;
 import android.util.Log;
 
 import java.io.File;
+import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 import de.tu_darmstadt.adtn.AdtnSocketException;
+import de.tu_darmstadt.adtn.AdtnSocketTimeoutException;
 import de.tu_darmstadt.adtn.ISocket;
+import de.tu_darmstadt.adtn.SocketStatistics;
 import de.tu_darmstadt.adtn.wifi.WifiPowerLock;
 
 /**
- * Socket for sending and receiving fixed-size Ethernet packets on link layer.
+ * Socket for sending and receiving fixed-size Ethernet packets on link layer. The socket is
+ * non-blocking internally: blocking calls wait for it with epoll, so {@link #close()} can wake
+ * them up via an eventfd instead of closing the file descriptor while they use it.
  */
 public class PacketSocket implements ISocket {
 
@@ -24,16 +30,111 @@ public class PacketSocket implements ISocket {
     private final static int ETHER_ADDR_LEN = 6, ETHER_TYPE_LEN = 2;
     private final static int ETHERNET_HEADER_SIZE = ETHER_ADDR_LEN * 2 + ETHER_TYPE_LEN;
 
-    // Path in abstract namespace to use for the Unix domain socket
-    private final static String UDS_PATH = "timberdoodle_socket_creator";
+    /**
+     * Maximum number of packets passed to the kernel by a single system call in
+     * {@link #sendBatch(byte[][], int, int)} and {@link #receiveBatch(byte[][], int)}. Larger
+     * batches are split.
+     */
+    public final static int MAX_BATCH_SIZE = 64;
+
+    /**
+     * Fanout mode that delivers the packets of a flow to the same socket. The flow of a packet is
+     * determined from its IP header, so packets of this socket all end up on the same socket.
+     */
+    public final static int FANOUT_HASH = 0;
+
+    /**
+     * Fanout mode that spreads packets evenly over the sockets of the group.
+     */
+    public final static int FANOUT_ROUND_ROBIN = 1;
+
+    /**
+     * Event of {@link #waitForEvents(int, int)}: a packet can be received without blocking.
+     */
+    public final static int EVENT_RECEIVE = 1;
+
+    /**
+     * Event of {@link #waitForEvents(int, int)}: a packet can be sent without blocking.
+     */
+    public final static int EVENT_SEND = 2;
+
+    // Reported by epollWait if the socket was closed, must match packetsocket.c
+    private final static int EVENT_WAKE_UP = 4;
+
+    // Event loop file descriptors: the eventfd that wakes up waiting threads on close and one
+    // epoll instance for receiving, sending and both. Must match packetsocket.c.
+    private final static int WAKE_UP_FD = 0, RECEIVE_EPOLL_FD = 1, SEND_EPOLL_FD = 2, EVENT_LOOP_EPOLL_FD = 3;
+    private final static int EVENT_FD_COUNT = 4;
+
+    private final static int MSG_TRUNC = 0x20;
+    private final static int SOL_SOCKET = 1, SO_SNDBUF = 7, SO_RCVBUF = 8;
+
+    // When the queue of the network interface is full (ENOBUFS), sending waits 1, 2, 4, ... ms
+    // and gives the packet up after the last retry instead of failing
+    private final static int SEND_BACKOFF_DELAY = 1, MAX_SEND_RETRIES = 5;
+
+    // The kernel statistics are reset when they are read and only have 32 bits, so they are read
+    // at least this often in nanoseconds while receiving
+    private final static long STATISTICS_INTERVAL = 10000000000L;
+
+    // Geometry of the receive ring: blocks are handed to user space when they are full or after
+    // the block timeout in milliseconds
+    private final static int RING_BLOCK_SIZE = 1 << 15, RING_BLOCK_COUNT = 8, RING_FRAME_SIZE = 2048;
+    private final static int RING_BLOCK_TIMEOUT = 10;
+    private final static int MAX_RING_FRAMES = 512; // Per block, must match packetsocket.c
 
     private final int payloadSize, packetSize;
-    private final ByteBuffer receiveBuffer, sendBuffer;
+    private final ByteBuffer sendBuffer;
+
+    // Frame slots for batches, one packet of packetSize bytes after another. Packets received
+    // into the slots by a single recvmmsg call are handed out one by one via the slots view.
+    private final ByteBuffer receiveSlots, sendSlots, slotsView;
+    private final int[] receiveLengths = new int[MAX_BATCH_SIZE];
+    private int slotCount, nextSlot;
 
     private final int fileDescriptor;
+    private final int[] eventFileDescriptors = new int[EVENT_FD_COUNT];
+
+    // Timeout of receive calls in milliseconds, -1 to wait forever
+    private volatile int receiveTimeout = -1;
 
     private final WifiPowerLock wifiPowerLock;
 
+    // Memory mapped receive ring or null if receiving uses recvmmsg. The ring view is handed out
+    // by receive(). Closing unmaps the ring once no frame is handed out any more.
+    private ByteBuffer rxRing, ringView;
+
+    // Guards the receive state of both the ring and the receive slots
+    private final Object receiveLock = new Object();
+    private final int[] frameOffsets = new int[MAX_RING_FRAMES], frameLengths = new int[MAX_RING_FRAMES];
+    private int currentBlock, frameCount, nextFrame;
+    private boolean blockHeld, frameHandedOut;
+    private Thread frameOwner; // The thread the frame was handed out to
+
+    // Guards the send buffers. Close waits for both locks before closing the file descriptors.
+    private final Object sendLock = new Object();
+
+    // Set by close(), guarded by statisticsLock for writing
+    private volatile boolean closed;
+
+    // Whether the kernel drops frames with the wrong size or EtherType, see attachFilter
+    private boolean filterAttached;
+
+    // Frames that arrived with the wrong size and were discarded here. Only written while
+    // holding receiveLock.
+    private volatile long discardedFrames;
+
+    // Frames that arrived at the socket and the ones the kernel dropped because the receive ring
+    // or queue was full. Accumulated from the kernel statistics while holding statisticsLock.
+    private long arrivedFrames, droppedFrames;
+    private long nextStatisticsRead = System.nanoTime() + STATISTICS_INTERVAL;
+    private final long[] kernelStatistics = new long[2];
+    private final Object statisticsLock = new Object();
+
+    // Send retries because a queue was full and packets given up. Only written while holding
+    // sendLock.
+    private volatile long sendRetries, packetsNotSent;
+
     /**
      * Creates a new PacketSocket object.
      *
@@ -46,6 +147,23 @@ public class PacketSocket implements ISocket {
      */
     public PacketSocket(Context context, String iface, int etherType, byte[] destMac, byte[] srcMac,
                         int payloadSize) {
+        this(context, iface, etherType, destMac, srcMac, payloadSize, false);
+    }
+
+    /**
+     * Creates a new PacketSocket object.
+     *
+     * @param context The context to use.
+     * @param iface The name of the network interface to use.
+     * @param etherType The EtherType to use for sending and receiving.
+     * @param destMac The destination MAC address to use when sending.
+     * @param srcMac The source MAC address to use when sending.
+     * @param payloadSize The payload size of all sent and received packets.
+     * @param useRxRing Whether to receive via a memory mapped ring (PACKET_RX_RING, TPACKET_V3)
+     *                  instead of recvmmsg. Falls back to recvmmsg if the kernel does not support it.
+     */
+    public PacketSocket(Context context, String iface, int etherType, byte[] destMac, byte[] srcMac,
+                        int payloadSize, boolean useRxRing) {
         final int PAYLOAD_MIN_SIZE = 46, PAYLOAD_MAX_SIZE = 1500;
         final int IFNAMSIZ = 16;
 
@@ -66,14 +184,20 @@ public class PacketSocket implements ISocket {
         // Store packet size and allocate buffers
         this.payloadSize = payloadSize;
         this.packetSize = ETHERNET_HEADER_SIZE + payloadSize;
-        receiveBuffer = ByteBuffer.allocateDirect(packetSize);
         sendBuffer = ByteBuffer.allocateDirect(packetSize);
+        receiveSlots = ByteBuffer.allocateDirect(MAX_BATCH_SIZE * packetSize);
+        sendSlots = ByteBuffer.allocateDirect(MAX_BATCH_SIZE * packetSize);
+        slotsView = receiveSlots.asReadOnlyBuffer();
 
-        // Prepare send buffer
+        // Prepare send buffer and the header of every send slot
         sendBuffer.put(destMac).put(srcMac).putShort((short) etherType);
+        for (int i = 0; i < MAX_BATCH_SIZE; ++i) {
+            sendSlots.position(i * packetSize);
+            sendSlots.put(destMac).put(srcMac).putShort((short) etherType);
+        }
 
         try {
-            // Create socket using superuser process and receive file descriptor via UDS
+            // Create socket using the privileged helper and receive file descriptor via UDS
             fileDescriptor = createPacketSocket(context, etherType);
 
             // Obtain the interface index of the interface to use
@@ -83,92 +207,643 @@ public class PacketSocket implements ISocket {
             bind(fileDescriptor, etherType, ifaceIndex);
 
             // Disable custom FCS if supported
-            final int SOL_SOCKET = 1, SO_NOFCS = 43;
+            final int SO_NOFCS = 43;
             setsockoptInt(fileDescriptor, SOL_SOCKET, SO_NOFCS, 0);
+
+            // Make the socket non-blocking and create the epoll instances to wait for it
+            setupEventLoop(fileDescriptor, eventFileDescriptors);
         } catch (PacketSocketException e) {
             throw new AdtnSocketException("Socket creation failed", e);
         }
 
+        // Let the kernel drop frames with the wrong size or EtherType, so they never wake up the
+        // receiving thread. Frames are still checked here in case the filter is not available.
+        try {
+            attachFilter(fileDescriptor, etherType, packetSize);
+            filterAttached = true;
+        } catch (PacketSocketException e) {
+            Log.w("PacketSocket", "Socket filter not available: " + e.getMessage());
+        }
+
+        // Map receive ring
+        if (useRxRing) {
+            try {
+                rxRing = setupRxRing(fileDescriptor, RING_BLOCK_SIZE, RING_BLOCK_COUNT,
+                        RING_FRAME_SIZE, RING_BLOCK_TIMEOUT).order(ByteOrder.nativeOrder());
+                ringView = rxRing.asReadOnlyBuffer();
+            } catch (PacketSocketException e) {
+                Log.w("PacketSocket", "Receive ring not available, using recvmmsg: " + e.getMessage());
+            }
+        }
+
         // Prevent Wifi from going into power saving mode
         wifiPowerLock = new WifiPowerLock(context);
         wifiPowerLock.lockPowerSaving();
     }
 
     private int createPacketSocket(Context context, int etherType) {
-        // Run packet socket creator process
-        final int AF_PACKET = 17, SOCK_RAW = 3;
-        SocketCreator socketCreator = new SocketCreator(context, UDS_PATH, AF_PACKET, SOCK_RAW, etherType);
-
-        // Obtain socket file descriptor from socket creator process
-        socketCreator.waitForListen();
-        int socketFileDescriptor = readFileDescriptorFromUds(UDS_PATH);
-        socketCreator.waitForExit();
-        return socketFileDescriptor;
+        try {
+            return PrivilegedHelper.getInstance(context).createPacketSocket(etherType);
+        } catch (IOException e) {
+            throw new AdtnSocketException("Socket creation failed", e);
+        }
     }
 
-    private native int readFileDescriptorFromUds(String abstractPath);
-
     private native int setsockoptInt(int sockfd, int level, int optname, int optval);
 
+    private native int getsockoptInt(int sockfd, int level, int optname);
+
     private native void bind(int sockfd, int protocol, int ifindex);
 
     private native int ioctlGetInterfaceIndex(int fileDescriptor, String interfaceName);
 
+    private native void attachFilter(int fileDescriptor, int etherType, int frameLength);
+
+    private native void joinFanout(int fileDescriptor, int groupId, int mode);
+
+    private native void setupEventLoop(int fileDescriptor, int[] eventFileDescriptors);
+
+    // Returns the EVENT_* flags that occurred, EVENT_WAKE_UP if the socket was closed, or 0 if
+    // the timeout elapsed or the wait was interrupted
+    private native int epollWait(int epollFileDescriptor, int timeout);
+
+    private native void wakeUp(int eventFileDescriptor);
+
+    private native void closeEventLoop(int[] eventFileDescriptors);
+
     private native int close(int fileDescriptor);
 
     private native int recv(int fileDescriptor, ByteBuffer buffer, int offset, int count, int flags);
 
     private native int send(int fileDescriptor, ByteBuffer buffer, int offset, int count, int flags);
 
+    private native int recvmmsg(int fileDescriptor, ByteBuffer buffer, int slotSize, int count,
+                                int flags, int[] lengths);
+
+    private native int sendmmsg(int fileDescriptor, ByteBuffer buffer, int slotSize, int first,
+                                int count, int flags);
+
+    private native ByteBuffer setupRxRing(int fileDescriptor, int blockSize, int blockCount,
+                                          int frameSize, int blockTimeout);
+
+    // Returns the number of frames in the block or -1 if the kernel did not hand it over yet
+    private native int readRxBlock(ByteBuffer ring, int blockOffset, int[] frameOffsets,
+                                   int[] frameLengths);
+
+    private native void releaseRxBlock(ByteBuffer ring, int blockOffset);
+
+    // Reads the packets and drops since the last call
+    private native void readStatistics(int fileDescriptor, long[] counters);
+
+    private native void unmapRxRing(ByteBuffer ring);
+
     /**
-     * Receives data from the socket.
+     * @return true if packets are received via the memory mapped receive ring.
+     */
+    public boolean isRxRingEnabled() {
+        return rxRing != null;
+    }
+
+    /**
+     * Sets the timeout of the receive methods. If no packet arrives in time, they throw an
+     * {@link AdtnSocketTimeoutException}.
      *
-     * @param buffer The buffer to put the received data in.
-     * @param offset The offset in buffer.
+     * @param timeout The timeout in milliseconds or -1 to wait forever, which is the default.
      */
     @Override
-    public void receive(byte[] buffer, int offset) {
-        final int MSG_TRUNC = 0x20;
+    public void setReceiveTimeout(int timeout) {
+        if (timeout < -1 || timeout == 0) throw new IllegalArgumentException("timeout is out of range");
+        receiveTimeout = timeout;
+    }
+
+    /**
+     * Waits until packets can be received or sent without blocking. Both are watched by a single
+     * epoll instance, so one thread can serve the receiving and the sending side of the socket,
+     * e.g. on devices with few cores.
+     *
+     * @param events  {@link #EVENT_RECEIVE}, {@link #EVENT_SEND} or both.
+     * @param timeout The timeout in milliseconds, 0 to only check or -1 to wait forever.
+     * @return The requested events that occurred or 0 if the timeout elapsed.
+     */
+    public int waitForEvents(int events, int timeout) {
+        events &= EVENT_RECEIVE | EVENT_SEND;
+        if (events == 0) throw new IllegalArgumentException("No events specified");
+        if (timeout < -1) throw new IllegalArgumentException("timeout is out of range");
+
+        // Packets that were already taken from the kernel are not seen by epoll
+        if ((events & EVENT_RECEIVE) != 0) {
+            synchronized (receiveLock) {
+                if (hasPendingPayload()) return EVENT_RECEIVE;
+            }
+        }
+
+        int epoll = events == EVENT_RECEIVE ? RECEIVE_EPOLL_FD : events == EVENT_SEND ? SEND_EPOLL_FD : EVENT_LOOP_EPOLL_FD;
+        long deadline = getDeadline(timeout);
+        while (true) {
+            int occurred = waitFor(epoll, getRemainingTime(deadline)) & events;
+            if (occurred != 0 || getRemainingTime(deadline) == 0) return occurred;
+        }
+    }
+
+    /**
+     * Sets the size of the kernel receive buffer (SO_RCVBUF), which holds the packets that
+     * arrived but were not received yet. A larger buffer lets bursts wait instead of being
+     * dropped. The kernel doubles the size for its bookkeeping and limits it to
+     * net.core.rmem_max. The receive ring is not affected.
+     *
+     * @param size The requested size in bytes.
+     * @return The size the kernel actually uses.
+     */
+    public int setReceiveBufferSize(int size) {
+        return setBufferSize(SO_RCVBUF, size);
+    }
+
+    /**
+     * Sets the size of the kernel send buffer (SO_SNDBUF), which holds the packets that were sent
+     * but not passed to the network interface yet. The kernel doubles the size for its
+     * bookkeeping and limits it to net.core.wmem_max.
+     *
+     * @param size The requested size in bytes.
+     * @return The size the kernel actually uses.
+     */
+    public int setSendBufferSize(int size) {
+        return setBufferSize(SO_SNDBUF, size);
+    }
+
+    /**
+     * @return The size of the kernel receive buffer in bytes.
+     */
+    public int getReceiveBufferSize() {
+        return getBufferSize(SO_RCVBUF);
+    }
+
+    /**
+     * @return The size of the kernel send buffer in bytes.
+     */
+    public int getSendBufferSize() {
+        return getBufferSize(SO_SNDBUF);
+    }
+
+    private int setBufferSize(int option, int size) {
+        if (size <= 0) throw new IllegalArgumentException("size is out of range");
+        if (closed) throw new AdtnSocketException("Socket is closed", null);
+        if (setsockoptInt(fileDescriptor, SOL_SOCKET, option, size) != 0) {
+            throw new AdtnSocketException("Could not set buffer size", null);
+        }
+        return getBufferSize(option);
+    }
+
+    private int getBufferSize(int option) {
+        if (closed) throw new AdtnSocketException("Socket is closed", null);
+        try {
+            return getsockoptInt(fileDescriptor, SOL_SOCKET, option);
+        } catch (PacketSocketException e) {
+            throw new AdtnSocketException("Could not get buffer size", e);
+        }
+    }
+
+    /**
+     * Makes this socket share the received packets with the other sockets in a fanout group
+     * (PACKET_FANOUT). Every packet is delivered to only one socket of the group, so each socket
+     * can be drained by its own thread. All sockets of a group must be bound to the same
+     * interface and EtherType.
+     *
+     * @param groupId The ID of the group (16 bit), which is shared by all processes.
+     * @param mode    {@link #FANOUT_HASH} or {@link #FANOUT_ROUND_ROBIN}.
+     */
+    public void joinFanoutGroup(int groupId, int mode) {
+        try {
+            joinFanout(fileDescriptor, groupId, mode);
+        } catch (PacketSocketException e) {
+            throw new AdtnSocketException("Could not join fanout group", e);
+        }
+    }
+
+    /**
+     * @return true if frames with the wrong size or EtherType are dropped by a socket filter in
+     * the kernel.
+     */
+    public boolean isFilterAttached() {
+        return filterAttached;
+    }
+
+    /**
+     * @return The number of received frames that were discarded because they did not have the
+     * payload size of this socket. If the socket filter is attached, this only counts frames that
+     * were queued before it took effect: Linux does not count the frames a socket filter drops.
+     */
+    public long getDiscardedFrameCount() {
+        return discardedFrames;
+    }
+
+    /**
+     * @return The number of packets the kernel dropped so far because the receive ring or the
+     * receive queue was full.
+     */
+    public long getDroppedFrameCount() {
+        synchronized (statisticsLock) {
+            updateStatistics();
+            return droppedFrames;
+        }
+    }
+
+    /**
+     * Returns the counters of the socket. Arrived and dropped packets are taken from the kernel
+     * (PACKET_STATISTICS), so they include the packets the receiving thread did not see yet.
+     *
+     * @return The current counters.
+     */
+    @Override
+    public SocketStatistics getStatistics() {
+        synchronized (statisticsLock) {
+            updateStatistics();
+            return new SocketStatistics(arrivedFrames, droppedFrames, sendRetries, packetsNotSent);
+        }
+    }
 
-        // Receive until a packet with the correct size arrives
+    // Adds the kernel statistics since the last read to the counters. Must be called while
+    // holding statisticsLock.
+    private void updateStatistics() {
+        if (closed) return;
+        try {
+            readStatistics(fileDescriptor, kernelStatistics);
+        } catch (PacketSocketException e) {
+            throw new AdtnSocketException("Could not read socket statistics", e);
+        }
+        arrivedFrames += kernelStatistics[0];
+        droppedFrames += kernelStatistics[1];
+        nextStatisticsRead = System.nanoTime() + STATISTICS_INTERVAL;
+    }
+
+    // Reads the kernel statistics if the interval passed, so their 32 bit counters do not
+    // overflow. Called by the receiving thread.
+    private void updateStatisticsPeriodically() {
+        synchronized (statisticsLock) {
+            if (System.nanoTime() - nextStatisticsRead >= 0) updateStatistics();
+        }
+    }
+
+    // Returns the time in nanoseconds at which a wait with the specified timeout in milliseconds
+    // ends, or -1 to wait forever
+    private static long getDeadline(int timeout) {
+        return timeout == -1 ? -1 : System.nanoTime() + timeout * 1000000L;
+    }
+
+    // Returns the milliseconds left until the deadline, -1 to wait forever
+    private static int getRemainingTime(long deadline) {
+        if (deadline == -1) return -1;
+        long remaining = deadline - System.nanoTime();
+        return remaining <= 0 ? 0 : (int) ((remaining + 999999) / 1000000);
+    }
+
+    // Waits on one of the epoll instances and returns the events that occurred, 0 if the timeout
+    // elapsed or the wait was interrupted, so callers check again. Throws if the socket is
+    // closed, also if it is closed while waiting.
+    private int waitFor(int epoll, int timeout) {
+        if (closed) throw new AdtnSocketException("Socket is closed", null);
+        int events;
+        try {
+            events = epollWait(eventFileDescriptors[epoll], timeout);
+        } catch (PacketSocketException e) {
+            throw new AdtnSocketException("Waiting for socket failed", e);
+        }
+        if ((events & EVENT_WAKE_UP) != 0) throw new AdtnSocketException("Socket is closed", null);
+        return events;
+    }
+
+    // Waits until the socket is readable. Throws if the receive timeout elapsed.
+    private void waitForReceive(long deadline) {
+        int timeout = getRemainingTime(deadline);
+        if (timeout == 0 || waitFor(RECEIVE_EPOLL_FD, timeout) == 0 && getRemainingTime(deadline) == 0) {
+            throw new AdtnSocketTimeoutException("receive timed out");
+        }
+    }
+
+    // Waits until the socket can send again
+    private void waitForSend() {
+        waitFor(SEND_EPOLL_FD, -1);
+    }
+
+    // Returns the start of the payload of the next frame with the correct size in the ring.
+    // Blocks until one arrives or the deadline passed. Must be called while holding receiveLock.
+    private int nextRingPayload(long deadline) {
+        releaseFrame();
+        while (true) {
+            if (closed) throw new AdtnSocketException("receive failed: socket is closed", null);
+
+            // Take the next frame of the current block
+            while (nextFrame < frameCount) {
+                int i = nextFrame++;
+                if (frameLengths[i] == packetSize) return frameOffsets[i] + ETHERNET_HEADER_SIZE;
+                ++discardedFrames;
+            }
+
+            // Give the block back to the kernel and continue with the next one
+            int blockOffset = currentBlock * RING_BLOCK_SIZE;
+            if (blockHeld) {
+                releaseRxBlock(rxRing, blockOffset);
+                blockHeld = false;
+                currentBlock = (currentBlock + 1) % RING_BLOCK_COUNT;
+                blockOffset = currentBlock * RING_BLOCK_SIZE;
+            }
+
+            updateStatisticsPeriodically();
+            int count = readRxBlock(rxRing, blockOffset, frameOffsets, frameLengths);
+            if (count == -1) {
+                // The socket becomes readable when the kernel hands over the block
+                waitForReceive(deadline);
+                continue;
+            }
+
+            blockHeld = true;
+            frameCount = count;
+            nextFrame = 0;
+        }
+    }
+
+    // Returns the start of the payload of the next packet with the correct size in the receive
+    // slots. Receives a new batch if all slots were consumed, blocking until one arrives or the
+    // deadline passed. Must be called while holding receiveLock.
+    private int nextSlotPayload(long deadline) {
         while (true) {
+            while (nextSlot < slotCount) {
+                int i = nextSlot++;
+                if (receiveLengths[i] == packetSize) return i * packetSize + ETHERNET_HEADER_SIZE;
+                ++discardedFrames;
+            }
+
+            updateStatisticsPeriodically();
             try {
-                if (recv(fileDescriptor, receiveBuffer, 0, packetSize, MSG_TRUNC) == packetSize) {
-                    break;
-                }
+                if (closed) throw new AdtnSocketException("receive failed: socket is closed", null);
+                slotCount = recvmmsg(fileDescriptor, receiveSlots, packetSize, MAX_BATCH_SIZE, MSG_TRUNC,
+                        receiveLengths);
             } catch (PacketSocketException e) {
                 throw new AdtnSocketException("receive failed", e);
             }
+            nextSlot = 0;
+            if (slotCount == 0) waitForReceive(deadline);
+        }
+    }
+
+    // Returns true if a packet with the correct size can be taken without blocking. Must be
+    // called while holding receiveLock.
+    private boolean hasPendingPayload() {
+        if (rxRing != null) {
+            for (; nextFrame < frameCount && frameLengths[nextFrame] != packetSize; ++nextFrame) {
+                ++discardedFrames;
+            }
+            return nextFrame < frameCount;
+        }
+        for (; nextSlot < slotCount && receiveLengths[nextSlot] != packetSize; ++nextSlot) {
+            ++discardedFrames;
         }
+        return nextSlot < slotCount;
+    }
+
+    // Marks the frame handed out by receive() as no longer used and wakes up close() if it waits
+    // for that. Must be called while holding receiveLock.
+    private void releaseFrame() {
+        if (!frameHandedOut) return;
+        frameHandedOut = false;
+        frameOwner = null;
+        if (closed) receiveLock.notifyAll();
+    }
 
-        // Copy from receive buffer
-        System.arraycopy(receiveBuffer.array(), ETHERNET_HEADER_SIZE, buffer, offset, payloadSize);
+    // Unmaps the receive ring if it is still mapped. Must be called while holding receiveLock.
+    private void unmapRing() {
+        if (ringView == null) return;
+        ringView = null;
+        try {
+            unmapRxRing(rxRing);
+        } catch (PacketSocketException e) {
+            throw new AdtnSocketException("Could not unmap receive ring", e);
+        }
     }
 
     /**
+     * Receives data from the socket.
+     *
+     * @param buffer The buffer to put the received data in.
+     * @param offset The offset in buffer.
+     */
+    @Override
+    public void receive(byte[] buffer, int offset) {
+        long deadline = getDeadline(receiveTimeout);
+        synchronized (receiveLock) {
+            ByteBuffer source = rxRing != null ? rxRing : receiveSlots;
+            source.position(rxRing != null ? nextRingPayload(deadline) : nextSlotPayload(deadline));
+            source.get(buffer, offset, payloadSize);
+        }
+    }
+
+    /**
+     * Receives a packet without copying it. Packets are read straight from the receive ring if it
+     * is enabled or from the slots of the last recvmmsg call otherwise.
+     *
+     * @return A read-only view of the memory the packet was received in, whose position and limit
+     * enclose the payload. It is only valid until the next receive call. If the view points into
+     * the receive ring, {@link #close()} waits until the receiving thread calls a receive method
+     * again, which then fails, or until it closes the socket itself.
+     */
+    @Override
+    public ByteBuffer receive() {
+        long deadline = getDeadline(receiveTimeout);
+        synchronized (receiveLock) {
+            ByteBuffer view;
+            int start;
+            if (rxRing != null) {
+                start = nextRingPayload(deadline);
+                frameHandedOut = true;
+                frameOwner = Thread.currentThread();
+                view = ringView;
+            } else {
+                start = nextSlotPayload(deadline);
+                view = slotsView;
+            }
+            view.limit(start + payloadSize);
+            view.position(start);
+            return view;
+        }
+    }
+
+    /**
+     * Receives several packets. Blocks until at least one packet with the correct size arrived
+     * and then also takes the ones that are already waiting in the current block of the receive
+     * ring or in the receive slots.
+     *
+     * @param buffers The buffers to put the received data in, one packet per buffer.
+     * @param offset  The offset in every buffer.
+     * @return The number of packets received, which were put in the first buffers.
+     */
+    @Override
+    public int receiveBatch(byte[][] buffers, int offset) {
+        if (buffers.length == 0) throw new IllegalArgumentException("No buffers specified");
+
+        long deadline = getDeadline(receiveTimeout);
+        synchronized (receiveLock) {
+            ByteBuffer source = rxRing != null ? rxRing : receiveSlots;
+            int stored = 0;
+            do {
+                source.position(rxRing != null ? nextRingPayload(deadline) : nextSlotPayload(deadline));
+                source.get(buffers[stored++], offset, payloadSize);
+            } while (stored < buffers.length && hasPendingPayload());
+            return stored;
+        }
+    }
+
+    /**
+     * Sends data. The data is copied before the method returns, so the buffer can be reused.
+     *
      * @param buffer The buffer containing the data to be sent.
      * @param offset The offset in buffer.
      */
     @Override
     public void send(byte[] buffer, int offset) {
-        // Copy to send buffer
-        System.arraycopy(buffer, offset, sendBuffer.array(), ETHERNET_HEADER_SIZE, payloadSize);
+        synchronized (sendLock) {
+            sendBuffer.position(ETHERNET_HEADER_SIZE);
+            sendBuffer.put(buffer, offset, payloadSize);
+            sendPacket();
+        }
+    }
+
+    /**
+     * Sends the remaining data of a buffer, which must be exactly one payload.
+     *
+     * @param buffer The buffer containing the data to be sent between its position and limit.
+     */
+    @Override
+    public void send(ByteBuffer buffer) {
+        if (buffer.remaining() != payloadSize) {
+            throw new IllegalArgumentException("buffer must contain exactly one payload");
+        }
+        synchronized (sendLock) {
+            sendBuffer.position(ETHERNET_HEADER_SIZE);
+            sendBuffer.put(buffer);
+            sendPacket();
+        }
+    }
 
-        // Send the packet
+    // Sends the packet in the send buffer, waiting while the send queue is full. Must be called
+    // while holding sendLock.
+    private void sendPacket() {
         try {
-            send(fileDescriptor, sendBuffer, 0, packetSize, 0);
+            for (int retries = 0; ; ) {
+                if (closed) throw new AdtnSocketException("send failed: socket is closed", null);
+                int result = send(fileDescriptor, sendBuffer, 0, packetSize, 0);
+                if (result > 0) break;
+                ++sendRetries;
+                if (result == 0) {
+                    waitForSend();
+                } else if (!backOff(retries++)) {
+                    ++packetsNotSent;
+                    break;
+                }
+            }
         } catch (PacketSocketException e) {
             throw new AdtnSocketException("send failed", e);
         }
     }
 
+    // Waits before the next attempt after the network interface did not accept a packet.
+    // Returns false if the packet should be given up. Must be called while holding sendLock.
+    private boolean backOff(int retries) {
+        if (retries == MAX_SEND_RETRIES) return false;
+        try {
+            Thread.sleep(SEND_BACKOFF_DELAY << retries);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Sends several packets with as few system calls as possible.
+     *
+     * @param buffers The buffers containing the data to be sent, one packet per buffer.
+     * @param offset  The offset in every buffer.
+     * @param count   The number of packets to send from the first buffers.
+     */
+    @Override
+    public void sendBatch(byte[][] buffers, int offset, int count) {
+        synchronized (sendLock) {
+            for (int done = 0; done < count; ) {
+                // Copy the next packets to the send slots
+                int slotCount = Math.min(count - done, MAX_BATCH_SIZE);
+                for (int i = 0; i < slotCount; ++i) {
+                    sendSlots.position(i * packetSize + ETHERNET_HEADER_SIZE);
+                    sendSlots.put(buffers[done + i], offset, payloadSize);
+                }
+
+                // The kernel may send fewer packets than requested, so repeat for the rest. Wait if
+                // the send queue is full and give the rest up if the network interface does not
+                // take them.
+                try {
+                    for (int sent = 0, retries = 0; sent < slotCount; ) {
+                        if (closed) throw new AdtnSocketException("send failed: socket is closed", null);
+                        int result = sendmmsg(fileDescriptor, sendSlots, packetSize, sent, slotCount - sent, 0);
+                        if (result > 0) {
+                            sent += result;
+                            retries = 0;
+                            continue;
+                        }
+                        ++sendRetries;
+                        if (result == 0) {
+                            waitForSend();
+                        } else if (!backOff(retries++)) {
+                            packetsNotSent += slotCount - sent;
+                            break;
+                        }
+                    }
+                } catch (PacketSocketException e) {
+                    throw new AdtnSocketException("send failed", e);
+                }
+                done += slotCount;
+            }
+        }
+    }
+
     /**
      * Closes the socket.
      */
     @Override
     public void close() {
+        synchronized (statisticsLock) {
+            if (closed) return;
+
+            // Keep the last kernel statistics, they cannot be read after closing
+            try {
+                updateStatistics();
+            } catch (AdtnSocketException e) {
+                // Ignore
+            }
+            closed = true;
+        }
+
         try {
-            close(fileDescriptor);
+            // Wake up the threads waiting to receive or send, they throw right away
+            wakeUp(eventFileDescriptors[WAKE_UP_FD]);
+
+            /* Close the file descriptors once no thread uses them any more. A frame that was
+             * handed out may still be read by another thread, so the ring is only unmapped once
+             * that thread released it with its next receive call. */
+            synchronized (receiveLock) {
+                boolean interrupted = false;
+                while (frameHandedOut && frameOwner != Thread.currentThread()) {
+                    try {
+                        receiveLock.wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                if (interrupted) Thread.currentThread().interrupt();
+
+                synchronized (sendLock) {
+                    if (rxRing != null) unmapRing();
+                    close(fileDescriptor);
+                    closeEventLoop(eventFileDescriptors);
+                }
+            }
         } catch (PacketSocketException e) {
             throw new AdtnSocketException("Could not close socket", e);
         } finally {
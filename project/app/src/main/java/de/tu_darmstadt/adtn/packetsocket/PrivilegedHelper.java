@@ -0,0 +1,200 @@
+package de.tu_darmstadt.adtn.packetsocket;
+
+import android.content.Context;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+import de.tu_darmstadt.adtn.ProtocolConstants;
+import de.tu_darmstadt.adtn.Utilities;
+
+/**
+ * Client of the privileged helper process, which executes the operations that need root. The
+ * helper is started via su only if it is not running yet and keeps running in the background
+ * until {@link #stop()} is called or this process is gone. All later operations only send a
+ * request over an abstract Unix domain socket, so they take milliseconds instead of starting a
+ * new su process each time. The helper only serves the process that started it and only creates
+ * packet sockets for the aDTN EtherType. A helper of an earlier process or app version is
+ * replaced.
+ */
+public class PrivilegedHelper {
+
+    static {
+        System.loadLibrary("packetsocket");
+    }
+
+    private final static String HELPER_FILENAME = "libpacketsocket_creator.so";
+
+    // Path in abstract namespace to use for the Unix domain socket
+    private final static String UDS_PATH = "timberdoodle_privileged_helper";
+
+    // Version of the request protocol, must match packetsocket_creator.c
+    private final static int PROTOCOL_VERSION = 2;
+
+    private static PrivilegedHelper instance;
+
+    private final Context context;
+    private final int[] error = new int[1];
+    private int connection = -1;
+
+    private PrivilegedHelper(Context context) {
+        this.context = context;
+    }
+
+    /**
+     * Returns the helper client of this process. The helper itself is started by the first
+     * request.
+     *
+     * @param context The context to use.
+     * @return The privileged helper client.
+     */
+    public static synchronized PrivilegedHelper getInstance(Context context) {
+        if (instance == null) instance = new PrivilegedHelper(context.getApplicationContext());
+        return instance;
+    }
+
+    /**
+     * Creates a raw packet socket as root.
+     *
+     * @param etherType The EtherType of the socket. Only {@link ProtocolConstants#ETHER_TYPE} is
+     *                  allowed.
+     * @return The file descriptor of the created socket, which belongs to the caller.
+     * @throws IOException if the helper is not available or the socket could not be created.
+     */
+    public int createPacketSocket(int etherType) throws IOException {
+        int fd = request("SOCKET " + etherType);
+        if (fd == -1) throw new IOException("Helper did not pass a socket");
+        return fd;
+    }
+
+    /**
+     * Sets the Wi-Fi MAC address that is used after Wi-Fi is restarted.
+     *
+     * @param mac The MAC address in the format xx:xx:xx:xx:xx:xx.
+     * @throws IOException if the helper is not available or the MAC address could not be set.
+     */
+    public void setWifiMac(String mac) throws IOException {
+        request("SETMAC " + mac);
+    }
+
+    /**
+     * Disables Wi-Fi MAC spoofing.
+     *
+     * @throws IOException if the helper is not available or MAC spoofing could not be disabled.
+     */
+    public void clearWifiMac() throws IOException {
+        request("CLEARMAC");
+    }
+
+    /**
+     * Enables or disables airplane mode.
+     *
+     * @param enabled true to enable airplane mode or false to disable it.
+     * @throws IOException if the helper is not available or the mode could not be switched.
+     */
+    public void setAirplaneMode(boolean enabled) throws IOException {
+        request("AIRPLANE " + (enabled ? 1 : 0));
+    }
+
+    /**
+     * Stops the helper process if it is running. The next request starts it again.
+     */
+    public synchronized void stop() {
+        try {
+            if (connection == -1) {
+                connection = connectHelper(UDS_PATH);
+                if (connection != -1 && !handshake()) disconnect();
+            }
+            if (connection != -1) sendCommand(connection, "QUIT\n", error);
+        } catch (PacketSocketException e) {
+            // Already stopped
+        }
+        disconnect();
+    }
+
+    // Sends a request and returns the passed file descriptor or -1. If the helper is not running
+    // or the connection broke, e.g. because the helper was killed, it is started once again.
+    private synchronized int request(String command) throws IOException {
+        for (int attempt = 0; ; ++attempt) {
+            try {
+                if (connection == -1) connect();
+                int fd = sendCommand(connection, command + "\n", error);
+                if (error[0] != 0) {
+                    throw new IOException(command.split(" ")[0] + " failed (" + error[0] + ")");
+                }
+                return fd;
+            } catch (PacketSocketException e) {
+                disconnect();
+                if (attempt == 1) throw new IOException("Privileged helper not reachable", e);
+            }
+        }
+    }
+
+    // Connects to the helper. Starts it first if it is not running or if the running one refuses
+    // this process or speaks another protocol version, in which case the new one replaces it.
+    private void connect() throws IOException {
+        connection = connectHelper(UDS_PATH);
+        if (connection != -1) {
+            if (handshake()) return;
+            disconnect();
+        }
+
+        startHelper();
+        connection = connectHelper(UDS_PATH);
+        if (connection == -1) throw new IOException("Privileged helper is not listening");
+        if (!handshake()) {
+            disconnect();
+            throw new IOException("Privileged helper refused the connection");
+        }
+    }
+
+    // Sends the first request of a connection. Returns true if the helper serves this process.
+    private boolean handshake() {
+        try {
+            sendCommand(connection, "HELLO " + PROTOCOL_VERSION + "\n", error);
+            return error[0] == 0;
+        } catch (PacketSocketException e) {
+            return false;
+        }
+    }
+
+    private void disconnect() {
+        if (connection == -1) return;
+        try {
+            closeHelper(connection);
+        } catch (PacketSocketException e) {
+            // Ignore
+        } finally {
+            connection = -1;
+        }
+    }
+
+    // Runs the helper as root and waits until it is listening. The helper then continues in the
+    // background, so su exits.
+    private void startHelper() throws IOException {
+        String helperPath = new File(context.getApplicationInfo().nativeLibraryDir, HELPER_FILENAME).getCanonicalPath();
+        Process process = Utilities.runAsRoot(helperPath + " " + android.os.Process.myUid() + " " +
+                android.os.Process.myPid() + " " + ProtocolConstants.ETHER_TYPE + " " + UDS_PATH);
+        try {
+            // Wait for the notification on stdout that the Unix domain socket is listening
+            if (process.getInputStream().read() != '\n') {
+                String message = new BufferedReader(new InputStreamReader(process.getErrorStream())).readLine();
+                throw new IOException("Could not start privileged helper" + (message == null ? "" : ": " + message));
+            }
+            process.waitFor();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while starting privileged helper", e);
+        } finally {
+            process.destroy();
+        }
+    }
+
+    private static native int connectHelper(String abstractPath);
+
+    private static native int sendCommand(int uds, String command, int[] error);
+
+    private static native void closeHelper(int uds);
+}
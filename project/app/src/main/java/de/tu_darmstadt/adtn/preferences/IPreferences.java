@@ -1,5 +1,8 @@
 package de.tu_darmstadt.adtn.preferences;
 
+import de.tu_darmstadt.adtn.ciphersuite.GroupCipherFactory;
+import de.tu_darmstadt.adtn.ciphersuite.GroupCipherSuite;
+
 /**
  * Provides methods for accessing and modifying the aDTN preferences.
  */
@@ -29,4 +32,29 @@ public interface IPreferences extends de.tu_darmstadt.adtn.genericpreferences.IP
     boolean DEFAULT_SHOW_HELP_BUTTONS = true;
     boolean getShowHelpButtons();
     void setShowHelpButtons(boolean showHelpButtons);
+
+    // Network interfaces used for sending and receiving, separated by commas. Prefix a name with
+    // "udp:" to use UDP multicast instead of a packet socket (see TransportManager).
+    String DEFAULT_NETWORK_INTERFACES = "wlan0";
+    String getNetworkInterfaces();
+    void setNetworkInterfaces(String networkInterfaces);
+
+    // Kernel buffer sizes of the packet sockets in bytes, 0 keeps the system default
+    int DEFAULT_SOCKET_RECEIVE_BUFFER_SIZE = 0;
+    int getSocketReceiveBufferSize();
+    void setSocketReceiveBufferSize(int size);
+    int DEFAULT_SOCKET_SEND_BUFFER_SIZE = 0;
+    int getSocketSendBufferSize();
+    void setSocketSendBufferSize(int size);
+
+    // Group cipher suite used by the group key store
+    String DEFAULT_GROUP_CIPHER_SUITE = GroupCipherFactory.CHACHA_POLY1305_AES;
+    String getGroupCipherSuite();
+    void setGroupCipherSuite(String groupCipherSuite);
+
+    // Minimum number of group keys that are tried on several threads when decrypting a packet, 0
+    // tries them on the receiving thread only
+    int DEFAULT_PARALLEL_KEY_SEARCH_THRESHOLD = GroupCipherSuite.DEFAULT_PARALLEL_THRESHOLD;
+    int getParallelKeySearchThreshold();
+    void setParallelKeySearchThreshold(int threshold);
 }
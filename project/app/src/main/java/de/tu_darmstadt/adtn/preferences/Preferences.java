@@ -77,4 +77,71 @@ public class Preferences extends de.tu_darmstadt.adtn.genericpreferences.Prefere
     public void setShowHelpButtons(boolean showHelpButtons) {
         getEditor().putBoolean(PREFKEY_SHOW_HELP_BUTTONS, showHelpButtons);
     }
+
+    // Network interfaces
+
+    private final static String PREFKEY_NETWORK_INTERFACES = "NetworkInterfaces";
+
+    @Override
+    public String getNetworkInterfaces() {
+        return getPrefs().getString(PREFKEY_NETWORK_INTERFACES, DEFAULT_NETWORK_INTERFACES);
+    }
+
+    @Override
+    public void setNetworkInterfaces(String networkInterfaces) {
+        getEditor().putString(PREFKEY_NETWORK_INTERFACES, networkInterfaces);
+    }
+
+    // Socket buffer sizes
+
+    private final static String PREFKEY_SOCKET_RECEIVE_BUFFER_SIZE = "SocketReceiveBufferSize";
+    private final static String PREFKEY_SOCKET_SEND_BUFFER_SIZE = "SocketSendBufferSize";
+
+    @Override
+    public int getSocketReceiveBufferSize() {
+        return getPrefs().getInt(PREFKEY_SOCKET_RECEIVE_BUFFER_SIZE, DEFAULT_SOCKET_RECEIVE_BUFFER_SIZE);
+    }
+
+    @Override
+    public void setSocketReceiveBufferSize(int size) {
+        getEditor().putInt(PREFKEY_SOCKET_RECEIVE_BUFFER_SIZE, size);
+    }
+
+    @Override
+    public int getSocketSendBufferSize() {
+        return getPrefs().getInt(PREFKEY_SOCKET_SEND_BUFFER_SIZE, DEFAULT_SOCKET_SEND_BUFFER_SIZE);
+    }
+
+    @Override
+    public void setSocketSendBufferSize(int size) {
+        getEditor().putInt(PREFKEY_SOCKET_SEND_BUFFER_SIZE, size);
+    }
+
+    // Group cipher suite
+
+    private final static String PREFKEY_GROUP_CIPHER_SUITE = "GroupCipherSuite";
+
+    @Override
+    public String getGroupCipherSuite() {
+        return getPrefs().getString(PREFKEY_GROUP_CIPHER_SUITE, DEFAULT_GROUP_CIPHER_SUITE);
+    }
+
+    @Override
+    public void setGroupCipherSuite(String groupCipherSuite) {
+        getEditor().putString(PREFKEY_GROUP_CIPHER_SUITE, groupCipherSuite);
+    }
+
+    // Parallel key search threshold
+
+    private final static String PREFKEY_PARALLEL_KEY_SEARCH_THRESHOLD = "ParallelKeySearchThreshold";
+
+    @Override
+    public int getParallelKeySearchThreshold() {
+        return getPrefs().getInt(PREFKEY_PARALLEL_KEY_SEARCH_THRESHOLD, DEFAULT_PARALLEL_KEY_SEARCH_THRESHOLD);
+    }
+
+    @Override
+    public void setParallelKeySearchThreshold(int threshold) {
+        getEditor().putInt(PREFKEY_PARALLEL_KEY_SEARCH_THRESHOLD, threshold);
+    }
 }
@@ -0,0 +1,100 @@
+package de.tu_darmstadt.adtn.sendingpool;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import de.tu_darmstadt.adtn.ciphersuite.ciphers.ChaCha20;
+
+/**
+ * Produces dummy packets for cover traffic. The packets are filled with ChaCha20 keystream under a
+ * key from SecureRandom, so they cannot be told apart from encrypted packets. The buffers are
+ * reused: {@link #prepare(int)} fills them in advance, e.g. while the sending pool is waiting for
+ * the next batch, and {@link #next()} hands them out without allocating or computing anything.
+ * Instances are not thread-safe.
+ */
+public class CoverTrafficGenerator {
+
+    private final int packetSize;
+    private final ChaCha20 chaCha = new ChaCha20();
+    private final int[] keyWords;
+    private final byte[] nonce = new byte[ChaCha20.NONCE_SIZE];
+    private final byte[] block = new byte[ChaCha20.BLOCK_SIZE];
+
+    // The dummy packets. The ones before index next were handed out since the last preparation.
+    private final ArrayList<byte[]> packets = new ArrayList<>();
+    private int next;
+
+    // Number of packets filled so far, used as nonce so no keystream is used twice
+    private long fillCount;
+
+    /**
+     * Creates a new CoverTrafficGenerator object.
+     *
+     * @param packetSize The size of the dummy packets.
+     */
+    public CoverTrafficGenerator(int packetSize) {
+        if (packetSize < 1) throw new IllegalArgumentException("packetSize must be positive");
+        this.packetSize = packetSize;
+
+        byte[] key = new byte[ChaCha20.KEY_SIZE];
+        new SecureRandom().nextBytes(key);
+        keyWords = ChaCha20.expandKey(key, 0);
+        Arrays.fill(key, (byte) 0);
+    }
+
+    /**
+     * @return The size of the dummy packets.
+     */
+    public int getPacketSize() {
+        return packetSize;
+    }
+
+    /**
+     * Refills the packets handed out since the last call and makes sure at least count packets
+     * are ready. Packets returned by {@link #next()} before are overwritten, so they must not be
+     * in use any more.
+     *
+     * @param count Number of packets to have ready.
+     */
+    public void prepare(int count) {
+        for (int i = 0; i < next; ++i) fill(packets.get(i));
+        while (packets.size() < count) {
+            byte[] packet = new byte[packetSize];
+            fill(packet);
+            packets.add(packet);
+        }
+        next = 0;
+    }
+
+    /**
+     * Returns a dummy packet. The packet stays unchanged until the next call of
+     * {@link #prepare(int)}. If all prepared packets were handed out already, a new one is created.
+     *
+     * @return A packet with random content.
+     */
+    public byte[] next() {
+        if (next == packets.size()) {
+            byte[] packet = new byte[packetSize];
+            fill(packet);
+            packets.add(packet);
+        }
+        return packets.get(next++);
+    }
+
+    // Fills a packet with fresh keystream
+    private void fill(byte[] packet) {
+        // Use a new nonce for every packet
+        long n = fillCount++;
+        for (int i = 0; i < 8; ++i) nonce[ChaCha20.NONCE_SIZE - 8 + i] = (byte) (n >>> (i * 8));
+        chaCha.init(keyWords, nonce, 0);
+
+        int full = packetSize / ChaCha20.BLOCK_SIZE;
+        for (int i = 0; i < full; ++i) chaCha.keystreamBlock(i, packet, i * ChaCha20.BLOCK_SIZE);
+        int rest = packetSize - full * ChaCha20.BLOCK_SIZE;
+        if (rest > 0) {
+            chaCha.keystreamBlock(full, block, 0);
+            System.arraycopy(block, 0, packet, full * ChaCha20.BLOCK_SIZE, rest);
+        }
+    }
+}
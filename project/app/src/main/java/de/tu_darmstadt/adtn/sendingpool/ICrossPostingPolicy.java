@@ -0,0 +1,23 @@
+package de.tu_darmstadt.adtn.sendingpool;
+
+import java.util.Collection;
+import java.util.Map;
+
+import javax.crypto.SecretKey;
+
+import de.tu_darmstadt.adtn.messagestore.Message;
+
+/**
+ * Decides which groups a message from the message store is sent to.
+ */
+public interface ICrossPostingPolicy {
+
+    /**
+     * Chooses the keys a message is encrypted with.
+     *
+     * @param message The message to send.
+     * @param keys    The group keys currently available, mapped by their IDs.
+     * @return The keys to encrypt the message with. If empty, the message is skipped this time.
+     */
+    Collection<SecretKey> selectKeys(Message message, Map<Long, SecretKey> keys);
+}
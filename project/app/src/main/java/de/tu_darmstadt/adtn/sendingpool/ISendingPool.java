@@ -21,6 +21,14 @@ public interface ISendingPool {
         void onSendingError(AdtnSocketException e);
     }
 
+    /**
+     * Sets the policy that decides which groups a message is sent to. By default messages are only
+     * sent to the groups they were received or created under (see {@link SameGroupsPolicy}).
+     *
+     * @param policy The policy to use for the messages fetched from now on.
+     */
+    void setCrossPostingPolicy(ICrossPostingPolicy policy);
+
     /**
      * Cancels message processing. Note that this could block if message store or network are
      * blocking.
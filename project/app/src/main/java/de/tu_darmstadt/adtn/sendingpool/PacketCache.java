@@ -0,0 +1,216 @@
+package de.tu_darmstadt.adtn.sendingpool;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import javax.crypto.SecretKey;
+
+import de.tu_darmstadt.adtn.packetbuilding.IPacketBuilder;
+
+/**
+ * Caches encrypted packets of messages, so messages that are sent again and again do not have to
+ * be encrypted for every refill of the sending pool. For every message and group key a few
+ * variants encrypted with different nonces are kept. Every variant is handed out only once, so
+ * the same ciphertext is never sent twice and real packets cannot be told apart from cover
+ * packets by repeating. Variants that were handed out are encrypted again by
+ * {@link #prepare(int)}, e.g. while the sending pool is waiting for the next batch. The least
+ * recently used entries are evicted when the cache holds more packets than allowed. Variants can
+ * expire, e.g. because key hint tags are only valid for a limited time. Instances are not
+ * thread-safe.
+ */
+public class PacketCache {
+
+    private final IPacketBuilder packetBuilder;
+    private final int maxPackets;
+    private final int variantsPerEntry;
+    private final long maxAge;
+
+    // The entries in least recently used order
+    private final LinkedHashMap<EntryKey, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    // Entries with variants that were handed out or are still missing, in the order of their use
+    private final ArrayDeque<Entry> staleEntries = new ArrayDeque<>();
+
+    private int size;
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param packetBuilder    The packet builder to create the packets with.
+     * @param maxPackets       The maximum number of packets the cache may hold.
+     * @param variantsPerEntry The number of packets kept per message and group key.
+     */
+    public PacketCache(IPacketBuilder packetBuilder, int maxPackets, int variantsPerEntry) {
+        this(packetBuilder, maxPackets, variantsPerEntry, Long.MAX_VALUE);
+    }
+
+    /**
+     * Creates an empty cache whose packets expire.
+     *
+     * @param packetBuilder    The packet builder to create the packets with.
+     * @param maxPackets       The maximum number of packets the cache may hold.
+     * @param variantsPerEntry The number of packets kept per message and group key.
+     * @param maxAge           The time in milliseconds after which a packet is not handed out anymore.
+     */
+    public PacketCache(IPacketBuilder packetBuilder, int maxPackets, int variantsPerEntry, long maxAge) {
+        if (variantsPerEntry < 1) throw new IllegalArgumentException("variantsPerEntry must be positive");
+        this.packetBuilder = packetBuilder;
+        this.maxPackets = maxPackets;
+        this.variantsPerEntry = variantsPerEntry;
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * @return The number of packets in the cache.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns a packet for a message encrypted with a group key. A cached variant is returned if
+     * there is one that was not handed out before and did not expire. Otherwise the message is encrypted right away
+     * and the packet gets cached in place of a variant that was handed out.
+     *
+     * @param messageID The ID of the message.
+     * @param keyID     The ID of the group key.
+     * @param message   The message, which is only used if it has to be encrypted.
+     * @param key       The group key, which is only used if the message has to be encrypted.
+     * @return The encrypted packet. It must not be modified.
+     */
+    public byte[] get(byte[] messageID, long keyID, byte[] message, SecretKey key) {
+        EntryKey entryKey = new EntryKey(messageID, keyID);
+        Entry entry = entries.get(entryKey);
+        if (entry == null) {
+            entry = new Entry(message, key);
+            entries.put(entryKey, entry);
+        }
+
+        // Hand out the next variant that was not sent yet
+        long now = System.currentTimeMillis();
+        int index = -1;
+        for (int i = 0; i < entry.filled; ++i) {
+            int candidate = (entry.next + i) % entry.filled;
+            if (!entry.handedOut[candidate] && now - entry.encryptedAt[candidate] <= maxAge) {
+                index = candidate;
+                break;
+            }
+        }
+
+        // Encrypt a fresh one if there is none, a missing variant first
+        if (index == -1) {
+            index = entry.filled < variantsPerEntry ? entry.filled : entry.next;
+            encrypt(entry, index);
+            evict();
+        }
+
+        entry.next = (index + 1) % entry.filled;
+        entry.handedOut[index] = true;
+        markStale(entry);
+        return entry.variants[index];
+    }
+
+    /**
+     * Encrypts variants again that were handed out since they were encrypted and adds the
+     * missing variants, starting with the entries that were used first.
+     *
+     * @param count The maximum number of packets to encrypt.
+     */
+    public void prepare(int count) {
+        while (count > 0 && !staleEntries.isEmpty()) {
+            Entry entry = staleEntries.poll();
+            entry.isStale = false;
+            if (entry.isEvicted) continue;
+
+            for (int i = 0; i < variantsPerEntry && count > 0; ++i) {
+                if (i < entry.filled && !entry.handedOut[i]) continue;
+                encrypt(entry, i);
+                --count;
+            }
+
+            // Continue with this entry next time if the count was not sufficient
+            if (count == 0) {
+                for (int i = 0; i < variantsPerEntry; ++i) {
+                    if (i >= entry.filled || entry.handedOut[i]) {
+                        markStale(entry);
+                        break;
+                    }
+                }
+            }
+        }
+        evict();
+    }
+
+    // Encrypts the message of an entry into the variant with the specified index
+    private void encrypt(Entry entry, int index) {
+        entry.variants[index] = packetBuilder.createPackets(entry.message, Collections.singletonList(entry.key))[0];
+        entry.handedOut[index] = false;
+        entry.encryptedAt[index] = System.currentTimeMillis();
+        if (index == entry.filled) {
+            ++entry.filled;
+            ++size;
+        }
+    }
+
+    // Queues an entry for encrypting its variants again
+    private void markStale(Entry entry) {
+        if (entry.isStale) return;
+        entry.isStale = true;
+        staleEntries.add(entry);
+    }
+
+    // Removes the least recently used entries until the size limit is met, but keeps at least one
+    private void evict() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (size > maxPackets && entries.size() > 1) {
+            Entry entry = iterator.next();
+            iterator.remove();
+            entry.isEvicted = true;
+            size -= entry.filled;
+        }
+    }
+
+    // Identifies the packets of a message encrypted with a group key
+    private static final class EntryKey {
+
+        private final byte[] messageID;
+        private final long keyID;
+
+        EntryKey(byte[] messageID, long keyID) {
+            this.messageID = messageID;
+            this.keyID = keyID;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof EntryKey)) return false;
+            EntryKey other = (EntryKey) o;
+            return keyID == other.keyID && Arrays.equals(messageID, other.messageID);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Arrays.hashCode(messageID) + (int) (keyID ^ keyID >>> 32);
+        }
+    }
+
+    // The variants of a message encrypted with a group key
+    private final class Entry {
+
+        private final byte[] message;
+        private final SecretKey key;
+        private final byte[][] variants = new byte[variantsPerEntry][];
+        private final boolean[] handedOut = new boolean[variantsPerEntry];
+        private final long[] encryptedAt = new long[variantsPerEntry];
+        private int filled, next;
+        private boolean isStale, isEvicted;
+
+        Entry(byte[] message, SecretKey key) {
+            this.message = message;
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package de.tu_darmstadt.adtn.sendingpool;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import javax.crypto.SecretKey;
+
+import de.tu_darmstadt.adtn.messagestore.Message;
+
+/**
+ * Sends messages only to the groups they were received or created under. Messages that do not
+ * belong to any specific group are sent to every group.
+ */
+public class SameGroupsPolicy implements ICrossPostingPolicy {
+
+    /**
+     * Chooses the keys a message is encrypted with.
+     *
+     * @param message The message to send.
+     * @param keys    The group keys currently available, mapped by their IDs.
+     * @return The keys of the groups the message belongs to.
+     */
+    @Override
+    public Collection<SecretKey> selectKeys(Message message, Map<Long, SecretKey> keys) {
+        long[] groupKeyIds = message.getGroupKeyIDs();
+        if (groupKeyIds.length == 0) return keys.values();
+
+        List<SecretKey> selected = new ArrayList<>(groupKeyIds.length);
+        for (long groupKeyId : groupKeyIds) {
+            SecretKey key = keys.get(groupKeyId);
+            if (key != null) selected.add(key);
+        }
+        return selected;
+    }
+}
@@ -1,15 +1,18 @@
 package de.tu_darmstadt.adtn.sendingpool;
 
-import java.util.Arrays;
-import java.util.Collection;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedList;
+import java.util.IdentityHashMap;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 import javax.crypto.SecretKey;
 
 import de.tu_darmstadt.adtn.AdtnSocketException;
-import de.tu_darmstadt.adtn.ISocket;
+import de.tu_darmstadt.adtn.ISendSocket;
+import de.tu_darmstadt.adtn.ciphersuite.KeyHints;
 import de.tu_darmstadt.adtn.groupkeystore.IGroupKeyStore;
 import de.tu_darmstadt.adtn.messagestore.IMessageStore;
 import de.tu_darmstadt.adtn.messagestore.Message;
@@ -19,15 +22,38 @@ import de.tu_darmstadt.adtn.preferences.IPreferences;
 /**
  * Wraps messages from the message store in packets and stores them.
  * The packets are then broadcasted to network in batches.
+ * <p/>
+ * Two threads do the work: the producer thread fetches messages, encrypts them and builds the
+ * next batches in advance, while the sender thread only sends a ready batch at every send
+ * interval, so slow database queries or encryption do not shift the send times. The batches are
+ * handed back and forth through lock-free queues and are reused.
  */
 public class SendingPool implements ISendingPool {
 
+    // Encrypted packets kept across refills: about 3 MB, three variants per message and group
+    private final static int PACKET_CACHE_SIZE = 2048;
+    private final static int PACKET_CACHE_VARIANTS = 3;
+
+    // Receivers only accept key hint tags from around the current epoch
+    private final static long PACKET_CACHE_MAX_AGE = KeyHints.EPOCH_MILLIS;
+
     private volatile int sendInterval;
     private volatile int refillThreshold;
     private volatile int batchSize;
-    private LinkedList<SendingPoolEntry> entries = new LinkedList<>();
-    private Thread thread;
     private Random random = new Random();
+    private ShufflePool entries = new ShufflePool(IPreferences.DEFAULT_SENDING_POOL_REFILL_THRESHOLD, random);
+    private Thread producerThread, senderThread;
+
+    // Batches circulate between the threads: built ones go to the sender, sent ones come back
+    private final static int NUM_BATCHES = 2;
+    private final SpscQueue<Batch> readyBatches = new SpscQueue<>(NUM_BATCHES);
+    private final SpscQueue<Batch> sentBatches = new SpscQueue<>(NUM_BATCHES);
+
+    // Sent by the sender thread if the producer thread did not finish a batch in time
+    private Batch coverBatch;
+
+    // The IDs of the messages in a sent batch, reused by the producer thread
+    private final ArrayList<byte[]> sentMessageIDs = new ArrayList<>();
     private OnSendingErrorListener onSendingErrorListener;
     private IPreferences preferences;
     private IPreferences.OnCommitListener preferencesListener = new de.tu_darmstadt.adtn.genericpreferences.Preferences.OnCommitListener() {
@@ -36,10 +62,17 @@ public class SendingPool implements ISendingPool {
             loadPreferences();
         }
     };
-    private ISocket socket;
+    private ISendSocket socket;
     private IMessageStore messageStore;
     private IPacketBuilder packetBuilder;
     private IGroupKeyStore groupKeyStore;
+    private PacketCache packetCache;
+    private volatile ICrossPostingPolicy crossPostingPolicy = new SameGroupsPolicy();
+
+    // The IDs of the keys last obtained from the key store, only recreated if the keys changed
+    private Map<Long, SecretKey> keys;
+    private long[] groupKeyIds;
+    private Map<SecretKey, Long> keyIDsByKey;
 
     /**
      * Creates the sending pool object.
@@ -50,7 +83,7 @@ public class SendingPool implements ISendingPool {
      * @param packetBuilder The packet builder to create packets for a message.
      * @param groupKeyStore The key store containing the keys to encrypt the packets.
      */
-    public SendingPool(IPreferences preferences, ISocket socket, IMessageStore messageStore,
+    public SendingPool(IPreferences preferences, ISendSocket socket, IMessageStore messageStore,
                        IPacketBuilder packetBuilder, IGroupKeyStore groupKeyStore,
                        OnSendingErrorListener onSendingErrorListener) {
         // Store references
@@ -60,33 +93,33 @@ public class SendingPool implements ISendingPool {
         this.packetBuilder = packetBuilder;
         this.groupKeyStore = groupKeyStore;
         this.onSendingErrorListener = onSendingErrorListener;
+        packetCache = new PacketCache(packetBuilder, PACKET_CACHE_SIZE, PACKET_CACHE_VARIANTS, PACKET_CACHE_MAX_AGE);
 
         // Register preferences listener and load current preferences
         preferences.addOnCommitListenerListener(preferencesListener);
         loadPreferences();
 
-        // Start worker thread
-        thread = new Thread(new Runnable() {
+        // The producer thread starts by building all batches
+        int packetSize = packetBuilder.getEncryptedPacketSize();
+        for (int i = 0; i < NUM_BATCHES; ++i) sentBatches.offer(new Batch(packetSize));
+        coverBatch = new Batch(packetSize);
+        coverBatch.fillWithCoverTraffic(batchSize);
+
+        // Start worker threads
+        producerThread = new Thread(new Runnable() {
             @Override
             public void run() {
-                while (true) {
-                    try {
-                        long millis = System.currentTimeMillis();
-                        refill(); // Fetch messages from store
-                        if (!sendBatch()) break; // Send the messages
-
-                        // Wait between sending of two batches
-                        long wait = sendInterval * 1000 - (System.currentTimeMillis() - millis);
-                        if (wait > 0) {
-                            Thread.sleep(wait);
-                        }
-                    } catch (InterruptedException e) {
-                        break; // Cancel if interrupted by shutdown()
-                    }
-                }
+                produceBatches();
             }
         });
-        thread.start();
+        senderThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                sendBatches();
+            }
+        });
+        producerThread.start();
+        senderThread.start();
     }
 
     private void loadPreferences() {
@@ -95,22 +128,36 @@ public class SendingPool implements ISendingPool {
         batchSize = preferences.getSendingPoolBatchSize();
     }
 
+    /**
+     * Sets the policy that decides which groups a message is sent to. By default messages are only
+     * sent to the groups they were received or created under (see {@link SameGroupsPolicy}).
+     *
+     * @param policy The policy to use for the messages fetched from now on.
+     */
+    @Override
+    public void setCrossPostingPolicy(ICrossPostingPolicy policy) {
+        crossPostingPolicy = policy;
+    }
+
     /**
      * Cancels message processing. Note that this could block if message store or network are
      * blocking.
      */
     @Override
     public void close() {
-        thread.interrupt();
+        senderThread.interrupt();
+        producerThread.interrupt();
 
-        // Wait until worker thread stopped. Postpone any interruptions of current thread.
+        // Wait until worker threads stopped. Postpone any interruptions of current thread.
         boolean currentThreadWasInterrupted = false;
-        while (true) {
-            try {
-                thread.join();
-                break;
-            } catch (InterruptedException e) {
-                currentThreadWasInterrupted = true;
+        for (Thread thread : new Thread[]{senderThread, producerThread}) {
+            while (true) {
+                try {
+                    thread.join();
+                    break;
+                } catch (InterruptedException e) {
+                    currentThreadWasInterrupted = true;
+                }
             }
         }
         if (currentThreadWasInterrupted) Thread.currentThread().interrupt();
@@ -119,62 +166,181 @@ public class SendingPool implements ISendingPool {
         preferences.removeOnCommitListener(preferencesListener);
     }
 
+    /* Thread function of the producer thread. Takes back the sent batches, updates the statistics of
+     * their messages and builds them again. */
+    private void produceBatches() {
+        while (!Thread.currentThread().isInterrupted()) {
+            // Wait until the sender thread returns a batch
+            Batch batch = sentBatches.poll();
+            if (batch == null) {
+                LockSupport.park(this);
+                continue;
+            }
+
+            // Update statistics for messages of packets that are not dummy packets at once
+            for (int i = 0; i < batch.size; ++i) {
+                if (batch.messageIDs[i] != null) sentMessageIDs.add(batch.messageIDs[i]);
+            }
+            if (!sentMessageIDs.isEmpty()) {
+                messageStore.sentMessages(sentMessageIDs);
+                sentMessageIDs.clear();
+            }
+
+            refill(); // Fetch messages from store
+            buildBatch(batch);
+            readyBatches.offer(batch);
+            packetCache.prepare(batch.size); // Encrypt the packets handed out again
+        }
+    }
+
+    /* Thread function of the sender thread. Sends a batch at every send interval, without waiting
+     * for the producer thread: if it is late, a batch of dummy packets is sent instead. */
+    private void sendBatches() {
+        long nextSendTime = System.nanoTime();
+        while (true) {
+            Batch batch = readyBatches.poll();
+            if (batch == null) batch = coverBatch;
+
+            // Send the packets stored in batch at once
+            try {
+                socket.sendBatch(batch.packets, 0, batch.size);
+            } catch (AdtnSocketException e) {
+                onSendingErrorListener.onSendingError(e);
+                break;
+            }
+
+            // Hand the batch back for the statistics and for building it again
+            if (batch == coverBatch) {
+                coverBatch.fillWithCoverTraffic(batchSize);
+            } else {
+                sentBatches.offer(batch);
+                LockSupport.unpark(producerThread);
+            }
+
+            // Wait until the next send time. Do not try to catch up if sending was late.
+            nextSendTime += TimeUnit.SECONDS.toNanos(sendInterval);
+            long wait = nextSendTime - System.nanoTime();
+            try {
+                if (wait > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                } else {
+                    nextSendTime = System.nanoTime();
+                    if (Thread.interrupted()) break;
+                }
+            } catch (InterruptedException e) {
+                break; // Cancel if interrupted by close()
+            }
+        }
+    }
+
     // Wraps messages from the message store in packets and adds them to the sending pool
     private void refill() {
         // No need to refill?
         if (entries.size() >= refillThreshold) return;
 
-        // Calculate how many messages are needed to reach threshold
-        Collection<SecretKey> keys = groupKeyStore.getKeys();
-        int numKeys = keys.size();
-        if (numKeys == 0) return; // Cannot create any packets without keys
-        int numMessages = (refillThreshold - entries.size() + numKeys - 1) / numKeys;
+        Map<Long, SecretKey> currentKeys = groupKeyStore.getKeysById();
+        if (currentKeys.isEmpty()) return; // Cannot create any packets without keys
+        if (currentKeys != keys) {
+            keys = currentKeys;
+            groupKeyIds = new long[keys.size()];
+            keyIDsByKey = new IdentityHashMap<>();
+            int i = 0;
+            for (Map.Entry<Long, SecretKey> key : keys.entrySet()) {
+                groupKeyIds[i++] = key.getKey();
+                keyIDsByKey.put(key.getValue(), key.getKey());
+            }
+        }
+
+        /* Messages are only encrypted for their own groups, so most of them result in a single
+         * packet. Fetch as many messages as packets are needed to reach threshold. */
+        int numMessages = refillThreshold - entries.size();
+        entries.ensureCapacity(entries.size() + numMessages);
 
-        // Wrap messages in packets so they are ready to send and store them in pool
-        for (Message message : messageStore.getNextMessagesToSend(numMessages)) {
-            for (byte[] packet : packetBuilder.createPackets(message.getContent(), keys)) {
-                entries.add(new SendingPoolEntry(packet, message.getID()));
+        // Wrap messages in packets so they are ready to send and store them in pool. The packets
+        // come from the cache unless a message was not sent recently.
+        ICrossPostingPolicy policy = crossPostingPolicy;
+        for (Message message : messageStore.getNextMessagesToSend(numMessages, groupKeyIds)) {
+            for (SecretKey key : policy.selectKeys(message, keys)) {
+                Long keyID = keyIDsByKey.get(key);
+                byte[] packet = keyID == null
+                        ? packetBuilder.createPackets(message.getContent(), Collections.singletonList(key))[0]
+                        : packetCache.get(message.getID(), keyID, message.getContent(), key);
+                entries.add(packet, message.getID());
             }
         }
     }
 
-    /* Sends a batch containing packets for the messages that are currently in the pool.
-     * Random packets will be interspersed until batch size is reached.
-     * Returns true on success or false if sending failed. */
-    private boolean sendBatch() {
-        SendingPoolEntry[] batch = new SendingPoolEntry[batchSize];
+    /* Fills a batch with packets for the messages that are currently in the pool.
+     * Random packets will be interspersed until batch size is reached. */
+    private void buildBatch(Batch batch) {
+        int size = batchSize;
+        batch.resize(size);
 
         // Move as much pool entries to batch as possible
         int i;
-        for (i = 0; i < batch.length && !entries.isEmpty(); ++i) {
-            batch[i] = entries.remove(random.nextInt(entries.size()));
+        for (i = 0; i < size && !entries.isEmpty(); ++i) {
+            SendingPoolEntry entry = entries.takeRandom();
+            batch.packets[i] = entry.getPacket();
+            batch.messageIDs[i] = entry.getMessageID();
         }
 
-        // Fill batch with random data packets if there are no more entries in pool
-        if (i < batch.length) {
-            while (i < batch.length) {
-                batch[i] = new SendingPoolEntry(packetBuilder.createRandomPacket(), null);
+        // Fill batch with prepared dummy packets if there are no more entries in pool
+        if (i < size) {
+            // The dummy packets of the batch were sent, so they can be overwritten
+            batch.coverTraffic.prepare(size - i);
+            while (i < size) {
+                batch.packets[i] = batch.coverTraffic.next();
+                batch.messageIDs[i] = null;
                 ++i;
             }
 
             // Shuffle batch so random data packets do not necessarily appear at the end
-            Collections.shuffle(Arrays.asList(batch));
+            shuffleBatch(batch);
         }
+    }
 
-        // Finally send the packets stored in batch
-        for (SendingPoolEntry entry : batch) {
-            // Try to send the packet
-            try {
-                socket.send(entry.getPacket(), 0);
-            } catch (AdtnSocketException e) {
-                onSendingErrorListener.onSendingError(e);
-                return false;
-            }
+    // Shuffles the packets of the batch together with their message IDs (Fisher-Yates)
+    private void shuffleBatch(Batch batch) {
+        for (int i = batch.size - 1; i > 0; --i) {
+            int j = random.nextInt(i + 1);
+            byte[] packet = batch.packets[i];
+            batch.packets[i] = batch.packets[j];
+            batch.packets[j] = packet;
+            byte[] messageID = batch.messageIDs[i];
+            batch.messageIDs[i] = batch.messageIDs[j];
+            batch.messageIDs[j] = messageID;
+        }
+    }
+
+    /* The packets and message IDs of a batch, reused as long as the batch size is the same. Every
+     * batch has its own dummy packets, which are only overwritten once the batch was sent. */
+    private static final class Batch {
+
+        private final CoverTrafficGenerator coverTraffic;
+        private byte[][] packets = new byte[0][], messageIDs = new byte[0][];
+        private int size;
+
+        Batch(int packetSize) {
+            coverTraffic = new CoverTrafficGenerator(packetSize);
+        }
 
-            // Update statistics for message if this is not a dummy packet
-            if (entry.getMessageID() != null) messageStore.sentMessage(entry.getMessageID());
+        // Sets the number of packets in the batch
+        void resize(int size) {
+            if (packets.length < size) {
+                packets = new byte[size][];
+                messageIDs = new byte[size][];
+            }
+            this.size = size;
         }
 
-        return true;
+        // Fills the batch with dummy packets only
+        void fillWithCoverTraffic(int size) {
+            resize(size);
+            coverTraffic.prepare(size);
+            for (int i = 0; i < size; ++i) {
+                packets[i] = coverTraffic.next();
+                messageIDs[i] = null;
+            }
+        }
     }
 }
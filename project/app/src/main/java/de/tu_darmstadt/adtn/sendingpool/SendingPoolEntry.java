@@ -1,7 +1,7 @@
 package de.tu_darmstadt.adtn.sendingpool;
 
 /**
- * An entry of the sending pool.
+ * An entry of the sending pool. Entries are reused by the {@link ShufflePool}.
  */
 public class SendingPoolEntry {
 
@@ -19,6 +19,12 @@ public class SendingPoolEntry {
         this.messageID = messageID;
     }
 
+    // Replaces the content when the entry is reused
+    void set(byte[] packet, byte[] messageID) {
+        this.packet = packet;
+        this.messageID = messageID;
+    }
+
     /**
      * @return The packet to send.
      */
@@ -0,0 +1,83 @@
+package de.tu_darmstadt.adtn.sendingpool;
+
+import java.util.Random;
+
+/**
+ * Pool of packets from which packets are taken in random order. The entries are kept in an array
+ * and a taken entry is swapped with the last one, so adding and taking take constant time
+ * regardless of the pool size. The entries are reused, so nothing is allocated once the pool
+ * reached its largest size. Instances are not thread-safe.
+ */
+public class ShufflePool {
+
+    private final Random random;
+    private SendingPoolEntry[] entries = new SendingPoolEntry[0];
+    private int size;
+
+    /**
+     * Creates an empty pool.
+     *
+     * @param capacity The number of entries to preallocate.
+     * @param random   The random number generator used to choose the taken entries.
+     */
+    public ShufflePool(int capacity, Random random) {
+        this.random = random;
+        ensureCapacity(capacity);
+    }
+
+    /**
+     * @return The number of packets in the pool.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return true if there are no packets in the pool or false otherwise.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Preallocates entries, so adding up to the specified number of packets does not allocate.
+     *
+     * @param capacity The number of packets the pool should be able to hold.
+     */
+    public void ensureCapacity(int capacity) {
+        if (capacity <= entries.length) return;
+
+        SendingPoolEntry[] newEntries = new SendingPoolEntry[capacity];
+        System.arraycopy(entries, 0, newEntries, 0, entries.length);
+        for (int i = entries.length; i < capacity; ++i) newEntries[i] = new SendingPoolEntry(null, null);
+        entries = newEntries;
+    }
+
+    /**
+     * Adds a packet to the pool. The pool grows if it is full.
+     *
+     * @param packet    The packet to send.
+     * @param messageID The ID of the corresponding message or null if this is a dummy packet.
+     */
+    public void add(byte[] packet, byte[] messageID) {
+        if (size == entries.length) ensureCapacity(Math.max(16, entries.length * 2));
+        entries[size++].set(packet, messageID);
+    }
+
+    /**
+     * Removes a random packet from the pool.
+     *
+     * @return The entry of the removed packet. It is reused by the pool, so it is only valid until
+     * the next call of {@link #add(byte[], byte[])}.
+     */
+    public SendingPoolEntry takeRandom() {
+        if (size == 0) throw new IllegalStateException("The pool is empty");
+
+        // Move the chosen entry behind the last one, where it stays until it is overwritten
+        int index = random.nextInt(size--);
+        SendingPoolEntry entry = entries[index];
+        entries[index] = entries[size];
+        entries[size] = entry;
+        return entry;
+    }
+}
@@ -0,0 +1,73 @@
+package de.tu_darmstadt.adtn.sendingpool;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded lock-free queue for handing objects from one thread to another. Exactly one thread may
+ * call {@link #offer(Object)} and exactly one other thread may call {@link #poll()}. Neither call
+ * blocks or allocates.
+ *
+ * @param <E> The type of the elements.
+ */
+public class SpscQueue<E> {
+
+    private final Object[] elements;
+    private final int mask;
+
+    // Index of the next element to poll, only written by the consumer
+    private final AtomicLong head = new AtomicLong();
+
+    // Index of the next element to offer, only written by the producer
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * Creates an empty queue.
+     *
+     * @param capacity The maximum number of elements in the queue. Rounded up to a power of 2.
+     */
+    public SpscQueue(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be positive");
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) size <<= 1;
+        elements = new Object[size];
+        mask = size - 1;
+    }
+
+    /**
+     * @return The maximum number of elements in the queue.
+     */
+    public int capacity() {
+        return elements.length;
+    }
+
+    /**
+     * Adds an element at the end of the queue. May only be called by the producer thread.
+     *
+     * @param element The element to add. Must not be null.
+     * @return true on success or false if the queue is full.
+     */
+    public boolean offer(E element) {
+        if (element == null) throw new NullPointerException("element must not be null");
+        long t = tail.get();
+        if (t - head.get() == elements.length) return false;
+        elements[(int) t & mask] = element;
+        tail.lazySet(t + 1); // Publishes the element to the consumer
+        return true;
+    }
+
+    /**
+     * Removes the element at the head of the queue. May only be called by the consumer thread.
+     *
+     * @return The element or null if the queue is empty.
+     */
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        long h = head.get();
+        if (h == tail.get()) return null;
+        int index = (int) h & mask;
+        E element = (E) elements[index];
+        elements[index] = null;
+        head.lazySet(h + 1); // Hands the slot back to the producer
+        return element;
+    }
+}
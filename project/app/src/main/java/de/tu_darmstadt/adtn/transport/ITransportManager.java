@@ -0,0 +1,25 @@
+package de.tu_darmstadt.adtn.transport;
+
+import de.tu_darmstadt.adtn.ISendSocket;
+import de.tu_darmstadt.adtn.ISocket;
+
+/**
+ * Sends and receives aDTN packets on several network interfaces at once. Packets sent via the
+ * transport manager are sent on every interface. Packets are received from the sockets of the
+ * interfaces.
+ */
+public interface ITransportManager extends ISendSocket {
+
+    /**
+     * Returns the sockets to receive from. Every socket should be drained by its own thread and
+     * all of them feed the same receive pipeline.
+     *
+     * @return The receive sockets of all interfaces.
+     */
+    ISocket[] getReceiveSockets();
+
+    /**
+     * @return The throughput counters of every interface in use.
+     */
+    InterfaceStatistics[] getInterfaceStatistics();
+}
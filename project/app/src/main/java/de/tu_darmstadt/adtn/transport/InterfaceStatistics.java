@@ -0,0 +1,76 @@
+package de.tu_darmstadt.adtn.transport;
+
+/**
+ * Throughput counters of a network interface used by a transport manager.
+ */
+public class InterfaceStatistics {
+
+    private final String interfaceName;
+    private final long packetsSent, packetsReceived, sendErrors;
+    private final long packetsDropped, packetsNotSent;
+
+    /**
+     * Creates a new InterfaceStatistics object.
+     *
+     * @param interfaceName   The name of the network interface.
+     * @param packetsSent     The number of packets sent on the interface.
+     * @param packetsReceived The number of packets received on the interface.
+     * @param sendErrors      The number of send calls that failed on the interface.
+     * @param packetsDropped  The number of packets the kernel dropped because a receive buffer of
+     *                        the interface was full.
+     * @param packetsNotSent  The number of packets given up because the interface did not accept
+     *                        them in time.
+     */
+    public InterfaceStatistics(String interfaceName, long packetsSent, long packetsReceived, long sendErrors,
+                               long packetsDropped, long packetsNotSent) {
+        this.interfaceName = interfaceName;
+        this.packetsSent = packetsSent;
+        this.packetsReceived = packetsReceived;
+        this.sendErrors = sendErrors;
+        this.packetsDropped = packetsDropped;
+        this.packetsNotSent = packetsNotSent;
+    }
+
+    /**
+     * @return The name of the network interface.
+     */
+    public String getInterfaceName() {
+        return interfaceName;
+    }
+
+    /**
+     * @return The number of packets sent on the interface.
+     */
+    public long getPacketsSent() {
+        return packetsSent;
+    }
+
+    /**
+     * @return The number of packets received on the interface.
+     */
+    public long getPacketsReceived() {
+        return packetsReceived;
+    }
+
+    /**
+     * @return The number of send calls that failed on the interface.
+     */
+    public long getSendErrors() {
+        return sendErrors;
+    }
+
+    /**
+     * @return The number of packets the kernel dropped because a receive buffer of the interface
+     * was full.
+     */
+    public long getPacketsDropped() {
+        return packetsDropped;
+    }
+
+    /**
+     * @return The number of packets given up because the interface did not accept them in time.
+     */
+    public long getPacketsNotSent() {
+        return packetsNotSent;
+    }
+}
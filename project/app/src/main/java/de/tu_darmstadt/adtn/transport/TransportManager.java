@@ -0,0 +1,368 @@
+package de.tu_darmstadt.adtn.transport;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.tu_darmstadt.adtn.AdtnSocketException;
+import de.tu_darmstadt.adtn.ISocket;
+import de.tu_darmstadt.adtn.SocketStatistics;
+import de.tu_darmstadt.adtn.packetsocket.PacketSocket;
+import de.tu_darmstadt.adtn.udpsocket.UdpSocket;
+
+/**
+ * Sends and receives aDTN packets on several network interfaces at once, e.g. Wi-Fi plus a
+ * Wi-Fi Direct or USB Ethernet interface. Sent packets are fanned out to every interface and
+ * sending only fails if it failed on all of them. Received packets are taken from the receive
+ * sockets of all interfaces.
+ */
+public class TransportManager implements ITransportManager {
+
+    /**
+     * Prefix of interface names that are used via UDP multicast instead of a packet socket, e.g.
+     * "udp:lo" to exchange packets with other nodes on the same machine.
+     */
+    public final static String UDP_PREFIX = "udp:";
+
+    // Upper limit of receive sockets of all interfaces together, one receive thread each
+    private final static int MAX_RECEIVE_SOCKETS = 4;
+
+    private final Interface[] interfaces;
+    private final ISocket[] receiveSockets;
+
+    /**
+     * Opens a packet socket on every interface. On multi-core devices more packet sockets join a
+     * fanout group with it, so the kernel spreads the packets of the interface over them
+     * round-robin and they can be received from in parallel. Interfaces that cannot be opened are
+     * skipped.
+     *
+     * @param context        The context to use.
+     * @param interfaceNames The names of the network interfaces to use. Names starting with
+     *                       {@link #UDP_PREFIX} use UDP multicast.
+     * @param etherType      The EtherType to use for sending and receiving.
+     * @param destMac        The destination MAC address to use when sending.
+     * @param srcMac         The source MAC address to use when sending.
+     * @param payloadSize    The payload size of all sent and received packets.
+     * @param receiveBufferSize The kernel receive buffer size of every packet socket in bytes or
+     *                          0 to keep the system default.
+     * @param sendBufferSize    The kernel send buffer size of every packet socket in bytes or 0
+     *                          to keep the system default.
+     * @return The transport manager for the interfaces that could be opened.
+     * @throws AdtnSocketException if none of the interfaces could be opened.
+     */
+    public static TransportManager open(Context context, String[] interfaceNames, int etherType,
+                                        byte[] destMac, byte[] srcMac, int payloadSize,
+                                        int receiveBufferSize, int sendBufferSize) {
+        if (interfaceNames.length == 0) throw new IllegalArgumentException("No interfaces specified");
+        int socketsPerInterface = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(),
+                MAX_RECEIVE_SOCKETS) / interfaceNames.length);
+
+        List<String> names = new ArrayList<>(interfaceNames.length);
+        List<ISocket[]> sockets = new ArrayList<>(interfaceNames.length);
+        AdtnSocketException error = null;
+        for (int i = 0; i < interfaceNames.length; ++i) {
+            try {
+                ISocket[] interfaceSockets = openInterface(context, interfaceNames[i], i, etherType,
+                        destMac, srcMac, payloadSize, socketsPerInterface);
+                setBufferSizes(interfaceSockets, receiveBufferSize, sendBufferSize);
+                sockets.add(interfaceSockets);
+                names.add(interfaceNames[i]);
+            } catch (AdtnSocketException e) {
+                Log.w("TransportManager", "Skipping interface " + interfaceNames[i] + ": " + e.getMessage());
+                if (error == null) error = e;
+            }
+        }
+        if (names.isEmpty()) throw error;
+
+        return new TransportManager(names.toArray(new String[names.size()]),
+                sockets.toArray(new ISocket[sockets.size()][]));
+    }
+
+    // Opens the packet sockets of an interface, the first one is also used for sending
+    private static ISocket[] openInterface(Context context, String name, int index, int etherType,
+                                           byte[] destMac, byte[] srcMac, int payloadSize, int count) {
+        // Every UDP socket receives all packets, so there is only one
+        if (name.startsWith(UDP_PREFIX)) {
+            return new ISocket[]{new UdpSocket(name.substring(UDP_PREFIX.length()), payloadSize)};
+        }
+
+        PacketSocket firstSocket = new PacketSocket(context, name, etherType, destMac, srcMac, payloadSize, true);
+        List<ISocket> sockets = new ArrayList<>(count);
+        sockets.add(firstSocket);
+        if (count == 1) return sockets.toArray(new ISocket[1]);
+
+        // Sockets of all processes share the group IDs and a group is bound to one interface, so
+        // use the process ID and the interface index
+        int groupId = (android.os.Process.myPid() + index) & 0xffff;
+        try {
+            firstSocket.joinFanoutGroup(groupId, PacketSocket.FANOUT_ROUND_ROBIN);
+            while (sockets.size() < count) {
+                PacketSocket socket = new PacketSocket(context, name, etherType, destMac, srcMac, payloadSize, true);
+                try {
+                    socket.joinFanoutGroup(groupId, PacketSocket.FANOUT_ROUND_ROBIN);
+                } catch (AdtnSocketException e) {
+                    socket.close();
+                    throw e;
+                }
+                sockets.add(socket);
+            }
+        } catch (AdtnSocketException e) {
+            // Receive with the sockets that are set up so far
+            Log.w("TransportManager", "Using " + sockets.size() + " receive socket(s) on " + name + ": " + e.getMessage());
+        }
+        return sockets.toArray(new ISocket[sockets.size()]);
+    }
+
+    // Sets the kernel buffer sizes of the packet sockets of an interface, the sizes the kernel
+    // actually uses are logged since it limits them
+    private static void setBufferSizes(ISocket[] sockets, int receiveBufferSize, int sendBufferSize) {
+        for (ISocket socket : sockets) {
+            if (!(socket instanceof PacketSocket)) continue;
+            PacketSocket packetSocket = (PacketSocket) socket;
+            try {
+                if (receiveBufferSize > 0) {
+                    int size = packetSocket.setReceiveBufferSize(receiveBufferSize);
+                    Log.i("TransportManager", "Receive buffer size: " + size);
+                }
+                if (sendBufferSize > 0 && socket == sockets[0]) {
+                    int size = packetSocket.setSendBufferSize(sendBufferSize);
+                    Log.i("TransportManager", "Send buffer size: " + size);
+                }
+            } catch (AdtnSocketException e) {
+                Log.w("TransportManager", "Keeping default buffer sizes: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Creates a transport manager for sockets that are already open.
+     *
+     * @param interfaceNames The names of the network interfaces.
+     * @param sockets        The sockets of every interface. The first socket of an interface is
+     *                       used for sending, all of them for receiving.
+     */
+    public TransportManager(String[] interfaceNames, ISocket[][] sockets) {
+        if (interfaceNames.length == 0 || interfaceNames.length != sockets.length) {
+            throw new IllegalArgumentException("Every interface needs its sockets");
+        }
+
+        interfaces = new Interface[interfaceNames.length];
+        List<ISocket> receiveSockets = new ArrayList<>();
+        for (int i = 0; i < interfaces.length; ++i) {
+            if (sockets[i].length == 0) throw new IllegalArgumentException("Interface without socket");
+            interfaces[i] = new Interface(interfaceNames[i], sockets[i]);
+            for (ISocket socket : sockets[i]) receiveSockets.add(new CountingSocket(socket, interfaces[i]));
+        }
+        this.receiveSockets = receiveSockets.toArray(new ISocket[receiveSockets.size()]);
+    }
+
+    /**
+     * @return The receive sockets of all interfaces.
+     */
+    @Override
+    public ISocket[] getReceiveSockets() {
+        return receiveSockets.clone();
+    }
+
+    /**
+     * @return The throughput counters of every interface in use.
+     */
+    @Override
+    public InterfaceStatistics[] getInterfaceStatistics() {
+        InterfaceStatistics[] statistics = new InterfaceStatistics[interfaces.length];
+        for (int i = 0; i < interfaces.length; ++i) {
+            Interface iface = interfaces[i];
+            SocketStatistics socketStatistics = iface.getStatistics();
+            statistics[i] = new InterfaceStatistics(iface.name, iface.packetsSent.get(),
+                    iface.packetsReceived.get(), iface.sendErrors.get(),
+                    socketStatistics.getPacketsDropped(), socketStatistics.getPacketsNotSent());
+        }
+        return statistics;
+    }
+
+    /**
+     * @return The counters of the sockets of all interfaces added up.
+     */
+    @Override
+    public SocketStatistics getStatistics() {
+        SocketStatistics[] statistics = new SocketStatistics[interfaces.length];
+        for (int i = 0; i < interfaces.length; ++i) statistics[i] = interfaces[i].getStatistics();
+        return SocketStatistics.sum(statistics);
+    }
+
+    /**
+     * Sends data on every interface.
+     *
+     * @param buffer The buffer containing the data to be sent.
+     * @param offset The offset in buffer.
+     */
+    @Override
+    public void send(byte[] buffer, int offset) {
+        AdtnSocketException error = null;
+        int succeeded = 0;
+        for (Interface iface : interfaces) {
+            try {
+                iface.sendSocket.send(buffer, offset);
+                iface.packetsSent.incrementAndGet();
+                ++succeeded;
+            } catch (AdtnSocketException e) {
+                iface.sendErrors.incrementAndGet();
+                error = e;
+            }
+        }
+        if (succeeded == 0) throw error;
+    }
+
+    /**
+     * Sends the remaining data of a buffer on every interface and advances its position to its
+     * limit.
+     *
+     * @param buffer The buffer containing the data to be sent between its position and limit.
+     */
+    @Override
+    public void send(ByteBuffer buffer) {
+        AdtnSocketException error = null;
+        int succeeded = 0;
+        for (Interface iface : interfaces) {
+            try {
+                iface.sendSocket.send(buffer.duplicate());
+                iface.packetsSent.incrementAndGet();
+                ++succeeded;
+            } catch (AdtnSocketException e) {
+                iface.sendErrors.incrementAndGet();
+                error = e;
+            }
+        }
+        if (succeeded == 0) throw error;
+        buffer.position(buffer.limit());
+    }
+
+    /**
+     * Sends several packets on every interface.
+     *
+     * @param buffers The buffers containing the data to be sent, one packet per buffer.
+     * @param offset  The offset in every buffer.
+     * @param count   The number of packets to send from the first buffers.
+     */
+    @Override
+    public void sendBatch(byte[][] buffers, int offset, int count) {
+        AdtnSocketException error = null;
+        int succeeded = 0;
+        for (Interface iface : interfaces) {
+            try {
+                iface.sendSocket.sendBatch(buffers, offset, count);
+                iface.packetsSent.addAndGet(count);
+                ++succeeded;
+            } catch (AdtnSocketException e) {
+                iface.sendErrors.incrementAndGet();
+                error = e;
+            }
+        }
+        if (succeeded == 0) throw error;
+    }
+
+    /**
+     * Closes the sockets of all interfaces.
+     */
+    @Override
+    public void close() {
+        AdtnSocketException error = null;
+        for (Interface iface : interfaces) {
+            for (ISocket socket : iface.sockets) {
+                try {
+                    socket.close();
+                } catch (AdtnSocketException e) {
+                    error = e;
+                }
+            }
+        }
+        if (error != null) throw error;
+    }
+
+    // The sockets and counters of a network interface
+    private static class Interface {
+        final String name;
+        final ISocket[] sockets;
+        final ISocket sendSocket;
+        final AtomicLong packetsSent = new AtomicLong(), packetsReceived = new AtomicLong();
+        final AtomicLong sendErrors = new AtomicLong();
+
+        Interface(String name, ISocket[] sockets) {
+            this.name = name;
+            this.sockets = sockets.clone();
+            sendSocket = sockets[0];
+        }
+
+        // Adds up the counters of the sockets of the interface
+        SocketStatistics getStatistics() {
+            SocketStatistics[] statistics = new SocketStatistics[sockets.length];
+            for (int i = 0; i < sockets.length; ++i) statistics[i] = sockets[i].getStatistics();
+            return SocketStatistics.sum(statistics);
+        }
+    }
+
+    // Counts the packets received by a socket of an interface
+    private static class CountingSocket implements ISocket {
+        private final ISocket socket;
+        private final Interface iface;
+
+        CountingSocket(ISocket socket, Interface iface) {
+            this.socket = socket;
+            this.iface = iface;
+        }
+
+        @Override
+        public void receive(byte[] buffer, int offset) {
+            socket.receive(buffer, offset);
+            iface.packetsReceived.incrementAndGet();
+        }
+
+        @Override
+        public ByteBuffer receive() {
+            ByteBuffer packet = socket.receive();
+            iface.packetsReceived.incrementAndGet();
+            return packet;
+        }
+
+        @Override
+        public int receiveBatch(byte[][] buffers, int offset) {
+            int count = socket.receiveBatch(buffers, offset);
+            iface.packetsReceived.addAndGet(count);
+            return count;
+        }
+
+        @Override
+        public void setReceiveTimeout(int timeout) {
+            socket.setReceiveTimeout(timeout);
+        }
+
+        @Override
+        public void send(byte[] buffer, int offset) {
+            socket.send(buffer, offset);
+        }
+
+        @Override
+        public void send(ByteBuffer buffer) {
+            socket.send(buffer);
+        }
+
+        @Override
+        public void sendBatch(byte[][] buffers, int offset, int count) {
+            socket.sendBatch(buffers, offset, count);
+        }
+
+        @Override
+        public SocketStatistics getStatistics() {
+            return socket.getStatistics();
+        }
+
+        @Override
+        public void close() {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package de.tu_darmstadt.adtn.udpsocket;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+
+import de.tu_darmstadt.adtn.AdtnSocketException;
+import de.tu_darmstadt.adtn.AdtnSocketTimeoutException;
+import de.tu_darmstadt.adtn.ISocket;
+import de.tu_darmstadt.adtn.SocketStatistics;
+
+/**
+ * Socket for sending and receiving fixed-size packets via UDP multicast. Unlike PacketSocket it
+ * needs neither root nor a Wi-Fi interface, so many aDTN nodes can run as ordinary processes on
+ * one machine, e.g. on the loopback interface. The payloads are the same as on link layer.
+ */
+public class UdpSocket implements ISocket {
+
+    /**
+     * The default multicast group, which ends with the aDTN EtherType 0xD948.
+     */
+    public final static String DEFAULT_GROUP = "239.255.217.72";
+
+    /**
+     * The default UDP port, which is the aDTN EtherType 0xD948.
+     */
+    public final static int DEFAULT_PORT = 0xD948;
+
+    private final int payloadSize;
+    private final InetAddress group;
+    private final int port;
+    private final List<InetAddress> interfaceAddresses;
+    private final MulticastSocket receiveSocket, sendSocket;
+
+    // Receive buffer, one byte larger than the payload so larger datagrams can be detected
+    private final Object receiveLock = new Object();
+    private final byte[] receiveBuffer;
+    private final DatagramPacket receivePacket;
+    private final ByteBuffer receiveView;
+
+    // Received packets with the payload size, only written while holding receiveLock
+    private volatile long packetsReceived;
+
+    private final Object sendLock = new Object();
+    private final byte[] sendBuffer;
+    private final DatagramPacket sendPacket;
+
+    /**
+     * Creates a UDP socket using the default multicast group and port.
+     *
+     * @param iface       The name of the network interface to use, e.g. "lo".
+     * @param payloadSize The payload size of all sent and received packets.
+     */
+    public UdpSocket(String iface, int payloadSize) {
+        this(iface, resolveGroup(DEFAULT_GROUP), DEFAULT_PORT, payloadSize);
+    }
+
+    /**
+     * Creates a UDP socket.
+     *
+     * @param iface       The name of the network interface to use, e.g. "lo".
+     * @param group       The multicast group shared by all nodes.
+     * @param port        The UDP port shared by all nodes.
+     * @param payloadSize The payload size of all sent and received packets.
+     */
+    public UdpSocket(String iface, InetAddress group, int port, int payloadSize) {
+        if (!group.isMulticastAddress()) throw new IllegalArgumentException("Not a multicast group");
+        if (port <= 0 || port >= 0x10000) throw new IllegalArgumentException("port is out of range");
+        if (payloadSize <= 0) throw new IllegalArgumentException("payloadSize is out of range");
+
+        this.payloadSize = payloadSize;
+        this.group = group;
+        this.port = port;
+        receiveBuffer = new byte[payloadSize + 1];
+        receivePacket = new DatagramPacket(receiveBuffer, receiveBuffer.length);
+        receiveView = ByteBuffer.wrap(receiveBuffer).asReadOnlyBuffer();
+        sendBuffer = new byte[payloadSize];
+        sendPacket = new DatagramPacket(sendBuffer, payloadSize, group, port);
+
+        MulticastSocket receiveSocket = null, sendSocket = null;
+        try {
+            NetworkInterface networkInterface = NetworkInterface.getByName(iface);
+            if (networkInterface == null) throw new SocketException("Unknown network interface " + iface);
+            interfaceAddresses = Collections.list(networkInterface.getInetAddresses());
+
+            // All nodes on the machine share the port, so several processes can receive
+            receiveSocket = new MulticastSocket(null);
+            receiveSocket.setReuseAddress(true);
+            receiveSocket.bind(new InetSocketAddress(port));
+            receiveSocket.joinGroup(new InetSocketAddress(group, port), networkInterface);
+
+            // Sending uses its own port, which identifies the own packets when they are looped back
+            sendSocket = new MulticastSocket();
+            sendSocket.setNetworkInterface(networkInterface);
+            sendSocket.setTimeToLive(1);
+            sendSocket.setLoopbackMode(false); // false enables loopback to other local nodes
+        } catch (IOException e) {
+            if (receiveSocket != null) receiveSocket.close();
+            if (sendSocket != null) sendSocket.close();
+            throw new AdtnSocketException("Socket creation failed", e);
+        }
+        this.receiveSocket = receiveSocket;
+        this.sendSocket = sendSocket;
+    }
+
+    private static InetAddress resolveGroup(String group) {
+        try {
+            return InetAddress.getByName(group);
+        } catch (UnknownHostException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return The multicast group of this socket.
+     */
+    public InetAddress getGroup() {
+        return group;
+    }
+
+    /**
+     * @return The UDP port of this socket.
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Sets the timeout of the receive methods. If no packet arrives in time, they throw an
+     * {@link AdtnSocketTimeoutException}.
+     *
+     * @param timeout The timeout in milliseconds or -1 to wait forever, which is the default.
+     */
+    @Override
+    public void setReceiveTimeout(int timeout) {
+        if (timeout < -1 || timeout == 0) throw new IllegalArgumentException("timeout is out of range");
+        try {
+            receiveSocket.setSoTimeout(timeout == -1 ? 0 : timeout);
+        } catch (SocketException e) {
+            throw new AdtnSocketException("Could not set receive timeout", e);
+        }
+    }
+
+    // Receives the next datagram with the payload size that was not sent by this socket. Must be
+    // called while holding receiveLock.
+    private void receivePayload() {
+        while (true) {
+            receivePacket.setLength(receiveBuffer.length);
+            try {
+                receiveSocket.receive(receivePacket);
+            } catch (SocketTimeoutException e) {
+                throw new AdtnSocketTimeoutException("receive timed out");
+            } catch (IOException e) {
+                throw new AdtnSocketException("receive failed", e);
+            }
+            if (receivePacket.getLength() == payloadSize && !isOwnPacket()) {
+                ++packetsReceived;
+                return;
+            }
+        }
+    }
+
+    // Returns true if the received packet was sent by this socket and looped back
+    private boolean isOwnPacket() {
+        return receivePacket.getPort() == sendSocket.getLocalPort() &&
+                interfaceAddresses.contains(receivePacket.getAddress());
+    }
+
+    /**
+     * Receives data from the socket.
+     *
+     * @param buffer The buffer to put the received data in.
+     * @param offset The offset in buffer.
+     */
+    @Override
+    public void receive(byte[] buffer, int offset) {
+        synchronized (receiveLock) {
+            receivePayload();
+            System.arraycopy(receiveBuffer, 0, buffer, offset, payloadSize);
+        }
+    }
+
+    /**
+     * Receives a packet without copying it.
+     *
+     * @return A read-only view of the receive buffer, whose position and limit enclose the
+     * payload. It is only valid until the next receive call.
+     */
+    @Override
+    public ByteBuffer receive() {
+        synchronized (receiveLock) {
+            receivePayload();
+            receiveView.limit(payloadSize);
+            receiveView.position(0);
+            return receiveView;
+        }
+    }
+
+    /**
+     * Receives a single packet, since datagram sockets cannot tell if more packets are waiting.
+     *
+     * @param buffers The buffers to put the received data in, one packet per buffer.
+     * @param offset  The offset in every buffer.
+     * @return 1, the received packet is in the first buffer.
+     */
+    @Override
+    public int receiveBatch(byte[][] buffers, int offset) {
+        if (buffers.length == 0) throw new IllegalArgumentException("No buffers specified");
+        receive(buffers[0], offset);
+        return 1;
+    }
+
+    /**
+     * Sends data. The data is copied before the method returns, so the buffer can be reused.
+     *
+     * @param buffer The buffer containing the data to be sent.
+     * @param offset The offset in buffer.
+     */
+    @Override
+    public void send(byte[] buffer, int offset) {
+        synchronized (sendLock) {
+            System.arraycopy(buffer, offset, sendBuffer, 0, payloadSize);
+            sendPayload();
+        }
+    }
+
+    /**
+     * Sends the remaining data of a buffer, which must be exactly one payload.
+     *
+     * @param buffer The buffer containing the data to be sent between its position and limit.
+     */
+    @Override
+    public void send(ByteBuffer buffer) {
+        if (buffer.remaining() != payloadSize) {
+            throw new IllegalArgumentException("buffer must contain exactly one payload");
+        }
+        synchronized (sendLock) {
+            buffer.get(sendBuffer);
+            sendPayload();
+        }
+    }
+
+    /**
+     * Sends several packets, one datagram each.
+     *
+     * @param buffers The buffers containing the data to be sent, one packet per buffer.
+     * @param offset  The offset in every buffer.
+     * @param count   The number of packets to send from the first buffers.
+     */
+    @Override
+    public void sendBatch(byte[][] buffers, int offset, int count) {
+        synchronized (sendLock) {
+            for (int i = 0; i < count; ++i) {
+                System.arraycopy(buffers[i], offset, sendBuffer, 0, payloadSize);
+                sendPayload();
+            }
+        }
+    }
+
+    // Sends the send buffer to the group. Must be called while holding sendLock.
+    private void sendPayload() {
+        try {
+            sendSocket.send(sendPacket);
+        } catch (IOException e) {
+            throw new AdtnSocketException("send failed", e);
+        }
+    }
+
+    /**
+     * Returns the counters of the socket. The kernel drops of UDP sockets cannot be read, so only
+     * the received packets are counted.
+     *
+     * @return The current counters.
+     */
+    @Override
+    public SocketStatistics getStatistics() {
+        return new SocketStatistics(packetsReceived, 0, 0, 0);
+    }
+
+    /**
+     * Closes the socket. Threads blocked in a receive call throw an AdtnSocketException.
+     */
+    @Override
+    public void close() {
+        receiveSocket.close();
+        sendSocket.close();
+    }
+}
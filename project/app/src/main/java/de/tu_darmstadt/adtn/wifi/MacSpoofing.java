@@ -1,17 +1,17 @@
 package de.tu_darmstadt.adtn.wifi;
 
+import android.content.Context;
+
 import java.io.IOException;
 import java.util.Random;
 
-import de.tu_darmstadt.adtn.Utilities;
+import de.tu_darmstadt.adtn.packetsocket.PrivilegedHelper;
 
 /**
  * Static class for Wi-Fi MAC spoofing.
  */
 public class MacSpoofing {
 
-    private final static String FILENAME = "/data/.nvmac.info";
-
     // Returns a random MAC address
     private static String createRandomMac() {
         Random rnd = new Random();
@@ -35,11 +35,12 @@ public class MacSpoofing {
 
     /**
      * Tries to set a random Wi-Fi MAC address.
+     *
+     * @param context The context to use.
      */
-    public static void trySetRandomMac() {
-        String command = "printf " + createRandomMac() + " > " + FILENAME;
+    public static void trySetRandomMac(Context context) {
         try {
-            Utilities.runAsRoot(command);
+            PrivilegedHelper.getInstance(context).setWifiMac(createRandomMac());
         } catch (IOException e) {
             // Ignore
         }
@@ -47,10 +48,12 @@ public class MacSpoofing {
 
     /**
      * Tries to disable Wi-Fi MAC spoofing.
+     *
+     * @param context The context to use.
      */
-    public static void tryDisable() {
+    public static void tryDisable(Context context) {
         try {
-            Utilities.runAsRoot("rm -f " + FILENAME);
+            PrivilegedHelper.getInstance(context).clearWifiMac();
         } catch (IOException e) {
             // Ignore
         }
@@ -8,7 +8,7 @@ import android.provider.Settings;
 
 import java.io.IOException;
 
-import de.tu_darmstadt.adtn.Utilities;
+import de.tu_darmstadt.adtn.packetsocket.PrivilegedHelper;
 
 /**
  * Static class for enabling or disabling location privacy.
@@ -31,7 +31,7 @@ public class LocationPrivacy {
      *                    enabling location privacy mode is done.
      */
     public static void enable(final Context context, final Runnable runWhenDone) {
-        if (!isAirplaneModeOn(context)) executeCmd(true);
+        if (!isAirplaneModeOn(context)) setAirplaneMode(context, true);
 
         // Wait some time after enable airplane mode
         final Handler handler = new Handler();
@@ -53,7 +53,7 @@ public class LocationPrivacy {
         if (!isEnabled(context)) return;
 
         setWifiEnabled(context, false);
-        executeCmd(false);
+        setAirplaneMode(context, false);
     }
 
     // Enables or disables Wi-Fi
@@ -79,12 +79,10 @@ public class LocationPrivacy {
         }
     }
 
-    // Run command that enables or disables airplane mode
-    private static void executeCmd(boolean enable) {
-        final String commandEnable = "settings put global airplane_mode_on 1; am broadcast -a android.intent.action.AIRPLANE_MODE --ez state true";
-        final String commandDisable = "settings put global airplane_mode_on 0; am broadcast -a android.intent.action.AIRPLANE_MODE --ez state false";
+    // Enables or disables airplane mode using the privileged helper
+    private static void setAirplaneMode(Context context, boolean enable) {
         try {
-            Utilities.runAsRoot(enable ? commandEnable : commandDisable);
+            PrivilegedHelper.getInstance(context).setAirplaneMode(enable);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
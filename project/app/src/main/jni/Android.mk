@@ -2,7 +2,7 @@ LOCAL_PATH := $(call my-dir)
 
 include $(CLEAR_VARS)
 LOCAL_MODULE    := packetsocket
-LOCAL_SRC_FILES := packetsocket.c
+LOCAL_SRC_FILES := packetsocket.c adtncrypto.c adtncrypto_jni.c
 include $(BUILD_SHARED_LIBRARY)
 
 include $(CLEAR_VARS)
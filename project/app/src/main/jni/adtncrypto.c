@@ -0,0 +1,234 @@
+/* Portable C implementation of ChaCha20, AES-128 and Poly1305-AES. Uses only 32 bit arithmetic
+ * with 64 bit products and no SIMD, so it compiles unchanged for all Android ABIs and Linux. */
+
+#include "adtncrypto.h"
+
+#include <string.h>
+
+static uint32_t load32_le(const uint8_t *p) {
+    return (uint32_t) p[0] | (uint32_t) p[1] << 8 | (uint32_t) p[2] << 16 | (uint32_t) p[3] << 24;
+}
+
+static void store32_le(uint8_t *p, uint32_t v) {
+    p[0] = (uint8_t) v;
+    p[1] = (uint8_t) (v >> 8);
+    p[2] = (uint8_t) (v >> 16);
+    p[3] = (uint8_t) (v >> 24);
+}
+
+/* ChaCha20 */
+
+#define ROTL32(v, n) (((v) << (n)) | ((v) >> (32 - (n))))
+
+#define QUARTER_ROUND(a, b, c, d) \
+    a += b; d ^= a; d = ROTL32(d, 16); \
+    c += d; b ^= c; b = ROTL32(b, 12); \
+    a += b; d ^= a; d = ROTL32(d, 8); \
+    c += d; b ^= c; b = ROTL32(b, 7)
+
+/* Computes one 64 byte keystream block from the input state */
+static void chacha20_block(const uint32_t in[16], uint8_t out[64]) {
+    uint32_t x[16];
+    int i;
+
+    memcpy(x, in, sizeof x);
+    for (i = 0; i < 10; ++i) {
+        /* Column round */
+        QUARTER_ROUND(x[0], x[4], x[8], x[12]);
+        QUARTER_ROUND(x[1], x[5], x[9], x[13]);
+        QUARTER_ROUND(x[2], x[6], x[10], x[14]);
+        QUARTER_ROUND(x[3], x[7], x[11], x[15]);
+        /* Diagonal round */
+        QUARTER_ROUND(x[0], x[5], x[10], x[15]);
+        QUARTER_ROUND(x[1], x[6], x[11], x[12]);
+        QUARTER_ROUND(x[2], x[7], x[8], x[13]);
+        QUARTER_ROUND(x[3], x[4], x[9], x[14]);
+    }
+    for (i = 0; i < 16; ++i) store32_le(out + 4 * i, x[i] + in[i]);
+}
+
+void adtn_chacha20_xor(const uint8_t key[ADTN_CHACHA_KEY_SIZE],
+                       const uint8_t nonce[ADTN_CHACHA_NONCE_SIZE],
+                       const uint8_t *in, uint8_t *out, size_t len) {
+    uint32_t state[16];
+    uint8_t block[64];
+    size_t i, n;
+
+    /* "expand 32-byte k" */
+    state[0] = 0x61707865;
+    state[1] = 0x3320646e;
+    state[2] = 0x79622d32;
+    state[3] = 0x6b206574;
+    for (i = 0; i < 8; ++i) state[4 + i] = load32_le(key + 4 * i);
+
+    /* 64 bit block counter followed by the 64 bit nonce */
+    state[12] = 0;
+    state[13] = 0;
+    state[14] = load32_le(nonce);
+    state[15] = load32_le(nonce + 4);
+
+    while (len > 0) {
+        chacha20_block(state, block);
+        n = len < sizeof block ? len : sizeof block;
+        for (i = 0; i < n; ++i) out[i] = in[i] ^ block[i];
+        in += n;
+        out += n;
+        len -= n;
+        if (++state[12] == 0) ++state[13];
+    }
+}
+
+/* AES-128 */
+
+static const uint8_t sbox[256] = {
+    0x63, 0x7c, 0x77, 0x7b, 0xf2, 0x6b, 0x6f, 0xc5, 0x30, 0x01, 0x67, 0x2b, 0xfe, 0xd7, 0xab, 0x76,
+    0xca, 0x82, 0xc9, 0x7d, 0xfa, 0x59, 0x47, 0xf0, 0xad, 0xd4, 0xa2, 0xaf, 0x9c, 0xa4, 0x72, 0xc0,
+    0xb7, 0xfd, 0x93, 0x26, 0x36, 0x3f, 0xf7, 0xcc, 0x34, 0xa5, 0xe5, 0xf1, 0x71, 0xd8, 0x31, 0x15,
+    0x04, 0xc7, 0x23, 0xc3, 0x18, 0x96, 0x05, 0x9a, 0x07, 0x12, 0x80, 0xe2, 0xeb, 0x27, 0xb2, 0x75,
+    0x09, 0x83, 0x2c, 0x1a, 0x1b, 0x6e, 0x5a, 0xa0, 0x52, 0x3b, 0xd6, 0xb3, 0x29, 0xe3, 0x2f, 0x84,
+    0x53, 0xd1, 0x00, 0xed, 0x20, 0xfc, 0xb1, 0x5b, 0x6a, 0xcb, 0xbe, 0x39, 0x4a, 0x4c, 0x58, 0xcf,
+    0xd0, 0xef, 0xaa, 0xfb, 0x43, 0x4d, 0x33, 0x85, 0x45, 0xf9, 0x02, 0x7f, 0x50, 0x3c, 0x9f, 0xa8,
+    0x51, 0xa3, 0x40, 0x8f, 0x92, 0x9d, 0x38, 0xf5, 0xbc, 0xb6, 0xda, 0x21, 0x10, 0xff, 0xf3, 0xd2,
+    0xcd, 0x0c, 0x13, 0xec, 0x5f, 0x97, 0x44, 0x17, 0xc4, 0xa7, 0x7e, 0x3d, 0x64, 0x5d, 0x19, 0x73,
+    0x60, 0x81, 0x4f, 0xdc, 0x22, 0x2a, 0x90, 0x88, 0x46, 0xee, 0xb8, 0x14, 0xde, 0x5e, 0x0b, 0xdb,
+    0xe0, 0x32, 0x3a, 0x0a, 0x49, 0x06, 0x24, 0x5c, 0xc2, 0xd3, 0xac, 0x62, 0x91, 0x95, 0xe4, 0x79,
+    0xe7, 0xc8, 0x37, 0x6d, 0x8d, 0xd5, 0x4e, 0xa9, 0x6c, 0x56, 0xf4, 0xea, 0x65, 0x7a, 0xae, 0x08,
+    0xba, 0x78, 0x25, 0x2e, 0x1c, 0xa6, 0xb4, 0xc6, 0xe8, 0xdd, 0x74, 0x1f, 0x4b, 0xbd, 0x8b, 0x8a,
+    0x70, 0x3e, 0xb5, 0x66, 0x48, 0x03, 0xf6, 0x0e, 0x61, 0x35, 0x57, 0xb9, 0x86, 0xc1, 0x1d, 0x9e,
+    0xe1, 0xf8, 0x98, 0x11, 0x69, 0xd9, 0x8e, 0x94, 0x9b, 0x1e, 0x87, 0xe9, 0xce, 0x55, 0x28, 0xdf,
+    0x8c, 0xa1, 0x89, 0x0d, 0xbf, 0xe6, 0x42, 0x68, 0x41, 0x99, 0x2d, 0x0f, 0xb0, 0x54, 0xbb, 0x16
+};
+
+/* Multiplication by x in GF(2^8) */
+static uint8_t xtime(uint8_t b) {
+    return (uint8_t) ((b << 1) ^ ((b >> 7) * 0x1b));
+}
+
+void adtn_aes128_encrypt_block(const uint8_t key[16], const uint8_t in[16], uint8_t out[16]) {
+    uint8_t round_key[16], s[16], t[16];
+    uint8_t rcon = 1;
+    int round, i;
+
+    memcpy(round_key, key, sizeof round_key);
+    for (i = 0; i < 16; ++i) s[i] = in[i] ^ round_key[i];
+
+    for (round = 1; round <= 10; ++round) {
+        /* Next round key (computed on the fly, so there is no key schedule to keep) */
+        round_key[0] ^= sbox[round_key[13]] ^ rcon;
+        round_key[1] ^= sbox[round_key[14]];
+        round_key[2] ^= sbox[round_key[15]];
+        round_key[3] ^= sbox[round_key[12]];
+        for (i = 4; i < 16; ++i) round_key[i] ^= round_key[i - 4];
+        rcon = xtime(rcon);
+
+        /* SubBytes and ShiftRows (the state is stored column by column) */
+        for (i = 0; i < 16; ++i) t[i] = sbox[s[(i + 4 * (i % 4)) % 16]];
+
+        /* MixColumns, except in the last round */
+        if (round < 10) {
+            for (i = 0; i < 16; i += 4) {
+                uint8_t a0 = t[i], a1 = t[i + 1], a2 = t[i + 2], a3 = t[i + 3];
+                uint8_t all = a0 ^ a1 ^ a2 ^ a3;
+                t[i] = a0 ^ all ^ xtime(a0 ^ a1);
+                t[i + 1] = a1 ^ all ^ xtime(a1 ^ a2);
+                t[i + 2] = a2 ^ all ^ xtime(a2 ^ a3);
+                t[i + 3] = a3 ^ all ^ xtime(a3 ^ a0);
+            }
+        }
+
+        for (i = 0; i < 16; ++i) s[i] = t[i] ^ round_key[i];
+    }
+    memcpy(out, s, sizeof s);
+}
+
+/* Poly1305-AES */
+
+/* Adds a 16 byte block to the accumulator h and multiplies it by r modulo 2^130 - 5. All numbers
+ * are in radix 2^26. */
+static void poly1305_block(uint32_t h[5], const uint32_t r[5], const uint8_t *m, uint32_t hibit) {
+    uint32_t s1 = r[1] * 5, s2 = r[2] * 5, s3 = r[3] * 5, s4 = r[4] * 5;
+    uint64_t d0, d1, d2, d3, d4;
+    uint32_t c;
+
+    h[0] += load32_le(m) & 0x3ffffff;
+    h[1] += (load32_le(m + 3) >> 2) & 0x3ffffff;
+    h[2] += (load32_le(m + 6) >> 4) & 0x3ffffff;
+    h[3] += (load32_le(m + 9) >> 6) & 0x3ffffff;
+    h[4] += (load32_le(m + 12) >> 8) | hibit;
+
+    d0 = (uint64_t) h[0] * r[0] + (uint64_t) h[1] * s4 + (uint64_t) h[2] * s3 + (uint64_t) h[3] * s2 + (uint64_t) h[4] * s1;
+    d1 = (uint64_t) h[0] * r[1] + (uint64_t) h[1] * r[0] + (uint64_t) h[2] * s4 + (uint64_t) h[3] * s3 + (uint64_t) h[4] * s2;
+    d2 = (uint64_t) h[0] * r[2] + (uint64_t) h[1] * r[1] + (uint64_t) h[2] * r[0] + (uint64_t) h[3] * s4 + (uint64_t) h[4] * s3;
+    d3 = (uint64_t) h[0] * r[3] + (uint64_t) h[1] * r[2] + (uint64_t) h[2] * r[1] + (uint64_t) h[3] * r[0] + (uint64_t) h[4] * s4;
+    d4 = (uint64_t) h[0] * r[4] + (uint64_t) h[1] * r[3] + (uint64_t) h[2] * r[2] + (uint64_t) h[3] * r[1] + (uint64_t) h[4] * r[0];
+
+    /* Partial reduction */
+    c = (uint32_t) (d0 >> 26); h[0] = (uint32_t) d0 & 0x3ffffff;
+    d1 += c; c = (uint32_t) (d1 >> 26); h[1] = (uint32_t) d1 & 0x3ffffff;
+    d2 += c; c = (uint32_t) (d2 >> 26); h[2] = (uint32_t) d2 & 0x3ffffff;
+    d3 += c; c = (uint32_t) (d3 >> 26); h[3] = (uint32_t) d3 & 0x3ffffff;
+    d4 += c; c = (uint32_t) (d4 >> 26); h[4] = (uint32_t) d4 & 0x3ffffff;
+    h[0] += c * 5; c = h[0] >> 26; h[0] &= 0x3ffffff;
+    h[1] += c;
+}
+
+void adtn_poly1305_aes(const uint8_t key[ADTN_POLY1305_KEY_SIZE],
+                       const uint8_t nonce[ADTN_POLY1305_NONCE_SIZE],
+                       const uint8_t *msg, size_t len, uint8_t mac[ADTN_POLY1305_MAC_SIZE]) {
+    const uint8_t *rkey = key + 16;
+    uint32_t r[5], h[5] = {0, 0, 0, 0, 0}, g[5];
+    uint32_t c, mask;
+    uint64_t f;
+    uint8_t s[16], last[16];
+    size_t remaining;
+    int i;
+
+    /* s = AES_k(nonce) */
+    adtn_aes128_encrypt_block(key, nonce, s);
+
+    /* Clamp r and split it into 26 bit limbs */
+    r[0] = load32_le(rkey) & 0x3ffffff;
+    r[1] = (load32_le(rkey + 3) >> 2) & 0x3ffff03;
+    r[2] = (load32_le(rkey + 6) >> 4) & 0x3ffc0ff;
+    r[3] = (load32_le(rkey + 9) >> 6) & 0x3f03fff;
+    r[4] = (load32_le(rkey + 12) >> 8) & 0x00fffff;
+
+    for (; len >= 16; msg += 16, len -= 16) poly1305_block(h, r, msg, 1 << 24);
+
+    /* Pad last block with a single one byte followed by zeros */
+    remaining = len;
+    if (remaining > 0) {
+        memcpy(last, msg, remaining);
+        last[remaining] = 1;
+        memset(last + remaining + 1, 0, sizeof last - remaining - 1);
+        poly1305_block(h, r, last, 0);
+    }
+
+    /* Full carry */
+    c = h[1] >> 26; h[1] &= 0x3ffffff;
+    h[2] += c; c = h[2] >> 26; h[2] &= 0x3ffffff;
+    h[3] += c; c = h[3] >> 26; h[3] &= 0x3ffffff;
+    h[4] += c; c = h[4] >> 26; h[4] &= 0x3ffffff;
+    h[0] += c * 5; c = h[0] >> 26; h[0] &= 0x3ffffff;
+    h[1] += c;
+
+    /* Compute h - p and select it if it is not negative */
+    g[0] = h[0] + 5; c = g[0] >> 26; g[0] &= 0x3ffffff;
+    g[1] = h[1] + c; c = g[1] >> 26; g[1] &= 0x3ffffff;
+    g[2] = h[2] + c; c = g[2] >> 26; g[2] &= 0x3ffffff;
+    g[3] = h[3] + c; c = g[3] >> 26; g[3] &= 0x3ffffff;
+    g[4] = h[4] + c - (1 << 26);
+
+    mask = (g[4] >> 31) - 1;
+    for (i = 0; i < 5; ++i) h[i] = (h[i] & ~mask) | (g[i] & mask);
+
+    /* MAC = (h + s) mod 2^128 */
+    f = (uint64_t) (h[0] | (h[1] << 26)) + load32_le(s);
+    store32_le(mac, (uint32_t) f);
+    f = (uint64_t) ((h[1] >> 6) | (h[2] << 20)) + load32_le(s + 4) + (f >> 32);
+    store32_le(mac + 4, (uint32_t) f);
+    f = (uint64_t) ((h[2] >> 12) | (h[3] << 14)) + load32_le(s + 8) + (f >> 32);
+    store32_le(mac + 8, (uint32_t) f);
+    f = (uint64_t) ((h[3] >> 18) | (h[4] << 8)) + load32_le(s + 12) + (f >> 32);
+    store32_le(mac + 12, (uint32_t) f);
+}
@@ -0,0 +1,32 @@
+/* Portable C implementation of the primitives used by the group cipher suite: ChaCha20 with 64 bit
+ * nonce and 64 bit block counter (as the Spongy Castle "ChaCha" cipher), AES-128 for a single block
+ * and Poly1305-AES. Does not depend on JNI, so it can also be built and tested on plain Linux. */
+
+#ifndef ADTNCRYPTO_H
+#define ADTNCRYPTO_H
+
+#include <stddef.h>
+#include <stdint.h>
+
+#define ADTN_CHACHA_KEY_SIZE 32
+#define ADTN_CHACHA_NONCE_SIZE 8
+#define ADTN_POLY1305_KEY_SIZE 32
+#define ADTN_POLY1305_NONCE_SIZE 16
+#define ADTN_POLY1305_MAC_SIZE 16
+
+/* XORs "len" bytes from "in" with the ChaCha20 keystream starting at block 0 and writes them to
+ * "out". "in" and "out" may be the same. */
+void adtn_chacha20_xor(const uint8_t key[ADTN_CHACHA_KEY_SIZE],
+                       const uint8_t nonce[ADTN_CHACHA_NONCE_SIZE],
+                       const uint8_t *in, uint8_t *out, size_t len);
+
+/* Encrypts a single block with AES-128. */
+void adtn_aes128_encrypt_block(const uint8_t key[16], const uint8_t in[16], uint8_t out[16]);
+
+/* Computes the Poly1305-AES MAC of "len" bytes at "msg". The key consists of the 16 byte AES key
+ * followed by the 16 byte r, which gets clamped. */
+void adtn_poly1305_aes(const uint8_t key[ADTN_POLY1305_KEY_SIZE],
+                       const uint8_t nonce[ADTN_POLY1305_NONCE_SIZE],
+                       const uint8_t *msg, size_t len, uint8_t mac[ADTN_POLY1305_MAC_SIZE]);
+
+#endif
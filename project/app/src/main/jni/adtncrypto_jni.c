@@ -0,0 +1,62 @@
+/* JNI bindings of the native cipher and MAC implementations for
+ * de.tu_darmstadt.adtn.ciphersuite.NativeCrypto. All data is passed in direct ByteBuffers, so
+ * nothing has to be copied or pinned by the VM. */
+
+#include <jni.h>
+
+#include "adtncrypto.h"
+
+// Throws an IllegalArgumentException with the specified message.
+static void throwIllegalArgument(JNIEnv *env, const char *message) {
+    jclass cls = (*env)->FindClass(env, "java/lang/IllegalArgumentException");
+    if (cls != NULL) (*env)->ThrowNew(env, cls, message);
+}
+
+// Returns the address of a direct buffer if the specified ranges are within its bounds or throws
+// an IllegalArgumentException and returns NULL otherwise.
+static uint8_t *getBufferAddress(JNIEnv *env, jobject buffer, const jint *offsets,
+                                 const jint *lengths, int count) {
+    uint8_t *address;
+    jlong capacity;
+    int i;
+
+    address = buffer == NULL ? NULL : (*env)->GetDirectBufferAddress(env, buffer);
+    if (address == NULL) {
+        throwIllegalArgument(env, "Buffer must be a direct buffer");
+        return NULL;
+    }
+
+    capacity = (*env)->GetDirectBufferCapacity(env, buffer);
+    for (i = 0; i < count; ++i) {
+        if (offsets[i] < 0 || lengths[i] < 0 || (jlong) offsets[i] + lengths[i] > capacity) {
+            throwIllegalArgument(env, "Range is out of the buffer's bounds");
+            return NULL;
+        }
+    }
+
+    return address;
+}
+
+JNIEXPORT void JNICALL
+Java_de_tu_1darmstadt_adtn_ciphersuite_NativeCrypto_chaCha20Xor(JNIEnv *env, jclass cls, jobject buffer,
+                                                               jint keyOffset, jint nonceOffset,
+                                                               jint textOffset, jint length, jint outOffset) {
+    const jint offsets[] = {keyOffset, nonceOffset, textOffset, outOffset};
+    const jint lengths[] = {ADTN_CHACHA_KEY_SIZE, ADTN_CHACHA_NONCE_SIZE, length, length};
+    uint8_t *buf = getBufferAddress(env, buffer, offsets, lengths, 4);
+    if (buf == NULL) return;
+
+    adtn_chacha20_xor(buf + keyOffset, buf + nonceOffset, buf + textOffset, buf + outOffset, (size_t) length);
+}
+
+JNIEXPORT void JNICALL
+Java_de_tu_1darmstadt_adtn_ciphersuite_NativeCrypto_poly1305Aes(JNIEnv *env, jclass cls, jobject buffer,
+                                                               jint keyOffset, jint nonceOffset,
+                                                               jint textOffset, jint length, jint macOffset) {
+    const jint offsets[] = {keyOffset, nonceOffset, textOffset, macOffset};
+    const jint lengths[] = {ADTN_POLY1305_KEY_SIZE, ADTN_POLY1305_NONCE_SIZE, length, ADTN_POLY1305_MAC_SIZE};
+    uint8_t *buf = getBufferAddress(env, buffer, offsets, lengths, 4);
+    if (buf == NULL) return;
+
+    adtn_poly1305_aes(buf + keyOffset, buf + nonceOffset, buf + textOffset, (size_t) length, buf + macOffset);
+}
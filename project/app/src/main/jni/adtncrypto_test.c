@@ -0,0 +1,107 @@
+/* Known-answer tests for the native cipher and MAC implementations. Built and run on Linux with
+ * "make test". Returns 0 if all tests pass. */
+
+#include <stdio.h>
+#include <string.h>
+
+#include "adtncrypto.h"
+
+static int failures = 0;
+
+/* Decodes a hex string to "out" and returns the number of bytes. */
+static size_t from_hex(const char *hex, uint8_t *out) {
+    size_t i, len = strlen(hex) / 2;
+    for (i = 0; i < len; ++i) {
+        unsigned int byte;
+        sscanf(hex + 2 * i, "%2x", &byte);
+        out[i] = (uint8_t) byte;
+    }
+    return len;
+}
+
+static void check(const char *name, const uint8_t *actual, const char *expected_hex) {
+    uint8_t expected[256];
+    size_t len = from_hex(expected_hex, expected);
+    if (memcmp(actual, expected, len) != 0) {
+        fprintf(stderr, "FAILED: %s\n", name);
+        ++failures;
+    } else {
+        printf("passed: %s\n", name);
+    }
+}
+
+static void test_chacha20(void) {
+    uint8_t key[32], nonce[8], text[150], out[150];
+    size_t i;
+
+    /* All zero key and nonce, first keystream block */
+    memset(key, 0, sizeof key);
+    memset(nonce, 0, sizeof nonce);
+    memset(text, 0, sizeof text);
+    adtn_chacha20_xor(key, nonce, text, out, 64);
+    check("ChaCha20 zero key", out, "76b8e0ada0f13d90405d6ae55386bd28bdd219b8a08ded1aa836efcc8b770dc7"
+                                    "da41597c5157488d7724e03fb8d84a376a43b8f41518a11cc387b669b2ee6586");
+
+    /* Keystream spanning several blocks with a partial last block */
+    for (i = 0; i < sizeof key; ++i) key[i] = (uint8_t) i;
+    from_hex("0001020304050607", nonce);
+    adtn_chacha20_xor(key, nonce, text, out, sizeof text);
+    check("ChaCha20 150 bytes", out, "f798a189f195e66982105ffb640bb7757f579da31602fc93ec01ac56f85ac3c1"
+                                     "34a4547b733b46413042c9440049176905d3be59ea1c53f15916155c2be8241a"
+                                     "38008b9a26bc35941e2444177c8ade6689de95264986d95889fb60e84629c9bd"
+                                     "9a5acb1cc118be563eb9b3a4a472f82e09a7e778492b562ef7130e88dfe031c7"
+                                     "9db9d4f7c7a899151b9a475032b63fc385245fe054e3");
+
+    /* Decryption in place restores the plaintext */
+    adtn_chacha20_xor(key, nonce, out, out, sizeof out);
+    if (memcmp(out, text, sizeof text) != 0) {
+        fprintf(stderr, "FAILED: ChaCha20 in place\n");
+        ++failures;
+    } else {
+        printf("passed: ChaCha20 in place\n");
+    }
+}
+
+static void test_aes128(void) {
+    uint8_t key[16], in[16], out[16];
+
+    /* FIPS-197, appendix C.1 */
+    from_hex("000102030405060708090a0b0c0d0e0f", key);
+    from_hex("00112233445566778899aabbccddeeff", in);
+    adtn_aes128_encrypt_block(key, in, out);
+    check("AES-128 FIPS-197", out, "69c4e0d86a7b0430d8cdb78070b4c55a");
+}
+
+static void test_poly1305_aes(void) {
+    uint8_t key[32], nonce[16], msg[131], mac[16];
+    size_t i;
+
+    /* Test vector from the Poly1305-AES paper */
+    from_hex("ec074c835580741701425b623235add6851fc40c3467ac0be05cc20404f3f700", key);
+    from_hex("fb447350c4e868c52ac3275cf9d4327e", nonce);
+    from_hex("f3f6", msg);
+    adtn_poly1305_aes(key, nonce, msg, 2, mac);
+    check("Poly1305-AES paper vector", mac, "f4c633c3044fc145f84f335cb81953de");
+
+    /* Empty, single block and multiple blocks with a partial last block */
+    for (i = 0; i < sizeof msg; ++i) msg[i] = (uint8_t) (i * 7 + 3);
+    adtn_poly1305_aes(key, nonce, msg, 0, mac);
+    check("Poly1305-AES empty", mac, "580b3b0f9447bb1e69d095b5928b6dbc");
+    adtn_poly1305_aes(key, nonce, msg, 16, mac);
+    check("Poly1305-AES 16 bytes", mac, "cf7dfae05e1f36ce07479842768335f2");
+    adtn_poly1305_aes(key, nonce, msg, 131, mac);
+    check("Poly1305-AES 131 bytes", mac, "9c2088ce36c1ce3edf7c61e5e2136b0e");
+}
+
+int main(void) {
+    test_chacha20();
+    test_aes128();
+    test_poly1305_aes();
+
+    if (failures != 0) {
+        fprintf(stderr, "%d test(s) failed\n", failures);
+        return 1;
+    }
+    printf("All tests passed\n");
+    return 0;
+}
@@ -1,16 +1,52 @@
 /* This is a JNI library for receiving a packet socket file descriptor via a Unix domain socket and
  * using it in Java. */
 
+/* Needed for struct ucred */
+#define _GNU_SOURCE
+
 #include <jni.h>
 
 #include <arpa/inet.h>
 #include <errno.h>
+#include <fcntl.h>
+#include <linux/filter.h>
 #include <linux/if_packet.h>
 #include <linux/un.h>
 #include <net/if.h>
+#include <stdio.h>
+#include <string.h>
+#include <sys/epoll.h>
+#include <sys/eventfd.h>
+#include <sys/mman.h>
 #include <sys/socket.h>
+#include <sys/syscall.h>
 #include <unistd.h>
 
+/* Maximum number of frames sent or received by a single sendmmsg or recvmmsg call */
+#define MAX_BATCH_SIZE 64
+
+/* Maximum number of frames reported for a single block of the receive ring, must match
+ * PacketSocket.java */
+#define MAX_RING_FRAMES 512
+
+/* Indices of the event loop file descriptors, must match PacketSocket.java */
+#define WAKE_UP_FD 0
+#define RECEIVE_EPOLL_FD 1
+#define SEND_EPOLL_FD 2
+#define EVENT_LOOP_EPOLL_FD 3
+#define EVENT_FD_COUNT 4
+
+/* Events reported by epollWait, must match PacketSocket.java */
+#define EVENT_RECEIVE 1
+#define EVENT_SEND 2
+#define EVENT_WAKE_UP 4
+
+/* Same layout as struct mmsghdr, which is missing in the headers of older Android platforms */
+struct frame_msg {
+    struct msghdr hdr;
+    unsigned int len;
+};
+
 // Creates a PacketSocketException from the specified error message and error number.
 static jobject createException(JNIEnv *env, const char *message, int err_no) {
     jclass cls = (*env)->FindClass(env, "de/tu_darmstadt/adtn/packetsocket/PacketSocketException");
@@ -18,25 +54,20 @@ static jobject createException(JNIEnv *env, const char *message, int err_no) {
     return (*env)->NewObject(env, cls, ctor, (*env)->NewStringUTF(env, message), (jint) err_no);
 }
 
-static int read_fd_from_uds(JNIEnv *env, const char *abstract_path) {
-    /* Unix domain socket */
+/* Connects to the privileged helper. Returns -1 without exception if it is not running. */
+JNIEXPORT jint JNICALL
+Java_de_tu_1darmstadt_adtn_packetsocket_PrivilegedHelper_connectHelper(JNIEnv *env, jclass cls,
+                                                                        jstring abstractPath) {
+    const char *abstract_path;
     size_t abstract_path_len;
-    int uds;
+    int uds, err_no;
     struct sockaddr_un server_addr;
 
-    /* Holds the received file descriptor */
-    const size_t size_of_fd = sizeof(int);
-
-    /* File descriptor passing */
-    uint8_t dummy_message;
-    struct iovec iov = {.iov_base = &dummy_message, .iov_len = sizeof dummy_message};
-    unsigned char ancillary_data[CMSG_SPACE(size_of_fd)];
-    struct msghdr hdr = {0};
-    struct cmsghdr *cmsg;
-
     /* Check if the length of the specified abstract Unix socket path is withing range */
+    abstract_path = (*env)->GetStringUTFChars(env, abstractPath, NULL);
     abstract_path_len = strlen(abstract_path);
     if (abstract_path_len > UNIX_PATH_MAX - 1) {
+        (*env)->ReleaseStringUTFChars(env, abstractPath, abstract_path);
         (*env)->Throw(env, createException(env, "Unix path name is too long", 0));
         return -1;
     }
@@ -44,6 +75,7 @@ static int read_fd_from_uds(JNIEnv *env, const char *abstract_path) {
     /* Create Unix domain socket */
     uds = socket(AF_UNIX, SOCK_STREAM, 0);
     if (uds == -1) {
+        (*env)->ReleaseStringUTFChars(env, abstractPath, abstract_path);
         (*env)->Throw(env, createException(env, "Could not create Unix socket", errno));
         return -1;
     }
@@ -53,47 +85,109 @@ static int read_fd_from_uds(JNIEnv *env, const char *abstract_path) {
     server_addr.sun_family = AF_UNIX;
     server_addr.sun_path[0] = 0; /* Set first byte to zero to indicate an abstract path */
     memcpy(server_addr.sun_path + 1, abstract_path, abstract_path_len);
+    (*env)->ReleaseStringUTFChars(env, abstractPath, abstract_path);
     if (connect(uds, (struct sockaddr *) &server_addr,
-                offsetof(struct sockaddr_un, sun_path) + 1 + abstract_path_len) != 0) {
-        int err_no = errno;
+                offsetof(struct sockaddr_un, sun_path) + 1 + abstract_path_len) == 0) {
+        /* Any app can bind the abstract path, so only a helper running as root is trusted */
+        struct ucred helper_cred;
+        socklen_t helper_cred_len = sizeof helper_cred;
+        if (getsockopt(uds, SOL_SOCKET, SO_PEERCRED, &helper_cred, &helper_cred_len) == 0 &&
+            helper_cred.uid == 0) {
+            return (jint) uds;
+        }
         close(uds);
-        (*env)->Throw(env, createException(env, "connect failed", err_no));
+        (*env)->Throw(env, createException(env, "Privileged helper does not run as root", 0));
         return -1;
     }
 
-    /* Since it is not possible to send only ancillary data, a dummy byte is received */
-    hdr.msg_iov = &iov;
-    hdr.msg_iovlen = 1;
+    err_no = errno;
+    close(uds);
+    if (err_no != ECONNREFUSED && err_no != ENOENT) {
+        (*env)->Throw(env, createException(env, "connect failed", err_no));
+    }
+    return -1;
+}
 
-    /* Set up buffer to ancillary data receive buffer */
-    hdr.msg_control = ancillary_data;
-    hdr.msg_controllen = sizeof ancillary_data;
+/* Sends a request line to the privileged helper and waits for the reply. Returns the passed file
+ * descriptor or -1 if there is none. The errno of a failed request is written to error[0]. */
+JNIEXPORT jint JNICALL
+Java_de_tu_1darmstadt_adtn_packetsocket_PrivilegedHelper_sendCommand(JNIEnv *env, jclass cls,
+                                                                      jint uds, jstring command,
+                                                                      jintArray error) {
+    char reply[32];
+    size_t reply_len = 0;
+    int fd = -1;
+    jint err_no = 0;
 
-    /* Receive message */
-    if (recvmsg(uds, &hdr, 0) == -1) {
-        int err_no = errno;
-        close(uds);
-        (*env)->Throw(env, createException(env, "recvmsg failed", err_no));
-        return -1;
+    /* Send request */
+    const char *request = (*env)->GetStringUTFChars(env, command, NULL);
+    size_t request_len = strlen(request), sent = 0;
+    while (sent < request_len) {
+        ssize_t result = send(uds, request + sent, request_len - sent, MSG_NOSIGNAL);
+        if (result == -1) {
+            if (errno == EINTR) continue;
+            (*env)->ReleaseStringUTFChars(env, command, request);
+            (*env)->Throw(env, createException(env, "send failed", errno));
+            return -1;
+        }
+        sent += (size_t) result;
     }
+    (*env)->ReleaseStringUTFChars(env, command, request);
 
-    /* Close Unix domain socket */
-    if (close(uds) != 0) {
-        (*env)->Throw(env, createException(env, "Could not close Unix socket", errno));
-        return -1;
+    /* Receive the reply line and the file descriptor passed along with it */
+    while (reply_len == 0 || reply[reply_len - 1] != '\n') {
+        unsigned char ancillary_data[CMSG_SPACE(sizeof fd)];
+        struct iovec iov = {.iov_base = reply + reply_len, .iov_len = 1};
+        struct msghdr hdr = {0};
+        struct cmsghdr *cmsg;
+        ssize_t result;
+
+        if (reply_len == sizeof reply - 1) {
+            if (fd != -1) close(fd);
+            (*env)->Throw(env, createException(env, "Reply is too long", 0));
+            return -1;
+        }
+
+        hdr.msg_iov = &iov;
+        hdr.msg_iovlen = 1;
+        hdr.msg_control = ancillary_data;
+        hdr.msg_controllen = sizeof ancillary_data;
+        result = recvmsg(uds, &hdr, 0);
+        if (result <= 0) {
+            if (result == -1 && errno == EINTR) continue;
+            if (fd != -1) close(fd);
+            (*env)->Throw(env, createException(env, result == 0 ? "Helper closed the connection" :
+                                                                  "recvmsg failed", result == 0 ? 0 : errno));
+            return -1;
+        }
+        ++reply_len;
+
+        cmsg = CMSG_FIRSTHDR(&hdr);
+        if (cmsg != NULL && cmsg->cmsg_len == CMSG_LEN(sizeof fd) &&
+            cmsg->cmsg_level == SOL_SOCKET && cmsg->cmsg_type == SCM_RIGHTS) {
+            fd = *(int *) CMSG_DATA(cmsg);
+        }
     }
+    reply[reply_len] = 0;
 
-    /* Check if received message is valid */
-    cmsg = CMSG_FIRSTHDR(&hdr);
-    if (dummy_message != 0 || hdr.msg_flags & MSG_CTRUNC ||
-        hdr.msg_controllen != sizeof ancillary_data || cmsg->cmsg_len != CMSG_LEN(size_of_fd) ||
-        cmsg->cmsg_level != SOL_SOCKET || cmsg->cmsg_type != SCM_RIGHTS) {
-        (*env)->Throw(env, createException(env, "Received invalid ancillary message", 0));
-        return -1;
+    if (strcmp(reply, "OK\n") != 0) {
+        if (fd != -1) close(fd);
+        fd = -1;
+        if (sscanf(reply, "ERR %d", &err_no) != 1 || err_no == 0) {
+            (*env)->Throw(env, createException(env, "Received invalid reply", 0));
+            return -1;
+        }
     }
+    (*env)->SetIntArrayRegion(env, error, 0, 1, &err_no);
+    return (jint) fd;
+}
 
-    /* Return the received file descriptor */
-    return *(int *) CMSG_DATA(cmsg);
+JNIEXPORT void JNICALL
+Java_de_tu_1darmstadt_adtn_packetsocket_PrivilegedHelper_closeHelper(JNIEnv *env, jclass cls,
+                                                                      jint uds) {
+    if (close(uds) != 0) {
+        (*env)->Throw(env, createException(env, "close failed", errno));
+    }
 }
 
 JNIEXPORT jint JNICALL
@@ -126,6 +220,20 @@ Java_de_tu_1darmstadt_adtn_packetsocket_PacketSocket_setsockoptInt(JNIEnv *env,
     return setsockopt(sockfd, level, optname, &value, sizeof value);
 }
 
+JNIEXPORT jint JNICALL
+Java_de_tu_1darmstadt_adtn_packetsocket_PacketSocket_getsockoptInt(JNIEnv *env,
+                                                                   jobject obj,
+                                                                   jint sockfd, jint level,
+                                                                   jint optname) {
+    int value;
+    socklen_t len = sizeof value;
+    if (getsockopt(sockfd, level, optname, &value, &len) == -1) {
+        (*env)->Throw(env, createException(env, "getsockopt failed", errno));
+        return -1;
+    }
+    return (jint) value;
+}
+
 JNIEXPORT void JNICALL
 Java_de_tu_1darmstadt_adtn_packetsocket_PacketSocket_bind(JNIEnv *env, jobject obj,
                                                           jint sockfd, jint protocol,
@@ -142,6 +250,156 @@ Java_de_tu_1darmstadt_adtn_packetsocket_PacketSocket_bind(JNIEnv *env, jobject o
     }
 }
 
+JNIEXPORT void JNICALL
+Java_de_tu_1darmstadt_adtn_packetsocket_PacketSocket_attachFilter(JNIEnv *env, jobject obj,
+                                                                  jint sockfd, jint etherType,
+                                                                  jint frameLength) {
+    /* Classic BPF program run by the kernel for every frame before it is queued. Only frames with
+     * exactly the expected length (including the Ethernet header) and EtherType are accepted,
+     * all others are dropped without waking up the receiver. */
+    struct sock_filter code[] = {
+            BPF_STMT(BPF_LD | BPF_W | BPF_LEN, 0),
+            BPF_JUMP(BPF_JMP | BPF_JEQ | BPF_K, (__u32) frameLength, 0, 3),
+            BPF_STMT(BPF_LD | BPF_H | BPF_ABS, 12), /* EtherType */
+            BPF_JUMP(BPF_JMP | BPF_JEQ | BPF_K, (__u32) etherType, 0, 1),
+            BPF_STMT(BPF_RET | BPF_K, (__u32) frameLength),
+            BPF_STMT(BPF_RET | BPF_K, 0)
+    };
+    struct sock_fprog program;
+    program.len = sizeof code / sizeof code[0];
+    program.filter = code;
+
+    if (setsockopt(sockfd, SOL_SOCKET, SO_ATTACH_FILTER, &program, sizeof program) == -1) {
+        (*env)->Throw(env, createException(env, "setsockopt for SO_ATTACH_FILTER failed", errno));
+    }
+}
+
+JNIEXPORT void JNICALL
+Java_de_tu_1darmstadt_adtn_packetsocket_PacketSocket_joinFanout(JNIEnv *env, jobject obj,
+                                                                jint sockfd, jint groupId,
+                                                                jint mode) {
+#ifdef PACKET_FANOUT
+    /* The group ID is in the lower 16 bits, the mode in the upper ones */
+    int value = (groupId & 0xffff) | mode << 16;
+    if (setsockopt(sockfd, SOL_PACKET, PACKET_FANOUT, &value, sizeof value) == -1) {
+        (*env)->Throw(env, createException(env, "setsockopt for PACKET_FANOUT failed", errno));
+    }
+#else
+    (*env)->Throw(env, createException(env, "PACKET_FANOUT is not supported", 0));
+#endif
+}
+
+/* Closes the file descriptors of the event loop that are open */
+static void close_event_fds(const jint *fds) {
+    int i;
+    for (i = 0; i < EVENT_FD_COUNT; ++i) {
+        if (fds[i] != -1) close(fds[i]);
+    }
+}
+
+static int add_to_epoll(int epoll_fd, int fd, uint32_t events, uint32_t data) {
+    struct epoll_event event = {.events = events, .data.u32 = data};
+    return epoll_ctl(epoll_fd, EPOLL_CTL_ADD, fd, &event);
+}
+
+JNIEXPORT void JNICALL
+Java_de_tu_1darmstadt_adtn_packetsocket_PacketSocket_setupEventLoop(JNIEnv *env, jobject obj,
+                                                                    jint sockfd,
+                                                                    jintArray fileDescriptors) {
+    /* Socket events of every epoll instance */
+    static const uint32_t socket_events[EVENT_FD_COUNT] = {0, EPOLLIN, EPOLLOUT, EPOLLIN | EPOLLOUT};
+    jint fds[EVENT_FD_COUNT] = {-1, -1, -1, -1};
+    int flags, i, err_no;
+
+    /* Blocking is done by waiting with epoll, so recv and send never block */
+    flags = fcntl(sockfd, F_GETFL);
+    if (flags == -1 || fcntl(sockfd, F_SETFL, flags | O_NONBLOCK) == -1) {
+        (*env)->Throw(env, createException(env, "fcntl for O_NONBLOCK failed", errno));
+        return;
+    }
+
+    /* The eventfd becomes readable when the socket is closed and wakes up every waiting thread */
+    fds[WAKE_UP_FD] = eventfd(0, 0);
+    if (fds[WAKE_UP_FD] == -1) {
+        (*env)->Throw(env, createException(env, "eventfd failed", errno));
+        return;
+    }
+
+    /* One epoll instance per combination of socket events, so a thread waiting to receive is
+     * not woken up because the socket can send and vice versa */
+    for (i = RECEIVE_EPOLL_FD; i < EVENT_FD_COUNT; ++i) {
+        fds[i] = epoll_create(2);
+        if (fds[i] == -1) {
+            err_no = errno;
+            close_event_fds(fds);
+            (*env)->Throw(env, createException(env, "epoll_create failed", err_no));
+            return;
+        }
+        if (add_to_epoll(fds[i], fds[WAKE_UP_FD], EPOLLIN, EVENT_WAKE_UP) == -1 ||
+            add_to_epoll(fds[i], sockfd, socket_events[i], EVENT_RECEIVE | EVENT_SEND) == -1) {
+            err_no = errno;
+            close_event_fds(fds);
+            (*env)->Throw(env, createException(env, "epoll_ctl failed", err_no));
+            return;
+        }
+    }
+
+    (*env)->SetIntArrayRegion(env, fileDescriptors, 0, EVENT_FD_COUNT, fds);
+}
+
+JNIEXPORT jint JNICALL
+Java_de_tu_1darmstadt_adtn_packetsocket_PacketSocket_epollWait(JNIEnv *env, jobject obj,
+                                                               jint epollFd, jint timeout) {
+    struct epoll_event events[2];
+    jint result = 0;
+    int count, i;
+
+    /* An interrupted wait is reported like a timeout, the caller checks the time itself */
+    count = epoll_wait(epollFd, events, 2, timeout);
+    if (count == -1) {
+        if (errno == EINTR) return 0;
+        (*env)->Throw(env, createException(env, "epoll_wait failed", errno));
+        return 0;
+    }
+
+    /* Errors are reported as readiness, so the next recv or send call throws them */
+    for (i = 0; i < count; ++i) {
+        if (events[i].data.u32 == EVENT_WAKE_UP) {
+            result |= EVENT_WAKE_UP;
+            continue;
+        }
+        if (events[i].events & (EPOLLIN | EPOLLERR | EPOLLHUP)) result |= EVENT_RECEIVE;
+        if (events[i].events & (EPOLLOUT | EPOLLERR | EPOLLHUP)) result |= EVENT_SEND;
+    }
+    return result;
+}
+
+JNIEXPORT void JNICALL
+Java_de_tu_1darmstadt_adtn_packetsocket_PacketSocket_wakeUp(JNIEnv *env, jobject obj,
+                                                            jint eventFd) {
+    /* The eventfd is never read, so it stays readable and wakes up all current and later waits */
+    uint64_t value = 1;
+    if (write(eventFd, &value, sizeof value) == -1) {
+        (*env)->Throw(env, createException(env, "write to eventfd failed", errno));
+    }
+}
+
+JNIEXPORT void JNICALL
+Java_de_tu_1darmstadt_adtn_packetsocket_PacketSocket_closeEventLoop(JNIEnv *env, jobject obj,
+                                                                    jintArray fileDescriptors) {
+    jint fds[EVENT_FD_COUNT];
+    int i, failed = 0, err_no = 0;
+
+    (*env)->GetIntArrayRegion(env, fileDescriptors, 0, EVENT_FD_COUNT, fds);
+    for (i = 0; i < EVENT_FD_COUNT; ++i) {
+        if (close(fds[i]) == -1 && !failed) {
+            failed = 1;
+            err_no = errno;
+        }
+    }
+    if (failed) (*env)->Throw(env, createException(env, "close failed", err_no));
+}
+
 JNIEXPORT void JNICALL
 Java_de_tu_1darmstadt_adtn_packetsocket_PacketSocket_close(
         JNIEnv *env, jobject obj,
@@ -160,9 +418,12 @@ Java_de_tu_1darmstadt_adtn_packetsocket_PacketSocket_recv(JNIEnv *env, jobject o
     /* Apply offset to buffer pointer */
     void *buf = (*env)->GetDirectBufferAddress(env, buffer) + offset;
 
-    /* Call recv */
+    /* Call recv, returns 0 if the non-blocking socket has nothing to receive */
     ssize_t result = recv(fileDescriptor, buf, (size_t) count, flags);
-    if (result == -1) (*env)->Throw(env, createException(env, "recv failed", errno));
+    if (result == -1) {
+        if (errno == EAGAIN) return 0;
+        (*env)->Throw(env, createException(env, "recv failed", errno));
+    }
     return (jint) result;
 }
 
@@ -175,19 +436,283 @@ Java_de_tu_1darmstadt_adtn_packetsocket_PacketSocket_send(JNIEnv *env, jobject o
     /* Apply offset to buffer pointer */
     const void *buf = (*env)->GetDirectBufferAddress(env, buffer) + offset;
 
-    /* Call send */
+    /* Call send, returns 0 if the send queue of the non-blocking socket is full and -1 without
+     * exception if the queue of the network interface is full */
     ssize_t result = send(fileDescriptor, buf, (size_t) count, flags);
-    if (result == -1) (*env)->Throw(env, createException(env, "send failed", errno));
+    if (result == -1) {
+        if (errno == EAGAIN) return 0;
+        if (errno == ENOBUFS) return -1;
+        (*env)->Throw(env, createException(env, "send failed", errno));
+    }
     return (jint) result;
 }
 
+/* Sets up one message per frame slot of the buffer. The slots follow each other without gaps. */
+static void setup_frame_msgs(struct frame_msg *msgs, struct iovec *iovs, uint8_t *buf,
+                             int slot_size, int count) {
+    int i;
+    memset(msgs, 0, sizeof(struct frame_msg) * count);
+    for (i = 0; i < count; ++i) {
+        iovs[i].iov_base = buf + (size_t) i * slot_size;
+        iovs[i].iov_len = (size_t) slot_size;
+        msgs[i].hdr.msg_iov = &iovs[i];
+        msgs[i].hdr.msg_iovlen = 1;
+    }
+}
+
+/* Calls sendmmsg, or sends only the first frame if the kernel does not support sendmmsg */
+static int send_frames(int fd, struct frame_msg *msgs, int count, int flags) {
+    ssize_t result;
+#ifdef __NR_sendmmsg
+    int sent = (int) syscall(__NR_sendmmsg, fd, msgs, (unsigned int) count, flags);
+    if (sent != -1 || errno != ENOSYS) return sent;
+#endif
+    result = send(fd, msgs[0].hdr.msg_iov->iov_base, msgs[0].hdr.msg_iov->iov_len, flags);
+    if (result == -1) return -1;
+    msgs[0].len = (unsigned int) result;
+    return 1;
+}
+
+/* Calls recvmmsg, or receives only a single frame if the kernel does not support recvmmsg */
+static int receive_frames(int fd, struct frame_msg *msgs, int count, int flags) {
+    const int MSG_WAITFORONE_FLAG = 0x10000;
+    ssize_t result;
+#ifdef __NR_recvmmsg
+    int received = (int) syscall(__NR_recvmmsg, fd, msgs, (unsigned int) count,
+                                 flags | MSG_WAITFORONE_FLAG, NULL);
+    if (received != -1 || errno != ENOSYS) return received;
+#endif
+    result = recv(fd, msgs[0].hdr.msg_iov->iov_base, msgs[0].hdr.msg_iov->iov_len, flags);
+    if (result == -1) return -1;
+    msgs[0].len = (unsigned int) result;
+    return 1;
+}
+
+/* Checks the frame slot arguments of the batch functions. Throws and returns -1 if they are
+ * invalid or 0 otherwise. */
+static int check_slots(JNIEnv *env, jobject buffer, jint slotSize, jint first, jint count) {
+    jlong capacity = (*env)->GetDirectBufferCapacity(env, buffer);
+    if (capacity == -1 || slotSize <= 0 || first < 0 || count < 1 || count > MAX_BATCH_SIZE ||
+        (jlong) (first + count) * slotSize > capacity) {
+        (*env)->Throw(env, createException(env, "Invalid frame slots", 0));
+        return -1;
+    }
+    return 0;
+}
+
 JNIEXPORT jint JNICALL
-Java_de_tu_1darmstadt_adtn_packetsocket_PacketSocket_readFileDescriptorFromUds(JNIEnv *env,
-                                                                               jobject obj,
-                                                                               jstring abstractPath) {
-    /* Call read_fd_from_uds with "const char *" of abstractPath */
-    const char *abstract_path_chars = (*env)->GetStringUTFChars(env, abstractPath, NULL);
-    int fd = read_fd_from_uds(env, abstract_path_chars);
-    (*env)->ReleaseStringUTFChars(env, abstractPath, abstract_path_chars);
-    return fd;
+Java_de_tu_1darmstadt_adtn_packetsocket_PacketSocket_sendmmsg(JNIEnv *env, jobject obj,
+                                                              jint fileDescriptor,
+                                                              jobject buffer,
+                                                              jint slotSize, jint first,
+                                                              jint count, jint flags) {
+    struct frame_msg msgs[MAX_BATCH_SIZE];
+    struct iovec iovs[MAX_BATCH_SIZE];
+    uint8_t *buf;
+    int sent;
+
+    if (check_slots(env, buffer, slotSize, first, count) != 0) return -1;
+    buf = (uint8_t *) (*env)->GetDirectBufferAddress(env, buffer) + (size_t) first * slotSize;
+
+    /* Send the frames from slot first on, returns how many were sent. That is 0 if the send
+     * queue of the non-blocking socket is full and -1 without exception if the queue of the
+     * network interface is full. */
+    setup_frame_msgs(msgs, iovs, buf, slotSize, count);
+    sent = send_frames(fileDescriptor, msgs, count, flags);
+    if (sent == -1) {
+        if (errno == EAGAIN) return 0;
+        if (errno == ENOBUFS) return -1;
+        (*env)->Throw(env, createException(env, "sendmmsg failed", errno));
+    }
+    return (jint) sent;
 }
+
+JNIEXPORT jint JNICALL
+Java_de_tu_1darmstadt_adtn_packetsocket_PacketSocket_recvmmsg(JNIEnv *env, jobject obj,
+                                                              jint fileDescriptor,
+                                                              jobject buffer,
+                                                              jint slotSize, jint count,
+                                                              jint flags, jintArray lengths) {
+    struct frame_msg msgs[MAX_BATCH_SIZE];
+    struct iovec iovs[MAX_BATCH_SIZE];
+    jint frame_lengths[MAX_BATCH_SIZE];
+    int received, i;
+
+    if (check_slots(env, buffer, slotSize, 0, count) != 0) return -1;
+    if ((*env)->GetArrayLength(env, lengths) < count) {
+        (*env)->Throw(env, createException(env, "Length array is too small", 0));
+        return -1;
+    }
+
+    /* Take the frames that are queued. There are none if the non-blocking socket returns EAGAIN. */
+    setup_frame_msgs(msgs, iovs, (*env)->GetDirectBufferAddress(env, buffer), slotSize, count);
+    received = receive_frames(fileDescriptor, msgs, count, flags);
+    if (received == -1) {
+        if (errno == EAGAIN) return 0;
+        (*env)->Throw(env, createException(env, "recvmmsg failed", errno));
+        return -1;
+    }
+
+    /* Report the length of every frame. With MSG_TRUNC this is the real length, which may be
+     * larger than the slot. */
+    for (i = 0; i < received; ++i) frame_lengths[i] = (jint) msgs[i].len;
+    (*env)->SetIntArrayRegion(env, lengths, 0, received, frame_lengths);
+    return (jint) received;
+}
+
+JNIEXPORT void JNICALL
+Java_de_tu_1darmstadt_adtn_packetsocket_PacketSocket_readStatistics(JNIEnv *env, jobject obj,
+                                                                    jint fileDescriptor,
+                                                                    jlongArray counters) {
+    struct tpacket_stats stats;
+    socklen_t len = sizeof stats;
+    jlong values[2];
+
+    /* Reading the statistics resets them, so this returns the packets and drops since the last
+     * call. The packets include the drops. The first fields of the TPACKET_V3 statistics are the
+     * same. */
+    if (getsockopt(fileDescriptor, SOL_PACKET, PACKET_STATISTICS, &stats, &len) == -1) {
+        (*env)->Throw(env, createException(env, "getsockopt for PACKET_STATISTICS failed", errno));
+        return;
+    }
+    values[0] = (jlong) stats.tp_packets;
+    values[1] = (jlong) stats.tp_drops;
+    (*env)->SetLongArrayRegion(env, counters, 0, 2, values);
+}
+
+#ifdef TPACKET3_HDRLEN
+
+JNIEXPORT jobject JNICALL
+Java_de_tu_1darmstadt_adtn_packetsocket_PacketSocket_setupRxRing(JNIEnv *env, jobject obj,
+                                                                 jint fileDescriptor,
+                                                                 jint blockSize, jint blockCount,
+                                                                 jint frameSize,
+                                                                 jint blockTimeout) {
+    int version = TPACKET_V3;
+    struct tpacket_req3 req;
+    size_t size = (size_t) blockSize * blockCount;
+    size_t max_frames;
+    void *ring;
+    jobject buffer;
+
+    /* readRxBlock reports at most MAX_RING_FRAMES frames per block. Every frame takes at least
+     * its header and the space up to the network header (see tpacket_rcv in the kernel), so
+     * refuse blocks that could hold more frames instead of losing them. */
+    max_frames = (blockSize - TPACKET_ALIGN(sizeof(struct tpacket_block_desc))) /
+                 TPACKET_ALIGN(TPACKET3_HDRLEN + 16);
+    if (max_frames > MAX_RING_FRAMES) {
+        (*env)->Throw(env, createException(env, "Ring blocks can hold too many frames", 0));
+        return NULL;
+    }
+
+    /* Use block based delivery of variable sized frames */
+    if (setsockopt(fileDescriptor, SOL_PACKET, PACKET_VERSION, &version, sizeof version) == -1) {
+        (*env)->Throw(env, createException(env, "setsockopt for PACKET_VERSION failed", errno));
+        return NULL;
+    }
+
+    /* Let the kernel allocate the ring. Blocks are handed to user space when full or after the
+     * timeout in milliseconds. */
+    memset(&req, 0, sizeof req);
+    req.tp_block_size = (unsigned int) blockSize;
+    req.tp_block_nr = (unsigned int) blockCount;
+    req.tp_frame_size = (unsigned int) frameSize;
+    req.tp_frame_nr = (unsigned int) (size / frameSize);
+    req.tp_retire_blk_tov = (unsigned int) blockTimeout;
+    if (setsockopt(fileDescriptor, SOL_PACKET, PACKET_RX_RING, &req, sizeof req) == -1) {
+        (*env)->Throw(env, createException(env, "setsockopt for PACKET_RX_RING failed", errno));
+        return NULL;
+    }
+
+    /* Map it to user space. If that fails, remove the ring again, so the socket can still be
+     * used with recvmmsg - otherwise the kernel keeps putting packets in the unmapped ring. */
+    ring = mmap(NULL, size, PROT_READ | PROT_WRITE, MAP_SHARED, fileDescriptor, 0);
+    if (ring == MAP_FAILED) {
+        int error = errno;
+        memset(&req, 0, sizeof req);
+        setsockopt(fileDescriptor, SOL_PACKET, PACKET_RX_RING, &req, sizeof req);
+        (*env)->Throw(env, createException(env, "mmap failed", error));
+        return NULL;
+    }
+
+    buffer = (*env)->NewDirectByteBuffer(env, ring, (jlong) size);
+    if (buffer == NULL) {
+        /* Same as above, and throw a PacketSocketException so the caller falls back to recvmmsg */
+        munmap(ring, size);
+        memset(&req, 0, sizeof req);
+        setsockopt(fileDescriptor, SOL_PACKET, PACKET_RX_RING, &req, sizeof req);
+        (*env)->ExceptionClear(env);
+        (*env)->Throw(env, createException(env, "NewDirectByteBuffer failed", 0));
+    }
+    return buffer;
+}
+
+JNIEXPORT jint JNICALL
+Java_de_tu_1darmstadt_adtn_packetsocket_PacketSocket_readRxBlock(JNIEnv *env, jobject obj,
+                                                                 jobject ring,
+                                                                 jint blockOffset,
+                                                                 jintArray frameOffsets,
+                                                                 jintArray frameLengths) {
+    uint8_t *ring_start = (*env)->GetDirectBufferAddress(env, ring);
+    struct tpacket_block_desc *block = (struct tpacket_block_desc *) (ring_start + blockOffset);
+    jint offsets[MAX_RING_FRAMES], lengths[MAX_RING_FRAMES];
+    jsize max_frames = (*env)->GetArrayLength(env, frameOffsets);
+    uint8_t *frame;
+    uint32_t i, count;
+
+    /* Check if the kernel handed the block to user space. The socket becomes readable when it
+     * does. */
+    if (!(__atomic_load_n(&block->hdr.bh1.block_status, __ATOMIC_ACQUIRE) & TP_STATUS_USER)) {
+        return -1;
+    }
+
+    /* Report the start of the Ethernet header and the captured length of every frame */
+    count = block->hdr.bh1.num_pkts;
+    if (max_frames > MAX_RING_FRAMES) max_frames = MAX_RING_FRAMES;
+    if (count > (uint32_t) max_frames) count = (uint32_t) max_frames;
+    frame = (uint8_t *) block + block->hdr.bh1.offset_to_first_pkt;
+    for (i = 0; i < count; ++i) {
+        struct tpacket3_hdr *hdr = (struct tpacket3_hdr *) frame;
+        offsets[i] = (jint) (frame + hdr->tp_mac - ring_start);
+        lengths[i] = (jint) hdr->tp_snaplen;
+        frame += hdr->tp_next_offset;
+    }
+    (*env)->SetIntArrayRegion(env, frameOffsets, 0, (jsize) count, offsets);
+    (*env)->SetIntArrayRegion(env, frameLengths, 0, (jsize) count, lengths);
+    return (jint) count;
+}
+
+JNIEXPORT void JNICALL
+Java_de_tu_1darmstadt_adtn_packetsocket_PacketSocket_releaseRxBlock(JNIEnv *env, jobject obj,
+                                                                    jobject ring,
+                                                                    jint blockOffset) {
+    uint8_t *ring_start = (*env)->GetDirectBufferAddress(env, ring);
+    struct tpacket_block_desc *block = (struct tpacket_block_desc *) (ring_start + blockOffset);
+
+    /* Give the block back to the kernel after all reads of its frames */
+    __atomic_store_n(&block->hdr.bh1.block_status, TP_STATUS_KERNEL, __ATOMIC_RELEASE);
+}
+
+JNIEXPORT void JNICALL
+Java_de_tu_1darmstadt_adtn_packetsocket_PacketSocket_unmapRxRing(JNIEnv *env, jobject obj,
+                                                                 jobject ring) {
+    if (munmap((*env)->GetDirectBufferAddress(env, ring),
+               (size_t) (*env)->GetDirectBufferCapacity(env, ring)) == -1) {
+        (*env)->Throw(env, createException(env, "munmap failed", errno));
+    }
+}
+
+#else
+
+/* The platform headers are too old for TPACKET_V3, so the ring cannot be used */
+JNIEXPORT jobject JNICALL
+Java_de_tu_1darmstadt_adtn_packetsocket_PacketSocket_setupRxRing(JNIEnv *env, jobject obj,
+                                                                 jint fileDescriptor,
+                                                                 jint blockSize, jint blockCount,
+                                                                 jint frameSize,
+                                                                 jint blockTimeout) {
+    (*env)->Throw(env, createException(env, "TPACKET_V3 is not supported", 0));
+    return NULL;
+}
+
+#endif
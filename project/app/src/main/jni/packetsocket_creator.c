@@ -1,171 +1,387 @@
-/* Creates a socket and passes its file descriptor via a Unix domain socket to another process. */
+/* Privileged helper of the aDTN service. It is started as root once per app process and keeps
+ * running in the background while that process lives, so later operations only need a connection
+ * to its abstract Unix domain socket instead of a new su process. Only the process that started
+ * it may connect. The helper exits on QUIT or once that process is gone.
+ *
+ * Every request is a single line and answered by "OK\n" or "ERR <errno>\n". The first request
+ * of a connection must be HELLO, so helpers of another app version are detected and replaced.
+ *   HELLO <version>                    Checks that client and helper speak the same protocol
+ *   SOCKET <ether type>                Creates a packet socket for the EtherType the helper was
+ *                                      started with and passes it along with the reply
+ *   SETMAC <xx:xx:xx:xx:xx:xx>         Sets the Wi-Fi MAC address used after Wi-Fi is restarted
+ *   CLEARMAC                           Disables Wi-Fi MAC spoofing
+ *   AIRPLANE <0|1>                     Disables or enables airplane mode
+ *   QUIT                               Stops the helper
+ */
 
 /* Needed for struct ucred */
 #define _GNU_SOURCE
 
 #include <arpa/inet.h>
+#include <ctype.h>
 #include <errno.h>
+#include <fcntl.h>
 #include <inttypes.h>
+#include <linux/if_packet.h>
 #include <linux/un.h>
+#include <poll.h>
+#include <signal.h>
 #include <stddef.h>
 #include <stdio.h>
 #include <stdlib.h>
 #include <string.h>
 #include <sys/socket.h>
+#include <sys/wait.h>
 #include <unistd.h>
 
+#define MAX_REQUEST_LENGTH 64
+
+/* Version of the request protocol, must match PrivilegedHelper.java */
+#define PROTOCOL_VERSION 2
+
+/* Milliseconds between checks whether the app process still exists */
+#define SESSION_CHECK_INTERVAL 5000
+
+/* Attempts to bind while a running helper is replaced, 100 ms apart */
+#define MAX_BIND_ATTEMPTS 20
+
+/* File read by the Wi-Fi driver of some Samsung devices */
+#define MAC_FILENAME "/data/.nvmac.info"
+#define MAC_LENGTH 17
+
+/* Programs that switch airplane mode, run without a shell */
+static char *const AIRPLANE_MODE_SETTING[2][6] = {
+        {"/system/bin/settings", "put", "global", "airplane_mode_on", "0", NULL},
+        {"/system/bin/settings", "put", "global", "airplane_mode_on", "1", NULL}
+};
+static char *const AIRPLANE_MODE_BROADCAST[2][8] = {
+        {"/system/bin/am", "broadcast", "-a", "android.intent.action.AIRPLANE_MODE", "--ez", "state", "false", NULL},
+        {"/system/bin/am", "broadcast", "-a", "android.intent.action.AIRPLANE_MODE", "--ez", "state", "true", NULL}
+};
+
+/* The app process that started the helper and the EtherType of its packet sockets */
+static pid_t session_pid;
+static uid_t session_uid;
+static int session_ether_type;
+
+/* Sends the reply to a request and, if socket_fd is not -1, passes the file descriptor with it */
+static int send_reply(int uds, int err_no, int socket_fd) {
+    char reply[32];
+    struct iovec iov;
+    unsigned char ancillary_data[CMSG_SPACE(sizeof socket_fd)];
+    struct msghdr hdr = {0};
+    struct cmsghdr *cmsg;
+
+    if (err_no == 0) {
+        strcpy(reply, "OK\n");
+    } else {
+        snprintf(reply, sizeof reply, "ERR %d\n", err_no);
+    }
+    iov.iov_base = reply;
+    iov.iov_len = strlen(reply);
+    hdr.msg_iov = &iov;
+    hdr.msg_iovlen = 1;
+
+    /* Set up ancillary data to pass the socket file descriptor */
+    if (socket_fd != -1) {
+        memset(ancillary_data, 0, sizeof ancillary_data);
+        hdr.msg_control = ancillary_data;
+        hdr.msg_controllen = sizeof ancillary_data;
+        cmsg = CMSG_FIRSTHDR(&hdr);
+        cmsg->cmsg_len = CMSG_LEN(sizeof socket_fd);
+        cmsg->cmsg_level = SOL_SOCKET;
+        cmsg->cmsg_type = SCM_RIGHTS;
+        *((int *) CMSG_DATA(cmsg)) = socket_fd;
+    }
+
+    /* The reply is small enough to be sent at once */
+    return sendmsg(uds, &hdr, MSG_NOSIGNAL) == (ssize_t) iov.iov_len ? 0 : -1;
+}
+
+/* Reads a request line without the line break. Returns -1 on error or end of stream. */
+static int read_request(int uds, char *request, size_t size) {
+    size_t length = 0;
+    while (1) {
+        ssize_t result = recv(uds, request + length, 1, 0);
+        if (result == -1 && errno == EINTR) continue;
+        if (result != 1) return -1;
+        if (request[length] == '\n') break;
+        if (++length == size) return -1; /* Too long */
+    }
+    request[length] = 0;
+    return 0;
+}
+
+/* Returns 0 if mac has the format xx:xx:xx:xx:xx:xx or -1 otherwise */
+static int check_mac(const char *mac) {
+    int i;
+    if (strlen(mac) != MAC_LENGTH) return -1;
+    for (i = 0; i < MAC_LENGTH; ++i) {
+        if (i % 3 == 2 ? mac[i] != ':' : !isxdigit((unsigned char) mac[i])) return -1;
+    }
+    return 0;
+}
+
+static int set_mac(const char *mac) {
+    int fd, err_no = 0;
+    if (check_mac(mac) != 0) return EINVAL;
+
+    fd = open(MAC_FILENAME, O_WRONLY | O_CREAT | O_TRUNC, 0644);
+    if (fd == -1) return errno;
+    if (write(fd, mac, MAC_LENGTH) != MAC_LENGTH) err_no = errno ? errno : EIO;
+    if (close(fd) != 0 && err_no == 0) err_no = errno;
+    return err_no;
+}
+
+static int clear_mac(void) {
+    return unlink(MAC_FILENAME) == 0 || errno == ENOENT ? 0 : errno;
+}
+
+/* Runs a program with the specified arguments and waits for it. Returns 0 if it succeeded. */
+static int run_program(char *const argv[]) {
+    int status;
+    pid_t pid = fork();
+    if (pid == -1) return errno;
+    if (pid == 0) {
+        signal(SIGPIPE, SIG_DFL);
+        execv(argv[0], argv);
+        _exit(127);
+    }
+
+    while (waitpid(pid, &status, 0) == -1) {
+        if (errno != EINTR) return errno;
+    }
+    return WIFEXITED(status) && WEXITSTATUS(status) == 0 ? 0 : ECHILD;
+}
+
+static int set_airplane_mode(int enabled) {
+    int err_no;
+    if (enabled != 0 && enabled != 1) return EINVAL;
+    err_no = run_program(AIRPLANE_MODE_SETTING[enabled]);
+    return err_no != 0 ? err_no : run_program(AIRPLANE_MODE_BROADCAST[enabled]);
+}
+
+/* Creates a raw packet socket for the EtherType of the session, other sockets are refused */
+static int create_packet_socket(int ether_type, int *err_no) {
+    int fd;
+    if (ether_type != session_ether_type) {
+        *err_no = EPERM;
+        return -1;
+    }
+    fd = socket(AF_PACKET, SOCK_RAW, htons((uint16_t) ether_type));
+    *err_no = fd == -1 ? errno : 0;
+    return fd;
+}
+
+/* Returns 1 if the app process that started the helper is gone */
+static int session_ended(void) {
+    return kill(session_pid, 0) == -1 && errno == ESRCH;
+}
+
+/* Executes the requests of a connected client. Returns 1 if the helper should stop. */
+static int serve_client(int uds) {
+    char request[MAX_REQUEST_LENGTH];
+    int version, ether_type, enabled;
+    char mac[MAC_LENGTH + 2];
+
+    /* Clients of another protocol version are refused, so they replace the helper */
+    if (read_request(uds, request, sizeof request) != 0) return 0;
+    if (sscanf(request, "HELLO %d", &version) != 1 || version != PROTOCOL_VERSION) {
+        send_reply(uds, EPROTONOSUPPORT, -1);
+        return 0;
+    }
+    if (send_reply(uds, 0, -1) != 0) return 0;
+
+    while (read_request(uds, request, sizeof request) == 0) {
+        int err_no = 0, socket_fd = -1, result;
+
+        if (sscanf(request, "SOCKET %d", &ether_type) == 1) {
+            socket_fd = create_packet_socket(ether_type, &err_no);
+        } else if (sscanf(request, "SETMAC %18s", mac) == 1) {
+            err_no = set_mac(mac);
+        } else if (strcmp(request, "CLEARMAC") == 0) {
+            err_no = clear_mac();
+        } else if (sscanf(request, "AIRPLANE %d", &enabled) == 1) {
+            err_no = set_airplane_mode(enabled);
+        } else if (strcmp(request, "QUIT") == 0) {
+            send_reply(uds, 0, -1);
+            return 1;
+        } else {
+            err_no = EINVAL;
+        }
+
+        /* The client has its own copy of the socket after the reply */
+        result = send_reply(uds, err_no, socket_fd);
+        if (socket_fd != -1) close(socket_fd);
+        if (result != 0) break;
+    }
+
+    return 0;
+}
+
+/* Accepts connections of the app process one after another until QUIT is requested or the
+ * process is gone */
+static void serve(int uds_listener) {
+    while (!session_ended()) {
+        struct pollfd listener = {.fd = uds_listener, .events = POLLIN};
+        struct ucred remote_cred;
+        socklen_t remote_cred_len = sizeof remote_cred;
+        int uds, stop, ready;
+
+        ready = poll(&listener, 1, SESSION_CHECK_INTERVAL);
+        if (ready == -1 && errno != EINTR) return;
+        if (ready <= 0) continue;
+
+        uds = accept(uds_listener, NULL, NULL);
+        if (uds == -1) {
+            if (errno == EINTR || errno == ECONNABORTED) continue;
+            return;
+        }
+
+        /* Only serve the process that started the helper */
+        if (getsockopt(uds, SOL_SOCKET, SO_PEERCRED, &remote_cred, &remote_cred_len) != 0 ||
+            remote_cred.pid != session_pid || remote_cred.uid != session_uid) {
+            close(uds);
+            continue;
+        }
+
+        stop = serve_client(uds);
+        close(uds);
+        if (stop) return;
+    }
+}
+
+/* Stops the helper that listens on the address, e.g. one of an earlier app process or version.
+ * Returns 0 if it was asked to stop. Processes that do not run as root are no helpers and are
+ * left alone. */
+static int stop_running_helper(const struct sockaddr_un *addr, socklen_t addr_len) {
+    struct ucred helper_cred;
+    socklen_t helper_cred_len = sizeof helper_cred;
+    int uds, result;
+
+    uds = socket(AF_UNIX, SOCK_STREAM, 0);
+    if (uds == -1) return -1;
+    if (connect(uds, (const struct sockaddr *) addr, addr_len) != 0 ||
+        getsockopt(uds, SOL_SOCKET, SO_PEERCRED, &helper_cred, &helper_cred_len) != 0) {
+        int err_no = errno;
+        close(uds);
+
+        /* Already gone, binding can be tried again */
+        return err_no == ECONNREFUSED ? 0 : -1;
+    }
+    if (helper_cred.uid != 0 || helper_cred.pid <= 1 || helper_cred.pid == getpid()) {
+        close(uds);
+        return -1;
+    }
+
+    /* The credentials name the process that called listen. Helpers before protocol version 2
+     * listened before they forked, so that process is gone, but they accept QUIT from root. */
+    result = kill(helper_cred.pid, SIGTERM);
+    if (result != 0 && errno == ESRCH) {
+        result = send(uds, "QUIT\n", 5, MSG_NOSIGNAL) == 5 ? 0 : -1;
+    }
+    close(uds);
+    return result;
+}
+
 /* Arguments:
- * <caller pid> <abstract Unix domain socket path> <socket domain> <socket type> <socket protocol>
+ * <caller uid> <caller pid> <ether type> <abstract Unix domain socket path>
  */
 int main(int argc, char **argv) {
     /* Unix domain socket */
-    pid_t remote_pid;
     const char *abstract_path;
     size_t abstract_path_len;
-    int uds, uds_listener;
+    socklen_t bind_addr_len;
+    int uds_listener, null_fd, attempt;
     struct sockaddr_un bind_addr;
-    struct ucred remote_cred;
-    socklen_t remote_cred_len = sizeof remote_cred;
-
-    /* Socket creation */
-    int socket_fd, socket_domain, socket_type, socket_protocol;
-
-    /* File descriptor passing */
-    uint8_t dummy_message = 0;
-    struct iovec iov = {.iov_base = &dummy_message, .iov_len = 1};
-    unsigned char ancillary_data[CMSG_SPACE(sizeof socket_fd)];
-    struct msghdr hdr = {0};
-    struct cmsghdr *cmsg;
+    pid_t pid;
 
     /* Assume someone tries to start the application from command line if number of args is wrong */
-    if (argc != 6) {
+    if (argc != 5) {
         fprintf(stderr,
                 "This is a helper application for the aDTN service. You cannot run it directly.\n");
         return EXIT_FAILURE;
     }
 
     /* Parse arguments */
-    remote_pid = (pid_t) strtoimax(argv[1], NULL, 0);
-    abstract_path = argv[2];
+    session_uid = (uid_t) strtoimax(argv[1], NULL, 0);
+    session_pid = (pid_t) strtoimax(argv[2], NULL, 0);
+    session_ether_type = (int) strtol(argv[3], NULL, 0);
+    if (session_pid <= 1 || session_ether_type <= 0 || session_ether_type > 0xffff) {
+        fprintf(stderr, "Invalid arguments\n");
+        return EXIT_FAILURE;
+    }
+    abstract_path = argv[4];
     abstract_path_len = strlen(abstract_path);
     if (abstract_path_len > UNIX_PATH_MAX - 1) {
         fprintf(stderr, "Unix domain socket path is too long\n");
         return EXIT_FAILURE;
     }
-    socket_domain = (int) strtol(argv[3], NULL, 0);
-    socket_type = (int) strtol(argv[4], NULL, 0);
-    socket_protocol = (int) strtol(argv[5], NULL, 0);
 
-    /* Create Unix domain socket and write its file descriptor to stdout */
+    /* Create Unix domain socket */
     uds_listener = socket(AF_UNIX, SOCK_STREAM, 0);
     if (uds_listener == -1) {
         fprintf(stderr, "Unix domain socket creation failed (%d)\n", errno);
         return EXIT_FAILURE;
     }
 
-    /* Bind */
+    /* Bind. The app only starts a helper if none is running that serves it, so a helper that
+     * is running already belongs to an earlier process or app version and is replaced. */
     memset(&bind_addr, 0, sizeof bind_addr);
     bind_addr.sun_family = AF_UNIX;
     bind_addr.sun_path[0] = 0; /* Set first byte to zero to indicate an abstract path */
     memcpy(bind_addr.sun_path + 1, abstract_path, abstract_path_len);
-    if (bind(uds_listener, (struct sockaddr *) &bind_addr,
-             offsetof(struct sockaddr_un, sun_path) + 1 + abstract_path_len) != 0) {
-        fprintf(stderr, "bind failed (%d)\n", errno);
-        close(uds_listener);
-        return EXIT_FAILURE;
+    bind_addr_len = (socklen_t) (offsetof(struct sockaddr_un, sun_path) + 1 + abstract_path_len);
+    for (attempt = 1; bind(uds_listener, (struct sockaddr *) &bind_addr, bind_addr_len) != 0; ++attempt) {
+        int err_no = errno;
+        if (err_no != EADDRINUSE || attempt == MAX_BIND_ATTEMPTS ||
+            (attempt == 1 && stop_running_helper(&bind_addr, bind_addr_len) != 0)) {
+            fprintf(stderr, "bind failed (%d)\n", err_no);
+            close(uds_listener);
+            return EXIT_FAILURE;
+        }
+        usleep(100000);
     }
 
-    /* Listen */
-    if (listen(uds_listener, 1) != 0) {
-        fprintf(stderr, "listen failed (%d)\n", errno);
+    /* Continue in the background, so su returns */
+    pid = fork();
+    if (pid == -1) {
+        fprintf(stderr, "fork failed (%d)\n", errno);
         close(uds_listener);
         return EXIT_FAILURE;
     }
-
-		/* Inform parent process that it can connect now */
-		if (write(STDOUT_FILENO, "\n", 1) != 1) {
-        fprintf(stderr, "Writing to stdout failed (%d)\n", errno);
-				close(uds_listener);
-		}
-
-    /* Accept */
-    uds = accept(uds_listener, NULL, NULL);
-    if (uds == -1) {
-        fprintf(stderr, "accept failed (%d)\n", errno);
+    if (pid != 0) {
         close(uds_listener);
-        return EXIT_FAILURE;
+        return EXIT_SUCCESS;
     }
 
-    /* Close listener */
-    if (close(uds_listener) != 0) {
-        fprintf(stderr, "Closing Unix domain socket listener failed (%d)\n", errno);
-        close(uds);
-        return EXIT_FAILURE;
-    }
-
-    /* Get ID of the connected process */
-    if (getsockopt(uds, SOL_SOCKET, SO_PEERCRED, &remote_cred, &remote_cred_len) != 0) {
-        fprintf(stderr, "Getting SO_PEERCRED failed (%d)\n", errno);
-        close(uds);
-        return EXIT_FAILURE;
-    }
-
-    /* Check if the right process connected */
-    if (remote_cred.pid != remote_pid) {
-        fprintf(stderr, "Process with unexpected ID connected to Unix domain socket\n");
-        close(uds);
-        return EXIT_FAILURE;
-    }
-
-    /* Create socket */
-    socket_fd = socket(socket_domain, socket_type, htons(socket_protocol));
-    if (socket_fd == -1) {
-        fprintf(stderr, "Socket creation failed (%d)\n", errno);
-        close(uds);
-        return EXIT_FAILURE;
-    }
-
-    /* Since it is not possible to send only ancillary data, a dummy zero byte is sent */
-    hdr.msg_iov = &iov;
-    hdr.msg_iovlen = 1;
-
-    /* Set up ancillary data to pass the socket file descriptor */
-    memset(ancillary_data, 0, sizeof ancillary_data);
-    hdr.msg_control = ancillary_data;
-    hdr.msg_controllen = sizeof ancillary_data;
-    cmsg = CMSG_FIRSTHDR(&hdr);
-    cmsg->cmsg_len = CMSG_LEN(sizeof socket_fd);
-    cmsg->cmsg_level = SOL_SOCKET;
-    cmsg->cmsg_type = SCM_RIGHTS;
-    *((int *) CMSG_DATA(cmsg)) = socket_fd;
-
-    /* Send it */
-    if (sendmsg(uds, &hdr, 0) == -1) {
-        fprintf(stderr, "sendmsg failed (%d)\n", errno);
-        close(socket_fd);
-        close(uds);
-        return EXIT_FAILURE;
-    }
-
-    /* Wait for client to close connection */
-    if (recv(uds, &dummy_message, sizeof dummy_message, 0) == -1) {
-        fprintf(stderr, "recv failed (%d)\n", errno);
-        close(socket_fd);
-        close(uds);
+    /* Listen. Clients see the credentials of the process that calls listen, so a later helper
+     * can find and replace this one. */
+    if (listen(uds_listener, 4) != 0) {
+        fprintf(stderr, "listen failed (%d)\n", errno);
+        close(uds_listener);
         return EXIT_FAILURE;
     }
 
-    /* Close Unix domain socket */
-    if (close(uds) != 0) {
-        fprintf(stderr, "Closing Unix domain socket failed (%d)\n", errno);
+    /* Inform the app that it can connect now. It still reads the pipe of su. */
+    if (write(STDOUT_FILENO, "\n", 1) != 1) {
+        fprintf(stderr, "Writing to stdout failed (%d)\n", errno);
+        close(uds_listener);
         return EXIT_FAILURE;
     }
 
-    /* Close created socket */
-    if (close(socket_fd) != 0) {
-        fprintf(stderr, "Closing socket failed (%d)\n", errno);
-        return EXIT_FAILURE;
+    /* Detach from su and its pipes */
+    setsid();
+    null_fd = open("/dev/null", O_RDWR);
+    if (null_fd != -1) {
+        dup2(null_fd, STDIN_FILENO);
+        dup2(null_fd, STDOUT_FILENO);
+        dup2(null_fd, STDERR_FILENO);
+        if (null_fd > STDERR_FILENO) close(null_fd);
     }
+    signal(SIGPIPE, SIG_IGN);
 
+    serve(uds_listener);
+    close(uds_listener);
     return EXIT_SUCCESS;
 }